@@ -0,0 +1,31 @@
+package org.adelbs.iso8583.clientserver;
+
+/**
+ * Starts the threads that read the connections (one per {@link ISOClient}).
+ *
+ * This is the Java 8 version, with platform threads. The jar is multi-release: on Java 21+ the version at
+ * src/main/java21 is loaded instead, and the readers run on virtual threads, so thousands of mostly idle
+ * connections cost no more than their buffers. Virtual threads are turned off with -D{@value #VIRTUAL_PROPERTY}=false.
+ */
+final class ConnectionThreads {
+
+	static final String VIRTUAL_PROPERTY = "iso8583.virtualThreads";
+
+	private ConnectionThreads() { }
+
+	/**
+	 * @return a started thread running the task
+	 */
+	static Thread start(String name, Runnable task) {
+		final Thread thread = new Thread(task, name);
+		thread.start();
+		return thread;
+	}
+
+	/**
+	 * @return true case the threads started by this class are virtual
+	 */
+	static boolean isVirtual() {
+		return false;
+	}
+}
@@ -0,0 +1,16 @@
+package org.adelbs.iso8583.clientserver;
+
+import java.net.Socket;
+
+/**
+ * Told when a socket is lost (closed by the peer, or a read or write failed), so the requests in flight
+ * through it fail at once instead of waiting for their timeout.
+ */
+interface DisconnectListener {
+
+	/**
+	 * @param socket the lost socket, already closed
+	 * @param cause the reason, given to the requests that fail
+	 */
+	void disconnected(Socket socket, Throwable cause);
+}
@@ -4,81 +4,116 @@ import java.io.IOException;
 import java.io.InputStream;
 import java.net.Socket;
 import java.net.UnknownHostException;
-import java.util.ArrayList;
-import java.util.List;
+import java.nio.ByteBuffer;
 
+import org.adelbs.iso8583.exception.ConnectionException;
 import org.adelbs.iso8583.exception.InvalidPayloadException;
 import org.adelbs.iso8583.helper.Iso8583Config;
-import org.adelbs.iso8583.util.ISOUtils;
+import org.adelbs.iso8583.protocol.FrameDecoder;
 
-public class ISOClient extends Thread {
+/**
+ * Reads the frames of a socket into the {@link PayloadQueue}. Each client has its own reader thread,
+ * started by {@link ConnectionThreads} (a virtual thread on Java 21+).
+ */
+public class ISOClient implements Runnable {
 
+	private static final int BUFFER_SIZE = 8192;
+	
 	private Iso8583Config isoConfig;
 	private PayloadQueue payloadQueue;
 	private CallbackAction callback;
 	
 	private ISOServer isoServer;
-	private Socket socket;
+	private DisconnectListener disconnectListener;
+	private volatile Socket socket;
 	private InputStream input;
-	private List<Byte> bytes;
 	
-	private boolean isConnected;
+	private volatile boolean isConnected;
 
 	public ISOClient(ISOServer isoServer, Socket cliSocket, Iso8583Config isoConfig, PayloadQueue payloadQueue, CallbackAction callback) {
+		this(isoServer, cliSocket, isoConfig, payloadQueue, callback, null);
+	}
+
+	public ISOClient(String host, int port, Iso8583Config isoConfig, PayloadQueue payloadQueue, CallbackAction callback) throws UnknownHostException, IOException {
+		this(null, new Socket(host, port), isoConfig, payloadQueue, callback, null);
+	}
+
+	/**
+	 * @param disconnectListener told when the peer closes the socket or a read fails, may be null
+	 */
+	ISOClient(String host, int port, Iso8583Config isoConfig, PayloadQueue payloadQueue, CallbackAction callback, DisconnectListener disconnectListener) throws UnknownHostException, IOException {
+		this(null, new Socket(host, port), isoConfig, payloadQueue, callback, disconnectListener);
+	}
+
+	/**
+	 * @param disconnectListener told when the peer closes the socket or a read fails, may be null
+	 */
+	ISOClient(ISOServer isoServer, Socket cliSocket, Iso8583Config isoConfig, PayloadQueue payloadQueue, CallbackAction callback, DisconnectListener disconnectListener) {
 		this.isoServer = isoServer;
+		this.disconnectListener = disconnectListener;
 		this.socket = cliSocket;
 		this.isConnected = true;
 		this.isoConfig = isoConfig;
 		this.payloadQueue = payloadQueue;
 		this.callback = callback;
 		
-		setName("Client-"+ cliSocket.getInetAddress().getHostAddress() + "-" + cliSocket.getPort());
-		
-		start();
-	}
-
-	public ISOClient(String host, int port, Iso8583Config isoConfig, PayloadQueue payloadQueue, CallbackAction callback) throws UnknownHostException, IOException {
-		this(null, new Socket(host, port), isoConfig, payloadQueue, callback);
+		ConnectionThreads.start("Client-"+ cliSocket.getInetAddress().getHostAddress() + "-" + cliSocket.getPort(), this);
 	}
 
 	public void run() {
+		final Socket socket = this.socket;
 		String clientName = socket.getInetAddress().getHostAddress() + ":" + socket.getPort();
 		callback.log("Client connected " + clientName);
 		
+		ConnectionException lost = new ConnectionException("The connection to " + clientName + " was closed.");
 		try {
+			input = socket.getInputStream();
+			
+			final FrameDecoder decoder = isoConfig.getDelimiter().newFrameDecoder(isoConfig);
+			ByteBuffer buffer = ByteBuffer.allocate(BUFFER_SIZE);
+			
 			while (isConnected && (isoServer == null || isoServer.isConnected())) {
+				final int read = input.read(buffer.array(), buffer.arrayOffset() + buffer.position(), buffer.remaining());
+				if (read == -1) {
+					this.isConnected = false;
+					break;
+				}
+				buffer.position(buffer.position() + read);
 				
-				input = socket.getInputStream();
-			
+				buffer.flip();
 				try {
-					bytes = new ArrayList<Byte>();
-					
-					byte bRead;
-					while (this.isConnected) {
-						bRead = new Byte((byte) input.read());
-						if (bRead == -1) {
-							this.isConnected = false;
-							break;
-						}
-
-						if (bRead != -1) bytes.add(new Byte(bRead));
-						if (isoConfig.getDelimiter().isPayloadComplete(bytes, isoConfig)) break;
-					}
-					
-					if (this.isConnected) {
-						byte[] data = isoConfig.getDelimiter().clearPayload(ISOUtils.listToArray(bytes), isoConfig);
-						callback.log("Bytes received ("+ clientName +"): " + bytesToConsole(ISOUtils.listToArray(bytes)));
+					int frameStart = buffer.position();
+					ByteBuffer frame;
+					while ((frame = decoder.decode(buffer)) != null) {
+						byte[] data = new byte[frame.remaining()];
+						frame.get(data);
+						
+						callback.log("Bytes received ("+ clientName +"): " + bytesToConsole(buffer.array(), buffer.arrayOffset() + frameStart, buffer.position() - frameStart));
 						registerActionTimeMilis();
 						payloadQueue.addPayloadIn(new SocketPayload(data, socket));
+						
+						frameStart = buffer.position();
 					}
+					buffer.compact();
 				}
 				catch (InvalidPayloadException e) {
 					callback.log("Invalid Payload ("+ e.getMessage() +")");
+					decoder.reset();
+					buffer.clear();
+				}
+				
+				//Messages bigger than the buffer
+				if (decoder.getBytesNeeded() > buffer.remaining()) {
+					final ByteBuffer bigger = ByteBuffer.allocate(Math.max(buffer.capacity() * 2, buffer.position() + decoder.getBytesNeeded()));
+					buffer.flip();
+					bigger.put(buffer);
+					buffer = bigger;
 				}
 			}
 		}
 		catch (Exception x) {
 			if (isConnected) callback.log(x.getMessage());
+			lost = new ConnectionException("Impossible to read from " + clientName + " (" + x.getMessage() + "), disconnected.");
 		}
 		finally {
 			try {
@@ -88,20 +123,23 @@ public class ISOClient extends Thread {
 				System.out.println(x);
 			}
 			finally {
-				socket = null;
+				this.socket = null;
 			}
 		}
 		
 		callback.log("Client disconnected " + clientName);
+		//The requests in flight would wait for their timeout otherwise
+		if (disconnectListener != null)
+			disconnectListener.disconnected(socket, lost);
 	}
 
-	private String bytesToConsole(byte[] data) {
-		String result = "";
+	private String bytesToConsole(byte[] data, int offset, int length) {
+		StringBuilder result = new StringBuilder(length * 16);
 		
-		for (int i = 0; i < data.length; i++)
-			result += "byte[" + i + "]{" + data[i] + "},\n";
+		for (int i = 0; i < length; i++)
+			result.append("byte[").append(i).append("]{").append(data[offset + i]).append("},\n");
 		
-		return result;
+		return result.toString();
 	}
 	
 	public Socket getSocket() {
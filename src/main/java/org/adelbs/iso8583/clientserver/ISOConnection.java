@@ -1,51 +1,88 @@
 package org.adelbs.iso8583.clientserver;
 
 import java.io.IOException;
-import java.io.OutputStream;
 import java.net.Socket;
-import java.net.SocketException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
 
+import org.adelbs.iso8583.constants.DispatchOrderEnum;
+import org.adelbs.iso8583.constants.IOModeEnum;
+import org.adelbs.iso8583.constants.WaitStrategyEnum;
 import org.adelbs.iso8583.exception.ConnectionException;
 import org.adelbs.iso8583.exception.ParseException;
 import org.adelbs.iso8583.helper.Iso8583Config;
+import org.adelbs.iso8583.protocol.ISOMessage;
 
 
 public class ISOConnection {
 
-	private final static int SLEEP_TIME = 50;
+	//Longest wait for a payload before checking the state of the connection again
+	private final static int WAIT_TIME = 50;
 	
-	private boolean running = false;
-	private long lastAction = 0;
+	public final static long DEFAULT_REQUEST_TIMEOUT = 30000;
+	
+	private volatile boolean running = false;
+	private volatile long lastAction = 0;
 	
 	private Iso8583Config isoConfig;
 	private CallbackAction callback;
 
-	private final PayloadQueue payloadQueue = new PayloadQueue();
+	private PayloadQueue payloadQueue = new PayloadQueue();
 	private Sender sender = new Sender();
+	private final ConcurrentMap<Socket, SocketWriter> writers = new ConcurrentHashMap<Socket, SocketWriter>();
+	
+	private RequestCorrelator correlator;
+	private int[] correlationBits = RequestCorrelator.DEFAULT_KEY_BITS;
+	private long requestTimeout = DEFAULT_REQUEST_TIMEOUT;
+	
+	private InboundDispatcher dispatcher;
+	private int dispatcherWorkers = 0;
+	private int dispatcherCapacity;
+	private DispatchOrderEnum dispatchOrder;
 
 	private boolean isServer;
 	private String host;
 	private int port;
 	private int timeout;
+	private IOModeEnum ioMode;
 	
 	private ISOServer isoServer;
+	private NioISOServer nioServer;
 	private ISOClient isoClient;
 	
 	public ISOConnection(boolean isServer, String host, int port, int timeout) {
+		this(isServer, host, port, timeout, IOModeEnum.BLOCKING);
+	}
+	
+	/**
+	 * @param ioMode how the server serves its clients, not used by the client side
+	 */
+	public ISOConnection(boolean isServer, String host, int port, int timeout, IOModeEnum ioMode) {
 		this.isServer = isServer;
 		this.host = host;
 		this.port = port;
 		this.timeout = (timeout * 1000);
+		this.ioMode = ioMode;
 	}
 	
 	public void connect() throws IOException, ConnectionException {
 		if (isoConfig != null && callback != null) {
 			if(isoConfig.getXmlFilePath()!=null){
 				registerActionTimeMilis();
-				if (isServer) 
+				correlator = new RequestCorrelator(isoConfig.getRuntimeConfig(), correlationBits);
+				payloadQueue.setCorrelator(correlator);
+				if (dispatcherWorkers > 0) {
+					dispatcher = new InboundDispatcher(callback, dispatcherWorkers, dispatcherCapacity, dispatchOrder);
+					payloadQueue.setDispatcher(dispatcher);
+				}
+				
+				if (isServer && ioMode == IOModeEnum.NIO)
+					this.nioServer = new NioISOServer(this, host, port, isoConfig, payloadQueue, callback);
+				else if (isServer) 
 					this.isoServer = new ISOServer(this, host, port, isoConfig, payloadQueue, callback);
 				else 
-					this.isoClient = new ISOClient(host, port, isoConfig, payloadQueue, callback);
+					this.isoClient = new ISOClient(host, port, isoConfig, payloadQueue, callback, this::disconnected);
 				
 				running = true;
 				sender.start();
@@ -69,36 +106,48 @@ public class ISOConnection {
 		
 		if (isoClient != null) isoClient.closeConnection();
 		if (isoServer != null) isoServer.closeConnection();
+		if (nioServer != null) nioServer.closeConnection();
+		for (SocketWriter writer : writers.values()) writer.close();
+		if (correlator != null) correlator.failAll(new ConnectionException("Connection closed."));
+		if (dispatcher != null) dispatcher.close();
+		dispatcher = null;
 
 		isoClient = null;
 		isoServer = null;
+		nioServer = null;
 		sender = null;
 	}
 	
-	private void waitRequest(int keepaliveTimeout) throws InterruptedException {
-		while (running && !payloadQueue.hasMorePayloadIn()) {
-			Thread.sleep(SLEEP_TIME);
+	private SocketPayload waitRequest(int keepaliveTimeout) throws InterruptedException {
+		SocketPayload payload = null;
+		while (running && payload == null) {
+			payload = payloadQueue.waitNextPayloadIn(WAIT_TIME);
 			
-			if (keepaliveTimeout > 0 && (System.currentTimeMillis() - startOfWaitNextRequest) > (keepaliveTimeout * 1000)) {
+			if (payload == null && keepaliveTimeout > 0 && (System.currentTimeMillis() - startOfWaitNextRequest) > (keepaliveTimeout * 1000)) {
 				startOfWaitNextRequest = System.currentTimeMillis();
 				callback.keepalive();
 			}
 			
 		}
+		return payload;
 	}
 
 	private long startOfWaitNextRequest = 0;
 	public void processNextPayload(boolean waitIfThereIsNothingAtQueue, int keepaliveTimeout) throws ParseException, InterruptedException {
 		
+		SocketPayload payload;
 		if (waitIfThereIsNothingAtQueue) {
 			startOfWaitNextRequest = System.currentTimeMillis();
-			waitRequest(keepaliveTimeout);
+			payload = waitRequest(keepaliveTimeout);
+		}
+		else {
+			payload = payloadQueue.getNextPayloadIn();
 		}
 		
-		if (payloadQueue.hasMorePayloadIn()) {
+		if (payload != null) {
 			synchronized(this) {
 				callback.log("Parsing bytes...");
-				callback.dataReceived(payloadQueue.getNextPayloadIn());
+				callback.dataReceived(payload);
 			}
 		}
 	}
@@ -110,15 +159,110 @@ public class ISOConnection {
 	public void setCallback(CallbackAction callback) {
 		this.callback = callback;
 	}
+	
+	/**
+	 * Sets the size of the queues of payloads (received and to be sent) and how the threads wait for them.
+	 * Must be called before {@link #connect()}, the default is {@link PayloadQueue#DEFAULT_CAPACITY} and {@link WaitStrategyEnum#BLOCKING}.
+	 */
+	public void setQueue(int capacity, WaitStrategyEnum waitStrategy) {
+		if (running)
+			throw new IllegalStateException("The queue can't be changed while connected");
+		this.payloadQueue = new PayloadQueue(capacity, waitStrategy);
+	}
 
 	public void send(SocketPayload payload) throws IOException, ParseException, InterruptedException {
 		payloadQueue.addPayloadOut(payload);
 	}
 	
+	/**
+	 * Sends the request through the client socket, without waiting for the response.
+	 * 
+	 * @return future of the response, see {@link #request(ISOMessage, Socket, long)}
+	 * @throws IllegalStateException case this is a server, or the client is not connected
+	 */
+	public CompletableFuture<ISOMessage> request(ISOMessage message) throws ParseException, InterruptedException {
+		if (isServer)
+			throw new IllegalStateException("A server must inform the client socket of the request");
+
+		final Socket socket = getClientSocket();
+		if (socket == null)
+			throw new IllegalStateException("Not connected");
+		return request(message, socket, requestTimeout);
+	}
+	
+	/**
+	 * Sends the request without waiting for the response, so many requests may be in flight at once.
+	 * The response is recognized by its key (see {@link #setCorrelationBits(int...)}) and completes the future
+	 * instead of going to the callback. Responses that come after the timeout go to the callback.
+	 * 
+	 * @param socket where the request is sent (e.g. a client of the server)
+	 * @param timeoutMillis after this time the future fails with a {@link java.util.concurrent.TimeoutException}
+	 * @return future of the response, failed as well case the request can't be sent
+	 * @throws ParseException case the message type is not configured, or a request with the same key is in flight
+	 */
+	public CompletableFuture<ISOMessage> request(ISOMessage message, Socket socket, long timeoutMillis) throws ParseException, InterruptedException {
+		final RequestCorrelator correlator = this.correlator;
+		if (correlator == null)
+			throw new IllegalStateException("Not connected");
+		
+		final CompletableFuture<ISOMessage> response = correlator.register(message, socket, timeoutMillis);
+		try {
+			payloadQueue.addPayloadOut(new SocketPayload(isoConfig.getDelimiter().preparePayload(message, isoConfig), socket, response));
+		}
+		catch (InterruptedException | RuntimeException x) {
+			//Otherwise the key would stay in flight until the timeout
+			response.completeExceptionally(x);
+			throw x;
+		}
+		return response;
+	}
+	
+	/**
+	 * Sets the bits that, along with the message type, match a response to its request. Must be called before {@link #connect()}.
+	 * The default is 11, 37 and 41 (STAN, RRN and terminal id).
+	 */
+	public void setCorrelationBits(int... bits) {
+		if (running)
+			throw new IllegalStateException("The correlation bits can't be changed while connected");
+		this.correlationBits = bits.clone();
+	}
+	
+	/**
+	 * Delivers the received payloads to the callback from a pool of workers, as they arrive, instead of through
+	 * {@link #processNextPayload(boolean, int)}. The callback must then be thread safe. Must be called before {@link #connect()}.
+	 * 
+	 * @param workers amount of worker threads, e.g. the amount of cores
+	 * @param queueCapacity payloads each worker may hold, the readers wait when it is full
+	 * @param order whether the payloads of a socket keep their order
+	 */
+	public void setDispatcher(int workers, int queueCapacity, DispatchOrderEnum order) {
+		if (running)
+			throw new IllegalStateException("The dispatcher can't be changed while connected");
+		this.dispatcherWorkers = workers;
+		this.dispatcherCapacity = queueCapacity;
+		this.dispatchOrder = order;
+	}
+	
+	/**
+	 * @param requestTimeout default timeout of {@link #request(ISOMessage)}, in milliseconds
+	 */
+	public void setRequestTimeout(long requestTimeout) {
+		this.requestTimeout = requestTimeout;
+	}
+	
 	public void registerActionTimeMilis() {
 		lastAction = System.currentTimeMillis();
 	}
 	
+	/**
+	 * Fails the requests in flight through the lost socket, see {@link DisconnectListener}.
+	 */
+	void disconnected(Socket socket, Throwable cause) {
+		final RequestCorrelator correlator = this.correlator;
+		if (correlator != null && socket != null)
+			correlator.failAll(socket, cause);
+	}
+	
 	public String getHost() {
 		return host;
 	}
@@ -134,6 +278,11 @@ public class ISOConnection {
 		return socket;
 	}
 	
+	/**
+	 * Takes the payloads to be sent and hands them to the writer of their socket, so each client is written
+	 * on its own (by its {@link SocketWriter}, or by the selector threads of the NIO server). Both keep a bounded
+	 * queue per socket: a client that lets it fill up is disconnected, and its requests in flight fail.
+	 */
 	private class Sender extends Thread {
 		
 		Sender() {
@@ -143,15 +292,9 @@ public class ISOConnection {
 		public void run() {
 			try {
 				while (running) {
-					try {
-						if (payloadQueue.hasMorePayloadOut())
-					        send(payloadQueue.getNextPayloadOut());
-
-						sleep(SLEEP_TIME);
-					}
-					catch (SocketException se) {
-						callback.log("Client disconnected...");
-					}
+					final SocketPayload payload = payloadQueue.waitNextPayloadOut(WAIT_TIME);
+					if (payload != null)
+				        send(payload);
 					
 					if (timeout < (System.currentTimeMillis() - lastAction)) {
 						callback.log("Connection timeout.");
@@ -160,7 +303,7 @@ public class ISOConnection {
 					}
 				}
 			}
-			catch (InterruptedException | IOException x) {
+			catch (InterruptedException x) {
 				if (running) {
 					x.printStackTrace();
 					callback.log("ERROR:");
@@ -175,21 +318,50 @@ public class ISOConnection {
 			}
 		}
 		
-		private void send(SocketPayload payload) throws IOException {
-			synchronized(this) {
-				registerActionTimeMilis();
-				
-				if (payload.getSocket() != null && !payload.getSocket().isClosed()) {
-					OutputStream out = payload.getSocket().getOutputStream();
-					
+		/**
+		 * Hands the payload to the writer of its socket. Case it can't be sent, the requests in flight
+		 * through the socket fail (as the request of the payload).
+		 */
+		private void send(SocketPayload payload) {
+			registerActionTimeMilis();
+			
+			final Socket socket = payload.getSocket();
+			final NioISOServer nio = nioServer;
+			try {
+				if (nio != null && nio.send(socket, payload.getData())) {
 					callback.log("Sending data...");
-			        out.write(payload.getData());
-			        out.flush();
+				}
+				else if (socket != null && !socket.isClosed()) {
+					callback.log("Sending data...");
+					final SocketWriter writer = writerOf(socket);
+					if (!writer.send(payload.getData())) {
+						if (writer.isClosed())
+							throw new ConnectionException("Impossible to send the payload, the socket is closed!");
+
+						writer.close();
+						socket.close();
+						throw new ConnectionException("The client is not reading (output queue full), disconnected.");
+					}
 				}
 				else {
-					callback.log("Impossible to send the payload, the socket is closed!");
+					throw new ConnectionException("Impossible to send the payload, the socket is closed!");
 				}
 			}
+			catch (ConnectionException | IOException x) {
+				callback.log(x.getMessage());
+				if (payload.getResponse() != null)
+					payload.getResponse().completeExceptionally(x);
+				disconnected(socket, x);
+			}
+		}
+		
+		private SocketWriter writerOf(Socket socket) throws IOException {
+			SocketWriter writer = writers.get(socket);
+			if (writer == null || writer.isClosed()) {
+				writer = new SocketWriter(socket, payloadQueue.getCapacity(), callback, ISOConnection.this::disconnected, writers);
+				writers.put(socket, writer);
+			}
+			return writer;
 		}
 	}
 }
\ No newline at end of file
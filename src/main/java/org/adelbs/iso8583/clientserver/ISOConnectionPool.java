@@ -0,0 +1,276 @@
+package org.adelbs.iso8583.clientserver;
+
+import java.io.IOException;
+import java.net.Socket;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.adelbs.iso8583.constants.LoadBalanceEnum;
+import org.adelbs.iso8583.exception.ConnectionException;
+import org.adelbs.iso8583.exception.ParseException;
+import org.adelbs.iso8583.helper.Iso8583Config;
+import org.adelbs.iso8583.protocol.ISOMessage;
+
+/**
+ * Pool of client connections to one or more hosts, sharing the configuration (and so the compiled message plans)
+ * and the callback. Each request goes to a connected member picked by the {@link LoadBalanceEnum} of the pool.
+ *
+ * Members that fail to connect or lose their socket are reconnected in background, waiting twice as long after each
+ * attempt (from {@link #MIN_BACKOFF} up to {@link #MAX_BACKOFF} milliseconds). The wait is reset only once the member
+ * stays connected for {@link #STABLE_TIME} milliseconds, so a host that accepts and then drops the connections is
+ * not hammered either. A closed pool can't be connected again.
+ */
+public class ISOConnectionPool {
+
+	public static final long MIN_BACKOFF = 100;
+	public static final long MAX_BACKOFF = 30000;
+	public static final long STABLE_TIME = 10000;
+
+	private static final long CHECK_INTERVAL = 100;
+
+	private final Iso8583Config isoConfig;
+	private final CallbackAction callback;
+	private final LoadBalanceEnum loadBalance;
+	private final int timeout;
+
+	private final List<Member> members = new ArrayList<Member>();
+	private final AtomicInteger next = new AtomicInteger();
+	private ScheduledExecutorService reconnector;
+	private volatile boolean closed;
+
+	/**
+	 * @param endpoints hosts, as host:port
+	 * @param connectionsPerEndpoint amount of connections to each host
+	 * @param timeout idle timeout of each connection, in seconds (see {@link ISOConnection})
+	 */
+	public ISOConnectionPool(Iso8583Config isoConfig, CallbackAction callback, List<String> endpoints, int connectionsPerEndpoint, int timeout, LoadBalanceEnum loadBalance) {
+		this.isoConfig = isoConfig;
+		this.callback = callback;
+		this.loadBalance = loadBalance;
+		this.timeout = timeout;
+
+		for (String endpoint : endpoints) {
+			final int separator = endpoint.lastIndexOf(':');
+			if (separator <= 0)
+				throw new IllegalArgumentException("Invalid endpoint (host:port): " + endpoint);
+
+			final String host = endpoint.substring(0, separator);
+			final int port = Integer.parseInt(endpoint.substring(separator + 1));
+			for (int i = 0; i < connectionsPerEndpoint; i++)
+				members.add(new Member(host, port));
+		}
+
+		if (members.isEmpty())
+			throw new IllegalArgumentException("The pool needs at least one connection");
+	}
+
+	/**
+	 * Connects all the members. Those that fail are retried in background.
+	 *
+	 * @throws ConnectionException case no member could connect, or the pool was closed
+	 */
+	public synchronized void connect() throws ConnectionException {
+		if (closed)
+			throw new ConnectionException("The pool was closed");
+		if (reconnector != null)
+			return;
+
+		for (Member member : members)
+			member.reconnect();
+
+		reconnector = Executors.newSingleThreadScheduledExecutor(new ThreadFactory() {
+			public Thread newThread(Runnable task) {
+				final Thread thread = new Thread(task, "PoolReconnect");
+				thread.setDaemon(true);
+				return thread;
+			}
+		});
+		reconnector.scheduleWithFixedDelay(new Runnable() {
+			public void run() {
+				final long now = System.currentTimeMillis();
+				for (Member member : members) {
+					if (member.isAvailable())
+						member.checkStable(now);
+					else if (now >= member.nextAttempt)
+						member.reconnect();
+				}
+			}
+		}, CHECK_INTERVAL, CHECK_INTERVAL, TimeUnit.MILLISECONDS);
+
+		if (getConnectedCount() == 0)
+			throw new ConnectionException("It was not possible to connect to any host of the pool");
+	}
+
+	/**
+	 * Sends the request through a member of the pool, see {@link ISOConnection#request(ISOMessage)}.
+	 *
+	 * @throws ConnectionException case no member is connected
+	 */
+	public CompletableFuture<ISOMessage> request(ISOMessage message) throws ConnectionException, ParseException, InterruptedException {
+		final Member member = pick();
+		final ISOConnection connection = member.current();
+		member.outstanding.incrementAndGet();
+		try {
+			final CompletableFuture<ISOMessage> response = connection.request(message);
+			response.whenComplete((result, failure) -> member.outstanding.decrementAndGet());
+			return response;
+		}
+		catch (ParseException | InterruptedException | RuntimeException x) {
+			member.outstanding.decrementAndGet();
+			throw x;
+		}
+	}
+
+	/**
+	 * Sends the message through a member of the pool, without waiting for a response.
+	 *
+	 * @throws ConnectionException case no member is connected
+	 */
+	public void send(ISOMessage message) throws ConnectionException, ParseException, InterruptedException {
+		final ISOConnection connection = pick().current();
+		try {
+			connection.send(new SocketPayload(isoConfig.getDelimiter().preparePayload(message, isoConfig), connection.getClientSocket()));
+		}
+		catch (IOException x) {
+			throw new ConnectionException(x.getMessage());
+		}
+	}
+
+	/**
+	 * @return amount of members currently connected
+	 */
+	public int getConnectedCount() {
+		int result = 0;
+		for (Member member : members) {
+			if (member.isAvailable())
+				result++;
+		}
+		return result;
+	}
+
+	/**
+	 * @return amount of connections of the pool, connected or not
+	 */
+	public int getSize() {
+		return members.size();
+	}
+
+	public synchronized void close() {
+		//A reconnect already running can't be stopped (connecting ignores the interrupt), it ends its connection itself
+		closed = true;
+		if (reconnector != null) {
+			reconnector.shutdownNow();
+			reconnector = null;
+		}
+		for (Member member : members)
+			member.close();
+	}
+
+	private Member pick() throws ConnectionException {
+		final int size = members.size();
+		final int start = (next.getAndIncrement() & Integer.MAX_VALUE) % size;
+
+		Member result = null;
+		for (int i = 0; i < size; i++) {
+			final Member member = members.get((start + i) % size);
+			if (!member.isAvailable())
+				continue;
+
+			if (loadBalance == LoadBalanceEnum.ROUND_ROBIN)
+				return member;
+
+			//Starting at a different member each time spreads the ties
+			if (result == null || member.outstanding.get() < result.outstanding.get())
+				result = member;
+		}
+
+		if (result == null)
+			throw new ConnectionException("There is no connection available at the pool");
+		return result;
+	}
+
+	private final class Member {
+
+		private final String host;
+		private final int port;
+		private final AtomicInteger outstanding = new AtomicInteger();
+
+		private volatile ISOConnection connection;
+		private volatile long nextAttempt;
+		private long backoff = MIN_BACKOFF;
+		private long connectedAt;
+
+		Member(String host, int port) {
+			this.host = host;
+			this.port = port;
+		}
+
+		/**
+		 * @throws ConnectionException case the member was closed meanwhile
+		 */
+		ISOConnection current() throws ConnectionException {
+			final ISOConnection current = connection;
+			if (current == null)
+				throw new ConnectionException("The connection to " + host + ":" + port + " was closed");
+			return current;
+		}
+
+		boolean isAvailable() {
+			final ISOConnection current = connection;
+			if (current == null || !current.isConnected())
+				return false;
+
+			final Socket socket = current.getClientSocket();
+			return socket != null && !socket.isClosed();
+		}
+
+		void reconnect() {
+			close();
+
+			final ISOConnection candidate = new ISOConnection(false, host, port, timeout);
+			candidate.setIsoConfig(isoConfig);
+			candidate.setCallback(callback);
+			//Case the connection is lost, the next attempt waits as after a failure
+			connectedAt = System.currentTimeMillis();
+			nextAttempt = connectedAt + backoff;
+			backoff = Math.min(backoff * 2, MAX_BACKOFF);
+			try {
+				candidate.connect();
+			}
+			catch (Exception x) {
+				callback.log("Pool could not connect to " + host + ":" + port + " (" + x.getMessage() + "), next attempt in " + (nextAttempt - System.currentTimeMillis()) + " ms");
+				return;
+			}
+
+			synchronized (this) {
+				if (!closed) {
+					connection = candidate;
+					callback.log("Pool connected to " + host + ":" + port);
+					return;
+				}
+			}
+			candidate.endConnection();
+		}
+
+		/**
+		 * Resets the wait of the next reconnect, once the member has been connected long enough.
+		 */
+		void checkStable(long now) {
+			if (backoff > MIN_BACKOFF && now - connectedAt >= STABLE_TIME)
+				backoff = MIN_BACKOFF;
+		}
+
+		synchronized void close() {
+			final ISOConnection current = connection;
+			connection = null;
+			if (current != null && current.isConnected())
+				current.endConnection();
+		}
+	}
+}
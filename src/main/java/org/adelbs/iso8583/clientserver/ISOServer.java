@@ -35,7 +35,7 @@ public class ISOServer extends Thread {
 	public void run() {
 		try {
 			while (isConnected) {
-				new ISOClient(this, listener.accept(), isoConfig, payloadQueue, callback);
+				new ISOClient(this, listener.accept(), isoConfig, payloadQueue, callback, isoConnection::disconnected);
 			}
 			
 			listener = null;
@@ -0,0 +1,133 @@
+package org.adelbs.iso8583.clientserver;
+
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.adelbs.iso8583.constants.DispatchOrderEnum;
+
+/**
+ * Delivers the received payloads to the callback from a pool of workers, so the messages of many clients are
+ * handled in parallel. Each worker has its own bounded queue; when it is full the reader that received the payload
+ * waits, which pushes back to its socket.
+ *
+ * With {@link DispatchOrderEnum#PER_CONNECTION} all the payloads of a socket go to the same worker, keeping their order.
+ * The callback is called by many threads at once, so it must be thread safe.
+ */
+final class InboundDispatcher {
+
+	private final CallbackAction callback;
+	private final DispatchOrderEnum order;
+	private final Worker[] workers;
+	private final AtomicInteger next = new AtomicInteger();
+	private volatile Runnable takeListener;
+
+	InboundDispatcher(CallbackAction callback, int workerCount, int queueCapacity, DispatchOrderEnum order) {
+		if (workerCount <= 0 || queueCapacity <= 0)
+			throw new IllegalArgumentException("workerCount and queueCapacity must be positive");
+
+		this.callback = callback;
+		this.order = order;
+		this.workers = new Worker[workerCount];
+		for (int i = 0; i < workerCount; i++) {
+			workers[i] = new Worker("Dispatcher-" + i, queueCapacity);
+			workers[i].start();
+		}
+	}
+
+	/**
+	 * Hands the payload to a worker, waiting case its queue is full.
+	 */
+	void dispatch(SocketPayload payload) throws InterruptedException {
+		if (order == DispatchOrderEnum.PER_CONNECTION) {
+			workers[indexOf(payload)].queue.put(payload);
+			return;
+		}
+
+		//Any worker with room, or wait for the next one in turn
+		final int start = (next.getAndIncrement() & Integer.MAX_VALUE) % workers.length;
+		for (int i = 0; i < workers.length; i++) {
+			if (workers[(start + i) % workers.length].queue.offer(payload))
+				return;
+		}
+		workers[start].queue.put(payload);
+	}
+
+	/**
+	 * Hands the payload to a worker without waiting.
+	 * 
+	 * @return false case the queue of the worker (or, unordered, of every worker) is full
+	 */
+	boolean offer(SocketPayload payload) {
+		if (order == DispatchOrderEnum.PER_CONNECTION)
+			return workers[indexOf(payload)].queue.offer(payload);
+
+		final int start = (next.getAndIncrement() & Integer.MAX_VALUE) % workers.length;
+		for (int i = 0; i < workers.length; i++) {
+			if (workers[(start + i) % workers.length].queue.offer(payload))
+				return true;
+		}
+		return false;
+	}
+
+	/**
+	 * @param takeListener called by the workers each time they take a payload from their queues
+	 */
+	void setTakeListener(Runnable takeListener) {
+		this.takeListener = takeListener;
+	}
+
+	/**
+	 * Stops the workers. The payloads not delivered yet are dropped.
+	 */
+	void close() {
+		for (Worker worker : workers)
+			worker.interrupt();
+	}
+
+	int getWorkerCount() {
+		return workers.length;
+	}
+
+	private int indexOf(SocketPayload payload) {
+		if (payload.getSocket() == null)
+			return 0;
+
+		final int hash = payload.getSocket().hashCode();
+		return ((hash ^ (hash >>> 16)) & Integer.MAX_VALUE) % workers.length;
+	}
+
+	private class Worker extends Thread {
+
+		private final BlockingQueue<SocketPayload> queue;
+
+		Worker(String name, int queueCapacity) {
+			this.queue = new ArrayBlockingQueue<SocketPayload>(queueCapacity);
+			setName(name);
+		}
+
+		public void run() {
+			try {
+				while (!isInterrupted()) {
+					final SocketPayload payload = queue.take();
+					final Runnable listener = takeListener;
+					if (listener != null)
+						listener.run();
+					try {
+						callback.dataReceived(payload);
+					}
+					catch (Exception x) {
+						callback.log("ERROR:");
+						callback.log(x.getMessage());
+					}
+				}
+			}
+			catch (InterruptedException x) {
+				//Closed
+			}
+			finally {
+				queue.clear();
+			}
+		}
+	}
+}
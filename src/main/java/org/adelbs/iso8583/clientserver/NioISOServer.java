@@ -0,0 +1,443 @@
+package org.adelbs.iso8583.clientserver;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.nio.ByteBuffer;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.Queue;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ConcurrentMap;
+
+import org.adelbs.iso8583.constants.IOModeEnum;
+import org.adelbs.iso8583.exception.ConnectionException;
+import org.adelbs.iso8583.exception.InvalidPayloadException;
+import org.adelbs.iso8583.helper.Iso8583Config;
+import org.adelbs.iso8583.protocol.FrameDecoder;
+
+/**
+ * Server of the {@link IOModeEnum#NIO} mode. This thread only accepts the clients, which are then served by a few
+ * selector threads (reactors) through non-blocking channels, so thousands of clients don't need thousands of threads.
+ *
+ * Each client has its own read buffer and {@link FrameDecoder}, and its own bounded queue of pending writes (the same
+ * capacity of the {@link PayloadQueue}, as the {@link SocketWriter} of the blocking mode). Received frames
+ * go to the {@link PayloadQueue} like the ones of {@link ISOClient}, with the {@link Socket} of the channel, so replies
+ * are sent the same way (see {@link #send(Socket, byte[])}).
+ *
+ * The selector threads never wait: when the queue of received payloads is full, the client stops being read until
+ * the queue has room again (the socket buffers fill and the peer is pushed back by TCP).
+ */
+public class NioISOServer extends Thread {
+
+	public static final int DEFAULT_SELECTOR_THREADS = Math.max(1, Math.min(4, Runtime.getRuntime().availableProcessors() / 2));
+
+	private static final int BUFFER_SIZE = 4096;
+	private static final int MAX_GATHER = 64;
+	private static final long ACCEPT_RETRY_DELAY = 100;
+
+	private Iso8583Config isoConfig;
+	private PayloadQueue payloadQueue;
+	private CallbackAction callback;
+
+	private ISOConnection isoConnection;
+	private volatile boolean isConnected;
+	private ServerSocketChannel listener;
+
+	private final Reactor[] reactors;
+	private final ConcurrentMap<SocketChannel, ChannelClient> clients = new ConcurrentHashMap<SocketChannel, ChannelClient>();
+	private int nextReactor = 0;
+
+	public NioISOServer(ISOConnection isoConnection, String host, int port, Iso8583Config isoConfig, PayloadQueue payloadQueue, CallbackAction callback) throws IOException {
+		this(isoConnection, host, port, isoConfig, payloadQueue, callback, DEFAULT_SELECTOR_THREADS);
+	}
+
+	public NioISOServer(ISOConnection isoConnection, String host, int port, Iso8583Config isoConfig, PayloadQueue payloadQueue, CallbackAction callback, int selectorThreads) throws IOException {
+		this.isoConnection = isoConnection;
+		this.isoConfig = isoConfig;
+		this.payloadQueue = payloadQueue;
+		this.callback = callback;
+		isConnected = true;
+
+		listener = ServerSocketChannel.open();
+		listener.bind(new InetSocketAddress(host, port));
+		setName("NioServer-"+ host +"-"+ port);
+
+		reactors = new Reactor[Math.max(1, selectorThreads)];
+		for (int i = 0; i < reactors.length; i++) {
+			reactors[i] = new Reactor(getName() + "-" + i);
+			reactors[i].start();
+		}
+
+		start();
+
+		callback.log("Listening at " + host + ":" + port + " (" + reactors.length + " selector threads)");
+	}
+
+	public void run() {
+		try {
+			while (isConnected) {
+				final SocketChannel channel;
+				try {
+					channel = listener.accept();
+				}
+				catch (IOException exception) {
+					if (!isConnected || !listener.isOpen())
+						break;
+					callback.log("Error accepting a client. "+ exception.getMessage());
+					//E.g. out of file descriptors, give the clients some time to leave
+					try {
+						Thread.sleep(ACCEPT_RETRY_DELAY);
+					}
+					catch (InterruptedException x) {
+						break;
+					}
+					continue;
+				}
+
+				try {
+					channel.configureBlocking(false);
+					channel.socket().setTcpNoDelay(true);
+				}
+				catch (IOException exception) {
+					//Only this client is lost
+					callback.log("Error setting up a client. "+ exception.getMessage());
+					try {
+						channel.close();
+					}
+					catch (IOException x) {
+						callback.log(x.getMessage());
+					}
+					continue;
+				}
+
+				//Clients are spread over the reactors as they come
+				reactors[nextReactor].register(channel);
+				nextReactor = (nextReactor + 1) % reactors.length;
+			}
+		}
+		finally {
+			if (isConnected)
+				callback.log("Disconnected.");
+			isConnected = false;
+			for (Reactor reactor : reactors)
+				reactor.wakeup();
+		}
+	}
+
+	/**
+	 * Queues the data to be written to the client of the socket, case it is one of this server.
+	 * The data is written by the selector thread of the client, as soon as the channel accepts it.
+	 *
+	 * @return false case the socket is not a client of this server
+	 * @throws ConnectionException case the client is not reading (its queue is full), it is disconnected then
+	 */
+	public boolean send(Socket socket, byte[] data) throws ConnectionException {
+		final ChannelClient client = (socket != null && socket.getChannel() != null) ? clients.get(socket.getChannel()) : null;
+		if (client == null)
+			return false;
+
+		if (!client.writes.offer(ByteBuffer.wrap(data))) {
+			final ConnectionException x = new ConnectionException("The client " + client.name + " is not reading (output queue full), disconnected.");
+			client.close(x);
+			throw x;
+		}
+		client.reactor.requestWrite(client);
+		return true;
+	}
+
+	/**
+	 * @return amount of clients currently connected
+	 */
+	public int getClientCount() {
+		return clients.size();
+	}
+
+	public void registerActionTimeMilis() {
+		if (isoConnection != null) isoConnection.registerActionTimeMilis();
+	}
+
+	public boolean isConnected() {
+		return this.isConnected;
+	}
+
+	public void closeConnection() {
+		try {
+			this.isConnected = false;
+			this.listener.close();
+		}
+		catch (Exception e) {
+			callback.log(e.getMessage());
+		}
+		finally {
+			for (Reactor reactor : reactors)
+				reactor.wakeup();
+		}
+	}
+
+	/**
+	 * Selector thread, serving the reads and writes of its clients.
+	 */
+	private class Reactor extends Thread {
+
+		private final Selector selector;
+		private final Queue<SocketChannel> pendingChannels = new ConcurrentLinkedQueue<SocketChannel>();
+		private final Queue<ChannelClient> pendingWrites = new ConcurrentLinkedQueue<ChannelClient>();
+		private final Queue<ChannelClient> pendingResumes = new ConcurrentLinkedQueue<ChannelClient>();
+		private final ByteBuffer[] gather = new ByteBuffer[MAX_GATHER];
+
+		Reactor(String name) throws IOException {
+			this.selector = Selector.open();
+			setName(name);
+			setDaemon(true);
+		}
+
+		void register(SocketChannel channel) {
+			pendingChannels.add(channel);
+			selector.wakeup();
+		}
+
+		void requestWrite(ChannelClient client) {
+			pendingWrites.add(client);
+			selector.wakeup();
+		}
+
+		void requestResume(ChannelClient client) {
+			pendingResumes.add(client);
+			selector.wakeup();
+		}
+
+		void wakeup() {
+			selector.wakeup();
+		}
+
+		public void run() {
+			try {
+				while (isConnected && !isInterrupted()) {
+					selector.select();
+
+					SocketChannel channel;
+					while ((channel = pendingChannels.poll()) != null)
+						accept(channel);
+
+					ChannelClient client;
+					while ((client = pendingWrites.poll()) != null) {
+						if (client.key.isValid())
+							client.flush();
+					}
+
+					while ((client = pendingResumes.poll()) != null) {
+						if (client.key.isValid())
+							client.resume();
+					}
+
+					final Iterator<SelectionKey> keys = selector.selectedKeys().iterator();
+					while (keys.hasNext()) {
+						final SelectionKey key = keys.next();
+						keys.remove();
+
+						client = (ChannelClient) key.attachment();
+						if (key.isValid() && key.isReadable())
+							client.read();
+						if (key.isValid() && key.isWritable())
+							client.flush();
+					}
+				}
+			}
+			catch (IOException x) {
+				if (isConnected) callback.log(x.getMessage());
+			}
+			finally {
+				for (SelectionKey key : selector.keys())
+					((ChannelClient) key.attachment()).close(new ConnectionException("The server was closed."));
+				try {
+					selector.close();
+				}
+				catch (IOException x) {
+					callback.log(x.getMessage());
+				}
+			}
+		}
+
+		private void accept(SocketChannel channel) {
+			try {
+				final ChannelClient client = new ChannelClient(this, channel);
+				client.key = channel.register(selector, SelectionKey.OP_READ, client);
+				clients.put(channel, client);
+				callback.log("Client connected " + client.name);
+			}
+			catch (ClosedChannelException x) {
+				callback.log(x.getMessage());
+			}
+		}
+	}
+
+	/**
+	 * State of a single client: its channel, the bytes not framed yet and the data waiting to be written.
+	 */
+	private class ChannelClient {
+
+		private final Reactor reactor;
+		private final SocketChannel channel;
+		private final String name;
+		private final FrameDecoder decoder;
+		private final BlockingQueue<ByteBuffer> writes = new ArrayBlockingQueue<ByteBuffer>(payloadQueue.getCapacity());
+
+		private final Runnable resumer = new Runnable() {
+			public void run() {
+				reactor.requestResume(ChannelClient.this);
+			}
+		};
+
+		private SelectionKey key;
+		private ByteBuffer buffer = ByteBuffer.allocate(BUFFER_SIZE);
+		//Frame the queue had no room for, the client is not read while there is one
+		private SocketPayload pending;
+
+		ChannelClient(Reactor reactor, SocketChannel channel) {
+			this.reactor = reactor;
+			this.channel = channel;
+			this.name = channel.socket().getInetAddress().getHostAddress() + ":" + channel.socket().getPort();
+			this.decoder = isoConfig.getDelimiter().newFrameDecoder(isoConfig);
+		}
+
+		void read() {
+			try {
+				if (channel.read(buffer) == -1) {
+					close(new ConnectionException("The client " + name + " closed the connection."));
+					return;
+				}
+			}
+			catch (IOException x) {
+				callback.log(x.getMessage());
+				close(new ConnectionException("Impossible to read from the client " + name + " (" + x.getMessage() + "), disconnected."));
+				return;
+			}
+
+			deliver();
+		}
+
+		/**
+		 * Retries the frame the queue had no room for, reading the client again case it is taken.
+		 */
+		void resume() {
+			if (pending == null)
+				return;
+
+			deliver();
+			if (pending == null)
+				key.interestOps(key.interestOps() | SelectionKey.OP_READ);
+		}
+
+		/**
+		 * Hands the buffered frames to the queue, until it is full.
+		 */
+		private void deliver() {
+			if (pending != null) {
+				if (!payloadQueue.offerPayloadIn(pending, resumer))
+					return;
+				pending = null;
+			}
+
+			buffer.flip();
+			try {
+				ByteBuffer frame;
+				while ((frame = decoder.decode(buffer)) != null) {
+					byte[] data = new byte[frame.remaining()];
+					frame.get(data);
+
+					callback.log("Bytes received ("+ name +"): " + data.length);
+					registerActionTimeMilis();
+					final SocketPayload payload = new SocketPayload(data, channel.socket());
+					if (!payloadQueue.offerPayloadIn(payload, resumer)) {
+						pending = payload;
+						break;
+					}
+				}
+				buffer.compact();
+			}
+			catch (InvalidPayloadException e) {
+				callback.log("Invalid Payload ("+ e.getMessage() +")");
+				decoder.reset();
+				buffer.clear();
+			}
+
+			if (pending != null) {
+				//Read again when the queue has room, see resume()
+				key.interestOps(key.interestOps() & ~SelectionKey.OP_READ);
+				return;
+			}
+
+			//Messages bigger than the buffer
+			if (decoder.getBytesNeeded() > buffer.remaining()) {
+				final ByteBuffer bigger = ByteBuffer.allocate(Math.max(buffer.capacity() * 2, buffer.position() + decoder.getBytesNeeded()));
+				buffer.flip();
+				bigger.put(buffer);
+				buffer = bigger;
+			}
+		}
+
+		/**
+		 * Writes as much as the channel accepts, waiting to be writable again when it is full.
+		 * The queued payloads are written together (gathering write), up to {@value NioISOServer#MAX_GATHER} at a time.
+		 */
+		void flush() {
+			final ByteBuffer[] gather = reactor.gather;
+			try {
+				while (!writes.isEmpty()) {
+					int count = 0;
+					for (Iterator<ByteBuffer> it = writes.iterator(); it.hasNext() && count < gather.length; )
+						gather[count++] = it.next();
+
+					channel.write(gather, 0, count);
+					final boolean full = gather[count - 1].hasRemaining();
+					Arrays.fill(gather, 0, count, null);
+
+					ByteBuffer next;
+					while ((next = writes.peek()) != null && !next.hasRemaining())
+						writes.poll();
+
+					if (full) {
+						key.interestOps(key.interestOps() | SelectionKey.OP_WRITE);
+						return;
+					}
+				}
+				key.interestOps(key.interestOps() & ~SelectionKey.OP_WRITE);
+			}
+			catch (IOException x) {
+				callback.log(x.getMessage());
+				close(new ConnectionException("Impossible to write to the client " + name + " (" + x.getMessage() + "), disconnected."));
+			}
+		}
+
+		/**
+		 * Closes the channel, dropping the queued writes, and fails the requests in flight through it.
+		 * @param cause given to the failed requests
+		 */
+		void close(Throwable cause) {
+			if (clients.remove(channel) == null)
+				return;
+
+			if (key != null)
+				key.cancel();
+			try {
+				channel.close();
+			}
+			catch (IOException x) {
+				callback.log(x.getMessage());
+			}
+			callback.log("Client disconnected " + name);
+			writes.clear();
+			if (isoConnection != null)
+				isoConnection.disconnected(channel.socket(), cause);
+		}
+	}
+}
@@ -1,50 +1,192 @@
 package org.adelbs.iso8583.clientserver;
 
-import java.util.ArrayList;
+import java.util.Queue;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
 
+import org.adelbs.iso8583.constants.WaitStrategyEnum;
+
+/**
+ * Bounded queues of the payloads received (in) and to be sent (out) by a connection. Consumers wait
+ * for the next payload through the {@link WaitStrategyEnum} of the queue, instead of sleeping between checks,
+ * and producers wait the same way when a queue is full (back pressure to the socket). Producers that must not wait
+ * (selector threads) use {@link #offerPayloadIn(SocketPayload, Runnable)} instead.
+ */
 final class PayloadQueue {
 
-	private ArrayList<SocketPayload> payloadIn = new ArrayList<SocketPayload>();
-	private ArrayList<SocketPayload> payloadOut = new ArrayList<SocketPayload>();
+	public static final int DEFAULT_CAPACITY = 1024;
+
+	private static final long PARK_NANOS = TimeUnit.MICROSECONDS.toNanos(50);
+
+	private final BlockingQueue<SocketPayload> payloadIn;
+	private final BlockingQueue<SocketPayload> payloadOut;
+	private final WaitStrategyEnum waitStrategy;
+	private final int capacity;
+	private volatile RequestCorrelator correlator;
+	private volatile InboundDispatcher dispatcher;
+	private final Queue<Runnable> roomListeners = new ConcurrentLinkedQueue<Runnable>();
+
+	public PayloadQueue() {
+		this(DEFAULT_CAPACITY, WaitStrategyEnum.BLOCKING);
+	}
+
+	/**
+	 * @param capacity maximum amount of payloads of each queue (in and out)
+	 */
+	public PayloadQueue(int capacity, WaitStrategyEnum waitStrategy) {
+		this.payloadIn = new ArrayBlockingQueue<SocketPayload>(capacity);
+		this.payloadOut = new ArrayBlockingQueue<SocketPayload>(capacity);
+		this.waitStrategy = waitStrategy;
+		this.capacity = capacity;
+	}
 
 	public boolean hasMorePayloadIn() {
-		return (payloadIn.size() > 0);
+		return !payloadIn.isEmpty();
 	}
 	
 	public boolean hasMorePayloadOut() {
-		return (payloadOut.size() > 0);
+		return !payloadOut.isEmpty();
+	}
+	
+	/**
+	 * Adds a received payload, waiting case the queue is full. Responses to requests in flight
+	 * complete their requests instead (see {@link #setCorrelator(RequestCorrelator)}), and when there is
+	 * a dispatcher the payload goes to its workers.
+	 */
+	public void addPayloadIn(SocketPayload payload) throws InterruptedException {
+		final RequestCorrelator correlator = this.correlator;
+		if (correlator != null && correlator.complete(payload.getData()))
+			return;
+
+		final InboundDispatcher dispatcher = this.dispatcher;
+		if (dispatcher != null)
+			dispatcher.dispatch(payload);
+		else
+			put(payloadIn, payload);
 	}
 	
-	public void addPayloadIn(SocketPayload payload) {
-		addOrRemoveItem(payloadIn, payload);
+	/**
+	 * Adds a received payload without waiting, like {@link #addPayloadIn(SocketPayload)}.
+	 * 
+	 * @param roomListener called (once, by a consumer) when there is room again, case the queue is full.
+	 * It may also be called when the payload was added, so it must check whether there is anything to retry
+	 * @return false case the queue (or the worker of the dispatcher) is full
+	 */
+	public boolean offerPayloadIn(SocketPayload payload, Runnable roomListener) {
+		final RequestCorrelator correlator = this.correlator;
+		if (correlator != null && correlator.complete(payload.getData()))
+			return true;
+
+		if (offer(payload))
+			return true;
+
+		//Registered before trying again, so a consumer that takes meanwhile won't miss it
+		roomListeners.add(roomListener);
+		return offer(payload);
 	}
 	
-	public void addPayloadOut(SocketPayload payload) {
-		addOrRemoveItem(payloadOut, payload);
+	/**
+	 * Adds a payload to be sent, waiting case the queue is full.
+	 */
+	public void addPayloadOut(SocketPayload payload) throws InterruptedException {
+		put(payloadOut, payload);
 	}
 	
+	/**
+	 * @return the next received payload, or null case there is none
+	 */
 	public SocketPayload getNextPayloadIn() {
-		return getNext(payloadIn);
+		return taken(payloadIn.poll());
 	}
 	
+	/**
+	 * @return the next payload to be sent, or null case there is none
+	 */
 	public SocketPayload getNextPayloadOut() {
-		return getNext(payloadOut);
+		return payloadOut.poll();
 	}
 	
-	private SocketPayload getNext(ArrayList<SocketPayload> list) {
-		synchronized(this) {
-			SocketPayload result = list.get(0);
-			addOrRemoveItem(list, null);
-			return result;
-		}
+	/**
+	 * @return the next received payload, or null case none arrives within the timeout
+	 */
+	public SocketPayload waitNextPayloadIn(long timeoutMillis) throws InterruptedException {
+		return taken(poll(payloadIn, timeoutMillis));
+	}
+	
+	/**
+	 * @return the next payload to be sent, or null case none arrives within the timeout
+	 */
+	public SocketPayload waitNextPayloadOut(long timeoutMillis) throws InterruptedException {
+		return poll(payloadOut, timeoutMillis);
+	}
+
+	public int getCapacity() {
+		return capacity;
+	}
+
+	public WaitStrategyEnum getWaitStrategy() {
+		return waitStrategy;
+	}
+
+	public void setCorrelator(RequestCorrelator correlator) {
+		this.correlator = correlator;
+	}
+
+	public void setDispatcher(InboundDispatcher dispatcher) {
+		this.dispatcher = dispatcher;
+		if (dispatcher != null)
+			dispatcher.setTakeListener(this::notifyRoomIn);
+	}
+	
+	/**
+	 * Calls the listeners waiting for room at the queue of received payloads, see {@link #offerPayloadIn(SocketPayload, Runnable)}.
+	 */
+	void notifyRoomIn() {
+		Runnable listener;
+		while ((listener = roomListeners.poll()) != null)
+			listener.run();
+	}
+	
+	private SocketPayload taken(SocketPayload payload) {
+		if (payload != null && !roomListeners.isEmpty())
+			notifyRoomIn();
+		return payload;
 	}
 	
-	private void addOrRemoveItem(ArrayList<SocketPayload> list, SocketPayload item) {
-		synchronized(this) {
-			if (item == null)
-				list.remove(0);
-			else
-				list.add(item);
+	private boolean offer(SocketPayload payload) {
+		final InboundDispatcher dispatcher = this.dispatcher;
+		return (dispatcher != null) ? dispatcher.offer(payload) : payloadIn.offer(payload);
+	}
+	
+	private void put(BlockingQueue<SocketPayload> queue, SocketPayload payload) throws InterruptedException {
+		if (waitStrategy == WaitStrategyEnum.BLOCKING) {
+			queue.put(payload);
+			return;
 		}
+
+		while (!queue.offer(payload))
+			idle();
+	}
+
+	private SocketPayload poll(BlockingQueue<SocketPayload> queue, long timeoutMillis) throws InterruptedException {
+		if (waitStrategy == WaitStrategyEnum.BLOCKING)
+			return queue.poll(timeoutMillis, TimeUnit.MILLISECONDS);
+
+		final long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(timeoutMillis);
+		SocketPayload result;
+		while ((result = queue.poll()) == null && System.nanoTime() - deadline < 0)
+			idle();
+		return result;
+	}
+
+	private void idle() throws InterruptedException {
+		if (waitStrategy == WaitStrategyEnum.PARKING)
+			LockSupport.parkNanos(PARK_NANOS);
+
+		if (Thread.interrupted())
+			throw new InterruptedException();
 	}
 }
@@ -0,0 +1,190 @@
+package org.adelbs.iso8583.clientserver;
+
+import java.net.Socket;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.adelbs.iso8583.exception.ParseException;
+import org.adelbs.iso8583.helper.Iso8583RuntimeConfig;
+import org.adelbs.iso8583.protocol.ISOMessage;
+import org.adelbs.iso8583.protocol.ISOMessageView;
+import org.adelbs.iso8583.protocol.MessagePlan;
+import org.adelbs.iso8583.util.HashedTimerWheel;
+
+/**
+ * Matches the received messages to the requests in flight of a connection, so many requests can be sent
+ * without waiting for the previous responses (pipelining).
+ *
+ * The key of a message is its MTI without the response bit and the origin (0200, 0210 and 0201 share the key 020),
+ * followed by the values of the key bits (by default STAN, RRN and terminal id). Each request has a timeout,
+ * after which its future completes with a {@link TimeoutException}.
+ *
+ * The futures are completed by a small pool of threads, so the callbacks of the callers never run at the threads
+ * that read the sockets, nor at the thread of the timer. Those callbacks should still be short, or run at an executor of their own.
+ */
+final class RequestCorrelator {
+
+	public static final int[] DEFAULT_KEY_BITS = {11, 37, 41};
+
+	private static final HashedTimerWheel TIMER = new HashedTimerWheel("RequestTimeouts", 10, TimeUnit.MILLISECONDS, 512);
+	private static final Executor COMPLETER = Executors.newFixedThreadPool(Math.max(2, Runtime.getRuntime().availableProcessors()), new ThreadFactory() {
+		private final AtomicInteger count = new AtomicInteger();
+		public Thread newThread(Runnable task) {
+			final Thread thread = new Thread(task, "RequestCompleter-" + count.incrementAndGet());
+			thread.setDaemon(true);
+			return thread;
+		}
+	});
+
+	private final Iso8583RuntimeConfig runtimeConfig;
+	private final int[] keyBits;
+	private final ConcurrentMap<String, Pending> pending = new ConcurrentHashMap<String, Pending>();
+
+	RequestCorrelator(Iso8583RuntimeConfig runtimeConfig, int[] keyBits) {
+		this.runtimeConfig = runtimeConfig;
+		this.keyBits = keyBits.clone();
+	}
+
+	/**
+	 * Registers the request, before it is sent.
+	 *
+	 * @param socket where the request is sent, see {@link #failAll(Socket, Throwable)}
+	 * @return future of the response, completed by {@link #complete(byte[])} or failed by the timeout
+	 * @throws ParseException case the message type is not configured, or there is a request in flight with the same key
+	 */
+	CompletableFuture<ISOMessage> register(ISOMessage request, Socket socket, long timeoutMillis) throws ParseException {
+		final String key = keyOf(request.getPayload());
+		if (key == null)
+			throw new ParseException("The message type of the request is not configured.");
+
+		final Pending future = new Pending(socket);
+		final Pending previous = pending.putIfAbsent(key, future);
+		//A request that just ended may still be at the map for a moment
+		if (previous != null && !(previous.isDone() && pending.replace(key, previous, future)))
+			throw new ParseException("There is already a request in flight with the key " + key + ".");
+
+		final HashedTimerWheel.Timeout timeout = TIMER.schedule(new Runnable() {
+			public void run() {
+				//Not at the thread of the timer, which must only hand the expired timeouts over
+				COMPLETER.execute(new Runnable() {
+					public void run() {
+						future.completeExceptionally(new TimeoutException("No response within " + timeoutMillis + " ms (" + key + ")"));
+					}
+				});
+			}
+		}, timeoutMillis, TimeUnit.MILLISECONDS);
+
+		//However it ends (response, timeout, failure or cancel), the request leaves the map
+		future.whenComplete((response, failure) -> {
+			timeout.cancel();
+			pending.remove(key, future);
+		});
+		return future;
+	}
+
+	/**
+	 * Completes (asynchronously) the request the message answers. Only the key of the message is read here,
+	 * the message is parsed by the thread that completes the future.
+	 *
+	 * @param payload the received message, without the delimiter
+	 * @return false case the message does not answer any request in flight
+	 */
+	boolean complete(byte[] payload) {
+		if (pending.isEmpty())
+			return false;
+
+		try {
+			final MessagePlan plan = runtimeConfig.findPlan(payload, 0);
+			if (plan == null)
+				return false;
+
+			final String key = keyOf(new ISOMessageView(payload, plan));
+			final Pending future = pending.remove(key);
+			if (future == null || future.isDone())
+				return false;
+
+			COMPLETER.execute(new Runnable() {
+				public void run() {
+					try {
+						future.complete(new ISOMessage(payload, plan));
+					}
+					catch (ParseException | RuntimeException x) {
+						future.completeExceptionally(x);
+					}
+				}
+			});
+			return true;
+		}
+		catch (ParseException x) {
+			return false;
+		}
+	}
+
+	/**
+	 * Fails all the requests in flight.
+	 */
+	void failAll(Throwable cause) {
+		for (Pending future : pending.values())
+			future.completeExceptionally(cause);
+	}
+
+	/**
+	 * Fails the requests in flight sent through the socket, e.g. when it is closed.
+	 */
+	void failAll(Socket socket, Throwable cause) {
+		for (Pending future : pending.values()) {
+			if (future.socket == socket)
+				future.completeExceptionally(cause);
+		}
+	}
+
+	/**
+	 * @return amount of requests waiting for a response
+	 */
+	int getPendingCount() {
+		return pending.size();
+	}
+
+	private String keyOf(byte[] payload) throws ParseException {
+		final MessagePlan plan = runtimeConfig.findPlan(payload, 0);
+		return (plan != null) ? keyOf(new ISOMessageView(payload, plan)) : null;
+	}
+
+	private String keyOf(ISOMessageView message) {
+		final CharSequence type = message.getType();
+		final StringBuilder key = new StringBuilder(64);
+		if (type.length() >= 3) {
+			//Message class and function, without the response bit (0 and 1 requests and responses, 2 and 3 advices)
+			key.append(type.charAt(0)).append(type.charAt(1)).append((char) (((type.charAt(2) - '0') & ~1) + '0'));
+		}
+		else {
+			key.append(type);
+		}
+
+		for (int bit : keyBits) {
+			key.append('|');
+			if (message.isPresent(bit))
+				key.append(message.getValue(bit));
+		}
+		return key.toString();
+	}
+
+	/**
+	 * Future of a request in flight, along with the socket it was sent through.
+	 */
+	private static final class Pending extends CompletableFuture<ISOMessage> {
+
+		private final Socket socket;
+
+		Pending(Socket socket) {
+			this.socket = socket;
+		}
+	}
+}
@@ -1,16 +1,28 @@
 package org.adelbs.iso8583.clientserver;
 
 import java.net.Socket;
+import java.util.concurrent.CompletableFuture;
+
+import org.adelbs.iso8583.protocol.ISOMessage;
 
 public class SocketPayload {
 
 	private byte[] data;
 	private Socket socket;
+	private CompletableFuture<ISOMessage> response;
 	
 	public SocketPayload(byte[] data, Socket socket) {
 		this.data = data;
 		this.socket = socket;
 	}
+	
+	/**
+	 * @param response future of the response of the request, failed case the payload can't be sent
+	 */
+	SocketPayload(byte[] data, Socket socket, CompletableFuture<ISOMessage> response) {
+		this(data, socket);
+		this.response = response;
+	}
 
 	public byte[] getData() {
 		return data;
@@ -19,4 +31,8 @@ public class SocketPayload {
 	public Socket getSocket() {
 		return socket;
 	}
+
+	CompletableFuture<ISOMessage> getResponse() {
+		return response;
+	}
 }
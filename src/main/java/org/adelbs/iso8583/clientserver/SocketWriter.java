@@ -0,0 +1,107 @@
+package org.adelbs.iso8583.clientserver;
+
+import java.io.BufferedOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.Socket;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+
+import org.adelbs.iso8583.exception.ConnectionException;
+
+/**
+ * Outbound queue and writer thread of a single blocking socket, so a slow client only delays its own payloads.
+ *
+ * The payloads queued while a write is in progress are written together through a buffer (a single write to the
+ * socket when they fit), and the socket is flushed only once the queue is empty. Case a write fails the socket is closed
+ * and the {@link DisconnectListener} is told, so the requests in flight (the queued ones included) fail at once.
+ */
+final class SocketWriter implements Runnable {
+
+	private static final int BUFFER_SIZE = 8192;
+	private static final int WAIT_TIME = 50;
+
+	private final Socket socket;
+	private final OutputStream output;
+	private final BlockingQueue<byte[]> queue;
+	private final CallbackAction callback;
+	private final DisconnectListener disconnectListener;
+	private final ConcurrentMap<Socket, SocketWriter> writers;
+
+	private volatile boolean running = true;
+
+	/**
+	 * @param writers writers of the connection, the writer removes itself once closed
+	 */
+	SocketWriter(Socket socket, int capacity, CallbackAction callback, DisconnectListener disconnectListener, ConcurrentMap<Socket, SocketWriter> writers) throws IOException {
+		this.socket = socket;
+		this.output = new BufferedOutputStream(socket.getOutputStream(), BUFFER_SIZE);
+		this.queue = new ArrayBlockingQueue<byte[]>(capacity);
+		this.callback = callback;
+		this.disconnectListener = disconnectListener;
+		this.writers = writers;
+
+		ConnectionThreads.start("Writer-"+ socket.getInetAddress().getHostAddress() + "-" + socket.getPort(), this);
+	}
+
+	/**
+	 * Queues the data, without waiting.
+	 *
+	 * @return false case the writer is closed or its queue is full
+	 */
+	boolean send(byte[] data) {
+		return running && queue.offer(data);
+	}
+
+	boolean isClosed() {
+		return !running;
+	}
+
+	void close() {
+		running = false;
+	}
+
+	public void run() {
+		try {
+			while (running) {
+				byte[] data = queue.poll(WAIT_TIME, TimeUnit.MILLISECONDS);
+				if (data == null)
+					continue;
+
+				do {
+					output.write(data);
+				} while ((data = queue.poll()) != null);
+				output.flush();
+			}
+		}
+		catch (IOException x) {
+			if (running) {
+				callback.log("Client disconnected... " + x.getMessage());
+				disconnect(x);
+			}
+		}
+		catch (InterruptedException x) {
+			Thread.currentThread().interrupt();
+		}
+		finally {
+			running = false;
+			queue.clear();
+			writers.remove(socket, this);
+		}
+	}
+
+	/**
+	 * Closes the socket, so no other writer is started for it, and fails its requests in flight.
+	 */
+	private void disconnect(IOException cause) {
+		try {
+			socket.close();
+		}
+		catch (IOException x) {
+			callback.log(x.getMessage());
+		}
+		disconnectListener.disconnected(socket, new ConnectionException("Impossible to write to the socket (" + cause.getMessage() + "), disconnected."));
+	}
+}
@@ -3,26 +3,39 @@ package org.adelbs.iso8583.constants;
 import org.adelbs.iso8583.protocol.ISO8583Delimiter;
 import org.adelbs.iso8583.protocol.ISO8583GenericConfigDelimiter;
 import org.adelbs.iso8583.protocol.ISO8583Length2DelimiterBeginning;
+import org.adelbs.iso8583.protocol.ISO8583LengthPrefixDelimiter;
 
 public enum DelimiterEnum {
 
-	LENGTH2_DELIMITER_BEG("LENGTH2_DELIMITER_BEG", new ISO8583Length2DelimiterBeginning()),
-	GENERIC_CONFIG_DELIMITER("GENERIC_CONFIG_DELIMITER", new ISO8583GenericConfigDelimiter());
+	LENGTH2_DELIMITER_BEG("LENGTH2_DELIMITER_BEG", new ISO8583Length2DelimiterBeginning(), LengthPrefixEnum.BINARY2_BE),
+	GENERIC_CONFIG_DELIMITER("GENERIC_CONFIG_DELIMITER", new ISO8583GenericConfigDelimiter(), null),
+	LENGTH2_LE_DELIMITER_BEG("LENGTH2_LE_DELIMITER_BEG", LengthPrefixEnum.BINARY2_LE),
+	LENGTH4_DELIMITER_BEG("LENGTH4_DELIMITER_BEG", LengthPrefixEnum.BINARY4_BE),
+	LENGTH4_LE_DELIMITER_BEG("LENGTH4_LE_DELIMITER_BEG", LengthPrefixEnum.BINARY4_LE),
+	ASCII4_DELIMITER_BEG("ASCII4_DELIMITER_BEG", LengthPrefixEnum.ASCII4),
+	EBCDIC4_DELIMITER_BEG("EBCDIC4_DELIMITER_BEG", LengthPrefixEnum.EBCDIC4),
+	BCD2_DELIMITER_BEG("BCD2_DELIMITER_BEG", LengthPrefixEnum.BCD2),
+	RDW_DELIMITER_BEG("RDW_DELIMITER_BEG", LengthPrefixEnum.RDW);
 	
 	private ISO8583Delimiter isoDelimiter;
+	private ISO8583Delimiter inclusiveDelimiter;
 	private String value;
 	
-	DelimiterEnum(String value, ISO8583Delimiter isoDelimiter) {
+	DelimiterEnum(String value, ISO8583Delimiter isoDelimiter, LengthPrefixEnum lengthPrefix) {
 		this.value = value;
 		this.isoDelimiter = isoDelimiter;
+		this.inclusiveDelimiter = (lengthPrefix == null) ? isoDelimiter : new ISO8583LengthPrefixDelimiter(lengthPrefix, true);
+	}
+	
+	DelimiterEnum(String value, LengthPrefixEnum lengthPrefix) {
+		this(value, new ISO8583LengthPrefixDelimiter(lengthPrefix, false), lengthPrefix);
 	}
 	
 	public static DelimiterEnum getDelimiter(String value) {
-		
-		if ("LENGTH2_DELIMITER_BEG".equals(value))
-			return DelimiterEnum.LENGTH2_DELIMITER_BEG;
-		else if ("GENERIC_CONFIG_DELIMITER".equals(value))
-			return DelimiterEnum.GENERIC_CONFIG_DELIMITER;
+		for (DelimiterEnum delimiter : values()) {
+			if (delimiter.value.equals(value))
+				return delimiter;
+		}
 		
 		return DelimiterEnum.LENGTH2_DELIMITER_BEG;
 	}
@@ -35,6 +48,14 @@ public enum DelimiterEnum {
 		return isoDelimiter;
 	}
 	
+	/**
+	 * @param lengthIncludesPrefix true if the length prefix must count its own bytes. Ignored by delimiters without prefix.
+	 * @return the delimiter
+	 */
+	public ISO8583Delimiter getDelimiter(boolean lengthIncludesPrefix) {
+		return lengthIncludesPrefix ? inclusiveDelimiter : isoDelimiter;
+	}
+	
 	public String getValue() {
 		return value;
 	}
@@ -0,0 +1,27 @@
+package org.adelbs.iso8583.constants;
+
+/**
+ * Order in which the workers of a connection deliver the received payloads to the callback.
+ */
+public enum DispatchOrderEnum {
+
+	/**
+	 * The payloads of a socket are delivered one at a time, in the order they arrived. Different sockets go in parallel
+	 */
+	PER_CONNECTION("Per connection (FIFO)"),
+
+	/**
+	 * Any payload may be delivered by any worker, even those of the same socket
+	 */
+	UNORDERED("Unordered");
+
+	private String value;
+
+	DispatchOrderEnum(String value) {
+		this.value = value;
+	}
+
+	public String toString() {
+		return value;
+	}
+}
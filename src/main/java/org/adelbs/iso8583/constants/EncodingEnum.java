@@ -1,9 +1,12 @@
 package org.adelbs.iso8583.constants;
 
+import java.nio.ByteBuffer;
+
 import javax.swing.JComboBox;
 
 import org.adelbs.iso8583.util.Encoding;
 import org.adelbs.iso8583.util.EncodingBASE64;
+import org.adelbs.iso8583.util.EncodingBCD;
 import org.adelbs.iso8583.util.EncodingBINARY;
 import org.adelbs.iso8583.util.EncodingEBCDIC;
 import org.adelbs.iso8583.util.EncodingHEXA;
@@ -20,7 +23,8 @@ public enum EncodingEnum implements Encoding {
 	ISO88591("ISO 8859-1", new EncodingUTF8()), 
 	UTF8("UTF-8", new EncodingUTF8()), 
 	HEXA("HEXA", new EncodingHEXA()),
-	BASE64("BASE64", new EncodingBASE64());
+	BASE64("BASE64", new EncodingBASE64()),
+	BCD("BCD", new EncodingBCD());
 	
 	private String value;
 	private Encoding encodingImpl;
@@ -71,6 +75,7 @@ public enum EncodingEnum implements Encoding {
 		combo.addItem(UTF8);
 		combo.addItem(HEXA);
 		combo.addItem(BASE64);
+		combo.addItem(BCD);
 	}
 
 	@Override
@@ -83,6 +88,16 @@ public enum EncodingEnum implements Encoding {
 		return encodingImpl.convert(strToConvert);
 	}
 
+	@Override
+	public void decode(byte[] source, int offset, int length, StringBuilder target) {
+		encodingImpl.decode(source, offset, length, target);
+	}
+
+	@Override
+	public int encode(CharSequence value, ByteBuffer target) {
+		return encodingImpl.encode(value, target);
+	}
+
 	@Override
 	public String convertBitmap(byte[] binaryBitmap) {
 		return encodingImpl.convertBitmap(binaryBitmap);
@@ -0,0 +1,27 @@
+package org.adelbs.iso8583.constants;
+
+/**
+ * How a server connection handles its clients.
+ */
+public enum IOModeEnum {
+
+	/**
+	 * One thread per client, reading a blocking socket (a virtual thread on Java 21+)
+	 */
+	BLOCKING("Blocking (thread per client)"),
+	
+	/**
+	 * A few selector threads serving all the clients through non-blocking channels
+	 */
+	NIO("Non-blocking (selector)");
+	
+	private String value;
+	
+	IOModeEnum(String value) {
+		this.value = value;
+	}
+	
+	public String toString() {
+		return value;
+	}
+}
@@ -0,0 +1,51 @@
+package org.adelbs.iso8583.constants;
+
+/**
+ * Formats of the length prefix sent before each message, used by the length-prefix delimiters.
+ */
+public enum LengthPrefixEnum {
+
+	BINARY2_BE("2 bytes binary (big endian)", 2, 0xFFFF),
+	BINARY2_LE("2 bytes binary (little endian)", 2, 0xFFFF),
+	BINARY4_BE("4 bytes binary (big endian)", 4, Integer.MAX_VALUE),
+	BINARY4_LE("4 bytes binary (little endian)", 4, Integer.MAX_VALUE),
+	ASCII4("4 ASCII digits", 4, 9999),
+	EBCDIC4("4 EBCDIC digits", 4, 9999),
+	BCD2("4 BCD digits (2 bytes)", 2, 9999),
+	RDW("4 bytes Record Descriptor Word", 4, 0xFFFF);
+
+	private String value;
+	private int size;
+	private int maxLength;
+
+	LengthPrefixEnum(String value, int size, int maxLength) {
+		this.value = value;
+		this.size = size;
+		this.maxLength = maxLength;
+	}
+
+	public String toString() {
+		return value;
+	}
+
+	/**
+	 * @return amount of bytes of the prefix
+	 */
+	public int getSize() {
+		return size;
+	}
+
+	/**
+	 * @return the biggest length the prefix can represent
+	 */
+	public int getMaxLength() {
+		return maxLength;
+	}
+
+	/**
+	 * @return true if the prefix always counts its own bytes (RDW)
+	 */
+	public boolean isAlwaysInclusive() {
+		return this == RDW;
+	}
+}
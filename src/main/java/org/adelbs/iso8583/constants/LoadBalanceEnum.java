@@ -0,0 +1,27 @@
+package org.adelbs.iso8583.constants;
+
+/**
+ * How a connection pool picks the connection of each request.
+ */
+public enum LoadBalanceEnum {
+
+	/**
+	 * The connection with the fewest requests waiting for a response
+	 */
+	LEAST_OUTSTANDING("Least outstanding requests"),
+
+	/**
+	 * Each connection in turn
+	 */
+	ROUND_ROBIN("Round robin");
+
+	private String value;
+
+	LoadBalanceEnum(String value) {
+		this.value = value;
+	}
+
+	public String toString() {
+		return value;
+	}
+}
@@ -2,13 +2,20 @@ package org.adelbs.iso8583.constants;
 
 public enum TypeEnum {
 
-	ALPHANUMERIC, TLV;
+	ALPHANUMERIC, TLV, 
+	
+	/**
+	 * Binary BER-TLV (EMV chip data). The value is kept as hexadecimal digits, and the length counts bytes.
+	 */
+	BERTLV;
 	
 	public static TypeEnum getType(String value) {
 		if ("ALPHANUMERIC".equals(value))
 			return TypeEnum.ALPHANUMERIC;
 		else if ("TLV".equals(value))
 			return TypeEnum.TLV;
+		else if ("BERTLV".equals(value))
+			return TypeEnum.BERTLV;
 
 		return TypeEnum.ALPHANUMERIC;
 	}
@@ -0,0 +1,32 @@
+package org.adelbs.iso8583.constants;
+
+/**
+ * How the threads of a connection wait for its queues (a payload to consume, or room to add one).
+ */
+public enum WaitStrategyEnum {
+
+	/**
+	 * The thread sleeps until it is signaled. Lowest CPU usage
+	 */
+	BLOCKING("Blocking (signaled)"),
+
+	/**
+	 * The thread checks the queue again after parking for a few microseconds
+	 */
+	PARKING("Parking (short park)"),
+
+	/**
+	 * The thread keeps checking the queue, holding a CPU core. Lowest latency
+	 */
+	BUSY_SPIN("Busy spin");
+
+	private String value;
+
+	WaitStrategyEnum(String value) {
+		this.value = value;
+	}
+
+	public String toString() {
+		return value;
+	}
+}
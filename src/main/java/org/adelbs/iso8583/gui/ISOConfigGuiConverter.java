@@ -36,6 +36,15 @@ public class ISOConfigGuiConverter {
 		return isoConfigVO;
 	}
 	
+	/**
+	 * Helper method to revert a single message {@link DefaultMutableTreeNode} into its {@link MessageVO} object
+	 * @param messageNode {@link DefaultMutableTreeNode} structured as a Message
+	 * @return MessageVO object populated with its fields
+	 */
+	public static MessageVO revertMessage(final DefaultMutableTreeNode messageNode){
+		return revertIntoAMessage(messageNode);
+	}
+	
 	/**
 	 * Convert a list of messages nodes into a list of {@link MessageVO}
 	 * @param messageNodes Enumeration of Tree Nodes with Message data
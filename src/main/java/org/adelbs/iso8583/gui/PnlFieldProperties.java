@@ -65,7 +65,7 @@ public class PnlFieldProperties extends JPanel {
 		lblType.setBounds(28, 122, 61, 16);
 		lblType.setHorizontalAlignment(SwingConstants.RIGHT);
 		cmbType.setBounds(101, 121, 116, 22);
-		cmbType.setModel(new DefaultComboBoxModel<TypeEnum>(new TypeEnum[] {TypeEnum.ALPHANUMERIC, TypeEnum.TLV}));
+		cmbType.setModel(new DefaultComboBoxModel<TypeEnum>(new TypeEnum[] {TypeEnum.ALPHANUMERIC, TypeEnum.TLV, TypeEnum.BERTLV}));
 		
 		lblLenght.setBounds(12, 155, 83, 16);
 		lblLenght.setHorizontalAlignment(SwingConstants.RIGHT);
@@ -90,7 +90,7 @@ public class PnlFieldProperties extends JPanel {
 		cmbEncoding.setModel(new DefaultComboBoxModel<EncodingEnum>(new EncodingEnum[] {
 				EncodingEnum.BINARY,
 				EncodingEnum.UTF8, EncodingEnum.EBCDIC, 
-				EncodingEnum.ISO88591, EncodingEnum.BASE64}));
+				EncodingEnum.ISO88591, EncodingEnum.BASE64, EncodingEnum.BCD}));
 		
 		chckbxMandatory.setBounds(179, 88, 113, 25);
 		chckbxMandatory.addActionListener(new ActionListener() {
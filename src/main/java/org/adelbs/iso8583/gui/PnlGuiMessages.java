@@ -9,6 +9,7 @@ import java.io.IOException;
 import java.net.Socket;
 
 import javax.swing.JButton;
+import javax.swing.JComboBox;
 import javax.swing.JLabel;
 import javax.swing.JOptionPane;
 import javax.swing.JPanel;
@@ -20,6 +21,7 @@ import javax.swing.JTextField;
 import org.adelbs.iso8583.clientserver.CallbackAction;
 import org.adelbs.iso8583.clientserver.ISOConnection;
 import org.adelbs.iso8583.clientserver.SocketPayload;
+import org.adelbs.iso8583.constants.IOModeEnum;
 import org.adelbs.iso8583.exception.ConnectionException;
 import org.adelbs.iso8583.exception.ParseException;
 import org.adelbs.iso8583.helper.Iso8583Config;
@@ -37,6 +39,8 @@ public class PnlGuiMessages extends JPanel {
 	private JTextField txtHost = new JTextField("localhost");
 	private JTextField txtPort = new JTextField("9980");
 	private JTextField txtTimeout = new JTextField("520");
+	private JLabel lblIOMode = new JLabel("I/O mode");
+	private JComboBox<IOModeEnum> cmbIOMode = new JComboBox<IOModeEnum>(IOModeEnum.values());
 	private JButton btnConnect;
 	private JButton btnDisconnect;
 	
@@ -82,6 +86,9 @@ public class PnlGuiMessages extends JPanel {
 		txtTimeout.setBounds(348, 69, 50, 22);
 		txtTimeout.setColumns(10);
 		
+		lblIOMode.setBounds(12, 72, 78, 16);
+		cmbIOMode.setBounds(80, 69, 170, 22);
+		
 		pnlConnection.setLayout(null);
 		pnlConnection.add(lblHost);
 		pnlConnection.add(txtHost);
@@ -89,6 +96,10 @@ public class PnlGuiMessages extends JPanel {
 		pnlConnection.add(txtPort);
 		pnlConnection.add(lblTimeout);
 		pnlConnection.add(txtTimeout);
+		if (server) {
+			pnlConnection.add(lblIOMode);
+			pnlConnection.add(cmbIOMode);
+		}
 		pnlConnection.add(btnConnect);
 		pnlConnection.add(btnDisconnect);
 		
@@ -220,6 +231,7 @@ public class PnlGuiMessages extends JPanel {
 		txtHost.setEnabled(true);
 		txtPort.setEnabled(true);
 		txtTimeout.setEnabled(true);
+		cmbIOMode.setEnabled(true);
 		btnConnect.setEnabled(true);
 		btnDisconnect.setEnabled(false);
 		pnlResponse.getBtnNextPayload().setEnabled(false);
@@ -235,7 +247,7 @@ public class PnlGuiMessages extends JPanel {
 			try {
 				callBackServer = new Callback(pnlMain, true);
 				
-				isoConnServer = new ISOConnection(true, txtHost.getText(), Integer.parseInt(txtPort.getText()), Integer.parseInt(txtTimeout.getText()));
+				isoConnServer = new ISOConnection(true, txtHost.getText(), Integer.parseInt(txtPort.getText()), Integer.parseInt(txtTimeout.getText()), (IOModeEnum) cmbIOMode.getSelectedItem());
 				isoConnServer.setIsoConfig(pnlMain.getIso8583Config());
 				isoConnServer.setCallback(callBackServer);
 				isoConnServer.connect();
@@ -291,6 +303,7 @@ public class PnlGuiMessages extends JPanel {
 		txtHost.setEnabled(false);
 		txtPort.setEnabled(false);
 		txtTimeout.setEnabled(false);
+		cmbIOMode.setEnabled(false);
 		btnConnect.setEnabled(false);
 		btnDisconnect.setEnabled(true);
 		pnlResponse.getBtnNextPayload().setEnabled(true);
@@ -362,6 +375,7 @@ public class PnlGuiMessages extends JPanel {
 			txtHost.setEnabled(true);
 			txtPort.setEnabled(true);
 			txtTimeout.setEnabled(true);
+			cmbIOMode.setEnabled(true);
 			btnConnect.setEnabled(true);
 			btnDisconnect.setEnabled(false);
 			pnlResponse.getBtnNextPayload().setEnabled(false);
@@ -4,6 +4,7 @@ import java.awt.event.ActionEvent;
 import java.awt.event.ActionListener;
 
 import javax.swing.DefaultComboBoxModel;
+import javax.swing.JCheckBox;
 import javax.swing.JComboBox;
 import javax.swing.JLabel;
 import javax.swing.JPanel;
@@ -24,6 +25,8 @@ public class PnlISOProperties extends JPanel {
 	private JLabel lblDelimiter = new JLabel("Delimiter");
 	private JComboBox<DelimiterEnum> cmbDelimiter = new JComboBox<DelimiterEnum>();
 
+	private JCheckBox ckLengthIncludesPrefix = new JCheckBox("Length includes prefix");
+
 	private JTextArea txtDesc = new JTextArea();
 	private JScrollPane scrDesc = new JScrollPane();
     
@@ -41,7 +44,7 @@ public class PnlISOProperties extends JPanel {
 		lblDelimiter.setBounds(12, 27, 83, 16);
 		lblDelimiter.setHorizontalAlignment(SwingConstants.RIGHT);
 		
-		cmbDelimiter.setModel(new DefaultComboBoxModel<DelimiterEnum>(new DelimiterEnum[] {DelimiterEnum.LENGTH2_DELIMITER_BEG, DelimiterEnum.GENERIC_CONFIG_DELIMITER}));
+		cmbDelimiter.setModel(new DefaultComboBoxModel<DelimiterEnum>(DelimiterEnum.values()));
 
 		cmbDelimiter.setBounds(101, 24, 300, 22);
 		cmbDelimiter.setSelectedIndex(0);
@@ -53,6 +56,14 @@ public class PnlISOProperties extends JPanel {
 			}
 		});
 
+		ckLengthIncludesPrefix.setBounds(97, 215, 300, 22);
+		ckLengthIncludesPrefix.addActionListener(new ActionListener() {
+			@Override
+			public void actionPerformed(ActionEvent e) {
+				save(isoConfig);
+			}
+		});
+
 		txtDesc.setEditable(false);
 		txtDesc.setLineWrap(true);
 		scrDesc.setViewportView(txtDesc);
@@ -89,16 +100,19 @@ public class PnlISOProperties extends JPanel {
 		add(txtHeaderSize);
 		add(lblHeaderEncoding);
 		add(cmbHeaderEncoding);
+		add(ckLengthIncludesPrefix);
 	}
 	
 	public void save(Iso8583Config isoConfig) {
         isoConfig.setDelimiterEnum((DelimiterEnum) cmbDelimiter.getSelectedItem());
+        isoConfig.setLengthIncludesPrefix(ckLengthIncludesPrefix.isSelected());
         isoConfig.setHeaderEncoding((EncodingEnum) cmbHeaderEncoding.getSelectedItem());
         isoConfig.setHeaderSize(Integer.parseInt(txtHeaderSize.getText()));
 	}
 
 	public void load(Iso8583Config isoConfig) {
         cmbDelimiter.setSelectedItem(isoConfig.getDelimiterEnum());
+        ckLengthIncludesPrefix.setSelected(isoConfig.isLengthIncludesPrefix());
         cmbHeaderEncoding.setSelectedItem(isoConfig.getHeaderEncoding());
         txtHeaderSize.setText(String.valueOf(isoConfig.getHeaderSize()));
 	}
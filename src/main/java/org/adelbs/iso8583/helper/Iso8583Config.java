@@ -7,7 +7,6 @@ import java.io.File;
 import java.io.FileReader;
 import java.io.FileWriter;
 import java.util.Enumeration;
-import java.util.List;
 
 import javax.swing.JOptionPane;
 import javax.swing.tree.DefaultMutableTreeNode;
@@ -21,6 +20,8 @@ import org.adelbs.iso8583.exception.OutOfBoundsException;
 import org.adelbs.iso8583.gui.ISOConfigGuiConverter;
 import org.adelbs.iso8583.gui.PnlMain;
 import org.adelbs.iso8583.gui.xmlEditor.XmlTextPane;
+import org.adelbs.iso8583.helper.condition.ConditionCompiler;
+import org.adelbs.iso8583.helper.condition.DynamicCondition;
 import org.adelbs.iso8583.protocol.ISO8583Delimiter;
 import org.adelbs.iso8583.util.ISOUtils;
 import org.adelbs.iso8583.vo.FieldVO;
@@ -34,7 +35,6 @@ import org.w3c.dom.Document;
 import org.w3c.dom.Node;
 import org.w3c.dom.NodeList;
 
-import groovy.util.Eval;
 
 public class Iso8583Config {
 	
@@ -43,8 +43,13 @@ public class Iso8583Config {
 	private XmlTextPane xmlText = new XmlTextPane();
 	
     private DelimiterEnum isoDelimiter;
+    private boolean lengthIncludesPrefix;
+    private int maxFrameSize = Iso8583RuntimeConfig.DEFAULT_MAX_FRAME_SIZE;
     private EncodingEnum headerEncoding;
     private Integer headerSize;
+    
+    //Snapshot used at runtime, rebuilt after the configuration changes
+    private volatile Iso8583RuntimeConfig runtimeConfig;
 	
 	//Arquivo de configuracao carregado
 	private String xmlFilePath = null;
@@ -71,6 +76,7 @@ public class Iso8583Config {
 	}
 	
 	public DefaultMutableTreeNode addType() {
+		runtimeConfig = null;
 		MessageVO parseVO = new MessageVO("0000", EncodingEnum.UTF8);
 		DefaultMutableTreeNode newNode = new DefaultMutableTreeNode(parseVO);
 		configTreeNode.add(newNode);
@@ -81,6 +87,7 @@ public class Iso8583Config {
 		DefaultMutableTreeNode newNode = null;
 		
 		if (isAMessageNode(node) || isAFieldNode(node)) {
+			runtimeConfig = null;
 			newNode = new DefaultMutableTreeNode(new FieldVO(pnlMain, "NewField", "", 2, TypeEnum.ALPHANUMERIC, TypeLengthEnum.FIXED, 1, EncodingEnum.UTF8, ""));
 			((DefaultMutableTreeNode) node).add(newNode);
 		}
@@ -132,8 +139,11 @@ public class Iso8583Config {
 	
 	public void parseConfigToXML() throws ISOConfigMarshallerException {
 		final ISOConfigMarshaller xmlParser = ISOConfigMarshaller.creatMarshaller();
+		runtimeConfig = null;
 		final ISOConfigVO isoConfigVO = ISOConfigGuiConverter.revert(configTreeNode);
         isoConfigVO.setDelimiter(isoDelimiter);
+        isoConfigVO.setLengthIncludesPrefix(lengthIncludesPrefix ? Boolean.TRUE : null);
+        isoConfigVO.setMaxFrameSize(maxFrameSize != Iso8583RuntimeConfig.DEFAULT_MAX_FRAME_SIZE ? Integer.valueOf(maxFrameSize) : null);
         isoConfigVO.setHeaderEncoding(headerEncoding);
         isoConfigVO.setHeaderSize(headerSize);
 		xmlText.setText(xmlParser.marshal(isoConfigVO));
@@ -142,6 +152,7 @@ public class Iso8583Config {
 	//TODO: Could be substituted by a ISOConfigMarshaller.unmarshal method
 	public void parseXmlToConfig(PnlMain pnlMain) {
 		try {
+			runtimeConfig = null;
 			if (!xmlText.getText().trim().equals("")) {
 				configTreeNode.removeAllChildren();
 				
@@ -150,6 +161,7 @@ public class Iso8583Config {
 				DefaultMutableTreeNode lastParseNode;
 				
                 setDelimiterEnum(DelimiterEnum.getDelimiter(document.getDocumentElement().getAttribute("delimiter")));
+                setLengthIncludesPrefix(Boolean.parseBoolean(document.getDocumentElement().getAttribute("lengthIncludesPrefix")));
                 setHeaderEncoding(EncodingEnum.getEncoding(document.getDocumentElement().getAttribute("headerEncoding")));
                 
                 try {
@@ -158,6 +170,13 @@ public class Iso8583Config {
                 catch (Exception x) {
                     setHeaderSize(0);
                 }
+                
+                try {
+                    setMaxFrameSize(Integer.parseInt(document.getDocumentElement().getAttribute("maxFrameSize")));
+                }
+                catch (Exception x) {
+                    setMaxFrameSize(Iso8583RuntimeConfig.DEFAULT_MAX_FRAME_SIZE);
+                }
 				
 				NodeList nodeList = document.getDocumentElement().getChildNodes();
 				Node node;
@@ -184,11 +203,11 @@ public class Iso8583Config {
 
 	public MessageVO getMessageVOAtTree(String type) {
 		MessageVO newMessageVO = null;
-		final ISOConfigVO isoConfigVO = ISOConfigGuiConverter.revert(configTreeNode);
-		final List<MessageVO> messages = isoConfigVO.getMessageList();
-		for (MessageVO messageVO : messages) {
-			if (messageVO.getType().equalsIgnoreCase(type)) {
-                newMessageVO = messageVO.getInstanceCopy();
+		for (int i = 0; i < configTreeNode.getChildCount(); i++) {
+			final DefaultMutableTreeNode messageNode = (DefaultMutableTreeNode) configTreeNode.getChildAt(i);
+			if (((MessageVO) messageNode.getUserObject()).getType().equalsIgnoreCase(type)) {
+				//Only the matching message is converted from the tree
+				newMessageVO = ISOConfigGuiConverter.revertMessage(messageNode).getInstanceCopy();
                 
                 newMessageVO.setHeaderEncoding(getHeaderEncoding());
                 newMessageVO.setHeaderSize(getHeaderSize());   
@@ -199,6 +218,33 @@ public class Iso8583Config {
 		return newMessageVO;
 	}
 
+	/**
+	 * Immutable snapshot of this configuration, with the message types already compiled and indexed by their MTI.
+	 * It is built from the tree the first time it is requested, and built again after the tree or the
+	 * properties are changed through this class. Clients, servers and frame decoders must use it instead of the tree.
+	 *
+	 * @return the runtime configuration, shareable across threads
+	 */
+	public Iso8583RuntimeConfig getRuntimeConfig() {
+		Iso8583RuntimeConfig result = runtimeConfig;
+		if (result == null) {
+			synchronized (this) {
+				result = runtimeConfig;
+				if (result == null) {
+					final ISOConfigVO isoConfigVO = ISOConfigGuiConverter.revert(configTreeNode);
+					isoConfigVO.setDelimiter(isoDelimiter);
+					isoConfigVO.setLengthIncludesPrefix(lengthIncludesPrefix);
+					isoConfigVO.setMaxFrameSize(maxFrameSize);
+					isoConfigVO.setHeaderEncoding(headerEncoding);
+					isoConfigVO.setHeaderSize(headerSize);
+					result = Iso8583RuntimeConfig.fromConfigVO(isoConfigVO);
+					runtimeConfig = result;
+				}
+			}
+		}
+		return result;
+	}
+
 	private void addFieldsToTree(PnlMain pnlMain, Node domNode, DefaultMutableTreeNode lastParseUINode) {
 		final NodeList fielNodedList = domNode.getChildNodes();
 		for (int j = 0; j < fielNodedList.getLength(); j++) {
@@ -444,9 +490,11 @@ public class Iso8583Config {
 		String resultMessage = "";
 		
 		try {
-			String condition = "Object[] BIT = new Object[255];\n";
-			condition = condition + fieldVO.getDynaCondition();
-			Eval.me(condition);
+			String condition = fieldVO.getDynaCondition();
+			if (condition == null || condition.trim().length() == 0)
+				return resultMessage;
+			
+			ConditionCompiler.compile(condition).evaluate(new Object[DynamicCondition.BIT_ARRAY_SIZE]);
 			
 			if (condition.indexOf("BIT[" + fieldVO.getBitNum() + "]") > -1)
 				throw new Exception("You cannot look for the same bit value.");
@@ -475,19 +523,43 @@ public class Iso8583Config {
     }
 
 	public void setDelimiterEnum(DelimiterEnum isoDelimiter) {
+		runtimeConfig = null;
 		this.isoDelimiter = isoDelimiter;
 	}
     
     public void setHeaderEncoding(EncodingEnum headerEncoding) {
+        runtimeConfig = null;
         this.headerEncoding = headerEncoding;
     }
 
     public void setHeaderSize(Integer headerSize) {
+        runtimeConfig = null;
         this.headerSize = headerSize;
     }
 
+	public boolean isLengthIncludesPrefix() {
+		return lengthIncludesPrefix;
+	}
+	
+	public void setLengthIncludesPrefix(boolean lengthIncludesPrefix) {
+		runtimeConfig = null;
+		this.lengthIncludesPrefix = lengthIncludesPrefix;
+	}
+
+	public int getMaxFrameSize() {
+		return maxFrameSize;
+	}
+	
+	/**
+	 * @param maxFrameSize largest message accepted from a connection, in bytes
+	 */
+	public void setMaxFrameSize(int maxFrameSize) {
+		runtimeConfig = null;
+		this.maxFrameSize = maxFrameSize;
+	}
+
 	public ISO8583Delimiter getDelimiter() {
-		return isoDelimiter.getDelimiter();
+		return isoDelimiter.getDelimiter(lengthIncludesPrefix);
 	}
 	
 	/**
@@ -496,13 +568,14 @@ public class Iso8583Config {
 	public MessageVO findMessageVOByPayload(byte[] payload) {
 		MessageVO result = null;
 		try {
+            boolean packedHeader = headerEncoding == EncodingEnum.BINARY || headerEncoding == EncodingEnum.BCD;
+            int messageTypeSize = packedHeader ? 2 : 4;
+            int calculatedHeaderSize = packedHeader ? (headerSize / 2) : headerSize;
+            String messageType = headerEncoding.convert(ISOUtils.subArray(payload, calculatedHeaderSize, (calculatedHeaderSize + messageTypeSize)));
+
 			for (int i = 0; i < configTreeNode.getChildCount(); i++) {
                 result = (MessageVO) ((DefaultMutableTreeNode) configTreeNode.getChildAt(i)).getUserObject();
                 
-                int messageTypeSize = (headerEncoding == EncodingEnum.BINARY) ? 2 : 4;
-                int calculatedHeaderSize = (headerEncoding == EncodingEnum.BINARY) ? (headerSize / 2) : headerSize;
-                String messageType = headerEncoding.convert(ISOUtils.subArray(payload, calculatedHeaderSize, (calculatedHeaderSize + messageTypeSize)));
-                
 				if (result.getType().equals(messageType))
 					break;
 				else
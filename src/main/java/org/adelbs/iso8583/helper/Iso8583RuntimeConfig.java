@@ -0,0 +1,288 @@
+package org.adelbs.iso8583.helper;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Set;
+
+import org.adelbs.iso8583.constants.DelimiterEnum;
+import org.adelbs.iso8583.constants.EncodingEnum;
+import org.adelbs.iso8583.constants.TypeEnum;
+import org.adelbs.iso8583.constants.TypeLengthEnum;
+import org.adelbs.iso8583.exception.ParseException;
+import org.adelbs.iso8583.protocol.ISO8583Delimiter;
+import org.adelbs.iso8583.protocol.MessagePlan;
+import org.adelbs.iso8583.util.ISOUtils;
+import org.adelbs.iso8583.vo.FieldVO;
+import org.adelbs.iso8583.vo.ISOConfigVO;
+import org.adelbs.iso8583.vo.MessageVO;
+import org.adelbs.iso8583.xml.XMLUtils;
+import org.w3c.dom.Document;
+import org.w3c.dom.Element;
+import org.w3c.dom.Node;
+import org.w3c.dom.NodeList;
+
+/**
+ * Immutable snapshot of an ISO8583 configuration, to be used at runtime (client, server and frame decoders).
+ *
+ * Unlike {@link Iso8583Config}, it does not depend on any Swing class: it is built straight from the XML
+ * (or from a copy of an {@link ISOConfigVO}), and the message types are compiled once into {@link MessagePlan}s,
+ * indexed by their MTI. Nothing changes after the construction, so a single instance can be shared by all threads.
+ */
+public final class Iso8583RuntimeConfig {
+
+	private static final String XML_MESSAGE_NODENAME = "message";
+	private static final String XML_FIELD_NODENAME = "field";
+
+	/**
+	 * Largest message accepted from a connection when the configuration does not inform it (maxFrameSize).
+	 */
+	public static final int DEFAULT_MAX_FRAME_SIZE = 65536;
+
+	private final DelimiterEnum delimiterEnum;
+	private final boolean lengthIncludesPrefix;
+	private final int maxFrameSize;
+	private final EncodingEnum headerEncoding;
+	private final int headerSize;
+	private final int headerByteLength;
+	private final int typeByteLength;
+
+	private final Map<String, MessagePlan> plans;
+	private final Map<String, MessageVO> messages;
+
+	private Iso8583RuntimeConfig(final ISOConfigVO isoConfigVO) {
+		this.delimiterEnum = isoConfigVO.getDelimiter() == null ? DelimiterEnum.getDelimiter("") : isoConfigVO.getDelimiter();
+		this.lengthIncludesPrefix = Boolean.TRUE.equals(isoConfigVO.getLengthIncludesPrefix());
+		this.maxFrameSize = isoConfigVO.getMaxFrameSize() == null ? DEFAULT_MAX_FRAME_SIZE : isoConfigVO.getMaxFrameSize().intValue();
+		this.headerEncoding = isoConfigVO.getHeaderEncoding() == null ? EncodingEnum.UTF8 : isoConfigVO.getHeaderEncoding();
+		this.headerSize = isoConfigVO.getHeaderSize() == null ? 0 : isoConfigVO.getHeaderSize().intValue();
+		final boolean packedHeader = headerEncoding == EncodingEnum.BINARY || headerEncoding == EncodingEnum.BCD;
+		this.headerByteLength = packedHeader ? headerSize / 2 : headerSize;
+		this.typeByteLength = packedHeader ? 2 : 4;
+
+		final Map<String, MessagePlan> plans = new HashMap<String, MessagePlan>();
+		final Map<String, MessageVO> messages = new HashMap<String, MessageVO>();
+
+		//When the same type is configured more than once, the first one wins (as it happens at the tree)
+		for (MessageVO messageVO : isoConfigVO.getMessageList()) {
+			if (messageVO.getType() == null || messages.containsKey(messageVO.getType()))
+				continue;
+
+			final MessageVO template = messageVO.getInstanceCopy();
+			template.setHeader(null);
+			template.setHeaderEncoding(headerEncoding);
+			template.setHeaderSize(headerSize);
+
+			messages.put(template.getType(), template);
+			plans.put(template.getType(), MessagePlan.compile(template));
+		}
+
+		this.plans = Collections.unmodifiableMap(plans);
+		this.messages = Collections.unmodifiableMap(messages);
+	}
+
+	/**
+	 * Builds the runtime configuration from a copy of the messages of the {@link ISOConfigVO}.
+	 * Later changes to the VO are not seen by the new instance.
+	 *
+	 * @param isoConfigVO configuration to be copied
+	 * @return the runtime configuration
+	 */
+	public static Iso8583RuntimeConfig fromConfigVO(final ISOConfigVO isoConfigVO) {
+		return new Iso8583RuntimeConfig(isoConfigVO);
+	}
+
+	/**
+	 * Builds the runtime configuration from the XML, following the same rules of {@link Iso8583Config#parseXmlToConfig}.
+	 *
+	 * @param xml content of the configuration file
+	 * @return the runtime configuration
+	 * @throws ParseException case the XML is invalid
+	 */
+	public static Iso8583RuntimeConfig fromXml(final String xml) throws ParseException {
+		final Document document;
+		try {
+			document = XMLUtils.convertXMLToDOM(xml);
+		}
+		catch (Exception x) {
+			throw new ParseException("Invalid XML!\n" + x.getMessage());
+		}
+
+		final Element root = document.getDocumentElement();
+		final ISOConfigVO isoConfigVO = new ISOConfigVO(DelimiterEnum.getDelimiter(root.getAttribute("delimiter")));
+		isoConfigVO.setLengthIncludesPrefix(Boolean.valueOf(root.getAttribute("lengthIncludesPrefix")));
+		isoConfigVO.setHeaderEncoding(EncodingEnum.getEncoding(root.getAttribute("headerEncoding")));
+		try {
+			isoConfigVO.setHeaderSize(Integer.valueOf(root.getAttribute("headerSize")));
+		}
+		catch (NumberFormatException x) {
+			isoConfigVO.setHeaderSize(0);
+		}
+		try {
+			isoConfigVO.setMaxFrameSize(Integer.valueOf(root.getAttribute("maxFrameSize")));
+		}
+		catch (NumberFormatException x) {
+			isoConfigVO.setMaxFrameSize(null);
+		}
+
+		try {
+			final NodeList nodeList = root.getChildNodes();
+			for (int i = 0; i < nodeList.getLength(); i++) {
+				final Node node = nodeList.item(i);
+				if (XML_MESSAGE_NODENAME.equalsIgnoreCase(node.getNodeName())) {
+					final MessageVO messageVO = new MessageVO(ISOUtils.getAttr(node, "type", "0000"), EncodingEnum.getEncoding(ISOUtils.getAttr(node, "bitmap-encoding", "")));
+					messageVO.setFieldList(readFields(node, null));
+					isoConfigVO.addMessage(messageVO);
+				}
+			}
+		}
+		catch (NumberFormatException x) {
+			throw new ParseException("Invalid XML!\n" + x.getMessage());
+		}
+
+		return new Iso8583RuntimeConfig(isoConfigVO);
+	}
+
+	/**
+	 * @param filePath path of the configuration file
+	 * @return the runtime configuration
+	 * @throws ParseException case the file could not be read or the XML is invalid
+	 */
+	public static Iso8583RuntimeConfig fromFile(final String filePath) throws ParseException {
+		try {
+			return fromXml(new String(Files.readAllBytes(Paths.get(filePath)), StandardCharsets.UTF_8));
+		}
+		catch (IOException x) {
+			throw new ParseException("Unable to read the file " + filePath + "\n" + x.getMessage());
+		}
+	}
+
+	private static ArrayList<FieldVO> readFields(final Node parentNode, final FieldVO parentField) {
+		final ArrayList<FieldVO> fieldList = new ArrayList<FieldVO>();
+		final NodeList nodeList = parentNode.getChildNodes();
+
+		for (int i = 0; i < nodeList.getLength(); i++) {
+			final Node node = nodeList.item(i);
+			if (!XML_FIELD_NODENAME.equalsIgnoreCase(node.getNodeName()))
+				continue;
+
+			final FieldVO fieldVO = new FieldVO(null, ISOUtils.getAttr(node, "name", ""), (parentField != null) ? ISOUtils.getAttr(node, "name", "") : null,
+					Integer.valueOf(ISOUtils.getAttr(node, "bitnum", "0")),
+					TypeEnum.getType(ISOUtils.getAttr(node, "type", "")),
+					TypeLengthEnum.getTypeLength(ISOUtils.getAttr(node, "length-type", "")),
+					Integer.valueOf(ISOUtils.getAttr(node, "length", "0")),
+					EncodingEnum.getEncoding(ISOUtils.getAttr(node, "encoding", "")),
+					ISOUtils.getAttr(node, "condition", ""));
+
+			//Same as the tree: sub-fields are named after their parent and its length is the sum of them
+			if (node.getChildNodes().getLength() > 1) {
+				fieldVO.setFieldList(readFields(node, fieldVO));
+
+				int sum = 0;
+				for (int count = 0; count < fieldVO.getFieldList().size(); count++) {
+					fieldVO.getFieldList().get(count).setName(fieldVO.getName() + (count + 1));
+					sum += fieldVO.getFieldList().get(count).getLength();
+				}
+				if (!fieldVO.getFieldList().isEmpty())
+					fieldVO.setLength(sum);
+			}
+
+			fieldList.add(fieldVO);
+		}
+
+		return fieldList;
+	}
+
+	/**
+	 * @param type message type (MTI)
+	 * @return the compiled plan of the message type, or null case it is not configured
+	 */
+	public MessagePlan getPlan(final String type) {
+		return plans.get(type);
+	}
+
+	/**
+	 * Reads the message type from the payload and returns its plan.
+	 *
+	 * @param payload buffer holding the message, without the delimiter
+	 * @param offset position of the first byte of the message (its header)
+	 * @return the compiled plan, or null case the payload is too short or the type is not configured
+	 */
+	public MessagePlan findPlan(final byte[] payload, final int offset) {
+		final String type = readType(payload, offset);
+		return (type != null) ? plans.get(type) : null;
+	}
+
+	/**
+	 * @return the message type (MTI) at the payload, or null case the payload is too short
+	 */
+	public String readType(final byte[] payload, final int offset) {
+		final int typeStart = offset + headerByteLength;
+		if (payload == null || typeStart + typeByteLength > payload.length)
+			return null;
+		return headerEncoding.convert(Arrays.copyOfRange(payload, typeStart, typeStart + typeByteLength));
+	}
+
+	/**
+	 * @param type message type (MTI)
+	 * @return a new copy of the configured message, with the header attributes, or null case the type is not configured
+	 */
+	public MessageVO newMessageVO(final String type) {
+		final MessageVO messageVO = messages.get(type);
+		return (messageVO != null) ? messageVO.getInstanceCopy() : null;
+	}
+
+	/**
+	 * @return the configured message types (MTIs)
+	 */
+	public Set<String> getTypes() {
+		return messages.keySet();
+	}
+
+	public DelimiterEnum getDelimiterEnum() {
+		return delimiterEnum;
+	}
+
+	public boolean isLengthIncludesPrefix() {
+		return lengthIncludesPrefix;
+	}
+
+	public ISO8583Delimiter getDelimiter() {
+		return delimiterEnum.getDelimiter(lengthIncludesPrefix);
+	}
+
+	/**
+	 * @return the largest message accepted from a connection, in bytes (the frame decoders reject bigger ones)
+	 */
+	public int getMaxFrameSize() {
+		return maxFrameSize;
+	}
+
+	public EncodingEnum getHeaderEncoding() {
+		return headerEncoding;
+	}
+
+	public int getHeaderSize() {
+		return headerSize;
+	}
+
+	/**
+	 * @return amount of bytes of the header at the payload
+	 */
+	public int getHeaderByteLength() {
+		return headerByteLength;
+	}
+
+	/**
+	 * @return amount of bytes of the message type (MTI) at the payload
+	 */
+	public int getTypeByteLength() {
+		return typeByteLength;
+	}
+}
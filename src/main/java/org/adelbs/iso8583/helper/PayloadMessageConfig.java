@@ -24,6 +24,7 @@ import org.adelbs.iso8583.helper.listoperations.FieldListMerge;
 import org.adelbs.iso8583.helper.listoperations.StructurePriorityMerge;
 import org.adelbs.iso8583.helper.listoperations.ValuePriorityMerge;
 import org.adelbs.iso8583.protocol.ISOMessage;
+import org.adelbs.iso8583.protocol.MessagePlan;
 import org.adelbs.iso8583.util.ISOUtils;
 import org.adelbs.iso8583.vo.FieldVO;
 import org.adelbs.iso8583.vo.ISOTestVO;
@@ -304,12 +305,12 @@ public class PayloadMessageConfig {
 	}
 	
 	public void updateFromMessageVO() throws ParseException {
-		isoMessage = new ISOMessage(messageVO);
+		isoMessage = new ISOMessage(messageVO, planOf(messageVO));
 	}
 	
 	public void updateFromPayload(PnlMain pnlMain, byte[] bytes) throws ParseException {
 		try {
-			isoMessage = new ISOMessage(bytes, messageVO);
+			isoMessage = new ISOMessage(bytes, planOf(messageVO));
 			setMessageVO(isoMessage.getMessageVO());
 		}
 		catch (ParseException x) {
@@ -321,6 +322,14 @@ public class PayloadMessageConfig {
 		}
 	}
 	
+	/**
+	 * Compiled plan of the message type, from the runtime configuration (rebuilt whenever the configuration changes).
+	 */
+	private MessagePlan planOf(MessageVO messageVO) {
+		final MessagePlan plan = isoConfig.getRuntimeConfig().getPlan(messageVO.getType());
+		return (plan != null) ? plan : MessagePlan.of(messageVO);
+	}
+	
 	public ISOMessage getIsoMessage() {
 		return isoMessage;
 	}
@@ -399,7 +408,7 @@ public class PayloadMessageConfig {
 			lblType.setBounds(470, 10 + (lineNum * 25), 100, 22);
 			lblDynamic.setBounds(600, 10 + (lineNum * 25), 50, 22);
 			
-			if (fieldVO.getType() == TypeEnum.ALPHANUMERIC) {
+			if (fieldVO.getType() != TypeEnum.TLV) {
 				txtValue.setBounds(190, 10 + (lineNum * 25), 260, 22);
 			}
 			else if (fieldVO.getType() == TypeEnum.TLV) {
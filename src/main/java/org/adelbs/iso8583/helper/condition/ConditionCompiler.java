@@ -0,0 +1,48 @@
+package org.adelbs.iso8583.helper.condition;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * Compiles the dynamic conditions of the fields. Each distinct expression is compiled only once and
+ * the result is shared by every field (and every thread) using it.
+ *
+ * Expressions built with the operators of the GUI are compiled natively (see {@link ExpressionParser}).
+ * Only other scripts are compiled with Groovy, whose runtime is loaded the first time it is needed.
+ */
+public final class ConditionCompiler {
+
+	private static final ConcurrentMap<String, DynamicCondition> CACHE = new ConcurrentHashMap<String, DynamicCondition>();
+
+	private ConditionCompiler() {
+	}
+
+	/**
+	 * @param expression condition of the field
+	 * @return the compiled condition
+	 * @throws IllegalArgumentException case the expression can't be compiled
+	 */
+	public static DynamicCondition compile(final String expression) {
+		final DynamicCondition condition = CACHE.get(expression);
+		if (condition != null)
+			return condition;
+
+		DynamicCondition newCondition;
+		try {
+			newCondition = ExpressionParser.parse(expression);
+		}
+		catch (IllegalArgumentException x) {
+			newCondition = GroovyCondition.compile(expression);
+		}
+		
+		final DynamicCondition previous = CACHE.putIfAbsent(expression, newCondition);
+		return (previous == null) ? newCondition : previous;
+	}
+
+	/**
+	 * Removes every compiled condition.
+	 */
+	public static void clear() {
+		CACHE.clear();
+	}
+}
@@ -0,0 +1,25 @@
+package org.adelbs.iso8583.helper.condition;
+
+/**
+ * Compiled dynamic condition of a field. The condition decides if a present field is part of the message,
+ * based on the values of the fields parsed before it.
+ *
+ * Implementations are thread safe; compiled conditions are obtained from {@link ConditionCompiler}.
+ */
+@FunctionalInterface
+public interface DynamicCondition {
+
+	/**
+	 * Size of the BIT array seen by the conditions.
+	 */
+	int BIT_ARRAY_SIZE = 255;
+
+	/**
+	 * @param bits values of the fields already parsed, indexed by bit number (see {@link #BIT_ARRAY_SIZE}).
+	 * Bits not present are null.
+	 * @return true if the field must be kept, false case it must be ignored
+	 * @throws IllegalArgumentException case the expression doesn't generate a boolean result
+	 */
+	boolean evaluate(Object[] bits);
+
+}
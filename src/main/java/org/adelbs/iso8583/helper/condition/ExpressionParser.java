@@ -0,0 +1,234 @@
+package org.adelbs.iso8583.helper.condition;
+
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.adelbs.iso8583.constants.OperatorEnum;
+
+/**
+ * Parser of the conditions built with the operators of {@link OperatorEnum}, the same ones offered by the GUI:
+ * <pre>
+ * or         := and ( '||' and )*
+ * and        := comparison ( '&amp;&amp;' comparison )*
+ * comparison := sum ( ( '==' | '!=' | '&gt;' | '&lt;' ) sum )?
+ * sum        := unary ( ( '+' | '-' ) unary )*
+ * unary      := '-' unary | primary
+ * primary    := BIT[n] | 'text' | "text" | number | true | false | null | '(' or ')'
+ * </pre>
+ * Expressions outside this grammar are rejected with an {@link IllegalArgumentException}.
+ */
+final class ExpressionParser {
+
+	private static final String BIT_PREFIX = "BIT[";
+
+	private final String expression;
+	private final List<Object> tokens = new ArrayList<Object>();
+	private int index = 0;
+
+	private ExpressionParser(final String expression) {
+		this.expression = expression;
+	}
+
+	/**
+	 * @param expression the condition
+	 * @return the compiled condition
+	 * @throws IllegalArgumentException case the expression is outside the grammar
+	 */
+	static NativeCondition parse(final String expression) {
+		final ExpressionParser parser = new ExpressionParser(expression);
+		parser.tokenize();
+
+		final Operand root = parser.parseOr();
+		if (parser.index < parser.tokens.size())
+			throw parser.error("Unexpected token " + parser.tokens.get(parser.index));
+
+		return new NativeCondition(expression, root);
+	}
+
+	//********** tokens: OperatorEnum, BitReference, String, Long, BigDecimal, Boolean and NULL
+
+	private static final Object NULL = new Object();
+
+	private static final class BitReference {
+		private final int bitNum;
+
+		private BitReference(final int bitNum) {
+			this.bitNum = bitNum;
+		}
+	}
+
+	private void tokenize() {
+		int position = 0;
+		while (position < expression.length()) {
+			final char current = expression.charAt(position);
+
+			if (Character.isWhitespace(current)) {
+				position++;
+			}
+			else if (current == '\'' || current == '"') {
+				final int end = expression.indexOf(current, position + 1);
+				if (end < 0)
+					throw error("Unterminated string");
+				final String value = expression.substring(position + 1, end);
+				if (value.indexOf('\\') > -1 || (current == '"' && value.indexOf('$') > -1))
+					throw error("Escapes and interpolation are not supported");
+				tokens.add(value);
+				position = end + 1;
+			}
+			else if (current >= '0' && current <= '9') {
+				int end = position;
+				while (end < expression.length() && (Character.isDigit(expression.charAt(end)) || expression.charAt(end) == '.'))
+					end++;
+				final String number = expression.substring(position, end);
+				if (number.length() > 1 && number.charAt(0) == '0' && number.charAt(1) != '.')
+					throw error("Octal numbers are not supported");
+				tokens.add(number.indexOf('.') > -1 ? (Object) new BigDecimal(number) : (Object) Long.valueOf(number));
+				position = end;
+			}
+			else if (expression.startsWith(BIT_PREFIX, position)) {
+				final int end = expression.indexOf(']', position);
+				if (end < 0)
+					throw error("Unterminated bit reference");
+				final int bitNum = Integer.parseInt(expression.substring(position + BIT_PREFIX.length(), end).trim());
+				if (bitNum < 0 || bitNum >= DynamicCondition.BIT_ARRAY_SIZE)
+					throw error("Invalid bit " + bitNum);
+				tokens.add(new BitReference(bitNum));
+				position = end + 1;
+			}
+			else if (Character.isLetter(current)) {
+				int end = position;
+				while (end < expression.length() && Character.isLetterOrDigit(expression.charAt(end)))
+					end++;
+				tokens.add(keyword(expression.substring(position, end)));
+				position = end;
+			}
+			else {
+				final OperatorEnum operator = operatorAt(position);
+				tokens.add(operator);
+				position += operator.toString().length();
+			}
+		}
+	}
+
+	private Object keyword(final String word) {
+		if ("true".equals(word))
+			return Boolean.TRUE;
+		if ("false".equals(word))
+			return Boolean.FALSE;
+		if ("null".equals(word))
+			return NULL;
+		throw error("Unknown identifier " + word);
+	}
+
+	private OperatorEnum operatorAt(final int position) {
+		for (OperatorEnum operator : OperatorEnum.values()) {
+			if (expression.startsWith(operator.toString(), position)) {
+				//Single char operators must not be the beginning of '>=', '<<', '++', '+=', ...
+				final int end = position + operator.toString().length();
+				final boolean extended = end < expression.length() && isArithmeticOrRelational(operator)
+						&& ("=<>".indexOf(expression.charAt(end)) > -1 || expression.charAt(end) == expression.charAt(position));
+				if (extended)
+					break;
+				return operator;
+			}
+		}
+		throw error("Unsupported operator at position " + position);
+	}
+
+	private static boolean isArithmeticOrRelational(final OperatorEnum operator) {
+		return operator == OperatorEnum.GRATER_THAN || operator == OperatorEnum.SMALLER_THAN
+				|| operator == OperatorEnum.PLUS || operator == OperatorEnum.MINUS;
+	}
+
+	//********** recursive descent
+
+	private Operand parseOr() {
+		Operand result = parseAnd();
+		while (accept(OperatorEnum.OR)) {
+			final Operand left = result;
+			final Operand right = parseAnd();
+			result = bits -> Boolean.valueOf(NativeCondition.isTrue(left.value(bits)) || NativeCondition.isTrue(right.value(bits)));
+		}
+		return result;
+	}
+
+	private Operand parseAnd() {
+		Operand result = parseComparison();
+		while (accept(OperatorEnum.AND)) {
+			final Operand left = result;
+			final Operand right = parseComparison();
+			result = bits -> Boolean.valueOf(NativeCondition.isTrue(left.value(bits)) && NativeCondition.isTrue(right.value(bits)));
+		}
+		return result;
+	}
+
+	private Operand parseComparison() {
+		final Operand left = parseSum();
+		final Object next = peek();
+		if (next == OperatorEnum.EQUAL || next == OperatorEnum.DIFFERENT || next == OperatorEnum.GRATER_THAN || next == OperatorEnum.SMALLER_THAN) {
+			index++;
+			return binary((OperatorEnum) next, left, parseSum());
+		}
+		return left;
+	}
+
+	private Operand parseSum() {
+		Operand result = parseUnary();
+		while (peek() == OperatorEnum.PLUS || peek() == OperatorEnum.MINUS) {
+			final OperatorEnum operator = (OperatorEnum) tokens.get(index++);
+			result = binary(operator, result, parseUnary());
+		}
+		return result;
+	}
+
+	private Operand parseUnary() {
+		if (accept(OperatorEnum.MINUS)) {
+			final Operand operand = parseUnary();
+			return bits -> NativeCondition.negate(operand.value(bits));
+		}
+		return parsePrimary();
+	}
+
+	private Operand parsePrimary() {
+		if (index >= tokens.size())
+			throw error("Unexpected end of the expression");
+
+		final Object token = tokens.get(index++);
+		if (token == OperatorEnum.OPEN_PAR) {
+			final Operand result = parseOr();
+			if (!accept(OperatorEnum.CLOSE_PAR))
+				throw error("Missing ')'");
+			return result;
+		}
+		if (token instanceof OperatorEnum)
+			throw error("Unexpected operator " + token);
+		if (token instanceof BitReference) {
+			final int bitNum = ((BitReference) token).bitNum;
+			return bits -> bits[bitNum];
+		}
+
+		final Object constant = (token == NULL) ? null : token;
+		return bits -> constant;
+	}
+
+	private static Operand binary(final OperatorEnum operator, final Operand left, final Operand right) {
+		return bits -> NativeCondition.apply(operator, left.value(bits), right.value(bits));
+	}
+
+	private Object peek() {
+		return (index < tokens.size()) ? tokens.get(index) : null;
+	}
+
+	private boolean accept(final OperatorEnum operator) {
+		if (peek() == operator) {
+			index++;
+			return true;
+		}
+		return false;
+	}
+
+	private IllegalArgumentException error(final String message) {
+		return new IllegalArgumentException(message + " at the condition: " + expression);
+	}
+}
@@ -0,0 +1,71 @@
+package org.adelbs.iso8583.helper.condition;
+
+import org.codehaus.groovy.control.CompilationFailedException;
+import org.codehaus.groovy.runtime.InvokerHelper;
+
+import groovy.lang.Binding;
+import groovy.lang.GroovyClassLoader;
+import groovy.lang.Script;
+
+/**
+ * Condition written in Groovy. The script is compiled once; each thread runs its own instance of the script,
+ * reusing the same binding, where the variable <i>BIT</i> holds the values of the parsed fields.
+ */
+public class GroovyCondition implements DynamicCondition {
+
+	public static final String BIT_VARIABLE = "BIT";
+
+	private static final class ClassLoaderHolder {
+		private static final GroovyClassLoader CLASS_LOADER = new GroovyClassLoader(GroovyCondition.class.getClassLoader());
+	}
+
+	private final String expression;
+	private final ThreadLocal<Script> scripts;
+
+	GroovyCondition(final String expression, final Class<? extends Script> scriptClass) {
+		this.expression = expression;
+		this.scripts = ThreadLocal.withInitial(() -> InvokerHelper.createScript(scriptClass, new Binding()));
+	}
+
+	/**
+	 * @param expression Groovy script
+	 * @return the compiled condition
+	 * @throws IllegalArgumentException case the script can't be compiled
+	 */
+	@SuppressWarnings("unchecked")
+	static GroovyCondition compile(final String expression) {
+		try {
+			final Class<?> scriptClass;
+			synchronized (ClassLoaderHolder.CLASS_LOADER) {
+				scriptClass = ClassLoaderHolder.CLASS_LOADER.parseClass(expression);
+			}
+			return new GroovyCondition(expression, (Class<? extends Script>) scriptClass);
+		}
+		catch (CompilationFailedException x) {
+			throw new IllegalArgumentException("Invalid condition: " + x.getMessage(), x);
+		}
+	}
+
+	@Override
+	public boolean evaluate(final Object[] bits) {
+		final Script script = scripts.get();
+		final Object result;
+		
+		script.getBinding().setVariable(BIT_VARIABLE, bits);
+		try {
+			result = script.run();
+		}
+		finally {
+			script.getBinding().setVariable(BIT_VARIABLE, null);
+		}
+		
+		if (!(result instanceof Boolean))
+			throw new IllegalArgumentException("The expression do not generates a boolean result");
+		
+		return ((Boolean) result).booleanValue();
+	}
+
+	public String getExpression() {
+		return expression;
+	}
+}
@@ -0,0 +1,139 @@
+package org.adelbs.iso8583.helper.condition;
+
+import java.math.BigDecimal;
+
+import org.adelbs.iso8583.constants.OperatorEnum;
+
+/**
+ * Condition compiled into a tree of Java operands by {@link ExpressionParser}. The operators follow the
+ * semantics of Groovy, so an expression has the same result with or without the Groovy runtime.
+ */
+public class NativeCondition implements DynamicCondition {
+
+	private final String expression;
+	private final Operand root;
+
+	NativeCondition(final String expression, final Operand root) {
+		this.expression = expression;
+		this.root = root;
+	}
+
+	@Override
+	public boolean evaluate(final Object[] bits) {
+		final Object result = root.value(bits);
+		if (!(result instanceof Boolean))
+			throw new IllegalArgumentException("The expression do not generates a boolean result");
+		return ((Boolean) result).booleanValue();
+	}
+
+	public String getExpression() {
+		return expression;
+	}
+
+	//********** operators
+
+	static Object apply(final OperatorEnum operator, final Object left, final Object right) {
+		switch (operator) {
+			case EQUAL:
+				return Boolean.valueOf(isEqual(left, right));
+			case DIFFERENT:
+				return Boolean.valueOf(!isEqual(left, right));
+			case GRATER_THAN:
+				return Boolean.valueOf(compare(left, right) > 0);
+			case SMALLER_THAN:
+				return Boolean.valueOf(compare(left, right) < 0);
+			case PLUS:
+				return plus(left, right);
+			case MINUS:
+				return minus(left, right);
+			default:
+				throw new IllegalArgumentException("Invalid binary operator: " + operator);
+		}
+	}
+
+	/**
+	 * Groovy truth: null, false, empty strings and zero are false.
+	 */
+	static boolean isTrue(final Object value) {
+		if (value == null)
+			return false;
+		if (value instanceof Boolean)
+			return ((Boolean) value).booleanValue();
+		if (value instanceof String)
+			return ((String) value).length() > 0;
+		if (value instanceof Long)
+			return ((Long) value).longValue() != 0;
+		if (value instanceof BigDecimal)
+			return ((BigDecimal) value).signum() != 0;
+		return true;
+	}
+
+	static Object negate(final Object value) {
+		if (value instanceof Long)
+			return Long.valueOf(-((Long) value).longValue());
+		if (value instanceof BigDecimal)
+			return ((BigDecimal) value).negate();
+		throw new IllegalArgumentException("Cannot negate the value: " + value);
+	}
+
+	private static boolean isEqual(final Object left, final Object right) {
+		if (left == null || right == null)
+			return left == right;
+		if (isNumber(left) && isNumber(right))
+			return compareNumbers(left, right) == 0;
+		return left.equals(right);
+	}
+
+	private static int compare(final Object left, final Object right) {
+		if (left == null || right == null)
+			return (left == right) ? 0 : (left == null ? -1 : 1);
+		if (isNumber(left) && isNumber(right))
+			return compareNumbers(left, right);
+		if (left instanceof String && right instanceof String)
+			return ((String) left).compareTo((String) right);
+		if (left instanceof Boolean && right instanceof Boolean)
+			return ((Boolean) left).compareTo((Boolean) right);
+		throw new IllegalArgumentException("Cannot compare " + left + " with " + right);
+	}
+
+	private static Object plus(final Object left, final Object right) {
+		if (left instanceof String)
+			return ((String) left).concat(String.valueOf(right));
+		if (isNumber(left) && right instanceof String)
+			return String.valueOf(left).concat((String) right);
+		if (left instanceof Long && right instanceof Long)
+			return Long.valueOf(((Long) left).longValue() + ((Long) right).longValue());
+		if (isNumber(left) && isNumber(right))
+			return toBigDecimal(left).add(toBigDecimal(right));
+		throw new IllegalArgumentException("Cannot add " + right + " to " + left);
+	}
+
+	private static Object minus(final Object left, final Object right) {
+		if (left instanceof String) {
+			//Removes the first occurrence, as Groovy does
+			final String value = (String) left;
+			final String removed = String.valueOf(right);
+			final int index = value.indexOf(removed);
+			return (index < 0) ? value : value.substring(0, index).concat(value.substring(index + removed.length()));
+		}
+		if (left instanceof Long && right instanceof Long)
+			return Long.valueOf(((Long) left).longValue() - ((Long) right).longValue());
+		if (isNumber(left) && isNumber(right))
+			return toBigDecimal(left).subtract(toBigDecimal(right));
+		throw new IllegalArgumentException("Cannot subtract " + right + " from " + left);
+	}
+
+	private static boolean isNumber(final Object value) {
+		return value instanceof Long || value instanceof BigDecimal;
+	}
+
+	private static int compareNumbers(final Object left, final Object right) {
+		if (left instanceof Long && right instanceof Long)
+			return Long.compare(((Long) left).longValue(), ((Long) right).longValue());
+		return toBigDecimal(left).compareTo(toBigDecimal(right));
+	}
+
+	private static BigDecimal toBigDecimal(final Object value) {
+		return (value instanceof BigDecimal) ? (BigDecimal) value : BigDecimal.valueOf(((Long) value).longValue());
+	}
+}
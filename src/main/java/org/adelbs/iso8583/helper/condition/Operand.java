@@ -0,0 +1,15 @@
+package org.adelbs.iso8583.helper.condition;
+
+/**
+ * Node of a natively compiled condition (see {@link ExpressionParser}).
+ */
+@FunctionalInterface
+interface Operand {
+
+	/**
+	 * @param bits values of the fields already parsed, indexed by bit number
+	 * @return the value of this node: String, Long, BigDecimal, Boolean or null
+	 */
+	Object value(Object[] bits);
+
+}
@@ -0,0 +1,254 @@
+package org.adelbs.iso8583.payload;
+
+import java.util.Arrays;
+
+import org.adelbs.iso8583.exception.OutOfBoundsException;
+import org.adelbs.iso8583.util.HexCodec;
+
+/**
+ * Index of the BER-TLV elements (EMV chip data, e.g. field 55) of a range of bytes.
+ *
+ * The range is walked once, and each element is kept as its tag plus the offset and length of its value over
+ * the original array (nothing is copied). Tags of up to 4 bytes are handled as ints (0x9F26, 0x95), and looked up
+ * in constant time through an open addressing table. Constructed elements (templates such as 70 or 77) are indexed
+ * along with their children. When a tag shows up more than once, lookups find the first one.
+ *
+ * Padding bytes (0x00 and 0xFF) between elements are skipped, as allowed by EMV. Instances are immutable, as long as
+ * the array is not changed.
+ */
+public final class BerTlvIndex {
+
+	private static final int CONSTRUCTED = 0x20;
+	private static final int MAX_TAG_BYTES = 4;
+
+	private final byte[] source;
+
+	//Elements in the order of the payload
+	private final int[] tags;
+	private final int[] valueOffsets;
+	private final int[] valueLengths;
+	private final int size;
+
+	//Open addressing table of element positions (plus 1, 0 meaning an empty slot)
+	private final int[] table;
+
+	private BerTlvIndex(final byte[] source, final int[] tags, final int[] valueOffsets, final int[] valueLengths, final int size) {
+		this.source = source;
+		this.tags = tags;
+		this.valueOffsets = valueOffsets;
+		this.valueLengths = valueLengths;
+		this.size = size;
+
+		int capacity = 8;
+		while (capacity < size * 2)
+			capacity <<= 1;
+		this.table = new int[capacity];
+
+		for (int i = 0; i < size; i++) {
+			int slot = slot(tags[i]);
+			while (table[slot] != 0 && tags[table[slot] - 1] != tags[i])
+				slot = (slot + 1) & (table.length - 1);
+			if (table[slot] == 0)
+				table[slot] = i + 1;
+		}
+	}
+
+	/**
+	 * Indexes all the elements of the range (constructed ones included, along with their children).
+	 *
+	 * @param source payload holding the elements
+	 * @param offset position of the first element
+	 * @param length amount of bytes of the elements
+	 * @return the index over the source
+	 * @throws OutOfBoundsException case an element goes beyond the range
+	 * @throws IllegalArgumentException case a tag or a length is not valid BER
+	 */
+	public static BerTlvIndex parse(final byte[] source, final int offset, final int length) throws OutOfBoundsException {
+		if (offset < 0 || length < 0 || offset + length > source.length)
+			throw new OutOfBoundsException();
+
+		final Builder builder = new Builder();
+		builder.parse(source, offset, offset + length, 0);
+		return new BerTlvIndex(source, builder.tags, builder.valueOffsets, builder.valueLengths, builder.size);
+	}
+
+	/**
+	 * @return the index of all the bytes of the array
+	 */
+	public static BerTlvIndex parse(final byte[] source) throws OutOfBoundsException {
+		return parse(source, 0, source.length);
+	}
+
+	/**
+	 * @param tag the tag as an int, e.g. 0x9F26
+	 * @return position of the first element with the tag, or -1 case there is none
+	 */
+	public int find(final int tag) {
+		int slot = slot(tag);
+		while (table[slot] != 0) {
+			if (tags[table[slot] - 1] == tag)
+				return table[slot] - 1;
+			slot = (slot + 1) & (table.length - 1);
+		}
+		return -1;
+	}
+
+	public boolean contains(final int tag) {
+		return find(tag) >= 0;
+	}
+
+	/**
+	 * @return position of the value of the tag at the source, or -1 case the tag is not present
+	 */
+	public int getValueOffset(final int tag) {
+		final int index = find(tag);
+		return (index >= 0) ? valueOffsets[index] : -1;
+	}
+
+	/**
+	 * @return amount of bytes of the value of the tag, or -1 case the tag is not present
+	 */
+	public int getValueLength(final int tag) {
+		final int index = find(tag);
+		return (index >= 0) ? valueLengths[index] : -1;
+	}
+
+	/**
+	 * @return a copy of the value of the tag, or null case the tag is not present
+	 */
+	public byte[] getValue(final int tag) {
+		final int index = find(tag);
+		return (index >= 0) ? Arrays.copyOfRange(source, valueOffsets[index], valueOffsets[index] + valueLengths[index]) : null;
+	}
+
+	/**
+	 * @return the value of the tag as hexadecimal digits, or null case the tag is not present
+	 */
+	public String getHexValue(final int tag) {
+		final int index = find(tag);
+		return (index >= 0) ? HexCodec.toHex(source, valueOffsets[index], valueLengths[index]) : null;
+	}
+
+	/**
+	 * @return amount of elements indexed
+	 */
+	public int size() {
+		return size;
+	}
+
+	/**
+	 * @param index position of the element, from 0 to {@link #size()} - 1, in the order of the payload
+	 */
+	public int getTag(final int index) {
+		checkIndex(index);
+		return tags[index];
+	}
+
+	public int getValueOffsetAt(final int index) {
+		checkIndex(index);
+		return valueOffsets[index];
+	}
+
+	public int getValueLengthAt(final int index) {
+		checkIndex(index);
+		return valueLengths[index];
+	}
+
+	/**
+	 * @return true case the tag is constructed (its value holds other elements)
+	 */
+	public static boolean isConstructed(final int tag) {
+		int firstByte = tag;
+		while ((firstByte & ~0xFF) != 0)
+			firstByte >>>= 8;
+		return (firstByte & CONSTRUCTED) != 0;
+	}
+
+	/**
+	 * @return the source array the offsets refer to
+	 */
+	public byte[] getSource() {
+		return source;
+	}
+
+	private void checkIndex(final int index) {
+		if (index < 0 || index >= size)
+			throw new IndexOutOfBoundsException("index: " + index + ", size: " + size);
+	}
+
+	private int slot(final int tag) {
+		final int hash = tag * 0x9E3779B9;
+		return (hash ^ (hash >>> 16)) & (table.length - 1);
+	}
+
+	private static final class Builder {
+
+		private int[] tags = new int[16];
+		private int[] valueOffsets = new int[16];
+		private int[] valueLengths = new int[16];
+		private int size;
+
+		private void parse(final byte[] source, final int start, final int end, final int depth) throws OutOfBoundsException {
+			int position = start;
+			while (position < end) {
+				final int firstByte = source[position] & 0xFF;
+				if (firstByte == 0x00 || firstByte == 0xFF) {
+					position++;
+					continue;
+				}
+
+				//Tag: when the low 5 bits are all set, the next bytes follow while their high bit is set
+				int tag = firstByte;
+				position++;
+				if ((firstByte & 0x1F) == 0x1F) {
+					int tagBytes = 1;
+					int next;
+					do {
+						if (position >= end)
+							throw new OutOfBoundsException();
+						if (++tagBytes > MAX_TAG_BYTES)
+							throw new IllegalArgumentException("BER-TLV tag longer than " + MAX_TAG_BYTES + " bytes");
+						next = source[position++] & 0xFF;
+						tag = (tag << 8) | next;
+					} while ((next & 0x80) != 0);
+				}
+
+				//Length: short form up to 127, long form with up to 3 more bytes
+				if (position >= end)
+					throw new OutOfBoundsException();
+				int length = source[position++] & 0xFF;
+				if ((length & 0x80) != 0) {
+					final int lengthBytes = length & 0x7F;
+					if (lengthBytes == 0 || lengthBytes > 3)
+						throw new IllegalArgumentException("Invalid BER-TLV length of the tag " + Integer.toHexString(tag).toUpperCase());
+					if (position + lengthBytes > end)
+						throw new OutOfBoundsException();
+
+					length = 0;
+					for (int i = 0; i < lengthBytes; i++)
+						length = (length << 8) | (source[position++] & 0xFF);
+				}
+				if (position + length > end)
+					throw new OutOfBoundsException();
+
+				add(tag, position, length);
+				if ((firstByte & CONSTRUCTED) != 0 && depth < TLVReader.MAX_DEPTH)
+					parse(source, position, position + length, depth + 1);
+
+				position += length;
+			}
+		}
+
+		private void add(final int tag, final int valueOffset, final int valueLength) {
+			if (size == tags.length) {
+				tags = Arrays.copyOf(tags, size * 2);
+				valueOffsets = Arrays.copyOf(valueOffsets, size * 2);
+				valueLengths = Arrays.copyOf(valueLengths, size * 2);
+			}
+			tags[size] = tag;
+			valueOffsets[size] = valueOffset;
+			valueLengths[size] = valueLength;
+			size++;
+		}
+	}
+}
@@ -1,68 +1,62 @@
 package org.adelbs.iso8583.payload;
 
-import java.util.HashMap;
+import java.nio.ByteBuffer;
+import java.util.EnumMap;
 import java.util.Map;
 
 import org.adelbs.iso8583.constants.EncodingEnum;
 import org.adelbs.iso8583.constants.TypeEnum;
 import org.adelbs.iso8583.exception.OutOfBoundsException;
-import org.adelbs.iso8583.util.Encoding;
 
 /**
- * Factory class to handle instances of {@link Transformator}
+ * Factory class to handle instances of {@link Transformator}, looked up at the {@link TransformatorRegistry}
  */
 public class PayloadTransformator {
 	
-	private final Encoding encoding;
+	private final EncodingEnum encoding;
 	
-	private static Map<String, PayloadTransformator> INSTANCES = new HashMap<String, PayloadTransformator>();
-	private static Map<TypeEnum, Transformator> TRANSFORMATORS = new HashMap<TypeEnum, Transformator>();
+	private static final Map<EncodingEnum, PayloadTransformator> INSTANCES = new EnumMap<EncodingEnum, PayloadTransformator>(EncodingEnum.class);
+	
+	static {
+		for (EncodingEnum encoding : EncodingEnum.values())
+			INSTANCES.put(encoding, new PayloadTransformator(encoding));
+	}
 	
 	/**
-	 * Get a new instance of PayloadTransformator. Utilizes Lazy initialization and its not thread safe
+	 * Get the instance of PayloadTransformator of the encoding. Instances are created eagerly and are thread safe
 	 * @param encoding Which type of enconde this transformator will be specialized
-	 * @return a new instantiated PayloadTransformator
+	 * @return the PayloadTransformator of the encoding
 	 */
 	public static PayloadTransformator getInstance(final EncodingEnum encoding){
-		PayloadTransformator payloadTransformator = INSTANCES.get(encoding.toString());
-		if(payloadTransformator == null){
-			payloadTransformator = new PayloadTransformator(encoding);
-			INSTANCES.put(encoding.toString(), payloadTransformator);
-		}
-		return payloadTransformator;
+		return INSTANCES.get(encoding);
 	}
 
-	private PayloadTransformator(final Encoding encoding) {
+	private PayloadTransformator(final EncodingEnum encoding) {
 		super();
 		this.encoding = encoding;
 	}
 	
 	public byte[] transform(final Object value, final TypeEnum type){
-		Transformator transformator = TRANSFORMATORS.get(type);
-		if(transformator == null){
-			switch (type) {
-				case TLV:
-					transformator = new TLVTransformator(encoding);
-					break;
-				default:
-					throw new UnsupportedOperationException("There is no Transformation available for this TypeEnum");
-			}
-			TRANSFORMATORS.put(type, transformator);
-		}
+		return TransformatorRegistry.get(type, encoding).transform(value);
+	}
 	
-		
-		return transformator.transform(value);
+	/**
+	 * Transforms the value straight into the target, starting at its current position.
+	 * @return amount of bytes written
+	 */
+	public int transform(final Object value, final TypeEnum type, final ByteBuffer target){
+		return TransformatorRegistry.get(type, encoding).transform(value, target);
 	}
 	
 	public RevertResult revert(final byte[] payload, final TypeEnum type) throws OutOfBoundsException{
-		RevertResult revertedValue;
-		switch (type) {
-			case TLV:
-				revertedValue = (new TLVTransformator(encoding).revert(payload));
-				break;
-			default:
-				throw new UnsupportedOperationException("There is no Transformation available for this TypeEnum");
-		}
-		return revertedValue;
+		return revert(payload, 0, payload.length, type);
+	}
+	
+	/**
+	 * Reverts the range of the payload, without copying it.
+	 * @return the result, with the end position counted from the beginning of the payload
+	 */
+	public RevertResult revert(final byte[] payload, final int offset, final int end, final TypeEnum type) throws OutOfBoundsException{
+		return TransformatorRegistry.get(type, encoding).revert(payload, offset, end);
 	}
 }
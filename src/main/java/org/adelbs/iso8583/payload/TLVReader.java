@@ -0,0 +1,265 @@
+package org.adelbs.iso8583.payload;
+
+import org.adelbs.iso8583.exception.OutOfBoundsException;
+import org.adelbs.iso8583.util.Encoding;
+
+/**
+ * Cursor over the TLV elements of a range of bytes, laid out as [TLV TYPE][TLV LENGTH][TLV VALUE], with the
+ * type and the length as decimal chars of the field encoding (2 and 3 chars).
+ *
+ * The reader does not copy anything: each call to {@link #next()} reads the header of the following element
+ * and exposes the offsets of its parts over the original array. Values are decoded only on request. Elements
+ * whose value holds other elements (constructed) are walked with {@link #enter()} and {@link #exit()}.
+ *
+ * <pre>
+ * while (reader.next()) {
+ *     if (reader.getTagNumber() == 1 &amp;&amp; reader.enter()) {
+ *         while (reader.next()) ...
+ *         reader.exit();
+ *     }
+ * }
+ * </pre>
+ *
+ * A reader is not thread safe, and the array must not be changed while it is in use.
+ */
+public final class TLVReader {
+
+	public static final int TAG_SIZE = 2;
+	public static final int LENGTH_SIZE = 3;
+
+	/**
+	 * Maximum nesting of constructed elements
+	 */
+	public static final int MAX_DEPTH = 8;
+
+	private final Encoding encoding;
+	private final byte[] source;
+	private final int tagByteLength;
+	private final int lengthByteLength;
+
+	//First byte of the digit '0' at the encoding, or -1 when the digits are not single consecutive bytes
+	private final int zero;
+	private final StringBuilder scratch = new StringBuilder();
+
+	private final int[] parentEnds = new int[MAX_DEPTH];
+	private final int[] parentNexts = new int[MAX_DEPTH];
+	private int depth;
+
+	private int end;
+	private int position;
+
+	private int tagOffset = -1;
+	private int valueOffset;
+	private int length;
+	private int valueByteLength;
+
+	/**
+	 * @param encoding encoding of the TLV field
+	 * @param source payload holding the elements
+	 * @param offset position of the first element
+	 * @param end position right after the last byte that may hold elements
+	 */
+	public TLVReader(final Encoding encoding, final byte[] source, final int offset, final int end) {
+		if (offset < 0 || end > source.length || offset > end)
+			throw new IndexOutOfBoundsException("offset: " + offset + ", end: " + end);
+
+		this.encoding = encoding;
+		this.source = source;
+		this.position = offset;
+		this.end = end;
+		this.tagByteLength = encoding.getEncondedByteLength(TAG_SIZE);
+		this.lengthByteLength = encoding.getEncondedByteLength(LENGTH_SIZE);
+		this.zero = digitZero(encoding);
+	}
+
+	/**
+	 * Plain ASCII and EBCDIC digits are parsed in place, any other encoding is decoded first.
+	 */
+	static int digitZero(final Encoding encoding) {
+		try {
+			final byte[] digits = encoding.convert("09");
+			return (digits.length == 2 && (digits[1] & 0xFF) - (digits[0] & 0xFF) == 9) ? digits[0] & 0xFF : -1;
+		}
+		catch (RuntimeException x) {
+			return -1;
+		}
+	}
+
+	/**
+	 * Moves to the next element of the current level.
+	 *
+	 * @return false case there are no more elements at this level
+	 * @throws OutOfBoundsException case the element goes beyond the end of the level
+	 * @throws NumberFormatException case the length is not a decimal number
+	 */
+	public boolean next() throws OutOfBoundsException {
+		if (position >= end) {
+			tagOffset = -1;
+			return false;
+		}
+
+		final int lengthOffset = position + tagByteLength;
+		valueOffset = lengthOffset + lengthByteLength;
+		if (valueOffset > end)
+			throw new OutOfBoundsException();
+
+		length = readNumber(lengthOffset, lengthByteLength, LENGTH_SIZE);
+		valueByteLength = encoding.getEncondedByteLength(length);
+		if (valueOffset + valueByteLength > end)
+			throw new OutOfBoundsException();
+
+		tagOffset = position;
+		position = valueOffset + valueByteLength;
+		return true;
+	}
+
+	/**
+	 * Descends into the value of the current element, which is read as a sequence of elements.
+	 * The next call to {@link #next()} returns its first child.
+	 *
+	 * @return false case the value is empty
+	 * @throws IllegalStateException case there is no current element or the maximum depth was reached
+	 */
+	public boolean enter() {
+		checkCurrent();
+		if (depth == MAX_DEPTH)
+			throw new IllegalStateException("TLV nested beyond " + MAX_DEPTH + " levels");
+
+		parentEnds[depth] = end;
+		parentNexts[depth] = position;
+		depth++;
+
+		end = valueOffset + valueByteLength;
+		position = valueOffset;
+		tagOffset = -1;
+		return valueByteLength > 0;
+	}
+
+	/**
+	 * Goes back to the parent level, right after the constructed element, skipping the children not read yet.
+	 *
+	 * @throws IllegalStateException case the reader is at the first level
+	 */
+	public void exit() {
+		if (depth == 0)
+			throw new IllegalStateException("Not inside a constructed TLV");
+
+		depth--;
+		end = parentEnds[depth];
+		position = parentNexts[depth];
+		tagOffset = -1;
+	}
+
+	/**
+	 * @return nesting level of the cursor, 0 for the first level
+	 */
+	public int getDepth() {
+		return depth;
+	}
+
+	/**
+	 * @return the tag of the current element as a number, or -1 case it has anything but digits
+	 */
+	public int getTagNumber() {
+		checkCurrent();
+		try {
+			return readNumber(tagOffset, tagByteLength, TAG_SIZE);
+		}
+		catch (NumberFormatException x) {
+			return -1;
+		}
+	}
+
+	/**
+	 * @return the tag of the current element, as it is at the payload (fillers included)
+	 */
+	public String getTag() {
+		checkCurrent();
+		final StringBuilder tag = new StringBuilder(TAG_SIZE);
+		encoding.decode(source, tagOffset, tagByteLength, tag);
+		return tag.toString();
+	}
+
+	/**
+	 * Appends the decoded value of the current element to the target.
+	 */
+	public void appendValue(final StringBuilder target) {
+		checkCurrent();
+		encoding.decode(source, valueOffset, valueByteLength, target);
+	}
+
+	/**
+	 * @return the decoded value of the current element
+	 */
+	public String getValue() {
+		final StringBuilder value = new StringBuilder(length);
+		appendValue(value);
+		return value.toString();
+	}
+
+	/**
+	 * @return length of the value of the current element, as declared at the payload (in chars)
+	 */
+	public int getLength() {
+		checkCurrent();
+		return length;
+	}
+
+	/**
+	 * @return position of the first byte of the current element (its tag)
+	 */
+	public int getTagOffset() {
+		checkCurrent();
+		return tagOffset;
+	}
+
+	/**
+	 * @return position of the first byte of the value of the current element
+	 */
+	public int getValueOffset() {
+		checkCurrent();
+		return valueOffset;
+	}
+
+	/**
+	 * @return amount of bytes of the value of the current element
+	 */
+	public int getValueByteLength() {
+		checkCurrent();
+		return valueByteLength;
+	}
+
+	/**
+	 * @return position right after the last byte of the current element
+	 */
+	public int getEndOffset() {
+		checkCurrent();
+		return valueOffset + valueByteLength;
+	}
+
+	private void checkCurrent() {
+		if (tagOffset < 0)
+			throw new IllegalStateException("There is no current TLV element");
+	}
+
+	private int readNumber(final int offset, final int byteLength, final int digits) {
+		int result = 0;
+		if (zero >= 0 && byteLength == digits) {
+			for (int i = offset; i < offset + byteLength; i++)
+				result = (result * 10) + checkDigit((source[i] & 0xFF) - zero);
+			return result;
+		}
+
+		scratch.setLength(0);
+		encoding.decode(source, offset, byteLength, scratch);
+		for (int i = 0; i < scratch.length(); i++)
+			result = (result * 10) + checkDigit(scratch.charAt(i) - '0');
+		return result;
+	}
+
+	private static int checkDigit(final int digit) {
+		if (digit < 0 || digit > 9)
+			throw new NumberFormatException("Invalid digit at the TLV header");
+		return digit;
+	}
+}
@@ -1,15 +1,18 @@
 package org.adelbs.iso8583.payload;
 
+import java.nio.BufferOverflowException;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+
 import org.adelbs.iso8583.constants.EncodingEnum;
 import org.adelbs.iso8583.exception.OutOfBoundsException;
 import org.adelbs.iso8583.util.Encoding;
-import org.adelbs.iso8583.util.ISOUtils;
 import org.adelbs.iso8583.vo.FieldVO;
 
 class TLVTransformator implements Transformator {
 	
-	private static final int TLV_TYPE_SIZE = 2;
-	private static final int TLV_LENGTH_SIZE = 3;
+	private static final int TLV_TYPE_SIZE = TLVReader.TAG_SIZE;
+	private static final int TLV_LENGTH_SIZE = TLVReader.LENGTH_SIZE;
 	
 	private final Encoding encoding;
 	
@@ -26,19 +29,42 @@ class TLVTransformator implements Transformator {
 	 */
 	@Override
 	public byte[] transform(final Object value) {
+		final FieldVO field = toFieldVO(value);
+		int capacity = encoding.getEncondedByteLength(TLV_TYPE_SIZE + TLV_LENGTH_SIZE + getTlvLength(field));
+		while (true) {
+			final ByteBuffer target = ByteBuffer.allocate(capacity);
+			try {
+				transform(field, target);
+				return (target.position() == capacity) ? target.array() : Arrays.copyOf(target.array(), target.position());
+			}
+			catch (BufferOverflowException x) {
+				capacity = capacity * 2;
+			}
+		}
+	}
+
+	/**
+	 * Same as {@link #transform(Object)}, writing the element straight into the target.
+	 */
+	@Override
+	public int transform(final Object value, final ByteBuffer target) {
+		final FieldVO field = toFieldVO(value);
+		final String tlvType = field.getTlvType() == null ? "" : field.getTlvType();
+		final int startPosition = target.position();
+
+		new TLVWriter(encoding, target).write(getMaxSizeStr(tlvType, TLV_TYPE_SIZE), getMaxSizeStr(field.getValue(), getTlvLength(field)));
+		return target.position() - startPosition;
+	}
+
+	private static FieldVO toFieldVO(final Object value) {
 		if(!(value instanceof FieldVO)){
 			throw new IllegalArgumentException("Cannot transform objects, other than FieldVO");
 		}
-		
-		final FieldVO field = (FieldVO) value;
-		final String tlvType = field.getTlvType() == null ? "" : field.getTlvType();
-		final int tlvLength = (field.getTlvLength() == null || field.getTlvLength().length() == 0) ? 0 : Integer.parseInt(field.getTlvLength());
+		return (FieldVO) value;
+	}
 
-		byte[] payload = encoding.convert(getMaxSizeStr(tlvType, TLV_TYPE_SIZE));
-		payload = ISOUtils.mergeArray(payload, encoding.convert(getMaxSizeStr(Integer.toString(tlvLength), TLV_LENGTH_SIZE)));
-		payload = ISOUtils.mergeArray(payload, encoding.convert(getMaxSizeStr(field.getValue(), tlvLength)));
-		
-		return payload;
+	private static int getTlvLength(final FieldVO field) {
+		return (field.getTlvLength() == null || field.getTlvLength().length() == 0) ? 0 : Integer.parseInt(field.getTlvLength());
 	}
 
 	/**
@@ -52,35 +78,26 @@ class TLVTransformator implements Transformator {
 	 */
 	@Override
 	public RevertResult revert(final byte[] payload) throws OutOfBoundsException{
-		final int encondedTypeSize = encoding.getEncondedByteLength(TLV_TYPE_SIZE);
-		int endPosition = encondedTypeSize;
-		String tlvType = new String(ISOUtils.subArray(payload, 0, endPosition));
-		
-		final int encodedLengthSize = encoding.getEncondedByteLength(TLV_LENGTH_SIZE);
-		endPosition = endPosition + encodedLengthSize;
-		String tlvLength = new String(ISOUtils.subArray(payload, encondedTypeSize, endPosition));
+		return revert(payload, 0, payload.length);
+	}
+
+	/**
+	 * Same as {@link #revert(byte[])}, reading the element in place. Nested elements of the value are not
+	 * reverted, they can be walked with {@link TLVReader#enter()}.
+	 */
+	@Override
+	public RevertResult revert(final byte[] payload, final int offset, final int end) throws OutOfBoundsException{
+		final TLVReader reader = new TLVReader(encoding, payload, offset, end);
+		if (!reader.next())
+			throw new OutOfBoundsException();
 
-		endPosition = endPosition + Integer.parseInt(tlvLength);
-		String value = new String(ISOUtils.subArray(payload, encondedTypeSize + encodedLengthSize, endPosition));
-		
 		final FieldVO fieldVO = new FieldVO();
 		fieldVO.setEncoding((EncodingEnum)encoding);
-		fieldVO.setValue(value);
-		fieldVO.setTlvLength(removingFiller(tlvLength));
-		fieldVO.setTlvType(removingFiller(tlvType));
+		fieldVO.setValue(reader.getValue());
+		fieldVO.setTlvLength(reader.getLength() == 0 ? "" : Integer.toString(reader.getLength()));
+		fieldVO.setTlvType(removingFiller(reader.getTag()));
 		
-		return  new RevertResult(endPosition,  fieldVO);		
-/*		
- * 		TODO: Load also the Subfields of a TLV
- * 		int count = 1;
- * 		fieldList = new ArrayList<FieldVO>();
-		while (endPosition < endTlvPosition) {
-			tlvSubfield = getInstanceCopy();
-			tlvSubfield.setFieldList(new ArrayList<FieldVO>());
-			tlvSubfield.setBitNum(count++);
-			endPosition = tlvSubfield.populateTLVFromPayload(Integer.parseInt(value.substring(0, 1)), Integer.parseInt(value.substring(1, 2)), payload, endPosition);
-			fieldList.add(tlvSubfield);
-		}*/
+		return  new RevertResult(reader.getEndOffset(),  fieldVO);
 	}
 
 	/**
@@ -89,7 +106,10 @@ class TLVTransformator implements Transformator {
 	 * @return cleanned String value
 	 */
 	private String removingFiller(String value) {
-		return value.replaceAll("^0*", "");
+		int start = 0;
+		while (start < value.length() && value.charAt(start) == '0')
+			start++;
+		return value.substring(start);
 	}
 			
 	/**
@@ -0,0 +1,125 @@
+package org.adelbs.iso8583.payload;
+
+import java.nio.BufferOverflowException;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+
+import org.adelbs.iso8583.util.Encoding;
+
+/**
+ * Writes TLV elements ([TLV TYPE][TLV LENGTH][TLV VALUE], see {@link TLVReader}) straight into a buffer, in a single pass.
+ *
+ * Constructed elements are opened with {@link #begin(CharSequence)} and closed with {@link #end()}: the room of the
+ * length is reserved and written once the children are known, so a whole tree is written without intermediate arrays.
+ * The length of a constructed element is the amount of bytes of its children.
+ *
+ * A writer is not thread safe.
+ */
+public final class TLVWriter {
+
+	private final Encoding encoding;
+	private final ByteBuffer target;
+	private final int lengthByteLength;
+
+	private final char[] digits = new char[TLVReader.LENGTH_SIZE];
+	private final char[] tag = new char[TLVReader.TAG_SIZE];
+	private final CharBuffer digitChars = CharBuffer.wrap(digits);
+	private final CharBuffer tagChars = CharBuffer.wrap(tag);
+
+	private final int[] lengthPositions = new int[TLVReader.MAX_DEPTH];
+	private int depth;
+
+	/**
+	 * @param encoding encoding of the TLV field
+	 * @param target buffer that receives the elements, starting at its current position
+	 */
+	public TLVWriter(final Encoding encoding, final ByteBuffer target) {
+		this.encoding = encoding;
+		this.target = target;
+		this.lengthByteLength = encoding.getEncondedByteLength(TLVReader.LENGTH_SIZE);
+	}
+
+	/**
+	 * Writes a primitive element. The length is the amount of chars of the value.
+	 *
+	 * @param tagValue up to 2 chars, left padded with zeros
+	 * @param value value of the element, up to 999 chars
+	 * @return this writer
+	 * @throws BufferOverflowException case the target has no room for the element
+	 * @throws IllegalArgumentException case the tag or the value are too long
+	 */
+	public TLVWriter write(final CharSequence tagValue, final CharSequence value) {
+		writeTag(tagValue);
+		writeNumber(value.length());
+		encoding.encode(value, target);
+		return this;
+	}
+
+	/**
+	 * Opens a constructed element. Its children are the elements written until the matching {@link #end()}.
+	 *
+	 * @param tagValue up to 2 chars, left padded with zeros
+	 * @return this writer
+	 * @throws IllegalStateException case the maximum depth was reached
+	 */
+	public TLVWriter begin(final CharSequence tagValue) {
+		if (depth == TLVReader.MAX_DEPTH)
+			throw new IllegalStateException("TLV nested beyond " + TLVReader.MAX_DEPTH + " levels");
+
+		writeTag(tagValue);
+		if (target.remaining() < lengthByteLength)
+			throw new BufferOverflowException();
+
+		lengthPositions[depth++] = target.position();
+		target.position(target.position() + lengthByteLength);
+		return this;
+	}
+
+	/**
+	 * Closes the last constructed element, writing its length.
+	 *
+	 * @return this writer
+	 * @throws IllegalStateException case there is no open element
+	 * @throws IllegalArgumentException case the children are longer than 999 bytes
+	 */
+	public TLVWriter end() {
+		if (depth == 0)
+			throw new IllegalStateException("There is no constructed TLV to end");
+
+		final int lengthPosition = lengthPositions[--depth];
+		final int endPosition = target.position();
+		target.position(lengthPosition);
+		writeNumber(endPosition - lengthPosition - lengthByteLength);
+		target.position(endPosition);
+		return this;
+	}
+
+	/**
+	 * @return amount of constructed elements still open
+	 */
+	public int getDepth() {
+		return depth;
+	}
+
+	private void writeTag(final CharSequence value) {
+		if (value.length() > tag.length)
+			throw new IllegalArgumentException("TLV tag longer than " + tag.length + " chars: " + value);
+
+		final int pad = tag.length - value.length();
+		for (int i = 0; i < tag.length; i++)
+			tag[i] = (i < pad) ? '0' : value.charAt(i - pad);
+		encoding.encode(tagChars, target);
+	}
+
+	private void writeNumber(final int value) {
+		if (value < 0 || value > 999)
+			throw new IllegalArgumentException("TLV length out of range: " + value);
+
+		int remaining = value;
+		for (int i = digits.length - 1; i >= 0; i--) {
+			digits[i] = (char) ('0' + (remaining % 10));
+			remaining /= 10;
+		}
+		encoding.encode(digitChars, target);
+	}
+}
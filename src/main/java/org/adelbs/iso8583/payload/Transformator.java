@@ -1,7 +1,24 @@
 package org.adelbs.iso8583.payload;
 
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+
 import org.adelbs.iso8583.exception.OutOfBoundsException;
 
+/**
+ * Converts field values of a given type to and from the payload. Instances are shared by all threads
+ * (see {@link TransformatorRegistry}), so they must be thread safe.
+ *
+ * What is converted depends on the type of the field:
+ * <ul>
+ * <li>{@link org.adelbs.iso8583.constants.TypeEnum#TLV}: the value is the whole {@link org.adelbs.iso8583.vo.FieldVO}
+ * (tag, length and value), and the result of the revert must be a FieldVO as well. The revert gets the payload up to
+ * its end, reads the header itself and gives the end of the field.</li>
+ * <li>Any other type: the value is the value of the field, a String. The message plan frames the field (fixed length
+ * or N-VAR prefix counting bytes), so the transformator writes and reverts only the bytes of the value. The
+ * String.valueOf of the revert result becomes the value of the field.</li>
+ * </ul>
+ */
 public interface Transformator {
 	
 	/**
@@ -11,6 +28,19 @@ public interface Transformator {
 	 */
 	public byte[] transform(final Object value);
 	
+	/**
+	 * Transform a Object straight into the target, starting at its current position
+	 * @param value
+	 * @param target
+	 * @return amount of bytes written
+	 * @throws java.nio.BufferOverflowException case the target has no room for the result
+	 */
+	default int transform(final Object value, final ByteBuffer target) {
+		final byte[] bytes = transform(value);
+		target.put(bytes);
+		return bytes.length;
+	}
+	
 	
 	/**
 	 * Revert the array of bytes into an Object
@@ -19,4 +49,18 @@ public interface Transformator {
 	 * @throws OutOfBoundsException 
 	 */
 	public RevertResult revert(final byte[] payload) throws OutOfBoundsException;
+	
+	/**
+	 * Revert a range of the array of bytes into an Object
+	 * @param payload payload array of bytes
+	 * @param offset position of the first byte to be reverted
+	 * @param end position right after the last byte that may be reverted
+	 * @return the result, with the end position counted from the beginning of the payload (not the offset)
+	 * @throws OutOfBoundsException 
+	 */
+	default RevertResult revert(final byte[] payload, final int offset, final int end) throws OutOfBoundsException {
+		final RevertResult result = revert(Arrays.copyOfRange(payload, offset, end));
+		result.setRevertEndPosition(offset + result.getRevertEndPosition());
+		return result;
+	}
 }
@@ -0,0 +1,27 @@
+package org.adelbs.iso8583.payload;
+
+import org.adelbs.iso8583.constants.EncodingEnum;
+import org.adelbs.iso8583.constants.TypeEnum;
+
+/**
+ * Service provider of {@link Transformator}s for a field type. Providers are found with {@link java.util.ServiceLoader}
+ * (listed at META-INF/services/org.adelbs.iso8583.payload.TransformatorProvider) or registered with
+ * {@link TransformatorRegistry#register(TransformatorProvider)}, and replace any previous provider of the same type.
+ * The values its transformators get and return depend on the type, see {@link Transformator}.
+ */
+public interface TransformatorProvider {
+
+	/**
+	 * @return the field type handled by the transformators of this provider
+	 */
+	TypeEnum getType();
+
+	/**
+	 * Creates the transformator of the type for the given encoding. It is created once and shared by all threads,
+	 * so it must be thread safe.
+	 *
+	 * @param encoding encoding of the field
+	 * @return the transformator, or null case the encoding is not supported
+	 */
+	Transformator create(EncodingEnum encoding);
+}
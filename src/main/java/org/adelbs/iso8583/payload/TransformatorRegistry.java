@@ -0,0 +1,90 @@
+package org.adelbs.iso8583.payload;
+
+import java.util.EnumMap;
+import java.util.ServiceLoader;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+import org.adelbs.iso8583.constants.EncodingEnum;
+import org.adelbs.iso8583.constants.TypeEnum;
+
+/**
+ * Thread safe registry of the {@link Transformator}s, one per field type and encoding.
+ *
+ * The built-in TLV transformators and the providers found by {@link ServiceLoader} are created when the class is
+ * loaded, for every encoding. Lookups don't lock: each type maps to an immutable table of encodings, replaced
+ * as a whole when a provider is registered. Message plans take the transformators when they are compiled.
+ */
+public final class TransformatorRegistry {
+
+	private static final ConcurrentMap<TypeEnum, EnumMap<EncodingEnum, Transformator>> TRANSFORMATORS = new ConcurrentHashMap<TypeEnum, EnumMap<EncodingEnum, Transformator>>();
+
+	static {
+		register(new TransformatorProvider() {
+			@Override
+			public TypeEnum getType() {
+				return TypeEnum.TLV;
+			}
+
+			@Override
+			public Transformator create(final EncodingEnum encoding) {
+				return new TLVTransformator(encoding);
+			}
+		});
+
+		for (TransformatorProvider provider : providers(TransformatorRegistry.class.getClassLoader()))
+			register(provider);
+	}
+
+	private TransformatorRegistry() {
+	}
+
+	/**
+	 * @return the providers listed at the META-INF/services of the class loader
+	 */
+	static Iterable<TransformatorProvider> providers(final ClassLoader classLoader) {
+		return ServiceLoader.load(TransformatorProvider.class, classLoader);
+	}
+
+	/**
+	 * Creates the transformators of the provider for every encoding, replacing the ones of its type.
+	 *
+	 * @param provider provider of the transformators
+	 */
+	public static void register(final TransformatorProvider provider) {
+		final EnumMap<EncodingEnum, Transformator> transformators = new EnumMap<EncodingEnum, Transformator>(EncodingEnum.class);
+		for (EncodingEnum encoding : EncodingEnum.values()) {
+			final Transformator transformator = provider.create(encoding);
+			if (transformator != null)
+				transformators.put(encoding, transformator);
+		}
+		TRANSFORMATORS.put(provider.getType(), transformators);
+	}
+
+	/**
+	 * Removes the transformators of the type, so its fields are handled by the plans again.
+	 */
+	static void unregister(final TypeEnum type) {
+		TRANSFORMATORS.remove(type);
+	}
+
+	/**
+	 * @return the transformator of the type and encoding
+	 * @throws UnsupportedOperationException case there is no transformator for them
+	 */
+	public static Transformator get(final TypeEnum type, final EncodingEnum encoding) {
+		final EnumMap<EncodingEnum, Transformator> transformators = TRANSFORMATORS.get(type);
+		final Transformator transformator = (transformators != null) ? transformators.get(encoding) : null;
+		if (transformator == null)
+			throw new UnsupportedOperationException("There is no Transformation available for this TypeEnum");
+		return transformator;
+	}
+
+	/**
+	 * @return true case there is a transformator for the type and encoding
+	 */
+	public static boolean isSupported(final TypeEnum type, final EncodingEnum encoding) {
+		final EnumMap<EncodingEnum, Transformator> transformators = TRANSFORMATORS.get(type);
+		return transformators != null && transformators.containsKey(encoding);
+	}
+}
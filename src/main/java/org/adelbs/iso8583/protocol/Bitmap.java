@@ -1,15 +1,15 @@
 package org.adelbs.iso8583.protocol;
 
 import java.util.ArrayList;
-import java.util.HashMap;
+import java.util.Arrays;
 
-import org.adelbs.iso8583.constants.EncodingEnum;
 import org.adelbs.iso8583.constants.TypeEnum;
 import org.adelbs.iso8583.constants.TypeLengthEnum;
 import org.adelbs.iso8583.exception.FieldNotFoundException;
 import org.adelbs.iso8583.exception.OutOfBoundsException;
 import org.adelbs.iso8583.exception.ParseException;
 import org.adelbs.iso8583.exception.PayloadIncompleteException;
+import org.adelbs.iso8583.helper.condition.DynamicCondition;
 import org.adelbs.iso8583.util.Encoding;
 import org.adelbs.iso8583.util.ISOUtils;
 import org.adelbs.iso8583.vo.FieldVO;
@@ -19,11 +19,12 @@ import org.adelbs.iso8583.vo.MessageVO;
 
 public class Bitmap {
 
-	private HashMap<Integer, FieldVO> bitmap = new HashMap<Integer, FieldVO>();
-	private String binaryBitmap = "";
+	private FieldVO[] fields = new FieldVO[MessagePlan.MAX_BITS + 1];
+	private LongBitmap bits;
 	private int totalBits = 128;
 	
 	private byte[] payloadBitmap;
+	private int payloadEnd = -1;
 	
 	private MessageVO messageVO;
 	private StringBuilder visualPayload = new StringBuilder();
@@ -35,41 +36,37 @@ public class Bitmap {
 	 * @throws ParseException
 	 */
 	public Bitmap(byte[] payload, MessageVO messageVO) throws ParseException {
+		this(payload, MessagePlan.of(messageVO));
+	}
+	
+	/**
+	 * Builds the bitmap and the values of each bit from the payload, using a previously compiled plan.
+	 * @param payload
+	 * @param plan
+	 * @throws ParseException
+	 */
+	public Bitmap(byte[] payload, MessagePlan plan) throws ParseException {
 		
-		this.messageVO = messageVO.getInstanceCopy();
+		this.messageVO = plan.newMessageVO();
 		
-		String tempBitmap1 = "";
-        String tempBitmap2 = "";
-        int headerPlusType = 0;
+        int headerPlusType = plan.getHeaderByteLength() + plan.getTypeByteLength();
 		int bitmapSize = 0;
 		
-		if (messageVO.getHeaderEncoding() == EncodingEnum.BINARY) {
-			headerPlusType = (messageVO.getHeaderSize() / 2) + 2; 
-		}
-		else {
-			headerPlusType = messageVO.getHeaderSize() + 4;
-		}
-		
 		//This try block will extract the bitmap from the payload
 		try {
-			visualPayload.append("Message Type: [").append(messageVO.getType()).append("]\n");
+			visualPayload.append("Message Type: [").append(plan.getType()).append("]\n");
             
-            if (messageVO.getHeaderSize() > 0) {
-            	int headerSize = (messageVO.getHeaderEncoding() == EncodingEnum.BINARY) ? (messageVO.getHeaderSize() / 2) : messageVO.getHeaderSize();
-            	this.messageVO.setHeader(messageVO.getHeaderEncoding().convert(ISOUtils.subArray(payload, 0, headerSize)));
+            if (plan.getHeaderByteLength() > 0) {
+            	ISOUtils.checkRange(payload, 0, plan.getHeaderByteLength());
+            	final StringBuilder header = new StringBuilder(plan.getHeaderByteLength());
+            	plan.getHeaderEncoding().decode(payload, 0, plan.getHeaderByteLength(), header);
+            	this.messageVO.setHeader(header.toString());
             }
 
-			bitmapSize = messageVO.getBitmatEncoding().getMinBitmapSize();
-			tempBitmap1 = messageVO.getBitmatEncoding().convertBitmap(ISOUtils.subArray(payload, headerPlusType, headerPlusType + bitmapSize));
-			
-			if (tempBitmap1.substring(0, 1).equals("1")) {
-				tempBitmap2 = messageVO.getBitmatEncoding().convertBitmap(ISOUtils.subArray(payload, headerPlusType + bitmapSize, headerPlusType + (bitmapSize * 2)));
-				bitmapSize = bitmapSize * 2;
-			}
-			
-			binaryBitmap = tempBitmap1 + tempBitmap2;
+			bits = LongBitmap.read(plan.getBitmapEncoding(), payload, headerPlusType, 2);
+			bitmapSize = bits.getByteLength(plan.getBitmapEncoding());
 	
-			payloadBitmap = messageVO.getBitmatEncoding().convert(binaryBitmap.substring(0, bitmapSize));
+			payloadBitmap = Arrays.copyOfRange(payload, headerPlusType, headerPlusType + bitmapSize);
 			visualPayload.append("Bitmap: [").append(new String(payloadBitmap)).append("]\n\n");
 		}
 		catch (OutOfBoundsException x) {
@@ -80,7 +77,7 @@ public class Bitmap {
 		}
 
 		//The next try block will extract the values of each bit field from the payload
-		extractValueFromPayload(payload, messageVO, headerPlusType, bitmapSize);
+		extractValueFromPayload(payload, plan, headerPlusType, bitmapSize);
 	}
 
 	/**
@@ -88,33 +85,36 @@ public class Bitmap {
 	 * with values
 	 * 
 	 * @param payload
-	 * @param messageVO
+	 * @param plan
 	 * @param headerSize
 	 * @param bitmapSize
 	 * @throws PayloadIncompleteException
 	 * @throws ParseException
 	 */
-	private void extractValueFromPayload(byte[] payload, MessageVO messageVO, int headerSize, int bitmapSize) throws PayloadIncompleteException, ParseException {
+	private void extractValueFromPayload(byte[] payload, MessagePlan plan, int headerSize, int bitmapSize) throws PayloadIncompleteException, ParseException {
 		int bitNum = 1;
 		try{
-			this.messageVO.setFieldList(new ArrayList<FieldVO>());
 			int startPosition = headerSize + bitmapSize;
-			for (; bitNum < binaryBitmap.length(); bitNum++){
-				if (this.bitIsEnabled(bitNum)) {
-					final FieldVO foundFieldVO = getFieldVOFromBitMap(messageVO, bitNum);
-					startPosition = foundFieldVO.setValueFromPayload(payload, startPosition);
+			final int lastBit = bits.getWordCount() * 64;
+			final Object[] values = new Object[DynamicCondition.BIT_ARRAY_SIZE];
+			for (bitNum = bits.nextSetBit(2); bitNum != -1 && bitNum <= lastBit; bitNum = bits.nextSetBit(bitNum + 1)){
+				final FieldPlan fieldPlan = getFieldPlanFromBitMap(plan, bitNum);
+				final FieldVO foundFieldVO = fieldPlan.newFieldVO();
+				startPosition = fieldPlan.decode(payload, startPosition, foundFieldVO);
+				
+				if(!fieldPlan.isIgnored(values)){
+					foundFieldVO.setPresent(true);
+					fields[bitNum] = foundFieldVO;
+					values[bitNum] = foundFieldVO.getValue();
 					
-					if(!foundFieldVO.isIgnored()){
-						bitmap.put(foundFieldVO.getBitNum(), foundFieldVO);
-						bitmap.get(foundFieldVO.getBitNum()).setPresent(true);
-						
-						this.messageVO.getFieldList().add(foundFieldVO);
-						visualPayload.append("Bit").append(bitNum).append(": [").append(foundFieldVO.getPayloadValue()).append("]\n");
-					}
+					this.messageVO.getFieldList().add(foundFieldVO);
+					visualPayload.append("Bit").append(bitNum).append(": [").append(foundFieldVO.getValue()).append("]\n");
 				}
 			}
+			
+			payloadEnd = startPosition;
 		}catch (OutOfBoundsException x) {
-			throw new PayloadIncompleteException("Error trying to parse the fields from the payload. Payload incomplete.", bitNum + 1);
+			throw new PayloadIncompleteException("Error trying to parse the fields from the payload. Payload incomplete.", bitNum);
 		}
 		catch (Exception x) {
 			throw new ParseException("Error parsing the message body.\n" + x.getMessage() + "\n" + visualPayload);
@@ -123,53 +123,39 @@ public class Bitmap {
 
 	/**
 	 * Search for the field that represents the Bit that is enabled at the BitMap.
-	 * @param messageVO
-	 * @param bitNum
-	 * @param foundFieldVO
-	 * @return 
-	 * @return
-	 * @throws FieldNotFoundException case no fieldVO found
+	 * @param plan
+	 * @param bitNum bit number
+	 * @return the compiled field
+	 * @throws FieldNotFoundException case no field is configured for this bit
 	 */
-	private FieldVO getFieldVOFromBitMap(final GenericIsoVO genericVO, int bitNum) throws FieldNotFoundException {
-		for (final FieldVO fieldVO : genericVO.getFieldList()) {
-			if (fieldVO.getBitNum().intValue() == (bitNum + 1)) {
-				return fieldVO.getInstanceCopy();
-			}
-		}
+	private FieldPlan getFieldPlanFromBitMap(final MessagePlan plan, int bitNum) throws FieldNotFoundException {
+		final FieldPlan fieldPlan = plan.getField(bitNum);
+		if (fieldPlan == null)
+			throw new FieldNotFoundException("Field bit ("+ bitNum +") not found.");
 		
-		throw new FieldNotFoundException("Field bit ("+ bitNum +") not found.");
+		return fieldPlan;
 	}
 
-	private boolean bitIsEnabled(final int bitNum) {
-		return binaryBitmap.substring(bitNum, bitNum + 1).equals("1");
-	}
-	
 	public Bitmap(MessageVO sourceMessageVO) {
 		this.messageVO = sourceMessageVO.getInstanceCopy();
 		this.messageVO.setFieldList(new ArrayList<FieldVO>());
 		visualPayload.append("Message Type: [").append(sourceMessageVO.getType()).append("]\n");
 		
+		bits = new LongBitmap();
+		bits.setMaxWords(2);
 		buildBitMapFromParentVO(sourceMessageVO, this.messageVO);
 		
-		int lastBit = 0;
-		for (int i = 1; i <= 128; i++) {
-			binaryBitmap = binaryBitmap.concat(bitmap.get(i) == null ? "0" : "1");
-			if (bitmap.get(i) != null) lastBit = i;
-		}
-		
-		totalBits = lastBit;
+		totalBits = bits.getLastBit();
+		bits.updateExtensionBits();
 		
-		payloadBitmap = sourceMessageVO.getBitmatEncoding().convertBitmap(binaryBitmap.substring(0, 64));
+		payloadBitmap = bits.toPayload(sourceMessageVO.getBitmatEncoding(), 0);
 		visualPayload.append("Bitmap: [").append(new String(payloadBitmap)).append("]\n\n");
 		
-		if (lastBit > 64) {
+		if (totalBits > 64) {
 			FieldVO secondBitmap = new FieldVO(null, "Bitmap", "", 1, TypeEnum.ALPHANUMERIC, TypeLengthEnum.FIXED, 16, sourceMessageVO.getBitmatEncoding(), "true");
-			binaryBitmap = "1".concat(binaryBitmap.substring(1));
-			payloadBitmap = sourceMessageVO.getBitmatEncoding().convertBitmap(binaryBitmap.substring(0, 64));
-			secondBitmap.setPayloadValue(sourceMessageVO.getBitmatEncoding().convertBitmap(binaryBitmap.substring(64, 128)));
+			secondBitmap.setPayloadValue(bits.toPayload(sourceMessageVO.getBitmatEncoding(), 1));
 			secondBitmap.setPresent(true);
-			bitmap.put(1, secondBitmap);
-			binaryBitmap.substring(0, 64);
+			fields[1] = secondBitmap;
 		}
 	}
 	
@@ -194,9 +180,13 @@ public class Bitmap {
 				
 				//insert into parent's field list
 				parentVOCopy.getFieldList().add(fieldVOCopy);
-				bitmap.put(originalFieldVO.getBitNum(), fieldVOCopy);
+				final int bitNum = originalFieldVO.getBitNum().intValue();
+				if (bitNum > 1 && bitNum <= MessagePlan.MAX_BITS) {
+					fields[bitNum] = fieldVOCopy;
+					bits.set(bitNum);
+				}
 				
-				visualPayload.append("Bit").append(originalFieldVO.getBitNum()).append(": [").append(originalFieldVO.getPayloadValue()).append("]\n");
+				visualPayload.append("Bit").append(bitNum).append(": [").append(originalFieldVO.getValue()).append("]\n");
 			}
 		});
 	}
@@ -214,13 +204,27 @@ public class Bitmap {
 	}
 	
 	public FieldVO getBit(Integer bit) {
-		return bitmap.get(bit);
+		return (bit != null && bit.intValue() >= 0 && bit.intValue() <= MessagePlan.MAX_BITS) ? fields[bit.intValue()] : null;
+	}
+	
+	/**
+	 * @return the present bits. Bit 1 is set when the secondary bitmap is present.
+	 */
+	public LongBitmap getBits() {
+		return bits;
 	}
 	
 	public String getVisualPayload() {
 		return visualPayload.toString();
 	}
 	
+	/**
+	 * @return the position right after the last byte parsed from the payload, or -1 case this bitmap was not built from a payload
+	 */
+	public int getPayloadEnd() {
+		return payloadEnd;
+	}
+	
 	public MessageVO getMessageVO() {
 		return messageVO;
 	}
@@ -0,0 +1,593 @@
+package org.adelbs.iso8583.protocol;
+
+import java.nio.BufferOverflowException;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+
+import org.adelbs.iso8583.constants.EncodingEnum;
+import org.adelbs.iso8583.constants.TypeEnum;
+import org.adelbs.iso8583.constants.TypeLengthEnum;
+import org.adelbs.iso8583.exception.OutOfBoundsException;
+import org.adelbs.iso8583.helper.condition.ConditionCompiler;
+import org.adelbs.iso8583.helper.condition.DynamicCondition;
+import org.adelbs.iso8583.payload.BerTlvIndex;
+import org.adelbs.iso8583.payload.PayloadTransformator;
+import org.adelbs.iso8583.payload.RevertResult;
+import org.adelbs.iso8583.payload.TLVReader;
+import org.adelbs.iso8583.payload.Transformator;
+import org.adelbs.iso8583.payload.TransformatorRegistry;
+import org.adelbs.iso8583.util.BcdCodec;
+import org.adelbs.iso8583.util.HexCodec;
+import org.adelbs.iso8583.util.ISOUtils;
+import org.adelbs.iso8583.util.PayloadBuffer;
+import org.adelbs.iso8583.util.PayloadBufferPool;
+import org.adelbs.iso8583.vo.FieldVO;
+
+/**
+ * Immutable, precomputed description of how a single field (and its sub-fields) is laid out
+ * at the payload. It is created once by {@link MessagePlan#compile(org.adelbs.iso8583.vo.MessageVO)}
+ * and shared by every message parsed or built with that plan.
+ *
+ * Fields (without sub-fields) of a type registered at the {@link TransformatorRegistry} are converted by its
+ * {@link Transformator}, in place of the built-in handling. The plan still frames them (fixed length, or N-VAR
+ * prefix counting bytes), so the transformator gets only the bytes of the value, and the value of the field as a String.
+ * TLV fields are always converted by their transformator, which also reads their header (see {@link Transformator} for the values each one gets).
+ */
+public final class FieldPlan {
+
+	private static final int TLV_LENGTH_SIZE = 3;
+
+	//'0' in EBCDIC, the digits follow it up to 0xF9
+	private static final int EBCDIC_ZERO = 0xF0;
+
+	private final FieldVO template;
+
+	private final int bitNum;
+	private final TypeEnum type;
+	private final TypeLengthEnum typeLength;
+	private final int length;
+	private final EncodingEnum encoding;
+	private final boolean conditional;
+	private final DynamicCondition condition;
+	private final Transformator transformator;
+
+	private final int fixedByteLength;
+	private final int prefixByteLength;
+	private final int maxVarLength;
+
+	private final FieldPlan[] subFields;
+	private final int[] subFieldOffsets;
+
+	FieldPlan(final FieldVO fieldVO) {
+		this.template = fieldVO.getInstanceCopy();
+		this.bitNum = fieldVO.getBitNum() == null ? 0 : fieldVO.getBitNum().intValue();
+		this.type = fieldVO.getType() == null ? TypeEnum.ALPHANUMERIC : fieldVO.getType();
+		this.typeLength = fieldVO.getTypeLength() == null ? TypeLengthEnum.FIXED : fieldVO.getTypeLength();
+		this.length = fieldVO.getLength() == null ? 0 : fieldVO.getLength().intValue();
+		this.encoding = fieldVO.getEncoding() == null ? EncodingEnum.UTF8 : fieldVO.getEncoding();
+		this.conditional = fieldVO.getDynaCondition() != null && fieldVO.getDynaCondition().length() > 0;
+		this.condition = conditional ? compileCondition(fieldVO.getDynaCondition()) : null;
+
+		this.subFields = new FieldPlan[fieldVO.getFieldList().size()];
+		this.subFieldOffsets = new int[subFields.length];
+
+		int offset = 0;
+		for (int i = 0; i < subFields.length; i++) {
+			subFields[i] = new FieldPlan(fieldVO.getFieldList().get(i));
+			subFieldOffsets[i] = offset;
+			if (offset >= 0)
+				offset = (subFields[i].fixedByteLength >= 0) ? offset + subFields[i].fixedByteLength : -1;
+		}
+
+		this.transformator = (type != TypeEnum.TLV && subFields.length == 0 && TransformatorRegistry.isSupported(type, encoding)) ? TransformatorRegistry.get(type, encoding) : null;
+
+		if (type != TypeEnum.TLV && typeLength == TypeLengthEnum.NVAR) {
+			this.prefixByteLength = encoding.getEncondedByteLength((encoding == EncodingEnum.BINARY) ? length / 2 : length);
+			this.maxVarLength = maxValueForDigits(length);
+		}
+		else {
+			this.prefixByteLength = 0;
+			this.maxVarLength = 0;
+		}
+
+		if (type == TypeEnum.TLV || typeLength != TypeLengthEnum.FIXED)
+			this.fixedByteLength = -1;
+		else if (type == TypeEnum.BERTLV)
+			this.fixedByteLength = length;
+		else if (subFields.length > 0)
+			this.fixedByteLength = offset;
+		else
+			this.fixedByteLength = encoding.getEncondedByteLength((encoding == EncodingEnum.BINARY) ? length / 2 : length);
+	}
+
+	/**
+	 * Invalid conditions don't prevent the plan from being compiled, they fail only when evaluated.
+	 */
+	private static DynamicCondition compileCondition(final String expression) {
+		try {
+			return ConditionCompiler.compile(expression);
+		}
+		catch (final IllegalArgumentException x) {
+			return bits -> {
+				throw x;
+			};
+		}
+	}
+
+	/**
+	 * @return a new, empty {@link FieldVO} with the structure of this field (and its sub-fields).
+	 */
+	public FieldVO newFieldVO() {
+		return template.getInstanceCopy();
+	}
+
+	/**
+	 * Extracts the value of this field from the payload, populating the given {@link FieldVO}.
+	 * The target must have the same structure this plan was compiled from (see {@link #newFieldVO()}).
+	 *
+	 * @param payload
+	 * @param startPosition
+	 * @param target
+	 * @return the position right after the last byte of this field
+	 * @throws OutOfBoundsException case the payload is shorter than the field
+	 */
+	public int decode(final byte[] payload, final int startPosition, final FieldVO target) throws OutOfBoundsException {
+		int endPosition = startPosition;
+
+		if (type == TypeEnum.ALPHANUMERIC && subFields.length > 0) {
+			endPosition = startPosition + prefixByteLength;
+			for (int i = 0; i < subFields.length; i++)
+				endPosition = subFields[i].decode(payload, endPosition, target.getFieldList().get(i));
+		}
+		else if (transformator != null) {
+			final int valueStart = startPosition + prefixByteLength;
+			endPosition = valueEnd(payload, startPosition, valueStart);
+			target.setValue(String.valueOf(transformator.revert(payload, valueStart, endPosition).getResultantObject()));
+		}
+		else if (type == TypeEnum.BERTLV) {
+			final int valueStart = startPosition + prefixByteLength;
+			endPosition = valueEnd(payload, startPosition, valueStart);
+
+			//The index refers to the payload itself, so the elements are not copied
+			target.setValue(HexCodec.toHex(payload, valueStart, endPosition - valueStart));
+			try {
+				target.setBerTlvIndex(BerTlvIndex.parse(payload, valueStart, endPosition - valueStart));
+			}
+			catch (OutOfBoundsException | IllegalArgumentException x) {
+				//Invalid chip data doesn't fail the message, the index fails only when it is read
+			}
+		}
+		else if (type == TypeEnum.ALPHANUMERIC) {
+			if (typeLength == TypeLengthEnum.FIXED) {
+				endPosition = startPosition + fixedByteLength;
+				if (encoding == EncodingEnum.BCD) {
+					//The exact amount of digits is known, so the pad nibble of odd lengths is dropped
+					if (endPosition > payload.length)
+						throw new OutOfBoundsException();
+					target.setValue(BcdCodec.RIGHT_JUSTIFIED.decode(payload, startPosition, length));
+				}
+				else
+					target.setValue(decodeRange(payload, startPosition, endPosition));
+			}
+			else {
+				final int valueStart = startPosition + prefixByteLength;
+				ISOUtils.checkRange(payload, startPosition, valueStart);
+				final int varLength = readLength(payload, startPosition, prefixByteLength);
+				endPosition = valueStart + varByteLength(varLength);
+				if (encoding == EncodingEnum.BCD) {
+					//The prefix counts digits, so the pad nibble of odd lengths is dropped
+					if (endPosition > payload.length)
+						throw new OutOfBoundsException();
+					target.setValue(BcdCodec.RIGHT_JUSTIFIED.decode(payload, valueStart, varLength));
+				}
+				else
+					target.setValue(varLength == 0 ? "" : decodeRange(payload, valueStart, endPosition));
+			}
+		}
+		else if (type == TypeEnum.TLV) {
+			final RevertResult revertedValue = PayloadTransformator.getInstance(encoding).revert(payload, startPosition, payload.length, type);
+
+			final FieldVO revertedField = (FieldVO) revertedValue.getResultantObject();
+			target.setTlvLength(revertedField.getTlvLength());
+			target.setTlvType(revertedField.getTlvType());
+			target.setValue(revertedField.getValue());
+
+			endPosition = revertedValue.getRevertEndPosition();
+		}
+
+		return endPosition;
+	}
+
+	/**
+	 * @return the end of the value, which has a fixed length or follows a N-VAR prefix
+	 * @throws OutOfBoundsException case the value goes beyond the payload
+	 */
+	private int valueEnd(final byte[] payload, final int startPosition, final int valueStart) throws OutOfBoundsException {
+		final int endPosition;
+		if (typeLength == TypeLengthEnum.FIXED)
+			endPosition = valueStart + fixedByteLength;
+		else {
+			ISOUtils.checkRange(payload, startPosition, valueStart);
+			endPosition = valueStart + readLength(payload, startPosition, prefixByteLength);
+		}
+		if (endPosition > payload.length)
+			throw new OutOfBoundsException();
+		return endPosition;
+	}
+
+	/**
+	 * Decodes the range straight from the payload, with the same bounds rules of {@link ISOUtils#subArray(byte[], int, int)}.
+	 */
+	private String decodeRange(final byte[] payload, final int start, final int end) throws OutOfBoundsException {
+		ISOUtils.checkRange(payload, start, end);
+		final StringBuilder result = new StringBuilder(end - start);
+		encoding.decode(payload, start, end - start, result);
+		return result.toString();
+	}
+
+	/**
+	 * Finds the end of this field at the payload, without converting its value. Only the length prefixes
+	 * of N-VAR fields (and the content of TLV fields) are read.
+	 *
+	 * @param payload
+	 * @param startPosition
+	 * @param limit position right after the last valid byte of the payload
+	 * @return the position right after the last byte of this field
+	 * @throws OutOfBoundsException case the field goes beyond the limit
+	 */
+	public int skip(final byte[] payload, final int startPosition, final int limit) throws OutOfBoundsException {
+		final int endPosition = scan(payload, startPosition, limit);
+		if (endPosition > limit)
+			throw new OutOfBoundsException();
+		return endPosition;
+	}
+
+	/**
+	 * Finds the end of this field at a payload that may not be complete yet. Only the length prefixes
+	 * of N-VAR fields (and the content of TLV fields) are read.
+	 *
+	 * @param payload
+	 * @param startPosition
+	 * @param limit position right after the last valid byte of the payload
+	 * @return the position right after the last byte of this field. When it is beyond the limit, the field is incomplete
+	 * and the result is the position that must be reached before scanning it again: the end of the field, when its
+	 * length is already known, or the end of the next length prefix otherwise.
+	 */
+	public int scan(final byte[] payload, final int startPosition, final int limit) {
+		if (type == TypeEnum.TLV) {
+			//Only the header is read, the value is not decoded
+			try {
+				final TLVReader reader = new TLVReader(encoding, payload, startPosition, limit);
+				return reader.next() ? reader.getEndOffset() : limit + 1;
+			}
+			catch (OutOfBoundsException | IndexOutOfBoundsException x) {
+				return limit + 1;
+			}
+		}
+
+		if (type == TypeEnum.ALPHANUMERIC && subFields.length > 0) {
+			int endPosition = startPosition + prefixByteLength;
+			for (int i = 0; i < subFields.length && endPosition <= limit; i++)
+				endPosition = subFields[i].scan(payload, endPosition, limit);
+			return endPosition;
+		}
+
+		if (typeLength == TypeLengthEnum.FIXED)
+			return startPosition + fixedByteLength;
+
+		final int valueStart = startPosition + prefixByteLength;
+		return (valueStart > limit) ? valueStart : valueStart + varByteLength(readLength(payload, startPosition, prefixByteLength));
+	}
+
+	/**
+	 * @return the amount of bytes of a N-VAR value with the given prefix, which counts digits in BCD and bytes otherwise
+	 */
+	private int varByteLength(final int prefix) {
+		return (encoding == EncodingEnum.BCD && type == TypeEnum.ALPHANUMERIC && subFields.length == 0 && transformator == null) ? BcdCodec.RIGHT_JUSTIFIED.getByteLength(prefix) : prefix;
+	}
+
+	/**
+	 * Reads the length prefix of a N-VAR field. Plain ASCII and EBCDIC digits are parsed in place.
+	 */
+	private int readLength(final byte[] payload, final int position, final int byteLength) {
+		final int zero;
+		if (encoding == EncodingEnum.UTF8 || encoding == EncodingEnum.ISO88591)
+			zero = '0';
+		else if (encoding == EncodingEnum.EBCDIC)
+			zero = EBCDIC_ZERO;
+		else
+			return Integer.parseInt(encoding.convert(Arrays.copyOfRange(payload, position, position + byteLength)));
+
+		int result = 0;
+		for (int i = position; i < position + byteLength; i++) {
+			final int digit = (payload[i] & 0xFF) - zero;
+			if (digit < 0 || digit > 9)
+				throw new NumberFormatException("Invalid length prefix of the field " + getName());
+			result = (result * 10) + digit;
+		}
+		return result;
+	}
+
+	/**
+	 * Converts the value of the given {@link FieldVO} into its payload representation, according to this plan.
+	 * The field itself is not changed.
+	 *
+	 * @param fieldVO field (with sub-fields) holding the values to be converted
+	 * @return the payload of this field
+	 */
+	public byte[] encode(final FieldVO fieldVO) {
+		final PayloadBuffer buffer = PayloadBufferPool.DEFAULT.acquire();
+		try {
+			buffer.ensureCapacity(fixedByteLength);
+			while (true) {
+				final ByteBuffer target = buffer.writableBuffer();
+				try {
+					encode(fieldVO, target, true);
+					buffer.setLength(target.position());
+					return buffer.toByteArray();
+				}
+				catch (BufferOverflowException x) {
+					buffer.ensureCapacity(buffer.capacity() * 2);
+				}
+			}
+		}
+		finally {
+			PayloadBufferPool.DEFAULT.release(buffer);
+		}
+	}
+
+	/**
+	 * Writes the payload representation of the given {@link FieldVO} straight into the buffer, starting at its
+	 * current position. Length prefixes of composite fields are written after their sub-fields, at the reserved position.
+	 *
+	 * @param fieldVO field (with sub-fields) holding the values to be converted
+	 * @param target buffer that receives the payload
+	 * @return the amount of bytes written
+	 * @throws BufferOverflowException case the buffer has no room for the whole field
+	 */
+	public int encode(final FieldVO fieldVO, final ByteBuffer target) {
+		final int startPosition = target.position();
+		encode(fieldVO, target, true);
+		return target.position() - startPosition;
+	}
+
+	private void encode(final FieldVO fieldVO, final ByteBuffer target, final boolean isSuperField) {
+		final String value = fieldVO.getValue() == null ? "" : fieldVO.getValue();
+		final int startPosition = target.position();
+
+		if (type == TypeEnum.TLV) {
+			final boolean hasLengthPrefix = isSuperField && subFields.length > 0;
+			final int tlvPrefixLength = encoding.getEncondedByteLength(TLV_LENGTH_SIZE);
+
+			if (hasLengthPrefix)
+				reserve(target, tlvPrefixLength);
+
+			PayloadTransformator.getInstance(encoding).transform(fieldVO, type, target);
+			encodeSubFields(fieldVO, target);
+
+			if (hasLengthPrefix)
+				writePrefix(target, startPosition, fitNumber(target.position() - startPosition - tlvPrefixLength, TLV_LENGTH_SIZE));
+		}
+		else if (transformator != null) {
+			reserve(target, prefixByteLength);
+			final int byteLength = transformator.transform(value, target);
+			if (typeLength == TypeLengthEnum.NVAR)
+				writePrefix(target, startPosition, fitNumber(byteLength, length));
+			else if (byteLength != fixedByteLength)
+				throw new IllegalArgumentException("The transformator of " + type + " wrote " + byteLength + " bytes to the field " + getName() + ", of " + fixedByteLength + " bytes");
+		}
+		else if (type == TypeEnum.BERTLV) {
+			encodeBerTlv(value, target);
+		}
+		else if (subFields.length > 0) {
+			reserve(target, prefixByteLength);
+			encoding.encode(value, target);
+			encodeSubFields(fieldVO, target);
+
+			if (typeLength == TypeLengthEnum.NVAR)
+				writePrefix(target, startPosition, fitNumber(target.position() - startPosition - prefixByteLength, length));
+		}
+		else if (typeLength == TypeLengthEnum.NVAR && encoding == EncodingEnum.BCD) {
+			//The prefix counts the digits, not the bytes
+			final String digits = (value.length() > maxVarLength) ? value.substring(0, maxVarLength) : value;
+			target.put(encoding.convert(fitNumber(digits.length(), length)));
+			encoding.encode(digits, target);
+		}
+		else if (typeLength == TypeLengthEnum.NVAR) {
+			//The value is encoded right after the room of the prefix, which is written once its size is known
+			reserve(target, prefixByteLength);
+			int varLength = encoding.encode(value, target);
+			if (varLength > maxVarLength) {
+				target.position(startPosition + prefixByteLength);
+				varLength = encoding.encode(fitValue(value, maxVarLength), target);
+			}
+			writePrefix(target, startPosition, fitNumber(varLength, length));
+		}
+		else if (encoding == EncodingEnum.BCD) {
+			encoding.encode(fitDigits(value, length), target);
+		}
+		else {
+			encoding.encode(value.length() == length ? value : fitValue(value, length), target);
+		}
+	}
+
+	/**
+	 * The hexadecimal value is written as bytes, cropped or right padded with zeros when the length is fixed.
+	 */
+	private void encodeBerTlv(final String value, final ByteBuffer target) {
+		final byte[] bytes = HexCodec.fromHex(value);
+		if (typeLength == TypeLengthEnum.FIXED) {
+			if (target.remaining() < length)
+				throw new BufferOverflowException();
+			target.put(bytes, 0, Math.min(bytes.length, length));
+			for (int i = bytes.length; i < length; i++)
+				target.put((byte) 0);
+			return;
+		}
+
+		final int byteLength = Math.min(bytes.length, maxVarLength);
+		target.put(encoding.convert(fitNumber(byteLength, length)));
+		target.put(bytes, 0, byteLength);
+	}
+
+	private void encodeSubFields(final FieldVO fieldVO, final ByteBuffer target) {
+		for (int i = 0; i < subFields.length && i < fieldVO.getFieldList().size(); i++)
+			subFields[i].encode(fieldVO.getFieldList().get(i), target, false);
+	}
+
+	/**
+	 * Skips the given amount of bytes, to be written later.
+	 */
+	private static void reserve(final ByteBuffer target, final int byteLength) {
+		if (target.remaining() < byteLength)
+			throw new BufferOverflowException();
+		target.position(target.position() + byteLength);
+	}
+
+	/**
+	 * Writes the length prefix at a position reserved before the value, keeping the current position of the buffer.
+	 */
+	private void writePrefix(final ByteBuffer target, final int prefixPosition, final String prefix) {
+		final int endPosition = target.position();
+		target.position(prefixPosition);
+		target.put(encoding.convert(prefix));
+		target.position(endPosition);
+	}
+
+	/**
+	 * Left pads the number with zeros, or returns the biggest number represented by <i>digits</i>
+	 * case the number doesn't fit.
+	 */
+	static String fitNumber(final int number, final int digits) {
+		final String value = String.valueOf(number);
+		if (value.length() > digits)
+			return String.valueOf(maxValueForDigits(digits));
+
+		final StringBuilder result = new StringBuilder(digits);
+		for (int i = value.length(); i < digits; i++)
+			result.append('0');
+		return result.append(value).toString();
+	}
+
+	/**
+	 * Right pads the value with spaces or crops it, to the exact length.
+	 */
+	static String fitValue(final String value, final int length) {
+		if (value.length() >= length)
+			return value.substring(0, length);
+
+		final StringBuilder result = new StringBuilder(length).append(value);
+		while (result.length() < length)
+			result.append(' ');
+		return result.toString();
+	}
+
+	/**
+	 * Left pads the digits with zeros or crops them, to the exact length.
+	 */
+	static String fitDigits(final String value, final int length) {
+		if (value.length() >= length)
+			return value.substring(0, length);
+
+		final StringBuilder result = new StringBuilder(length);
+		for (int i = value.length(); i < length; i++)
+			result.append('0');
+		return result.append(value).toString();
+	}
+
+	private static int maxValueForDigits(final int digits) {
+		int max = 0;
+		for (int i = 0; i < digits && i < 9; i++)
+			max = (max * 10) + 9;
+		return max;
+	}
+
+	public int getBitNum() {
+		return bitNum;
+	}
+
+	public TypeEnum getType() {
+		return type;
+	}
+
+	public TypeLengthEnum getTypeLength() {
+		return typeLength;
+	}
+
+	public int getLength() {
+		return length;
+	}
+
+	public EncodingEnum getEncoding() {
+		return encoding;
+	}
+
+	/**
+	 * @return true if this field has a dynamic condition that must be evaluated after parsing it
+	 */
+	public boolean isConditional() {
+		return conditional;
+	}
+
+	/**
+	 * Evaluates the dynamic condition of this field.
+	 * @param bits values of the fields already parsed, indexed by bit number
+	 * @return true if the field must be ignored. Fields without condition are never ignored.
+	 * @throws IllegalArgumentException case the condition is invalid or doesn't generate a boolean result
+	 */
+	public boolean isIgnored(final Object[] bits) {
+		return conditional && !condition.evaluate(bits);
+	}
+
+	/**
+	 * @return the transformator registered for the type and encoding of this field, which converts its value,
+	 * or null case the field is handled by the plan itself (TLV fields included)
+	 */
+	public Transformator getTransformator() {
+		return transformator;
+	}
+
+	/**
+	 * @return the amount of bytes of this field at the payload, or -1 case it has a variable size
+	 */
+	public int getFixedByteLength() {
+		return fixedByteLength;
+	}
+
+	/**
+	 * @return the amount of bytes used by the length prefix of N-VAR fields, 0 otherwise
+	 */
+	public int getPrefixByteLength() {
+		return prefixByteLength;
+	}
+
+	public int getSubFieldCount() {
+		return subFields.length;
+	}
+
+	public FieldPlan getSubField(final int index) {
+		return subFields[index];
+	}
+
+	/**
+	 * @return the offset of the sub-field, relative to the beginning of this field, or -1 case
+	 * it depends on a previous sub-field with variable size.
+	 */
+	public int getSubFieldOffset(final int index) {
+		return subFieldOffsets[index];
+	}
+
+	/**
+	 * @return the name of this field, as configured
+	 */
+	public String getName() {
+		return template.getName();
+	}
+
+	/**
+	 * @return the original dynamic condition of this field
+	 */
+	public String getDynaCondition() {
+		return template.getDynaCondition();
+	}
+}
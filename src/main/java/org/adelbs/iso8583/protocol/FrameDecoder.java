@@ -0,0 +1,43 @@
+package org.adelbs.iso8583.protocol;
+
+import java.nio.ByteBuffer;
+
+import org.adelbs.iso8583.exception.InvalidPayloadException;
+
+/**
+ * Splits the bytes received from a connection into messages (frames), according to a {@link ISO8583Delimiter}.
+ * A decoder keeps the state of a single connection, so each connection must have its own instance
+ * (see {@link ISO8583Delimiter#newFrameDecoder(org.adelbs.iso8583.helper.Iso8583Config)}).
+ *
+ * A typical read loop is:
+ * <pre>
+ * buffer.flip();
+ * while ((frame = decoder.decode(buffer)) != null) { ... }
+ * buffer.compact();
+ * </pre>
+ */
+public interface FrameDecoder {
+
+	/**
+	 * Looks for the next complete frame, starting at the position of the buffer. When found, the position is moved to
+	 * the first byte after the frame, so several frames can be read from the same buffer.
+	 *
+	 * @param buffer accumulated bytes, between its position and limit
+	 * @return the message of the frame, without the delimiter, or null case more bytes are needed. The frame shares
+	 * its content with the buffer, so it must be consumed before the buffer is compacted or reused.
+	 * @throws InvalidPayloadException case the bytes can't be a valid frame. The decoder must be reset then.
+	 */
+	ByteBuffer decode(ByteBuffer buffer) throws InvalidPayloadException;
+
+	/**
+	 * @return the minimum amount of bytes, besides the ones not consumed by the last {@link #decode(ByteBuffer)},
+	 * needed before the next frame may be complete
+	 */
+	int getBytesNeeded();
+
+	/**
+	 * Discards the state of the current frame.
+	 */
+	void reset();
+
+}
@@ -0,0 +1,163 @@
+package org.adelbs.iso8583.protocol;
+
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+
+import org.adelbs.iso8583.constants.EncodingEnum;
+import org.adelbs.iso8583.exception.InvalidPayloadException;
+import org.adelbs.iso8583.exception.OutOfBoundsException;
+import org.adelbs.iso8583.helper.Iso8583Config;
+import org.adelbs.iso8583.helper.Iso8583RuntimeConfig;
+
+/**
+ * Decoder of {@link ISO8583GenericConfigDelimiter}: the end of each message is found by walking its fields,
+ * according to the configuration of its message type.
+ *
+ * The scan is resumable: between calls the decoder keeps the plan, the bitmap and the field where it stopped,
+ * so each call only goes over the bytes received since the previous one. Once a length prefix is read,
+ * {@link #getBytesNeeded()} tells exactly how many bytes are missing for that field.
+ */
+public class GenericFrameDecoder implements FrameDecoder {
+
+	private final Iso8583RuntimeConfig runtimeConfig;
+
+	private final EncodingEnum headerEncoding;
+	private final int headerByteLength;
+	private final int typeByteLength;
+	private final int maxFrameSize;
+
+	//State of the message being scanned, positions are relative to its first byte
+	private MessagePlan plan;
+	private LongBitmap bits;
+	private int nextBit;
+	private int lastBit;
+	private int scanPosition;
+	private int bytesNeeded;
+
+	public GenericFrameDecoder(Iso8583Config isoConfig) {
+		this(isoConfig.getRuntimeConfig());
+	}
+
+	public GenericFrameDecoder(Iso8583RuntimeConfig runtimeConfig) {
+		this.runtimeConfig = runtimeConfig;
+		this.headerEncoding = runtimeConfig.getHeaderEncoding();
+		this.headerByteLength = runtimeConfig.getHeaderByteLength();
+		this.typeByteLength = runtimeConfig.getTypeByteLength();
+		this.maxFrameSize = runtimeConfig.getMaxFrameSize();
+		reset();
+	}
+
+	@Override
+	public ByteBuffer decode(ByteBuffer buffer) throws InvalidPayloadException {
+		final int available = buffer.remaining();
+
+		final byte[] data;
+		final int base;
+		if (buffer.hasArray()) {
+			data = buffer.array();
+			base = buffer.arrayOffset() + buffer.position();
+		}
+		else {
+			data = new byte[available];
+			buffer.duplicate().get(data);
+			base = 0;
+		}
+
+		try {
+			if (!scan(data, base, available))
+				return null;
+		}
+		catch (IllegalArgumentException x) {
+			throw new InvalidPayloadException("Invalid payload at the bit " + nextBit + ": " + x.getMessage(), x);
+		}
+
+		final int messageSize = scanPosition;
+		final ByteBuffer frame = buffer.duplicate();
+		frame.limit(buffer.position() + messageSize);
+
+		buffer.position(buffer.position() + messageSize);
+		reset();
+		return frame.slice();
+	}
+
+	/**
+	 * Advances over the bytes received since the last call, starting at the field where it stopped.
+	 * @return true when the whole message was scanned
+	 */
+	private boolean scan(byte[] data, int base, int available) throws InvalidPayloadException {
+		if (plan == null) {
+			if (!isAvailable(headerByteLength + typeByteLength, available))
+				return false;
+
+			final String type = headerEncoding.convert(Arrays.copyOfRange(data, base + headerByteLength, base + headerByteLength + typeByteLength));
+			plan = getPlan(type);
+			scanPosition = headerByteLength + typeByteLength;
+		}
+
+		if (bits == null) {
+			final EncodingEnum bitmapEncoding = plan.getBitmapEncoding();
+			final int wordLength = LongBitmap.getWordByteLength(bitmapEncoding);
+			if (!isAvailable(scanPosition + wordLength, available))
+				return false;
+
+			//Bit 1 tells if the secondary bitmap must be waited for
+			final boolean hasSecondary = (LongBitmap.readWord(bitmapEncoding, data, base + scanPosition) & Long.MIN_VALUE) != 0;
+			if (hasSecondary && !isAvailable(scanPosition + (2 * wordLength), available))
+				return false;
+
+			try {
+				bits = LongBitmap.read(bitmapEncoding, data, base + scanPosition, 2);
+			}
+			catch (OutOfBoundsException x) {
+				throw new InvalidPayloadException("Error trying to parse the Bitmap from payload.", x);
+			}
+			scanPosition += bits.getByteLength(bitmapEncoding);
+			lastBit = bits.getWordCount() * 64;
+			nextBit = bits.nextSetBit(2);
+		}
+
+		while (nextBit != -1 && nextBit <= lastBit) {
+			final FieldPlan fieldPlan = plan.getField(nextBit);
+			if (fieldPlan == null)
+				throw new InvalidPayloadException("Field bit (" + nextBit + ") not found.", null);
+
+			final int fieldEnd = fieldPlan.scan(data, base + scanPosition, base + available) - base;
+			if (fieldEnd > maxFrameSize)
+				throw new InvalidPayloadException("Message above the maximum size of " + maxFrameSize + " (bit " + nextBit + ")", null);
+			if (!isAvailable(fieldEnd, available))
+				return false;
+
+			scanPosition = fieldEnd;
+			nextBit = bits.nextSetBit(nextBit + 1);
+		}
+
+		return true;
+	}
+
+	private boolean isAvailable(int position, int available) {
+		bytesNeeded = position - available;
+		return bytesNeeded <= 0;
+	}
+
+	private MessagePlan getPlan(String type) throws InvalidPayloadException {
+		final MessagePlan plan = runtimeConfig.getPlan(type);
+		if (plan == null)
+			throw new InvalidPayloadException("Message type not found: " + type, null);
+		return plan;
+	}
+
+	@Override
+	public int getBytesNeeded() {
+		return bytesNeeded;
+	}
+
+	@Override
+	public void reset() {
+		plan = null;
+		bits = null;
+		nextBit = -1;
+		lastBit = 0;
+		scanPosition = 0;
+		bytesNeeded = headerByteLength + typeByteLength;
+	}
+}
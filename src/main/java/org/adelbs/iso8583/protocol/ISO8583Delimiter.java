@@ -1,10 +1,14 @@
 package org.adelbs.iso8583.protocol;
 
+import java.nio.BufferOverflowException;
+import java.nio.ByteBuffer;
 import java.util.List;
 
 import org.adelbs.iso8583.exception.InvalidPayloadException;
 import org.adelbs.iso8583.exception.OutOfBoundsException;
 import org.adelbs.iso8583.helper.Iso8583Config;
+import org.adelbs.iso8583.helper.Iso8583RuntimeConfig;
+import org.adelbs.iso8583.vo.MessageVO;
 
 public interface ISO8583Delimiter {
 
@@ -20,4 +24,35 @@ public interface ISO8583Delimiter {
 
 	int getMessageSize(List<Byte> bytes) throws OutOfBoundsException;
 	
+	/**
+	 * @return the amount of bytes this delimiter adds before the message, 0 case it has no length prefix
+	 * (see {@link LengthPrefixedDelimiter})
+	 */
+	default int getLengthPrefixSize() {
+		return 0;
+	}
+	
+	/**
+	 * Creates the decoder of the frames received by a single connection. Delimiters with a length prefix are decoded
+	 * by {@link LengthPrefixFrameDecoder} (see {@link LengthPrefixedDelimiter}); others fall back to {@link #isPayloadComplete(List, Iso8583Config)}.
+	 * @param isoConfig source of the maximum frame size, the default one is used case it is null
+	 * @return a new decoder
+	 */
+	default FrameDecoder newFrameDecoder(Iso8583Config isoConfig) {
+		final int maxFrameSize = (isoConfig != null) ? isoConfig.getMaxFrameSize() : Iso8583RuntimeConfig.DEFAULT_MAX_FRAME_SIZE;
+		return new LegacyFrameDecoder(this, isoConfig, maxFrameSize);
+	}
+	
+	/**
+	 * Writes the message, ready to be sent, straight into the buffer.
+	 * @param plan compiled plan of the message
+	 * @param messageVO message holding the values
+	 * @param target buffer that receives the data, starting at its current position
+	 * @return the amount of bytes written, including the length prefix
+	 * @throws BufferOverflowException case the buffer has no room for the whole message
+	 */
+	default int encode(MessagePlan plan, MessageVO messageVO, ByteBuffer target) {
+		return plan.encode(messageVO, target);
+	}
+	
 }
@@ -1,10 +1,10 @@
 package org.adelbs.iso8583.protocol;
 
+import java.nio.ByteBuffer;
 import java.util.List;
 
 import org.adelbs.iso8583.exception.InvalidPayloadException;
 import org.adelbs.iso8583.exception.OutOfBoundsException;
-import org.adelbs.iso8583.exception.PayloadIncompleteException;
 import org.adelbs.iso8583.helper.Iso8583Config;
 import org.adelbs.iso8583.util.ISOUtils;
 
@@ -26,27 +26,14 @@ public class ISO8583GenericConfigDelimiter implements ISO8583Delimiter {
 		return isoMessage.getPayload();
 	}
 
+	@Override
+	public FrameDecoder newFrameDecoder(Iso8583Config isoConfig) {
+		return new GenericFrameDecoder(isoConfig);
+	}
+
 	@Override
 	public boolean isPayloadComplete(List<Byte> bytes, Iso8583Config isoConfig) throws InvalidPayloadException {
-		boolean isComplete = false;
-		
-		//The minimum size = first bitmap (64) + message type (4)
-		if (bytes.size() > 68) {
-			try {
-				new Bitmap(ISOUtils.listToArray(bytes), 
-						isoConfig.getMessageVOAtTree(
-								isoConfig.findMessageVOByPayload(ISOUtils.listToArray(bytes)).getType()));
-				isComplete = true;
-			}
-			catch (PayloadIncompleteException x) {
-				isComplete = false;
-			} 
-			catch (Exception e) {
-				throw new InvalidPayloadException(e.getMessage(), e);
-			}
-		}
-		
-		return isComplete;
+		return new GenericFrameDecoder(isoConfig).decode(ByteBuffer.wrap(ISOUtils.listToArray(bytes))) != null;
 	}
 
 	@Override
@@ -0,0 +1,199 @@
+package org.adelbs.iso8583.protocol;
+
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.List;
+
+import org.adelbs.iso8583.constants.LengthPrefixEnum;
+import org.adelbs.iso8583.exception.InvalidPayloadException;
+import org.adelbs.iso8583.exception.OutOfBoundsException;
+import org.adelbs.iso8583.helper.Iso8583Config;
+
+/**
+ * Delimiter that sends the size of each message in a prefix before it. The format of the prefix is given by
+ * {@link LengthPrefixEnum}, and the size may count the bytes of the prefix itself (<i>inclusive</i>) or not.
+ * Frames are read by {@link LengthPrefixFrameDecoder}: the prefix first, then the whole message at once.
+ */
+public class ISO8583LengthPrefixDelimiter implements LengthPrefixedDelimiter {
+
+	private final LengthPrefixEnum format;
+	private final boolean inclusive;
+
+	public ISO8583LengthPrefixDelimiter(LengthPrefixEnum format, boolean inclusive) {
+		this.format = format;
+		this.inclusive = inclusive || format.isAlwaysInclusive();
+	}
+
+	@Override
+	public String getName() {
+		return "Length prefix: " + format + (inclusive ? ", including itself" : "");
+	}
+
+	@Override
+	public String getDesc() {
+		return "Adds " + format.getSize() + " bytes at the beginning of the message (" + format + "). These bytes represent the message size"
+				+ (inclusive ? ", counting the prefix itself." : ".");
+	}
+
+	public LengthPrefixEnum getFormat() {
+		return format;
+	}
+
+	public boolean isInclusive() {
+		return inclusive;
+	}
+
+	@Override
+	public int getLengthPrefixSize() {
+		return format.getSize();
+	}
+
+	@Override
+	public void writeLengthPrefix(ByteBuffer target, int prefixPosition, int messageSize) {
+		final int length = inclusive ? messageSize + format.getSize() : messageSize;
+		if (length > format.getMaxLength())
+			throw new IllegalArgumentException("The message is too big for the delimiter (" + messageSize + " bytes)");
+
+		switch (format) {
+			case BINARY2_BE:
+				target.put(prefixPosition, (byte) (length >>> 8));
+				target.put(prefixPosition + 1, (byte) length);
+				break;
+
+			case BINARY2_LE:
+				target.put(prefixPosition, (byte) length);
+				target.put(prefixPosition + 1, (byte) (length >>> 8));
+				break;
+
+			case BINARY4_BE:
+				for (int i = 0; i < 4; i++)
+					target.put(prefixPosition + i, (byte) (length >>> (24 - (i << 3))));
+				break;
+
+			case BINARY4_LE:
+				for (int i = 0; i < 4; i++)
+					target.put(prefixPosition + i, (byte) (length >>> (i << 3)));
+				break;
+
+			case ASCII4:
+			case EBCDIC4:
+				final int zero = (format == LengthPrefixEnum.ASCII4) ? '0' : 0xF0;
+				for (int i = 3, value = length; i >= 0; i--, value /= 10)
+					target.put(prefixPosition + i, (byte) (zero + (value % 10)));
+				break;
+
+			case BCD2:
+				target.put(prefixPosition, (byte) ((((length / 1000) % 10) << 4) | ((length / 100) % 10)));
+				target.put(prefixPosition + 1, (byte) ((((length / 10) % 10) << 4) | (length % 10)));
+				break;
+
+			case RDW:
+				target.put(prefixPosition, (byte) (length >>> 8));
+				target.put(prefixPosition + 1, (byte) length);
+				target.put(prefixPosition + 2, (byte) 0);
+				target.put(prefixPosition + 3, (byte) 0);
+				break;
+		}
+	}
+
+	/**
+	 * @return amount of bytes of the message, not including the prefix, or -1 case the prefix is invalid
+	 */
+	@Override
+	public int readLengthPrefix(ByteBuffer source, int prefixPosition) {
+		long length = 0;
+
+		switch (format) {
+			case BINARY2_BE:
+			case RDW:
+				length = ((source.get(prefixPosition) & 0xFF) << 8) | (source.get(prefixPosition + 1) & 0xFF);
+				break;
+
+			case BINARY2_LE:
+				length = (source.get(prefixPosition) & 0xFF) | ((source.get(prefixPosition + 1) & 0xFF) << 8);
+				break;
+
+			case BINARY4_BE:
+				for (int i = 0; i < 4; i++)
+					length = (length << 8) | (source.get(prefixPosition + i) & 0xFF);
+				break;
+
+			case BINARY4_LE:
+				for (int i = 3; i >= 0; i--)
+					length = (length << 8) | (source.get(prefixPosition + i) & 0xFF);
+				break;
+
+			case ASCII4:
+			case EBCDIC4:
+				final int zero = (format == LengthPrefixEnum.ASCII4) ? '0' : 0xF0;
+				for (int i = 0; i < 4; i++) {
+					final int digit = (source.get(prefixPosition + i) & 0xFF) - zero;
+					if (digit < 0 || digit > 9)
+						return -1;
+					length = (length * 10) + digit;
+				}
+				break;
+
+			case BCD2:
+				for (int i = 0; i < 2; i++) {
+					final int high = (source.get(prefixPosition + i) & 0xF0) >>> 4;
+					final int low = source.get(prefixPosition + i) & 0x0F;
+					if (high > 9 || low > 9)
+						return -1;
+					length = (length * 100) + (high * 10) + low;
+				}
+				break;
+		}
+
+		if (inclusive)
+			length = length - format.getSize();
+
+		return (length < 0 || length > Integer.MAX_VALUE) ? -1 : (int) length;
+	}
+
+	@Override
+	public byte[] preparePayload(ISOMessage isoMessage, Iso8583Config isoConfig) {
+		final byte[] payload = isoMessage.getPayload();
+		final ByteBuffer data = ByteBuffer.allocate(format.getSize() + payload.length);
+		writeLengthPrefix(data, 0, payload.length);
+		data.position(format.getSize());
+		data.put(payload);
+		return data.array();
+	}
+
+	@Override
+	public byte[] clearPayload(byte[] data, Iso8583Config isoConfig) {
+		return Arrays.copyOfRange(data, format.getSize(), data.length);
+	}
+
+	@Override
+	public boolean isPayloadComplete(List<Byte> bytes, Iso8583Config isoConfig) throws InvalidPayloadException {
+		if (bytes.size() <= format.getSize())
+			return false;
+
+		final int messageSize;
+		try {
+			messageSize = getMessageSize(bytes);
+		}
+		catch (OutOfBoundsException x) {
+			throw new InvalidPayloadException(x.getMessage(), x);
+		}
+		
+		if (messageSize < 0)
+			throw new InvalidPayloadException("Invalid message size", null);
+
+		return bytes.size() == messageSize + format.getSize();
+	}
+
+	@Override
+	public int getMessageSize(List<Byte> bytes) throws OutOfBoundsException {
+		if (bytes.size() < format.getSize())
+			return -1;
+
+		final ByteBuffer prefix = ByteBuffer.allocate(format.getSize());
+		for (int i = 0; i < format.getSize(); i++)
+			prefix.put(bytes.get(i).byteValue());
+
+		return readLengthPrefix(prefix, 0);
+	}
+}
@@ -1,8 +1,8 @@
 package org.adelbs.iso8583.protocol;
 
-import org.adelbs.iso8583.constants.EncodingEnum;
+import java.util.Arrays;
+
 import org.adelbs.iso8583.exception.ParseException;
-import org.adelbs.iso8583.util.ISOUtils;
 import org.adelbs.iso8583.vo.FieldVO;
 import org.adelbs.iso8583.vo.MessageVO;
 
@@ -18,34 +18,46 @@ public class ISOMessage {
 		this(null, messageVO);
 	}
 	
+	/**
+	 * @param messageVO structure of the message (and its values when there is no payload), see {@link MessagePlan#of(MessageVO)}
+	 */
 	public ISOMessage(byte[] payload, MessageVO messageVO) throws ParseException {
-		if (payload != null)
-			bitmap = new Bitmap(payload, messageVO);
-		else
-			bitmap = new Bitmap(messageVO);
-        
-        StringBuilder strMessage = new StringBuilder();
-        this.payload = new byte[0];
-
-        if (bitmap.getMessageVO().getHeader() != null) {
-            strMessage.append(bitmap.getMessageVO().getHeader());
-            this.payload = ISOUtils.mergeArray(this.payload, bitmap.getMessageVO().getHeaderEncoding().convert(bitmap.getMessageVO().getHeader()));
-        }
-
-		strMessage.append(messageVO.getType());
-		strMessage.append(bitmap.getPayloadBitmap());
-        
-		this.payload = ISOUtils.mergeArray(this.payload, messageVO.getHeaderEncoding().convert(messageVO.getType()));
-		this.payload = ISOUtils.mergeArray(this.payload, bitmap.getPayloadBitmap());
-		
-		for (int i = 0; i <= bitmap.getSize(); i++) {
-			if (bitmap.getBit(i) != null) {
-				this.payload = ISOUtils.mergeArray(this.payload, bitmap.getBit(i).getPayloadValue());
-				strMessage.append(bitmap.getBit(i).getPayloadValue());
-			}
+		this(payload, messageVO, MessagePlan.of(messageVO));
+	}
+	
+	/**
+	 * Parses the payload using a previously compiled plan.
+	 * @param payload
+	 * @param plan
+	 * @throws ParseException
+	 */
+	public ISOMessage(byte[] payload, MessagePlan plan) throws ParseException {
+		this(payload, null, plan);
+	}
+	
+	/**
+	 * Builds the payload from the values of the {@link MessageVO}, using a previously compiled plan.
+	 * @param messageVO
+	 * @param plan
+	 * @throws ParseException
+	 */
+	public ISOMessage(MessageVO messageVO, MessagePlan plan) throws ParseException {
+		this(null, messageVO, plan);
+	}
+	
+	private ISOMessage(byte[] payload, MessageVO messageVO, MessagePlan plan) throws ParseException {
+		if (payload != null) {
+			bitmap = new Bitmap(payload, plan);
+			
+			//The fields were parsed from these very bytes, there is no need to build them again
+			this.payload = (bitmap.getPayloadEnd() == payload.length) ? payload : Arrays.copyOf(payload, bitmap.getPayloadEnd());
+			this.messageSize = this.payload.length;
+			return;
 		}
 		
-		this.messageSize = strMessage.length();
+		bitmap = new Bitmap(messageVO);
+		this.payload = plan.encode(messageVO);
+		this.messageSize = this.payload.length;
 	}
 	
 	public byte[] getPayload() {
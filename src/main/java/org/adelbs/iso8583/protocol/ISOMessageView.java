@@ -0,0 +1,238 @@
+package org.adelbs.iso8583.protocol;
+
+import java.nio.ByteBuffer;
+
+import org.adelbs.iso8583.constants.EncodingEnum;
+import org.adelbs.iso8583.constants.TypeEnum;
+import org.adelbs.iso8583.exception.FieldNotFoundException;
+import org.adelbs.iso8583.exception.OutOfBoundsException;
+import org.adelbs.iso8583.exception.ParseException;
+import org.adelbs.iso8583.exception.PayloadIncompleteException;
+import org.adelbs.iso8583.payload.BerTlvIndex;
+import org.adelbs.iso8583.payload.Transformator;
+import org.adelbs.iso8583.util.ByteCharSequence;
+import org.adelbs.iso8583.util.HexCodec;
+import org.adelbs.iso8583.vo.FieldVO;
+
+/**
+ * Read-only view of a received message. The payload is scanned once, recording where each present field
+ * starts and ends, and the values are only converted when they are requested. Nothing is copied from the
+ * payload, so it must not be changed while the view is in use.
+ *
+ * Unlike {@link ISOMessage}, dynamic conditions are not evaluated: every present bit is reported as is.
+ */
+public final class ISOMessageView {
+
+	private final byte[] payload;
+	private final int offset;
+	private final int end;
+	private final MessagePlan plan;
+
+	private final LongBitmap bits;
+	private final int[] fieldStart = new int[MessagePlan.MAX_BITS + 1];
+	private final int[] fieldEnd = new int[MessagePlan.MAX_BITS + 1];
+
+	/**
+	 * @param payload the whole message, without the delimiter
+	 * @param plan compiled plan of the message
+	 * @throws ParseException
+	 */
+	public ISOMessageView(final byte[] payload, final MessagePlan plan) throws ParseException {
+		this(payload, 0, payload.length, plan);
+	}
+
+	/**
+	 * @param payload buffer holding the message
+	 * @param offset position of the first byte of the message
+	 * @param length amount of bytes available for the message
+	 * @param plan compiled plan of the message
+	 * @throws ParseException
+	 */
+	public ISOMessageView(final byte[] payload, final int offset, final int length, final MessagePlan plan) throws ParseException {
+		this.payload = payload;
+		this.offset = offset;
+		this.plan = plan;
+
+		final int limit = offset + length;
+		final int bitmapStart = offset + plan.getHeaderByteLength() + plan.getTypeByteLength();
+
+		try {
+			bits = LongBitmap.read(plan.getBitmapEncoding(), payload, bitmapStart, 2);
+		}
+		catch (OutOfBoundsException x) {
+			throw new PayloadIncompleteException("Error trying to parse the Bitmap from payload. Payload incomplete.", 0);
+		}
+
+		int position = bitmapStart + bits.getByteLength(plan.getBitmapEncoding());
+		if (position > limit)
+			throw new PayloadIncompleteException("Error trying to parse the Bitmap from payload. Payload incomplete.", 0);
+
+		int bitNum = 1;
+		try {
+			final int lastBit = bits.getWordCount() * 64;
+			for (bitNum = bits.nextSetBit(2); bitNum != -1 && bitNum <= lastBit; bitNum = bits.nextSetBit(bitNum + 1)) {
+				final FieldPlan fieldPlan = plan.getField(bitNum);
+				if (fieldPlan == null)
+					throw new FieldNotFoundException("Field bit (" + bitNum + ") not found.");
+
+				fieldStart[bitNum] = position;
+				position = fieldPlan.skip(payload, position, limit);
+				fieldEnd[bitNum] = position;
+			}
+		}
+		catch (OutOfBoundsException x) {
+			throw new PayloadIncompleteException("Error trying to parse the fields from the payload. Payload incomplete.", bitNum);
+		}
+		catch (Exception x) {
+			throw new ParseException("Error parsing the message body.\n" + x.getMessage());
+		}
+
+		this.end = position;
+	}
+
+	/**
+	 * @return the message type (MTI)
+	 */
+	public CharSequence getType() {
+		final int typeStart = offset + plan.getHeaderByteLength();
+		return view(plan.getHeaderEncoding(), typeStart, plan.getTypeByteLength());
+	}
+
+	/**
+	 * @return the header, or null case the message has no header
+	 */
+	public CharSequence getHeader() {
+		return (plan.getHeaderByteLength() > 0) ? view(plan.getHeaderEncoding(), offset, plan.getHeaderByteLength()) : null;
+	}
+
+	/**
+	 * @return the present bits. Bit 1 is set when the secondary bitmap is present.
+	 */
+	public LongBitmap getBits() {
+		return bits;
+	}
+
+	public boolean isPresent(final int bit) {
+		return bit > 1 && bit <= MessagePlan.MAX_BITS && fieldEnd[bit] > 0;
+	}
+
+	/**
+	 * @return the amount of bytes of the message (from the header up to the last field)
+	 */
+	public int getMessageSize() {
+		return end - offset;
+	}
+
+	/**
+	 * @return position of the first byte of the field (its length prefix included) at the payload, or -1 case it is not present
+	 */
+	public int getFieldOffset(final int bit) {
+		return isPresent(bit) ? fieldStart[bit] : -1;
+	}
+
+	/**
+	 * @return amount of bytes of the field (its length prefix included), or -1 case it is not present
+	 */
+	public int getFieldLength(final int bit) {
+		return isPresent(bit) ? fieldEnd[bit] - fieldStart[bit] : -1;
+	}
+
+	/**
+	 * @return position of the first byte of the value (after the length prefix of N-VAR fields), or -1 case it is not present
+	 */
+	public int getValueOffset(final int bit) {
+		return isPresent(bit) ? fieldStart[bit] + plan.getField(bit).getPrefixByteLength() : -1;
+	}
+
+	/**
+	 * @return amount of bytes of the value (without the length prefix of N-VAR fields), or -1 case it is not present
+	 */
+	public int getValueLength(final int bit) {
+		return isPresent(bit) ? fieldEnd[bit] - getValueOffset(bit) : -1;
+	}
+
+	/**
+	 * @return read-only buffer sharing the bytes of the value, or null case the bit is not present
+	 */
+	public ByteBuffer getRawValue(final int bit) {
+		if (!isPresent(bit))
+			return null;
+		return ByteBuffer.wrap(payload, getValueOffset(bit), getValueLength(bit)).slice().asReadOnlyBuffer();
+	}
+
+	/**
+	 * The value is viewed in place when its bytes are plain ASCII, and converted otherwise. BER-TLV values are
+	 * returned as hexadecimal digits, and the values of fields with a registered transformator are converted by it.
+	 * @return the value of the field, or null case the bit is not present
+	 * @throws IllegalArgumentException case the transformator of the field can't revert the value
+	 */
+	public CharSequence getValue(final int bit) {
+		if (!isPresent(bit))
+			return null;
+		final Transformator transformator = plan.getField(bit).getTransformator();
+		if (transformator != null) {
+			try {
+				return String.valueOf(transformator.revert(payload, getValueOffset(bit), fieldEnd[bit]).getResultantObject());
+			}
+			catch (OutOfBoundsException x) {
+				throw new IllegalArgumentException("Invalid value at the bit " + bit + ": beyond the end of the field.");
+			}
+		}
+		if (plan.getField(bit).getType() == TypeEnum.BERTLV)
+			return HexCodec.toHex(payload, getValueOffset(bit), getValueLength(bit));
+		return view(plan.getField(bit).getEncoding(), getValueOffset(bit), getValueLength(bit));
+	}
+
+	/**
+	 * Indexes the BER-TLV elements of the value in place, so single tags can be read without decoding the field.
+	 * @return the index over the payload, or null case the bit is not present
+	 * @throws ParseException case the value is not valid BER-TLV
+	 */
+	public BerTlvIndex getBerTlvIndex(final int bit) throws ParseException {
+		if (!isPresent(bit))
+			return null;
+		try {
+			return BerTlvIndex.parse(payload, getValueOffset(bit), getValueLength(bit));
+		}
+		catch (OutOfBoundsException x) {
+			throw new ParseException("Invalid BER-TLV at the bit " + bit + ": element beyond the end of the value.");
+		}
+		catch (IllegalArgumentException x) {
+			throw new ParseException("Invalid BER-TLV at the bit " + bit + ".\n" + x.getMessage());
+		}
+	}
+
+	/**
+	 * Decodes the field, with its sub-fields, into a new {@link FieldVO}.
+	 * @return the decoded field, or null case the bit is not present
+	 * @throws ParseException
+	 */
+	public FieldVO getField(final int bit) throws ParseException {
+		if (!isPresent(bit))
+			return null;
+
+		final FieldPlan fieldPlan = plan.getField(bit);
+		final FieldVO fieldVO = fieldPlan.newFieldVO();
+		try {
+			fieldPlan.decode(payload, fieldStart[bit], fieldVO);
+		}
+		catch (OutOfBoundsException x) {
+			throw new PayloadIncompleteException("Error trying to parse the field from the payload. Payload incomplete.", bit);
+		}
+		fieldVO.setPresent(true);
+		return fieldVO;
+	}
+
+	private CharSequence view(final EncodingEnum encoding, final int start, final int length) {
+		if (length == 0)
+			return "";
+
+		final boolean asciiCompatible = encoding == EncodingEnum.UTF8 || encoding == EncodingEnum.ISO88591;
+		if (asciiCompatible && ByteCharSequence.isAscii(payload, start, length))
+			return new ByteCharSequence(payload, start, length);
+
+		final StringBuilder result = new StringBuilder(length);
+		encoding.decode(payload, start, length, result);
+		return result;
+	}
+}
@@ -0,0 +1,55 @@
+package org.adelbs.iso8583.protocol;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.adelbs.iso8583.exception.InvalidPayloadException;
+import org.adelbs.iso8583.helper.Iso8583Config;
+import org.adelbs.iso8583.util.ISOUtils;
+
+/**
+ * Adapts a delimiter that only implements {@link ISO8583Delimiter#isPayloadComplete(List, Iso8583Config)},
+ * checking the accumulated bytes after each new byte, as the connections used to do.
+ */
+public class LegacyFrameDecoder implements FrameDecoder {
+
+	private final ISO8583Delimiter delimiter;
+	private final Iso8583Config isoConfig;
+	private final int maxFrameSize;
+	private List<Byte> bytes = new ArrayList<Byte>();
+
+	/**
+	 * @param maxFrameSize largest amount of bytes accumulated before the message is complete
+	 */
+	public LegacyFrameDecoder(ISO8583Delimiter delimiter, Iso8583Config isoConfig, int maxFrameSize) {
+		this.delimiter = delimiter;
+		this.isoConfig = isoConfig;
+		this.maxFrameSize = maxFrameSize;
+	}
+
+	@Override
+	public ByteBuffer decode(ByteBuffer buffer) throws InvalidPayloadException {
+		while (buffer.hasRemaining()) {
+			bytes.add(Byte.valueOf(buffer.get()));
+			if (delimiter.isPayloadComplete(bytes, isoConfig)) {
+				final byte[] data = delimiter.clearPayload(ISOUtils.listToArray(bytes), isoConfig);
+				bytes = new ArrayList<Byte>();
+				return ByteBuffer.wrap(data);
+			}
+			if (bytes.size() >= maxFrameSize)
+				throw new InvalidPayloadException("Message above the maximum size of " + maxFrameSize, null);
+		}
+		return null;
+	}
+
+	@Override
+	public int getBytesNeeded() {
+		return 1;
+	}
+
+	@Override
+	public void reset() {
+		bytes = new ArrayList<Byte>();
+	}
+}
@@ -0,0 +1,72 @@
+package org.adelbs.iso8583.protocol;
+
+import java.nio.ByteBuffer;
+
+import org.adelbs.iso8583.exception.InvalidPayloadException;
+import org.adelbs.iso8583.helper.Iso8583RuntimeConfig;
+
+/**
+ * Decoder of the delimiters that send the size of the message before it
+ * (see {@link LengthPrefixedDelimiter}). Nothing is copied: frames are slices of the buffer.
+ * Sizes above the maximum are rejected as soon as the prefix is read, so a bogus prefix never makes the
+ * connection wait for (and buffer) that many bytes.
+ */
+public class LengthPrefixFrameDecoder implements FrameDecoder {
+
+	private final LengthPrefixedDelimiter delimiter;
+	private final int prefixSize;
+	private final int maxFrameSize;
+	private int bytesNeeded;
+
+	public LengthPrefixFrameDecoder(LengthPrefixedDelimiter delimiter) {
+		this(delimiter, Iso8583RuntimeConfig.DEFAULT_MAX_FRAME_SIZE);
+	}
+
+	/**
+	 * @param maxFrameSize largest message accepted, in bytes, not including the prefix
+	 */
+	public LengthPrefixFrameDecoder(LengthPrefixedDelimiter delimiter, int maxFrameSize) {
+		this.delimiter = delimiter;
+		this.prefixSize = delimiter.getLengthPrefixSize();
+		this.maxFrameSize = maxFrameSize;
+		this.bytesNeeded = prefixSize;
+	}
+
+	@Override
+	public ByteBuffer decode(ByteBuffer buffer) throws InvalidPayloadException {
+		final int available = buffer.remaining();
+		if (available < prefixSize) {
+			bytesNeeded = prefixSize - available;
+			return null;
+		}
+
+		final int messageSize = delimiter.readLengthPrefix(buffer, buffer.position());
+		if (messageSize < 0)
+			throw new InvalidPayloadException("Invalid message size: " + messageSize, null);
+		if (messageSize > maxFrameSize)
+			throw new InvalidPayloadException("Message size " + messageSize + " above the maximum of " + maxFrameSize, null);
+
+		if (available < prefixSize + messageSize) {
+			bytesNeeded = prefixSize + messageSize - available;
+			return null;
+		}
+
+		final ByteBuffer frame = buffer.duplicate();
+		frame.position(buffer.position() + prefixSize);
+		frame.limit(buffer.position() + prefixSize + messageSize);
+
+		buffer.position(buffer.position() + prefixSize + messageSize);
+		bytesNeeded = prefixSize;
+		return frame.slice();
+	}
+
+	@Override
+	public int getBytesNeeded() {
+		return bytesNeeded;
+	}
+
+	@Override
+	public void reset() {
+		bytesNeeded = prefixSize;
+	}
+}
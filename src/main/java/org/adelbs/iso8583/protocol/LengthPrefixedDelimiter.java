@@ -0,0 +1,58 @@
+package org.adelbs.iso8583.protocol;
+
+import java.nio.BufferOverflowException;
+import java.nio.ByteBuffer;
+
+import org.adelbs.iso8583.helper.Iso8583Config;
+import org.adelbs.iso8583.helper.Iso8583RuntimeConfig;
+import org.adelbs.iso8583.vo.MessageVO;
+
+/**
+ * Delimiter that sends the size of each message in a prefix before it. Its frames are decoded by {@link LengthPrefixFrameDecoder}.
+ */
+public interface LengthPrefixedDelimiter extends ISO8583Delimiter {
+
+	/**
+	 * @return the amount of bytes this delimiter adds before the message
+	 */
+	@Override
+	int getLengthPrefixSize();
+	
+	/**
+	 * Writes the length prefix at the reserved position, without changing the position of the buffer.
+	 * @param target
+	 * @param prefixPosition position of the first byte of the prefix
+	 * @param messageSize amount of bytes of the message, not including the prefix
+	 */
+	void writeLengthPrefix(ByteBuffer target, int prefixPosition, int messageSize);
+	
+	/**
+	 * Reads the length prefix written by {@link #writeLengthPrefix(ByteBuffer, int, int)}, without changing the position of the buffer.
+	 * @param source
+	 * @param prefixPosition position of the first byte of the prefix
+	 * @return amount of bytes of the message, not including the prefix
+	 */
+	int readLengthPrefix(ByteBuffer source, int prefixPosition);
+	
+	@Override
+	default FrameDecoder newFrameDecoder(Iso8583Config isoConfig) {
+		return new LengthPrefixFrameDecoder(this, (isoConfig != null) ? isoConfig.getMaxFrameSize() : Iso8583RuntimeConfig.DEFAULT_MAX_FRAME_SIZE);
+	}
+	
+	/**
+	 * The room of the length prefix is reserved first and back-patched once the message has been written.
+	 */
+	@Override
+	default int encode(MessagePlan plan, MessageVO messageVO, ByteBuffer target) {
+		final int prefixPosition = target.position();
+		final int prefixSize = getLengthPrefixSize();
+		if (target.remaining() < prefixSize)
+			throw new BufferOverflowException();
+		
+		target.position(prefixPosition + prefixSize);
+		final int messageSize = plan.encode(messageVO, target);
+		writeLengthPrefix(target, prefixPosition, messageSize);
+		
+		return prefixSize + messageSize;
+	}
+}
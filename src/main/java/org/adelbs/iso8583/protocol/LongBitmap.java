@@ -0,0 +1,353 @@
+package org.adelbs.iso8583.protocol;
+
+import java.nio.BufferOverflowException;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+
+import org.adelbs.iso8583.constants.EncodingEnum;
+import org.adelbs.iso8583.exception.OutOfBoundsException;
+import org.adelbs.iso8583.util.EbcdicTable;
+import org.adelbs.iso8583.util.HexCodec;
+
+/**
+ * Primitive representation of the ISO8583 bitmaps (primary, secondary and tertiary), backed by three longs.
+ *
+ * Bits are numbered from 1 to {@link #MAX_BITS}, as in the ISO specification. Bit 1 indicates the presence of
+ * the secondary bitmap and bit 65 the presence of the tertiary one (see {@link #updateExtensionBits()}).
+ *
+ * Internally the first bit of each bitmap is kept at the lowest position of its long, so the present bits can be
+ * iterated with {@link Long#numberOfTrailingZeros(long)}. {@link #getWord(int)} returns the bitmap in wire order.
+ */
+public final class LongBitmap {
+
+	public static final int MAX_BITS = 192;
+	public static final int MAX_WORDS = 3;
+
+	private final long[] words = new long[MAX_WORDS];
+	private int maxWords = MAX_WORDS;
+
+	public LongBitmap() {
+	}
+
+	public void set(final int bit) {
+		checkBit(bit);
+		words[(bit - 1) >>> 6] |= 1L << ((bit - 1) & 63);
+	}
+
+	public void clear(final int bit) {
+		checkBit(bit);
+		words[(bit - 1) >>> 6] &= ~(1L << ((bit - 1) & 63));
+	}
+
+	public boolean isSet(final int bit) {
+		return bit > 0 && bit <= MAX_BITS && (words[(bit - 1) >>> 6] & (1L << ((bit - 1) & 63))) != 0;
+	}
+
+	/**
+	 * Finds the next present bit, starting at (and including) <i>fromBit</i>. A typical iteration is:
+	 * <pre>
+	 * for (int bit = bitmap.nextSetBit(2); bit != -1; bit = bitmap.nextSetBit(bit + 1)) { ... }
+	 * </pre>
+	 * @param fromBit first bit to check
+	 * @return the number of the next present bit, or -1 case there is no more bits
+	 */
+	public int nextSetBit(final int fromBit) {
+		if (fromBit > MAX_BITS)
+			return -1;
+
+		final int from = (fromBit < 1) ? 0 : fromBit - 1;
+		int index = from >>> 6;
+		long word = words[index] & (-1L << (from & 63));
+
+		while (true) {
+			if (word != 0)
+				return (index << 6) + Long.numberOfTrailingZeros(word) + 1;
+			if (++index == MAX_WORDS)
+				return -1;
+			word = words[index];
+		}
+	}
+
+	/**
+	 * @return the highest present bit, or 0 case the bitmap is empty
+	 */
+	public int getLastBit() {
+		for (int index = MAX_WORDS - 1; index >= 0; index--) {
+			if (words[index] != 0)
+				return (index << 6) + 64 - Long.numberOfLeadingZeros(words[index]);
+		}
+		return 0;
+	}
+
+	public boolean isEmpty() {
+		return words[0] == 0 && words[1] == 0 && words[2] == 0;
+	}
+
+	/**
+	 * Sets (or clears) bits 1 and 65 according to the presence of bits at the secondary and tertiary bitmaps.
+	 */
+	public void updateExtensionBits() {
+		if (maxWords > 2 && words[2] != 0)
+			words[1] |= 1L;
+		else
+			words[1] &= ~1L;
+
+		if (words[1] != 0)
+			words[0] |= 1L;
+		else
+			words[0] &= ~1L;
+	}
+
+	/**
+	 * @return the amount of bitmaps (1, 2 or 3) that are part of the payload, according to bits 1 and 65
+	 */
+	public int getWordCount() {
+		if (maxWords == 1 || (words[0] & 1L) == 0)
+			return 1;
+		return (maxWords == 2 || (words[1] & 1L) == 0) ? 2 : 3;
+	}
+
+	/**
+	 * Limits the amount of bitmaps of the payload. When limited to 2, bit 65 is a regular field instead of
+	 * the indicator of the tertiary bitmap.
+	 * @param maxWords 1 to {@link #MAX_WORDS}
+	 */
+	public void setMaxWords(final int maxWords) {
+		if (maxWords < 1 || maxWords > MAX_WORDS)
+			throw new IllegalArgumentException("Invalid amount of bitmaps: " + maxWords);
+		this.maxWords = maxWords;
+	}
+
+	/**
+	 * @param index 0 for the primary bitmap, 1 for the secondary and 2 for the tertiary
+	 * @return the bitmap in wire order (the first bit is the most significant one)
+	 */
+	public long getWord(final int index) {
+		return Long.reverse(words[index]);
+	}
+
+	/**
+	 * @param index 0 for the primary bitmap, 1 for the secondary and 2 for the tertiary
+	 * @param word the bitmap in wire order (the first bit is the most significant one)
+	 */
+	public void setWord(final int index, final long word) {
+		words[index] = Long.reverse(word);
+	}
+
+	/**
+	 * @return the bitmap as a string of 0's and 1's, with {@link #getWordCount()} * 64 characters
+	 */
+	public String toBinaryString() {
+		final int length = getWordCount() << 6;
+		final StringBuilder result = new StringBuilder(length);
+		for (int bit = 1; bit <= length; bit++)
+			result.append(isSet(bit) ? '1' : '0');
+		return result.toString();
+	}
+
+	//********** wire formats
+
+	/**
+	 * @param encoding bitmap encoding
+	 * @return the amount of bytes of a single bitmap (64 bits) at the payload
+	 */
+	public static int getWordByteLength(final EncodingEnum encoding) {
+		return encoding.getMinBitmapSize();
+	}
+
+	/**
+	 * @param encoding bitmap encoding
+	 * @return the amount of bytes of all bitmaps ({@link #getWordCount()}) at the payload
+	 */
+	public int getByteLength(final EncodingEnum encoding) {
+		return getWordCount() * getWordByteLength(encoding);
+	}
+
+	/**
+	 * Reads the bitmaps from the payload. The secondary (and tertiary) bitmaps are read only when indicated
+	 * by bits 1 (and 65), up to <i>maxWords</i> bitmaps.
+	 *
+	 * @param encoding bitmap encoding
+	 * @param payload
+	 * @param offset position of the first byte of the primary bitmap
+	 * @param maxWords maximum amount of bitmaps to be read (1 to {@link #MAX_WORDS})
+	 * @return the bitmap
+	 * @throws OutOfBoundsException case the payload doesn't have all bytes of the bitmaps
+	 */
+	public static LongBitmap read(final EncodingEnum encoding, final byte[] payload, final int offset, final int maxWords) throws OutOfBoundsException {
+		final LongBitmap bitmap = new LongBitmap();
+		bitmap.setMaxWords(maxWords);
+		final int wordLength = getWordByteLength(encoding);
+
+		int index = 0;
+		do {
+			if (payload.length < offset + ((index + 1) * wordLength))
+				throw new OutOfBoundsException();
+
+			bitmap.setWord(index, readWord(encoding, payload, offset + (index * wordLength)));
+			index++;
+		}
+		while (index < maxWords && (bitmap.words[index - 1] & 1L) != 0);
+
+		return bitmap;
+	}
+
+	/**
+	 * Writes the bitmaps ({@link #getWordCount()}) into the buffer.
+	 * @param encoding bitmap encoding
+	 * @param target
+	 * @param offset
+	 * @return the amount of bytes written
+	 */
+	public int write(final EncodingEnum encoding, final byte[] target, final int offset) {
+		final int wordLength = getWordByteLength(encoding);
+		final int wordCount = getWordCount();
+		for (int index = 0; index < wordCount; index++)
+			writeWord(encoding, getWord(index), target, offset + (index * wordLength));
+		return wordCount * wordLength;
+	}
+
+	/**
+	 * Writes the bitmaps ({@link #getWordCount()}) into the buffer, at its current position.
+	 * @param encoding bitmap encoding
+	 * @param target
+	 * @return the amount of bytes written
+	 */
+	public int write(final EncodingEnum encoding, final ByteBuffer target) {
+		final int byteLength = getByteLength(encoding);
+		if (target.remaining() < byteLength)
+			throw new BufferOverflowException();
+
+		if (target.hasArray()) {
+			write(encoding, target.array(), target.arrayOffset() + target.position());
+			target.position(target.position() + byteLength);
+		}
+		else {
+			final byte[] word = new byte[getWordByteLength(encoding)];
+			for (int index = 0; index < getWordCount(); index++) {
+				writeWord(encoding, getWord(index), word, 0);
+				target.put(word);
+			}
+		}
+		return byteLength;
+	}
+
+	/**
+	 * @param encoding bitmap encoding
+	 * @return the bitmaps ({@link #getWordCount()}) as they are sent at the payload
+	 */
+	public byte[] toPayload(final EncodingEnum encoding) {
+		final byte[] result = new byte[getByteLength(encoding)];
+		write(encoding, result, 0);
+		return result;
+	}
+
+	/**
+	 * @param encoding bitmap encoding
+	 * @param index bitmap index (0 for the primary)
+	 * @return a single bitmap as it is sent at the payload
+	 */
+	public byte[] toPayload(final EncodingEnum encoding, final int index) {
+		final byte[] result = new byte[getWordByteLength(encoding)];
+		writeWord(encoding, getWord(index), result, 0);
+		return result;
+	}
+
+	/**
+	 * Converts a single bitmap (64 bits) from its payload representation.
+	 * @return the bitmap in wire order
+	 */
+	public static long readWord(final EncodingEnum encoding, final byte[] payload, final int offset) {
+		long word = 0;
+
+		switch (encoding) {
+			case BINARY:
+			case BCD:
+				for (int i = 0; i < 8; i++)
+					word = (word << 8) | (payload[offset + i] & 0xFF);
+				break;
+
+			case HEXA:
+				try {
+					word = HexCodec.readLong(payload, offset);
+				}
+				catch (NumberFormatException x) {
+					throw new IllegalArgumentException("Invalid hexadecimal digit at the bitmap", x);
+				}
+				break;
+
+			case EBCDIC:
+				try {
+					word = EbcdicTable.readHexLong(payload, offset);
+				}
+				catch (NumberFormatException x) {
+					throw new IllegalArgumentException("Invalid hexadecimal digit at the bitmap", x);
+				}
+				break;
+
+			case BASE64:
+				//Each hexadecimal digit is encoded separately, 4 bytes each
+				for (int i = 0; i < 16; i++) {
+					final String nibble = encoding.convert(Arrays.copyOfRange(payload, offset + (i << 2), offset + (i << 2) + 4));
+					word = (word << 4) | hexValue(nibble.charAt(0));
+				}
+				break;
+
+			default:
+				for (int i = 0; i < 64; i++)
+					word = (word << 1) | (payload[offset + i] == '1' ? 1 : 0);
+		}
+
+		return word;
+	}
+
+	/**
+	 * Converts a single bitmap (64 bits, wire order) to its payload representation.
+	 */
+	public static void writeWord(final EncodingEnum encoding, final long word, final byte[] target, final int offset) {
+		switch (encoding) {
+			case BINARY:
+			case BCD:
+				for (int i = 0; i < 8; i++)
+					target[offset + i] = (byte) (word >>> (56 - (i << 3)));
+				break;
+
+			case HEXA:
+				HexCodec.writeLong(word, target, offset);
+				break;
+
+			case EBCDIC:
+				EbcdicTable.writeHexLong(word, target, offset);
+				break;
+
+			case BASE64:
+				//Each hexadecimal digit is encoded separately, 4 bytes each
+				for (int i = 0; i < 16; i++) {
+					final byte[] nibble = encoding.convert(String.valueOf((char) HexCodec.digit((int) (word >>> (60 - (i << 2))))));
+					System.arraycopy(nibble, 0, target, offset + (i << 2), 4);
+				}
+				break;
+
+			default:
+				for (int i = 0; i < 64; i++)
+					target[offset + i] = (byte) (((word >>> (63 - i)) & 1L) != 0 ? '1' : '0');
+		}
+	}
+
+	private static int hexValue(final char digit) {
+		final int value = HexCodec.value(digit);
+		if (value >= 0)
+			return value;
+		throw new IllegalArgumentException("Invalid hexadecimal digit at the bitmap: " + digit);
+	}
+
+	private static void checkBit(final int bit) {
+		if (bit < 1 || bit > MAX_BITS)
+			throw new IllegalArgumentException("Invalid bit number: " + bit);
+	}
+
+	@Override
+	public String toString() {
+		return toBinaryString();
+	}
+}
@@ -0,0 +1,283 @@
+package org.adelbs.iso8583.protocol;
+
+import java.lang.ref.Reference;
+import java.lang.ref.ReferenceQueue;
+import java.lang.ref.WeakReference;
+import java.nio.BufferOverflowException;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.adelbs.iso8583.constants.EncodingEnum;
+import org.adelbs.iso8583.util.PayloadBuffer;
+import org.adelbs.iso8583.util.PayloadBufferPool;
+import org.adelbs.iso8583.vo.FieldVO;
+import org.adelbs.iso8583.vo.MessageVO;
+
+/**
+ * Immutable codec plan of a {@link MessageVO}. It indexes the field structure by bit number, with
+ * the lengths and encodings already resolved, so parsing and building a message don't need to walk
+ * (or copy) the configuration tree again.
+ *
+ * A plan is thread safe and should be compiled once per message type and reused.
+ */
+public final class MessagePlan {
+
+	public static final int MAX_BITS = 128;
+
+	//Plans of the MessageVOs without one of their own (see of), by identity and while the VO is alive
+	private static final Map<Key, MessagePlan> CACHE = new HashMap<Key, MessagePlan>();
+	private static final ReferenceQueue<MessageVO> COLLECTED = new ReferenceQueue<MessageVO>();
+
+	private final String type;
+	private final EncodingEnum bitmapEncoding;
+	private final EncodingEnum headerEncoding;
+	private final int headerSize;
+
+	private final int headerByteLength;
+	private final int typeByteLength;
+
+	private final FieldPlan[] fields = new FieldPlan[MAX_BITS + 1];
+
+	private MessagePlan(final MessageVO messageVO) {
+		this.type = messageVO.getType();
+		this.bitmapEncoding = messageVO.getBitmatEncoding() == null ? EncodingEnum.UTF8 : messageVO.getBitmatEncoding();
+		this.headerEncoding = messageVO.getHeaderEncoding() == null ? EncodingEnum.UTF8 : messageVO.getHeaderEncoding();
+		this.headerSize = messageVO.getHeaderSize() == null ? 0 : messageVO.getHeaderSize().intValue();
+
+		if (headerEncoding == EncodingEnum.BINARY || headerEncoding == EncodingEnum.BCD) {
+			this.headerByteLength = headerSize / 2;
+			this.typeByteLength = 2;
+		}
+		else {
+			this.headerByteLength = headerSize;
+			this.typeByteLength = 4;
+		}
+
+		//When more than one field shares the same bit (dynamic conditions), the first one wins
+		for (FieldVO fieldVO : messageVO.getFieldList()) {
+			final int bitNum = fieldVO.getBitNum() == null ? 0 : fieldVO.getBitNum().intValue();
+			if (bitNum > 0 && bitNum <= MAX_BITS && fields[bitNum] == null)
+				fields[bitNum] = new FieldPlan(fieldVO);
+		}
+	}
+
+	/**
+	 * Compiles the structure of the {@link MessageVO} (fields and sub-fields) into a new plan.
+	 * Values of the message are ignored.
+	 *
+	 * @param messageVO message structure
+	 * @return the compiled plan
+	 */
+	public static MessagePlan compile(final MessageVO messageVO) {
+		return new MessagePlan(messageVO);
+	}
+
+	/**
+	 * Plan of the {@link MessageVO}, compiled at the first call for that very instance and reused by the next ones,
+	 * while the VO is alive. The structure of the VO must not change after that (values may).
+	 * Code that has an {@link org.adelbs.iso8583.helper.Iso8583RuntimeConfig} should take the plan from it instead.
+	 *
+	 * @param messageVO message structure
+	 * @return the plan, shared
+	 */
+	public static MessagePlan of(final MessageVO messageVO) {
+		synchronized (CACHE) {
+			Reference<? extends MessageVO> collected;
+			while ((collected = COLLECTED.poll()) != null)
+				CACHE.remove(collected);
+
+			final MessagePlan plan = CACHE.get(new Key(messageVO, null));
+			if (plan != null)
+				return plan;
+		}
+
+		final MessagePlan plan = compile(messageVO);
+		synchronized (CACHE) {
+			CACHE.put(new Key(messageVO, COLLECTED), plan);
+		}
+		return plan;
+	}
+
+	/**
+	 * @param bitNum bit number, starting at 1
+	 * @return the plan of the field for this bit, or null case the bit is not configured
+	 */
+	public FieldPlan getField(final int bitNum) {
+		return (bitNum > 0 && bitNum <= MAX_BITS) ? fields[bitNum] : null;
+	}
+
+	/**
+	 * Builds the payload (header, message type, bitmaps and present fields) from the values of the {@link MessageVO}.
+	 *
+	 * @param messageVO message holding the values, with the same structure this plan was compiled from
+	 * @return the payload of the message
+	 */
+	public byte[] encode(final MessageVO messageVO) {
+		//The work buffer is reused by the thread, only the resulting payload is allocated
+		final PayloadBuffer buffer = PayloadBufferPool.DEFAULT.acquire();
+		try {
+			while (true) {
+				final ByteBuffer target = buffer.writableBuffer();
+				try {
+					encode(messageVO, target);
+					buffer.setLength(target.position());
+					return buffer.toByteArray();
+				}
+				catch (BufferOverflowException x) {
+					buffer.ensureCapacity(buffer.capacity() * 2);
+				}
+			}
+		}
+		finally {
+			PayloadBufferPool.DEFAULT.release(buffer);
+		}
+	}
+
+	/**
+	 * Writes the payload (header, message type, bitmaps and present fields) straight into the buffer, starting at its
+	 * current position. The buffer may be reused between messages, heap or direct.
+	 *
+	 * When more than one present field shares the same bit, the last one is written.
+	 *
+	 * @param messageVO message holding the values, with the same structure this plan was compiled from
+	 * @param target buffer that receives the payload
+	 * @return the amount of bytes written
+	 * @throws BufferOverflowException case the buffer has no room for the whole message. The position is undefined then.
+	 */
+	public int encode(final MessageVO messageVO, final ByteBuffer target) {
+		final int startPosition = target.position();
+
+		if (messageVO.getHeader() != null)
+			target.put(headerEncoding.convert(messageVO.getHeader()));
+		target.put(headerEncoding.convert(type));
+
+		final List<FieldVO> fieldList = messageVO.getFieldList();
+		final LongBitmap bits = new LongBitmap();
+		bits.setMaxWords(2);
+
+		//Fields are usually configured in ascending order, so they may be written as they come
+		boolean sorted = true;
+		int lastBit = 0;
+		for (int i = 0; i < fieldList.size(); i++) {
+			final int bitNum = getPresentBit(fieldList.get(i));
+			if (bitNum > 0) {
+				sorted = sorted && bitNum > lastBit;
+				lastBit = bitNum;
+				bits.set(bitNum);
+			}
+		}
+		bits.updateExtensionBits();
+		bits.write(bitmapEncoding, target);
+
+		if (sorted) {
+			for (int i = 0; i < fieldList.size(); i++) {
+				final FieldVO fieldVO = fieldList.get(i);
+				final int bitNum = getPresentBit(fieldVO);
+				if (bitNum > 0)
+					encodeField(bitNum, fieldVO, target);
+			}
+		}
+		else {
+			for (int bit = bits.nextSetBit(2); bit != -1; bit = bits.nextSetBit(bit + 1)) {
+				for (int i = fieldList.size() - 1; i >= 0; i--) {
+					if (getPresentBit(fieldList.get(i)) == bit) {
+						encodeField(bit, fieldList.get(i), target);
+						break;
+					}
+				}
+			}
+		}
+
+		return target.position() - startPosition;
+	}
+
+	private void encodeField(final int bitNum, final FieldVO fieldVO, final ByteBuffer target) {
+		if (fields[bitNum] != null)
+			fields[bitNum].encode(fieldVO, target);
+		else if (fieldVO.getPayloadValue() != null)
+			target.put(fieldVO.getPayloadValue());
+	}
+
+	/**
+	 * @return the bit of the field, or 0 case it is not present or out of the bitmap
+	 */
+	private static int getPresentBit(final FieldVO fieldVO) {
+		if (!fieldVO.isPresent() || fieldVO.getBitNum() == null)
+			return 0;
+		final int bitNum = fieldVO.getBitNum().intValue();
+		return (bitNum > 1 && bitNum <= MAX_BITS) ? bitNum : 0;
+	}
+
+	/**
+	 * @return a new {@link MessageVO} with the message attributes of this plan and no fields.
+	 */
+	public MessageVO newMessageVO() {
+		final MessageVO messageVO = new MessageVO(type, bitmapEncoding);
+		messageVO.setFieldList(new ArrayList<FieldVO>());
+		messageVO.setHeaderEncoding(headerEncoding);
+		messageVO.setHeaderSize(headerSize);
+		return messageVO;
+	}
+
+	public String getType() {
+		return type;
+	}
+
+	public EncodingEnum getBitmapEncoding() {
+		return bitmapEncoding;
+	}
+
+	public EncodingEnum getHeaderEncoding() {
+		return headerEncoding;
+	}
+
+	public int getHeaderSize() {
+		return headerSize;
+	}
+
+	/**
+	 * @return amount of bytes of the header at the payload
+	 */
+	public int getHeaderByteLength() {
+		return headerByteLength;
+	}
+
+	/**
+	 * @return amount of bytes of the message type (MTI) at the payload
+	 */
+	public int getTypeByteLength() {
+		return typeByteLength;
+	}
+
+	/**
+	 * Weak reference to a {@link MessageVO}, equal to the ones of the same instance.
+	 */
+	private static final class Key extends WeakReference<MessageVO> {
+
+		private final int hash;
+
+		Key(final MessageVO messageVO, final ReferenceQueue<MessageVO> queue) {
+			super(messageVO, queue);
+			this.hash = System.identityHashCode(messageVO);
+		}
+
+		@Override
+		public int hashCode() {
+			return hash;
+		}
+
+		@Override
+		public boolean equals(final Object obj) {
+			if (this == obj)
+				return true;
+			if (!(obj instanceof Key))
+				return false;
+
+			final MessageVO messageVO = get();
+			return messageVO != null && messageVO == ((Key) obj).get();
+		}
+	}
+}
@@ -0,0 +1,253 @@
+package org.adelbs.iso8583.util;
+
+import java.nio.BufferOverflowException;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+
+/**
+ * Packed BCD codec: two decimal digits per byte, the first digit at the high nibble.
+ *
+ * When the amount of nibbles is odd, a pad nibble completes the last byte. Right justified values (the usual
+ * numeric fields) are padded at the beginning, left justified ones at the end. Signed values (packed decimal)
+ * carry the sign at the last nibble: C for positive, D for negative and F for unsigned.
+ *
+ * All conversions are done in a single pass, straight into the target array. Instances are immutable.
+ */
+public final class BcdCodec {
+
+	/**
+	 * Right justified, padded with 0 at the beginning
+	 */
+	public static final BcdCodec RIGHT_JUSTIFIED = new BcdCodec(false, 0x0, false);
+
+	/**
+	 * Left justified, padded with F at the end
+	 */
+	public static final BcdCodec LEFT_JUSTIFIED = new BcdCodec(true, 0xF, false);
+
+	/**
+	 * Packed decimal (COBOL COMP-3): right justified with the sign at the last nibble
+	 */
+	public static final BcdCodec SIGNED = new BcdCodec(false, 0x0, true);
+
+	private static final int SIGN_POSITIVE = 0xC;
+	private static final int SIGN_NEGATIVE = 0xD;
+	private static final int SIGN_UNSIGNED = 0xF;
+
+	private static final char[] DIGITS = {'0', '1', '2', '3', '4', '5', '6', '7', '8', '9'};
+
+	private final boolean leftJustified;
+	private final int padNibble;
+	private final boolean signed;
+
+	/**
+	 * @param leftJustified true to pad at the end, false to pad at the beginning
+	 * @param padNibble value of the pad nibble (0x0 to 0xF)
+	 * @param signed true case the last nibble holds the sign
+	 */
+	public BcdCodec(final boolean leftJustified, final int padNibble, final boolean signed) {
+		if (padNibble < 0 || padNibble > 0xF)
+			throw new IllegalArgumentException("Invalid pad nibble: " + padNibble);
+		if (signed && leftJustified)
+			throw new IllegalArgumentException("Signed values must be right justified");
+
+		this.leftJustified = leftJustified;
+		this.padNibble = padNibble;
+		this.signed = signed;
+	}
+
+	/**
+	 * @param digits amount of digits of the value (the sign not included)
+	 * @return amount of bytes of the encoded value
+	 */
+	public int getByteLength(final int digits) {
+		return (digits + (signed ? 1 : 0) + 1) / 2;
+	}
+
+	/**
+	 * @param value the digits, optionally preceded by a '+' or '-' sign when this codec is signed
+	 * @return the value packed in a new array
+	 * @throws NumberFormatException case the value has anything but digits
+	 */
+	public byte[] encode(final CharSequence value) {
+		final int start = signStart(value);
+		final byte[] result = new byte[getByteLength(value.length() - start)];
+		encode(value, result, 0);
+		return result;
+	}
+
+	/**
+	 * Packs the value into the target.
+	 *
+	 * @param value the digits, optionally preceded by a '+' or '-' sign when this codec is signed
+	 * @param target array to receive the bytes
+	 * @param offset position of the first byte at the target
+	 * @return amount of bytes written
+	 * @throws NumberFormatException case the value has anything but digits
+	 */
+	public int encode(final CharSequence value, final byte[] target, final int offset) {
+		final int start = signStart(value);
+		final int digits = value.length() - start;
+		final int byteLength = getByteLength(digits);
+		final int nibbles = digits + (signed ? 1 : 0);
+		final boolean padded = (nibbles & 1) != 0;
+
+		Arrays.fill(target, offset, offset + byteLength, (byte) 0);
+
+		//Position of the first digit, counted in nibbles from the beginning of the target
+		int nibble = (padded && !leftJustified) ? 1 : 0;
+		if (nibble == 1)
+			putNibble(target, offset, 0, padNibble);
+
+		for (int i = start; i < value.length(); i++, nibble++)
+			putNibble(target, offset, nibble, digit(value.charAt(i)));
+
+		if (signed)
+			putNibble(target, offset, nibble, (start == 0) ? SIGN_UNSIGNED : (value.charAt(0) == '-' ? SIGN_NEGATIVE : SIGN_POSITIVE));
+		else if (padded && leftJustified)
+			putNibble(target, offset, nibble, padNibble);
+
+		return byteLength;
+	}
+
+	/**
+	 * Packs the value into the target, starting at its current position.
+	 *
+	 * @return amount of bytes written
+	 * @throws BufferOverflowException case the target has no room for the value
+	 * @throws NumberFormatException case the value has anything but digits
+	 */
+	public int encode(final CharSequence value, final ByteBuffer target) {
+		final int byteLength = getByteLength(value.length() - signStart(value));
+		if (target.remaining() < byteLength)
+			throw new BufferOverflowException();
+
+		if (target.hasArray())
+			encode(value, target.array(), target.arrayOffset() + target.position());
+		else
+			target.duplicate().put(encode(value));
+
+		target.position(target.position() + byteLength);
+		return byteLength;
+	}
+
+	/**
+	 * Packs the number, left padded with zeros up to the amount of digits. Negative numbers need a signed codec.
+	 *
+	 * @return amount of bytes written
+	 * @throws IllegalArgumentException case the number is negative (and this codec unsigned) or does not fit
+	 */
+	public int encode(final long value, final int digits, final byte[] target, final int offset) {
+		if (value < 0 && !signed)
+			throw new IllegalArgumentException("Negative value for an unsigned BCD field: " + value);
+
+		final int byteLength = getByteLength(digits);
+		final int nibbles = digits + (signed ? 1 : 0);
+		final int firstDigit = firstDigit(digits);
+		Arrays.fill(target, offset, offset + byteLength, (byte) 0);
+
+		//Filled from the last digit backwards
+		long remaining = Math.abs(value);
+		int nibble = firstDigit + digits - 1;
+		if (signed)
+			putNibble(target, offset, nibble + 1, (value < 0) ? SIGN_NEGATIVE : SIGN_POSITIVE);
+		else if (firstDigit == 0 && (nibbles & 1) != 0)
+			putNibble(target, offset, nibble + 1, padNibble);
+
+		for (; nibble >= firstDigit; nibble--) {
+			putNibble(target, offset, nibble, (int) (remaining % 10));
+			remaining /= 10;
+		}
+		if (remaining != 0)
+			throw new IllegalArgumentException("Value " + value + " does not fit in " + digits + " digits");
+
+		if (firstDigit == 1)
+			putNibble(target, offset, 0, padNibble);
+
+		return byteLength;
+	}
+
+	/**
+	 * @param source packed value
+	 * @param offset position of the first byte
+	 * @param digits amount of digits of the value (the sign not included)
+	 * @return the digits, preceded by '-' case the value is signed and negative
+	 * @throws NumberFormatException case a nibble is not a decimal digit
+	 */
+	public String decode(final byte[] source, final int offset, final int digits) {
+		final StringBuilder result = new StringBuilder(digits + 1);
+		decode(source, offset, digits, result);
+		return result.toString();
+	}
+
+	/**
+	 * Same as {@link #decode(byte[], int, int)}, appending the result to the target.
+	 */
+	public void decode(final byte[] source, final int offset, final int digits, final StringBuilder target) {
+		final int firstDigit = firstDigit(digits);
+		if (signed && isNegative(nibble(source, offset, firstDigit + digits)))
+			target.append('-');
+
+		for (int i = 0; i < digits; i++)
+			target.append(DIGITS[checkDigit(nibble(source, offset, firstDigit + i))]);
+	}
+
+	/**
+	 * Parses the packed value straight to a long, without creating a String.
+	 *
+	 * @param source packed value
+	 * @param offset position of the first byte
+	 * @param digits amount of digits of the value (up to 18, the sign not included)
+	 * @return the value, negative case it is signed and so marked
+	 * @throws NumberFormatException case a nibble is not a decimal digit
+	 */
+	public long parseLong(final byte[] source, final int offset, final int digits) {
+		if (digits > 18)
+			throw new NumberFormatException("Too many digits for a long: " + digits);
+
+		final int firstDigit = firstDigit(digits);
+		long result = 0;
+		for (int i = 0; i < digits; i++)
+			result = (result * 10) + checkDigit(nibble(source, offset, firstDigit + i));
+
+		return (signed && isNegative(nibble(source, offset, firstDigit + digits))) ? -result : result;
+	}
+
+	private int firstDigit(final int digits) {
+		final int nibbles = digits + (signed ? 1 : 0);
+		return ((nibbles & 1) != 0 && !leftJustified) ? 1 : 0;
+	}
+
+	private int signStart(final CharSequence value) {
+		return (signed && value.length() > 0 && (value.charAt(0) == '-' || value.charAt(0) == '+')) ? 1 : 0;
+	}
+
+	private static boolean isNegative(final int sign) {
+		return sign == SIGN_NEGATIVE || sign == 0xB;
+	}
+
+	private static int digit(final char value) {
+		if (value < '0' || value > '9')
+			throw new NumberFormatException("Invalid BCD digit: " + value);
+		return value - '0';
+	}
+
+	private static int checkDigit(final int nibble) {
+		if (nibble > 9)
+			throw new NumberFormatException("Invalid BCD nibble: 0x" + Integer.toHexString(nibble).toUpperCase());
+		return nibble;
+	}
+
+	private static int nibble(final byte[] source, final int offset, final int index) {
+		final int value = source[offset + (index >> 1)];
+		return ((index & 1) == 0) ? (value >> 4) & 0x0F : value & 0x0F;
+	}
+
+	private static void putNibble(final byte[] target, final int offset, final int index, final int nibble) {
+		final int position = offset + (index >> 1);
+		if ((index & 1) == 0)
+			target[position] = (byte) ((target[position] & 0x0F) | (nibble << 4));
+		else
+			target[position] = (byte) ((target[position] & 0xF0) | nibble);
+	}
+}
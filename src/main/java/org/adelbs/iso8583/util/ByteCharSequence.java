@@ -0,0 +1,73 @@
+package org.adelbs.iso8583.util;
+
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Read-only {@link CharSequence} view over a range of bytes, one char per byte (ISO 8859-1).
+ * No bytes are copied until {@link #toString()} is called, so the backing array must not be changed
+ * while the view is in use.
+ */
+public final class ByteCharSequence implements CharSequence {
+
+	private final byte[] bytes;
+	private final int offset;
+	private final int length;
+
+	public ByteCharSequence(final byte[] bytes, final int offset, final int length) {
+		if (offset < 0 || length < 0 || offset + length > bytes.length)
+			throw new IndexOutOfBoundsException("offset: " + offset + ", length: " + length);
+
+		this.bytes = bytes;
+		this.offset = offset;
+		this.length = length;
+	}
+
+	/**
+	 * @return true if all bytes of the range are 7 bits ASCII characters, so they can be viewed
+	 * as chars of any ASCII compatible charset (UTF-8 included)
+	 */
+	public static boolean isAscii(final byte[] bytes, final int offset, final int length) {
+		for (int i = offset; i < offset + length; i++) {
+			if (bytes[i] < 0)
+				return false;
+		}
+		return true;
+	}
+
+	@Override
+	public int length() {
+		return length;
+	}
+
+	@Override
+	public char charAt(final int index) {
+		if (index < 0 || index >= length)
+			throw new IndexOutOfBoundsException("index: " + index);
+		return (char) (bytes[offset + index] & 0xFF);
+	}
+
+	@Override
+	public CharSequence subSequence(final int start, final int end) {
+		if (start < 0 || end > length || start > end)
+			throw new IndexOutOfBoundsException("start: " + start + ", end: " + end);
+		return new ByteCharSequence(bytes, offset + start, end - start);
+	}
+
+	/**
+	 * @return true if this view has exactly the same chars of the given sequence
+	 */
+	public boolean contentEquals(final CharSequence value) {
+		if (value == null || value.length() != length)
+			return false;
+		for (int i = 0; i < length; i++) {
+			if (value.charAt(i) != (char) (bytes[offset + i] & 0xFF))
+				return false;
+		}
+		return true;
+	}
+
+	@Override
+	public String toString() {
+		return new String(bytes, offset, length, StandardCharsets.ISO_8859_1);
+	}
+}
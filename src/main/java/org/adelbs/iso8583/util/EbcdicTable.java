@@ -0,0 +1,144 @@
+package org.adelbs.iso8583.util;
+
+import java.util.Arrays;
+
+/**
+ * Table driven translation between EBCDIC (code page 1047) and Latin-1.
+ *
+ * Cp1047 maps its 256 codes one to one into the first 256 Unicode characters, so each direction is a single
+ * array lookup per byte, with no {@link java.nio.charset.Charset} involved. Characters outside Latin-1 are
+ * written as SUB (0x3F), as the JDK encoder does.
+ */
+public final class EbcdicTable {
+
+	/**
+	 * EBCDIC substitute character, used for characters that can not be represented
+	 */
+	public static final byte SUB = 0x3F;
+
+	private static final char[] TO_CHAR = {
+		0x00, 0x01, 0x02, 0x03, 0x9C, 0x09, 0x86, 0x7F, 0x97, 0x8D, 0x8E, 0x0B, 0x0C, 0x0D, 0x0E, 0x0F,
+		0x10, 0x11, 0x12, 0x13, 0x9D, 0x0A, 0x08, 0x87, 0x18, 0x19, 0x92, 0x8F, 0x1C, 0x1D, 0x1E, 0x1F,
+		0x80, 0x81, 0x82, 0x83, 0x84, 0x85, 0x17, 0x1B, 0x88, 0x89, 0x8A, 0x8B, 0x8C, 0x05, 0x06, 0x07,
+		0x90, 0x91, 0x16, 0x93, 0x94, 0x95, 0x96, 0x04, 0x98, 0x99, 0x9A, 0x9B, 0x14, 0x15, 0x9E, 0x1A,
+		0x20, 0xA0, 0xE2, 0xE4, 0xE0, 0xE1, 0xE3, 0xE5, 0xE7, 0xF1, 0xA2, 0x2E, 0x3C, 0x28, 0x2B, 0x7C,
+		0x26, 0xE9, 0xEA, 0xEB, 0xE8, 0xED, 0xEE, 0xEF, 0xEC, 0xDF, 0x21, 0x24, 0x2A, 0x29, 0x3B, 0x5E,
+		0x2D, 0x2F, 0xC2, 0xC4, 0xC0, 0xC1, 0xC3, 0xC5, 0xC7, 0xD1, 0xA6, 0x2C, 0x25, 0x5F, 0x3E, 0x3F,
+		0xF8, 0xC9, 0xCA, 0xCB, 0xC8, 0xCD, 0xCE, 0xCF, 0xCC, 0x60, 0x3A, 0x23, 0x40, 0x27, 0x3D, 0x22,
+		0xD8, 0x61, 0x62, 0x63, 0x64, 0x65, 0x66, 0x67, 0x68, 0x69, 0xAB, 0xBB, 0xF0, 0xFD, 0xFE, 0xB1,
+		0xB0, 0x6A, 0x6B, 0x6C, 0x6D, 0x6E, 0x6F, 0x70, 0x71, 0x72, 0xAA, 0xBA, 0xE6, 0xB8, 0xC6, 0xA4,
+		0xB5, 0x7E, 0x73, 0x74, 0x75, 0x76, 0x77, 0x78, 0x79, 0x7A, 0xA1, 0xBF, 0xD0, 0x5B, 0xDE, 0xAE,
+		0xAC, 0xA3, 0xA5, 0xB7, 0xA9, 0xA7, 0xB6, 0xBC, 0xBD, 0xBE, 0xDD, 0xA8, 0xAF, 0x5D, 0xB4, 0xD7,
+		0x7B, 0x41, 0x42, 0x43, 0x44, 0x45, 0x46, 0x47, 0x48, 0x49, 0xAD, 0xF4, 0xF6, 0xF2, 0xF3, 0xF5,
+		0x7D, 0x4A, 0x4B, 0x4C, 0x4D, 0x4E, 0x4F, 0x50, 0x51, 0x52, 0xB9, 0xFB, 0xFC, 0xF9, 0xFA, 0xFF,
+		0x5C, 0xF7, 0x53, 0x54, 0x55, 0x56, 0x57, 0x58, 0x59, 0x5A, 0xB2, 0xD4, 0xD6, 0xD2, 0xD3, 0xD5,
+		0x30, 0x31, 0x32, 0x33, 0x34, 0x35, 0x36, 0x37, 0x38, 0x39, 0xB3, 0xDB, 0xDC, 0xD9, 0xDA, 0x9F
+	};
+
+	private static final byte[] TO_EBCDIC = new byte[256];
+
+	//Value of the EBCDIC hexadecimal digits ('0'-'9', 'A'-'F' and 'a'-'f'), -1 for any other byte
+	private static final byte[] HEX_VALUE = new byte[256];
+
+	private static final byte[] HEX_DIGITS = new byte[16];
+
+	static {
+		for (int i = 0; i < 256; i++)
+			TO_EBCDIC[TO_CHAR[i]] = (byte) i;
+
+		Arrays.fill(HEX_VALUE, (byte) -1);
+		for (int i = 0; i < 16; i++) {
+			final char digit = Character.forDigit(i, 16);
+			HEX_VALUE[TO_EBCDIC[digit] & 0xFF] = (byte) i;
+			HEX_VALUE[TO_EBCDIC[Character.toUpperCase(digit)] & 0xFF] = (byte) i;
+			HEX_DIGITS[i] = TO_EBCDIC[Character.toUpperCase(digit)];
+		}
+	}
+
+	private EbcdicTable() {
+	}
+
+	public static char toChar(final byte ebcdic) {
+		return TO_CHAR[ebcdic & 0xFF];
+	}
+
+	public static byte toEbcdic(final char value) {
+		return (value < 256) ? TO_EBCDIC[value] : SUB;
+	}
+
+	/**
+	 * @return the EBCDIC bytes of the range, as a String
+	 */
+	public static String decode(final byte[] source, final int offset, final int length) {
+		final char[] chars = new char[length];
+		for (int i = 0; i < length; i++)
+			chars[i] = TO_CHAR[source[offset + i] & 0xFF];
+		return new String(chars);
+	}
+
+	/**
+	 * @return the value converted to EBCDIC
+	 */
+	public static byte[] encode(final CharSequence value) {
+		final byte[] result = new byte[value.length()];
+		encode(value, result, 0);
+		return result;
+	}
+
+	/**
+	 * Writes the value, converted to EBCDIC, into the target.
+	 * @return amount of bytes written (the length of the value)
+	 */
+	public static int encode(final CharSequence value, final byte[] target, final int offset) {
+		final int length = value.length();
+		for (int i = 0; i < length; i++)
+			target[offset + i] = toEbcdic(value.charAt(i));
+		return length;
+	}
+
+	/**
+	 * Translates a range of EBCDIC bytes to Latin-1. Source and target may be the same array (in place).
+	 */
+	public static void toLatin1(final byte[] source, final int sourceOffset, final byte[] target, final int targetOffset, final int length) {
+		for (int i = 0; i < length; i++)
+			target[targetOffset + i] = (byte) TO_CHAR[source[sourceOffset + i] & 0xFF];
+	}
+
+	/**
+	 * Translates a range of Latin-1 bytes to EBCDIC. Source and target may be the same array (in place).
+	 */
+	public static void toEbcdic(final byte[] source, final int sourceOffset, final byte[] target, final int targetOffset, final int length) {
+		for (int i = 0; i < length; i++)
+			target[targetOffset + i] = TO_EBCDIC[source[sourceOffset + i] & 0xFF];
+	}
+
+	/**
+	 * @return value of the EBCDIC hexadecimal digit, or -1 case the byte is not one
+	 */
+	public static int hexValue(final byte ebcdic) {
+		return HEX_VALUE[ebcdic & 0xFF];
+	}
+
+	/**
+	 * Reads 16 EBCDIC hexadecimal digits (a bitmap) as a long, the first digit being the most significant.
+	 * @throws NumberFormatException case one of the bytes is not a hexadecimal digit
+	 */
+	public static long readHexLong(final byte[] source, final int offset) {
+		long result = 0;
+		for (int i = offset; i < offset + 16; i++) {
+			final int value = HEX_VALUE[source[i] & 0xFF];
+			if (value < 0)
+				throw new NumberFormatException("Invalid EBCDIC hexadecimal digit: 0x" + Integer.toHexString(source[i] & 0xFF));
+			result = (result << 4) | value;
+		}
+		return result;
+	}
+
+	/**
+	 * Writes the long as 16 EBCDIC hexadecimal digits (upper case), the most significant first.
+	 */
+	public static void writeHexLong(final long value, final byte[] target, final int offset) {
+		for (int i = 0; i < 16; i++)
+			target[offset + i] = HEX_DIGITS[(int) (value >>> (60 - (i << 2))) & 0x0F];
+	}
+}
@@ -1,11 +1,43 @@
 package org.adelbs.iso8583.util;
 
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+
 public interface Encoding {
 
 	String convert(byte[] bytesToConvert);
 	
 	byte[] convert(String strToConvert);
 	
+	/**
+	 * Decodes a range of the source, appending the chars to the target. Same result as {@link #convert(byte[])}
+	 * over a copy of the range, without the copy.
+	 * 
+	 * @param source buffer holding the encoded value
+	 * @param offset position of the first byte of the value
+	 * @param length amount of bytes of the value
+	 * @param target receives the decoded chars
+	 * @throws IllegalArgumentException case the bytes are not valid for this encoding
+	 */
+	default void decode(final byte[] source, final int offset, final int length, final StringBuilder target) {
+		target.append(convert(Arrays.copyOfRange(source, offset, offset + length)));
+	}
+	
+	/**
+	 * Encodes the value straight into the target, starting at its current position. Same bytes as {@link #convert(String)}.
+	 * 
+	 * @param value value to be encoded
+	 * @param target buffer to receive the bytes, its position is moved after the last one
+	 * @return amount of bytes written
+	 * @throws java.nio.BufferOverflowException case the target has no room for the value
+	 * @throws IllegalArgumentException case the value can not be represented by this encoding
+	 */
+	default int encode(final CharSequence value, final ByteBuffer target) {
+		final byte[] bytes = convert(value.toString());
+		target.put(bytes);
+		return bytes.length;
+	}
+	
 	/**
 	 * Some encoding algorithms need more the one byte to represent an ASCII character.
 	 * So its original byte size, after the conversion, may change.
@@ -1,5 +1,6 @@
 package org.adelbs.iso8583.util;
 
+import java.nio.ByteBuffer;
 import java.util.Base64;
 
 /**
@@ -38,6 +39,19 @@ public class EncodingBASE64 implements Encoding {
 		return Base64.getEncoder().encode(strToConvert.getBytes());
 	}
 
+	@Override
+	public void decode(byte[] source, int offset, int length, StringBuilder target) {
+		final ByteBuffer decoded = Base64.getDecoder().decode(ByteBuffer.wrap(source, offset, length));
+		EncodingUTF8.decodeDefault(decoded.array(), decoded.arrayOffset() + decoded.position(), decoded.remaining(), target);
+	}
+
+	@Override
+	public int encode(CharSequence value, ByteBuffer target) {
+		final byte[] encoded = Base64.getEncoder().encode(value.toString().getBytes());
+		target.put(encoded);
+		return encoded.length;
+	}
+
 	@Override
 	public String convertBitmap(byte[] binaryBitmap) {
 		String strByte;
@@ -0,0 +1,35 @@
+package org.adelbs.iso8583.util;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Packed BCD, right justified (see {@link BcdCodec#RIGHT_JUSTIFIED}): two digits per byte, so odd lengths
+ * get a leading zero. Bitmaps are sent as raw bits, as in {@link EncodingBINARY}.
+ */
+public class EncodingBCD extends EncodingBINARY {
+
+	@Override
+	public String convert(byte[] bytesToConvert) {
+		return BcdCodec.RIGHT_JUSTIFIED.decode(bytesToConvert, 0, bytesToConvert.length * 2);
+	}
+
+	@Override
+	public byte[] convert(String strToConvert) {
+		return BcdCodec.RIGHT_JUSTIFIED.encode(strToConvert);
+	}
+
+	@Override
+	public void decode(byte[] source, int offset, int length, StringBuilder target) {
+		BcdCodec.RIGHT_JUSTIFIED.decode(source, offset, length * 2, target);
+	}
+
+	@Override
+	public int encode(CharSequence value, ByteBuffer target) {
+		return BcdCodec.RIGHT_JUSTIFIED.encode(value, target);
+	}
+
+	@Override
+	public int getEncondedByteLength(final int asciiLength) {
+		return BcdCodec.RIGHT_JUSTIFIED.getByteLength(asciiLength);
+	}
+}
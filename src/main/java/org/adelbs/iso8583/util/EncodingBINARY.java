@@ -1,55 +1,68 @@
 package org.adelbs.iso8583.util;
 
+import java.nio.ByteBuffer;
+
+/**
+ * Each byte holds two decimal digits as a binary number (00 to 99). Bitmaps are sent as raw bits.
+ */
 public class EncodingBINARY implements Encoding {
 
 	@Override
 	public String convert(byte[] bytesToConvert) {
-		String result = "";
-		int unitByte;
-		
-		for (int i = 0; i < bytesToConvert.length; i++) {
-			unitByte = bytesToConvert[i];
-			if (unitByte < 10) result = result.concat("0");
-			result = result.concat(String.valueOf(unitByte));
-		}
-		
-		return result;
+		final StringBuilder result = new StringBuilder(bytesToConvert.length * 2);
+		decode(bytesToConvert, 0, bytesToConvert.length, result);
+		return result.toString();
 	}
 
 	@Override
 	public byte[] convert(String strToConvert) {
-		byte[] result = new byte[0];
-		byte unitByte;
-		
-		for (int i = 0; i < strToConvert.length(); i+=2) {
-			unitByte = (byte) Integer.parseInt(strToConvert.substring(i, i + 2));
-			result = ISOUtils.mergeArray(result, new byte[] {unitByte});
-		}
-		
+		final byte[] result = new byte[(strToConvert.length() + 1) / 2];
+		encode(strToConvert, ByteBuffer.wrap(result));
 		return result;
 	}
 
+	@Override
+	public void decode(byte[] source, int offset, int length, StringBuilder target) {
+		for (int i = offset; i < offset + length; i++) {
+			final int unitByte = source[i] & 0xFF;
+			if (unitByte > 99)
+				throw new NumberFormatException("Invalid binary byte, above 99: " + unitByte);
+			if (unitByte < 10) target.append('0');
+			target.append(unitByte);
+		}
+	}
+
+	@Override
+	public int encode(CharSequence value, ByteBuffer target) {
+		final int length = value.length();
+		for (int i = 0; i < length; i += 2) {
+			int unitByte = decimalDigit(value.charAt(i));
+			if (i + 1 < length)
+				unitByte = (unitByte * 10) + decimalDigit(value.charAt(i + 1));
+			target.put((byte) unitByte);
+		}
+		return (length + 1) / 2;
+	}
+
 	@Override
 	public String convertBitmap(byte[] binaryBitmap) {
-		String result = "";
-		AsciiTable table = new AsciiTable();
+		final char[] result = new char[binaryBitmap.length * 8];
 		
-		for (int i = 0; i < binaryBitmap.length; i++) {
-			result += table.findBinaryFromByte(binaryBitmap[i]); 
-		}
+		for (int i = 0; i < result.length; i++)
+			result[i] = ((binaryBitmap[i >> 3] >> (7 - (i & 7))) & 1) != 0 ? '1' : '0';
 		
-		return result;
+		return new String(result);
 	}
 
 	@Override
 	public byte[] convertBitmap(String binaryBitmap) {
-		byte[] data = new byte[0];
-		String byteToFind = "";
-		AsciiTable table = new AsciiTable();
+		final byte[] data = new byte[binaryBitmap.length() / 8];
 		
-		for (int i = 0; i < binaryBitmap.length(); i += 8) {
-			byteToFind = binaryBitmap.substring(i, i + 8);
-			data = ISOUtils.mergeArray(data, new byte[] {table.findByteFromBinary(byteToFind)});
+		for (int i = 0; i < data.length * 8; i++) {
+			final char bit = binaryBitmap.charAt(i);
+			if (bit != '0' && bit != '1')
+				throw new NumberFormatException("Invalid binary digit at the bitmap: " + bit);
+			data[i >> 3] = (byte) ((data[i >> 3] << 1) | (bit - '0'));
 		}
 		
 		return data;
@@ -62,8 +75,12 @@ public class EncodingBINARY implements Encoding {
 	
 	@Override
 	public int getEncondedByteLength(final int asciiLength) {
-		// TODO Auto-generated method stub
 		return asciiLength;
 	}
 
+	private static int decimalDigit(final char digit) {
+		if (digit < '0' || digit > '9')
+			throw new NumberFormatException("Invalid decimal digit: " + digit);
+		return digit - '0';
+	}
 }
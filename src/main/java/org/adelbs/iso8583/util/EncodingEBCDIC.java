@@ -1,58 +1,68 @@
 package org.adelbs.iso8583.util;
 
-import java.io.UnsupportedEncodingException;
+import java.nio.ByteBuffer;
 
+/**
+ * EBCDIC (code page 1047) encoding, translated through {@link EbcdicTable}.
+ * Bitmaps are sent as EBCDIC hexadecimal digits.
+ */
 public class EncodingEBCDIC implements Encoding {
-/*
- * ASCII -> Java:   new String(bytes, "ASCII")
- * EBCDIC -> Java:  new String(bytes, "Cp1047")
- * Java -> ASCII:   string.getBytes("ASCII")
- * Java -> EBCDIC:  string.getBytes("Cp1047")
- * */
 	
 	@Override
 	public String convert(byte[] bytesToConvert) {
-		try {
-			return new String(bytesToConvert, "Cp1047");
-		} 
-		catch (UnsupportedEncodingException e) {
-			e.printStackTrace();
-			return null;
-		}
+		return EbcdicTable.decode(bytesToConvert, 0, bytesToConvert.length);
 	}
 
 	@Override
 	public byte[] convert(String strToConvert) {
-		try {
-			return strToConvert.getBytes("Cp1047");
-		} 
-		catch (UnsupportedEncodingException e) {
-			e.printStackTrace();
-			return null;
-		}
+		return EbcdicTable.encode(strToConvert);
+	}
+
+	@Override
+	public void decode(byte[] source, int offset, int length, StringBuilder target) {
+		target.ensureCapacity(target.length() + length);
+		for (int i = offset; i < offset + length; i++)
+			target.append(EbcdicTable.toChar(source[i]));
+	}
+
+	@Override
+	public int encode(CharSequence value, ByteBuffer target) {
+		final int length = value.length();
+		for (int i = 0; i < length; i++)
+			target.put(EbcdicTable.toEbcdic(value.charAt(i)));
+		return length;
 	}
 
 	@Override
-	//TODO: Check the code
 	public String convertBitmap(byte[] binaryBitmap) {
-		String strByte;
-		String result = "";
+		final char[] result = new char[binaryBitmap.length * 4];
 		
-		for (byte bt : binaryBitmap) {
-			strByte = convert(new byte[]{bt});
-			result = result.concat(ISOUtils.hexToBin(strByte));
+		for (int i = 0; i < binaryBitmap.length; i++) {
+			final int value = EbcdicTable.hexValue(binaryBitmap[i]);
+			if (value < 0)
+				throw new NumberFormatException("Invalid EBCDIC hexadecimal digit: 0x" + Integer.toHexString(binaryBitmap[i] & 0xFF));
+			
+			for (int bit = 0; bit < 4; bit++)
+				result[(i * 4) + bit] = ((value >>> (3 - bit)) & 1) != 0 ? '1' : '0';
 		}
 		
-		return result;
+		return new String(result);
 	}
 
 	@Override
-	//TODO: This code is not validated under the requirements of an ISO bitmap
 	public byte[] convertBitmap(String binaryBitmap) {
-		byte[] result = new byte[]{};
+		final int digits = Math.min(64, binaryBitmap.length()) / 4;
+		final byte[] result = new byte[digits];
 
-		for (int i = 4; (i <= 64 && i <= binaryBitmap.length()); i = i + 4) {
-			result = ISOUtils.mergeArray(result, convert(ISOUtils.binToHex(binaryBitmap.substring((i - 4), i))));
+		for (int i = 0; i < digits; i++) {
+			int value = 0;
+			for (int bit = 0; bit < 4; bit++) {
+				final char current = binaryBitmap.charAt((i * 4) + bit);
+				if (current != '0' && current != '1')
+					throw new NumberFormatException("Invalid binary digit at the bitmap: " + current);
+				value = (value << 1) | (current - '0');
+			}
+			result[i] = EbcdicTable.toEbcdic(Character.toUpperCase(Character.forDigit(value, 16)));
 		}
 
 		return result;
@@ -1,47 +1,41 @@
 package org.adelbs.iso8583.util;
 
+import java.nio.ByteBuffer;
+
+/**
+ * Values are sent as they are (one byte per char). Bitmaps are sent as 16 hexadecimal digits,
+ * converted through {@link HexCodec}.
+ */
 public class EncodingHEXA implements Encoding {
 
     @Override
     public String convert(byte[] bytesToConvert) {
-        try {
-            return new String(bytesToConvert);
-        } 
-        catch (Exception e) {
-            e.printStackTrace();
-            return null;
-        }
+        return new String(bytesToConvert);
     }
 
     @Override
     public byte[] convert(String strToConvert) {
-        try {
-            String hexStr = String.format("%1x", new java.math.BigInteger(1, strToConvert.getBytes()));
+        return strToConvert.getBytes();
+    }
+
+    @Override
+    public void decode(byte[] source, int offset, int length, StringBuilder target) {
+        EncodingUTF8.decodeDefault(source, offset, length, target);
+    }
 
-            int len = hexStr.length();
-            byte[] data = new byte[len / 2];
-            for (int i = 0; i < len; i += 2) {
-                data[i / 2] = (byte) ((Character.digit(hexStr.charAt(i), 16) << 4)
-                             + Character.digit(hexStr.charAt(i+1), 16));
-            }
-            return data;
-        } 
-        catch (Exception e) {
-            e.printStackTrace();
-            return null;
-        }
+    @Override
+    public int encode(CharSequence value, ByteBuffer target) {
+        return EncodingUTF8.encodeDefault(value, target);
     }
 
     @Override
     public String convertBitmap(byte[] binaryBitmap) {
-        String tempBM = new String(binaryBitmap);
-        tempBM = ISOUtils.hexToBin(tempBM);
-        return tempBM;
+        return HexCodec.toBinaryString(binaryBitmap, 0, binaryBitmap.length);
     }
 
     @Override
     public byte[] convertBitmap(String binaryBitmap) {
-        return ISOUtils.binToHex(binaryBitmap).getBytes();
+        return HexCodec.fromBinaryString(binaryBitmap.length() > 64 ? binaryBitmap.substring(0, 64) : binaryBitmap);
     }
 
     @Override
@@ -1,7 +1,15 @@
 package org.adelbs.iso8583.util;
 
+import java.nio.ByteBuffer;
+
+/**
+ * Values are sent in the default charset of the platform. Plain ASCII values are converted byte by byte.
+ */
 public class EncodingUTF8 implements Encoding {
 
+	//True when the default charset represents every ASCII char by its own code, as UTF-8 and Latin-1 do
+	private static final boolean ASCII_COMPATIBLE = isAsciiCompatible();
+
 	@Override
 	public String convert(byte[] bytesToConvert) {
 		return new String(bytesToConvert);
@@ -12,6 +20,16 @@ public class EncodingUTF8 implements Encoding {
 		return strToConvert.getBytes();
 	}
 
+	@Override
+	public void decode(byte[] source, int offset, int length, StringBuilder target) {
+		decodeDefault(source, offset, length, target);
+	}
+
+	@Override
+	public int encode(CharSequence value, ByteBuffer target) {
+		return encodeDefault(value, target);
+	}
+
 	@Override
 	public String convertBitmap(byte[] binaryBitmap) {
 		return new String(binaryBitmap);
@@ -31,4 +49,57 @@ public class EncodingUTF8 implements Encoding {
 	public int getEncondedByteLength(final int asciiLength) {
 		return asciiLength;
 	}
+
+	/**
+	 * Decodes the range with the default charset, appending ASCII bytes directly.
+	 */
+	static void decodeDefault(final byte[] source, final int offset, final int length, final StringBuilder target) {
+		if (ASCII_COMPATIBLE && ByteCharSequence.isAscii(source, offset, length)) {
+			target.ensureCapacity(target.length() + length);
+			for (int i = offset; i < offset + length; i++)
+				target.append((char) source[i]);
+		}
+		else {
+			target.append(new String(source, offset, length));
+		}
+	}
+
+	/**
+	 * Encodes the value with the default charset, writing ASCII chars directly.
+	 */
+	static int encodeDefault(final CharSequence value, final ByteBuffer target) {
+		final int length = value.length();
+		if (ASCII_COMPATIBLE && isAscii(value)) {
+			for (int i = 0; i < length; i++)
+				target.put((byte) value.charAt(i));
+			return length;
+		}
+
+		final byte[] bytes = value.toString().getBytes();
+		target.put(bytes);
+		return bytes.length;
+	}
+
+	private static boolean isAscii(final CharSequence value) {
+		for (int i = 0; i < value.length(); i++) {
+			if (value.charAt(i) >= 0x80)
+				return false;
+		}
+		return true;
+	}
+
+	private static boolean isAsciiCompatible() {
+		final char[] ascii = new char[0x80];
+		for (int i = 0; i < ascii.length; i++)
+			ascii[i] = (char) i;
+
+		final byte[] bytes = new String(ascii).getBytes();
+		if (bytes.length != ascii.length)
+			return false;
+		for (int i = 0; i < bytes.length; i++) {
+			if (bytes[i] != i)
+				return false;
+		}
+		return true;
+	}
 }
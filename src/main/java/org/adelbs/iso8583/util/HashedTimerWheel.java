@@ -0,0 +1,173 @@
+package org.adelbs.iso8583.util;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Timer for a large amount of short timeouts (one per request in flight), most of them cancelled before they expire.
+ *
+ * The timeouts are hashed by their deadline into the buckets of a wheel, which a single thread walks one tick at a
+ * time. Scheduling and cancelling are constant time and take no lock, and a timeout expires at most one tick late.
+ * Tasks run at the thread of the wheel, so they must be short.
+ */
+public final class HashedTimerWheel {
+
+	private final long tickNanos;
+	private final List<List<Timeout>> wheel;
+	private final int mask;
+	private final Queue<Timeout> scheduled = new ConcurrentLinkedQueue<Timeout>();
+	private final String name;
+
+	private volatile long startTime;
+	//Written after the start time, so a thread that sees the worker sees the start time too
+	private volatile Thread worker;
+	private long tick;
+
+	/**
+	 * @param tickDuration precision of the timer
+	 * @param unit unit of the tick duration
+	 * @param ticksPerWheel amount of buckets, rounded up to a power of 2
+	 */
+	public HashedTimerWheel(String name, long tickDuration, TimeUnit unit, int ticksPerWheel) {
+		if (tickDuration <= 0 || ticksPerWheel <= 0)
+			throw new IllegalArgumentException("tickDuration and ticksPerWheel must be positive");
+
+		int buckets = 1;
+		while (buckets < ticksPerWheel)
+			buckets <<= 1;
+
+		this.name = name;
+		this.tickNanos = unit.toNanos(tickDuration);
+		this.mask = buckets - 1;
+		this.wheel = new ArrayList<List<Timeout>>(buckets);
+		for (int i = 0; i < buckets; i++)
+			wheel.add(new ArrayList<Timeout>());
+	}
+
+	/**
+	 * Schedules the task, starting the thread of the wheel at the first call.
+	 *
+	 * @return the timeout, which may be cancelled until it expires
+	 */
+	public Timeout schedule(Runnable task, long delay, TimeUnit unit) {
+		if (worker == null)
+			start();
+		final Timeout timeout = new Timeout(task, System.nanoTime() + unit.toNanos(delay) - startTime);
+		scheduled.add(timeout);
+		return timeout;
+	}
+
+	private synchronized void start() {
+		if (worker != null)
+			return;
+
+		startTime = System.nanoTime();
+		final Thread thread = new Thread(new Runnable() {
+			public void run() {
+				work();
+			}
+		}, name);
+		thread.setDaemon(true);
+		thread.start();
+		worker = thread;
+	}
+
+	private void work() {
+		while (true) {
+			final long sleepNanos = tickNanos * (tick + 1) - (System.nanoTime() - startTime);
+			if (sleepNanos > 0) {
+				try {
+					TimeUnit.NANOSECONDS.sleep(sleepNanos);
+				}
+				catch (InterruptedException x) {
+					return;
+				}
+			}
+
+			transferScheduled();
+			expire(wheel.get((int) (tick & mask)));
+			tick++;
+		}
+	}
+
+	private void transferScheduled() {
+		Timeout timeout;
+		while ((timeout = scheduled.poll()) != null) {
+			if (timeout.state.get() != Timeout.WAITING)
+				continue;
+
+			final long ticks = Math.max(timeout.deadline / tickNanos, tick);
+			timeout.rounds = (ticks - tick) / wheel.size();
+			wheel.get((int) (ticks & mask)).add(timeout);
+		}
+	}
+
+	private void expire(List<Timeout> bucket) {
+		final Iterator<Timeout> it = bucket.iterator();
+		while (it.hasNext()) {
+			final Timeout timeout = it.next();
+			if (timeout.state.get() != Timeout.WAITING) {
+				it.remove();
+			}
+			else if (timeout.rounds <= 0) {
+				it.remove();
+				timeout.expire();
+			}
+			else {
+				timeout.rounds--;
+			}
+		}
+	}
+
+	/**
+	 * A scheduled task.
+	 */
+	public static final class Timeout {
+
+		private static final int WAITING = 0;
+		private static final int CANCELLED = 1;
+		private static final int EXPIRED = 2;
+
+		private final Runnable task;
+		private final long deadline;
+		private final AtomicInteger state = new AtomicInteger(WAITING);
+		private long rounds;
+
+		private Timeout(Runnable task, long deadline) {
+			this.task = task;
+			this.deadline = deadline;
+		}
+
+		/**
+		 * @return false case the timeout already expired or was cancelled
+		 */
+		public boolean cancel() {
+			return state.compareAndSet(WAITING, CANCELLED);
+		}
+
+		public boolean isCancelled() {
+			return state.get() == CANCELLED;
+		}
+
+		public boolean isExpired() {
+			return state.get() == EXPIRED;
+		}
+
+		private void expire() {
+			if (!state.compareAndSet(WAITING, EXPIRED))
+				return;
+
+			try {
+				task.run();
+			}
+			catch (Throwable x) {
+				x.printStackTrace();
+			}
+		}
+	}
+}
@@ -0,0 +1,157 @@
+package org.adelbs.iso8583.util;
+
+import java.util.Arrays;
+
+/**
+ * Table driven conversion between bytes and ASCII hexadecimal digits (two digits per byte, upper case when written).
+ * Every method works on ranges of arrays, so values can be converted straight from and into payloads.
+ */
+public final class HexCodec {
+
+	private static final byte[] DIGITS = {'0', '1', '2', '3', '4', '5', '6', '7', '8', '9', 'A', 'B', 'C', 'D', 'E', 'F'};
+
+	//Value of each ASCII hexadecimal digit, -1 for any other byte
+	private static final byte[] VALUES = new byte[256];
+
+	//Bits of each nibble, as '0' and '1' chars
+	private static final char[][] BINARY = new char[16][4];
+
+	static {
+		Arrays.fill(VALUES, (byte) -1);
+		for (int i = 0; i < 16; i++) {
+			VALUES[DIGITS[i]] = (byte) i;
+			VALUES[Character.toLowerCase(DIGITS[i])] = (byte) i;
+
+			for (int bit = 0; bit < 4; bit++)
+				BINARY[i][bit] = ((i >>> (3 - bit)) & 1) != 0 ? '1' : '0';
+		}
+	}
+
+	private HexCodec() {
+	}
+
+	/**
+	 * @return value of the hexadecimal digit, or -1 case the char is not one
+	 */
+	public static int value(final int digit) {
+		return (digit >= 0 && digit < 256) ? VALUES[digit] : -1;
+	}
+
+	/**
+	 * @return the upper case hexadecimal digit of the lowest 4 bits of the value
+	 */
+	public static byte digit(final int value) {
+		return DIGITS[value & 0x0F];
+	}
+
+	/**
+	 * Writes each byte of the source as two hexadecimal digits.
+	 * @return amount of bytes written (twice the length)
+	 */
+	public static int encode(final byte[] source, final int offset, final int length, final byte[] target, final int targetOffset) {
+		for (int i = 0; i < length; i++) {
+			final int value = source[offset + i] & 0xFF;
+			target[targetOffset + (i << 1)] = DIGITS[value >>> 4];
+			target[targetOffset + (i << 1) + 1] = DIGITS[value & 0x0F];
+		}
+		return length << 1;
+	}
+
+	/**
+	 * @return the bytes of the range as a String of hexadecimal digits
+	 */
+	public static String toHex(final byte[] source, final int offset, final int length) {
+		final char[] result = new char[length << 1];
+		for (int i = 0; i < length; i++) {
+			final int value = source[offset + i] & 0xFF;
+			result[i << 1] = (char) DIGITS[value >>> 4];
+			result[(i << 1) + 1] = (char) DIGITS[value & 0x0F];
+		}
+		return new String(result);
+	}
+
+	/**
+	 * Reads pairs of hexadecimal digits from the source into bytes.
+	 * @param length amount of digits to read (must be even)
+	 * @return amount of bytes written (half the length)
+	 * @throws NumberFormatException case the length is odd or a char is not a hexadecimal digit
+	 */
+	public static int decode(final byte[] source, final int offset, final int length, final byte[] target, final int targetOffset) {
+		if ((length & 1) != 0)
+			throw new NumberFormatException("Odd amount of hexadecimal digits: " + length);
+
+		for (int i = 0; i < length; i += 2)
+			target[targetOffset + (i >> 1)] = (byte) ((checkedValue(source[offset + i] & 0xFF) << 4) | checkedValue(source[offset + i + 1] & 0xFF));
+		return length >> 1;
+	}
+
+	/**
+	 * @return the bytes represented by the hexadecimal digits
+	 * @throws NumberFormatException case the length is odd or a char is not a hexadecimal digit
+	 */
+	public static byte[] fromHex(final CharSequence hex) {
+		if ((hex.length() & 1) != 0)
+			throw new NumberFormatException("Odd amount of hexadecimal digits: " + hex.length());
+
+		final byte[] result = new byte[hex.length() >> 1];
+		for (int i = 0; i < hex.length(); i += 2)
+			result[i >> 1] = (byte) ((checkedValue(hex.charAt(i)) << 4) | checkedValue(hex.charAt(i + 1)));
+		return result;
+	}
+
+	/**
+	 * Reads 16 hexadecimal digits (a bitmap) as a long, the first digit being the most significant.
+	 * @throws NumberFormatException case a char is not a hexadecimal digit
+	 */
+	public static long readLong(final byte[] source, final int offset) {
+		long result = 0;
+		for (int i = offset; i < offset + 16; i++)
+			result = (result << 4) | checkedValue(source[i] & 0xFF);
+		return result;
+	}
+
+	/**
+	 * Writes the long as 16 hexadecimal digits, the most significant first.
+	 */
+	public static void writeLong(final long value, final byte[] target, final int offset) {
+		for (int i = 0; i < 16; i++)
+			target[offset + i] = DIGITS[(int) (value >>> (60 - (i << 2))) & 0x0F];
+	}
+
+	/**
+	 * Expands each hexadecimal digit of the range into its 4 bits, as '0' and '1' chars.
+	 * @throws NumberFormatException case a char is not a hexadecimal digit
+	 */
+	public static String toBinaryString(final byte[] source, final int offset, final int length) {
+		final char[] result = new char[length << 2];
+		for (int i = 0; i < length; i++)
+			System.arraycopy(BINARY[checkedValue(source[offset + i] & 0xFF)], 0, result, i << 2, 4);
+		return new String(result);
+	}
+
+	/**
+	 * Packs each group of 4 '0' and '1' chars into an upper case hexadecimal digit. Incomplete groups are ignored.
+	 * @throws NumberFormatException case a char is neither '0' nor '1'
+	 */
+	public static byte[] fromBinaryString(final CharSequence binary) {
+		final byte[] result = new byte[binary.length() >> 2];
+		for (int i = 0; i < result.length; i++) {
+			int value = 0;
+			for (int bit = 0; bit < 4; bit++) {
+				final char current = binary.charAt((i << 2) + bit);
+				if (current != '0' && current != '1')
+					throw new NumberFormatException("Invalid binary digit: " + current);
+				value = (value << 1) | (current - '0');
+			}
+			result[i] = DIGITS[value];
+		}
+		return result;
+	}
+
+	private static int checkedValue(final int digit) {
+		final int value = value(digit);
+		if (value < 0)
+			throw new NumberFormatException("Invalid hexadecimal digit: " + (char) digit);
+		return value;
+	}
+}
@@ -1,4 +1,5 @@
 package org.adelbs.iso8583.util;
+import java.util.Arrays;
 import java.util.List;
 
 import org.adelbs.iso8583.exception.OutOfBoundsException;
@@ -7,56 +8,42 @@ import org.w3c.dom.Node;
 public class ISOUtils {
 
 	public static String hexToBin(String hex){
-		String bin = "";
-		String binFragment = "";
-		int iHex;
 		hex = hex.trim();
 		hex = hex.replaceFirst("0x", "");
 
-		for(int i = 0; i < hex.length(); i++){
-			iHex = Integer.parseInt(""+hex.charAt(i),16);
-			binFragment = Integer.toBinaryString(iHex);
+		final char[] bin = new char[hex.length() * 4];
+		for (int i = 0; i < hex.length(); i++) {
+			final int iHex = HexCodec.value(hex.charAt(i));
+			if (iHex < 0)
+				throw new NumberFormatException("Invalid hexadecimal digit: " + hex.charAt(i));
 
-			while(binFragment.length() < 4){
-				binFragment = "0" + binFragment;
-			}
-			bin += binFragment;
+			for (int bit = 0; bit < 4; bit++)
+				bin[(i * 4) + bit] = ((iHex >>> (3 - bit)) & 1) != 0 ? '1' : '0';
 		}
-		return bin;
+		return new String(bin);
 	}
 
 	public static String binToHex(String bin) {
-		String result = "";
-		int decimal;
-		for (int i = 4; (i <= 64 && i <= bin.length()); i = i + 4) {
-			decimal = Integer.parseInt(bin.substring((i - 4), i), 2);
-			result = result.concat(Integer.toString(decimal, 16)).toUpperCase();
-		}
-
-		return result;
+		return new String(HexCodec.fromBinaryString(bin.length() > 64 ? bin.substring(0, 64) : bin));
 	}
 	
 	public static byte[] subArray(byte[] data, int start, int end) throws OutOfBoundsException {
-		if ((end - start) <= 0) throw new OutOfBoundsException();
-		if (data.length < end || data.length < start || data.length < (end - start)) throw new OutOfBoundsException();
-		
-		byte[] result = new byte[end - start];
-	  
-		for (int i = start; i < end; i++)
-			result[i - start] = data[i];
+		checkRange(data, start, end);
+		return Arrays.copyOfRange(data, start, end);
+	}
 
-		return result;
+	/**
+	 * Same bounds rules of {@link #subArray(byte[], int, int)}, for code that reads the range in place.
+	 * @throws OutOfBoundsException case the range is empty or goes beyond the data
+	 */
+	public static void checkRange(byte[] data, int start, int end) throws OutOfBoundsException {
+		if ((end - start) <= 0) throw new OutOfBoundsException();
+		if (start < 0 || data.length < end) throw new OutOfBoundsException();
 	}
 
 	public static byte[] mergeArray(byte[] arr1, byte[] arr2) {
-		byte[] result = new byte[arr1.length + arr2.length];
-	  
-		for (int i = 0; i < arr1.length; i++)
-			result[i] = arr1[i];
-	  
-		for (int i = 0; i < arr2.length; i++)
-			result[i + arr1.length] = arr2[i];
-	  
+		byte[] result = Arrays.copyOf(arr1, arr1.length + arr2.length);
+		System.arraycopy(arr2, 0, result, arr1.length, arr2.length);
 		return result;
 	}
 	
@@ -0,0 +1,151 @@
+package org.adelbs.iso8583.util;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+
+/**
+ * Growable array of bytes, used to build and slice payloads without the copies of {@link ISOUtils#mergeArray}.
+ *
+ * Appends are amortized (the capacity doubles when needed), bulk operations are backed by {@link System#arraycopy}
+ * and slices are {@link ByteBuffer} views over the same array. Instances are not thread safe: they are meant to be
+ * owned by a single thread, usually borrowed from a {@link PayloadBufferPool}.
+ */
+public final class PayloadBuffer {
+
+	public static final int DEFAULT_CAPACITY = 512;
+
+	private byte[] array;
+	private int length;
+
+	public PayloadBuffer() {
+		this(DEFAULT_CAPACITY);
+	}
+
+	public PayloadBuffer(final int capacity) {
+		if (capacity < 0)
+			throw new IllegalArgumentException("Negative capacity: " + capacity);
+		this.array = new byte[capacity];
+	}
+
+	/**
+	 * Makes sure the buffer can hold at least the given amount of bytes without growing again.
+	 */
+	public void ensureCapacity(final int capacity) {
+		if (capacity > array.length)
+			array = Arrays.copyOf(array, Math.max(capacity, Math.max(array.length * 2, 16)));
+	}
+
+	public PayloadBuffer append(final byte value) {
+		ensureCapacity(length + 1);
+		array[length++] = value;
+		return this;
+	}
+
+	public PayloadBuffer append(final byte[] bytes) {
+		return append(bytes, 0, bytes.length);
+	}
+
+	public PayloadBuffer append(final byte[] bytes, final int offset, final int count) {
+		ensureCapacity(length + count);
+		System.arraycopy(bytes, offset, array, length, count);
+		length += count;
+		return this;
+	}
+
+	/**
+	 * Inserts the bytes at the position, moving the following ones forward (e.g. a length prefix, known only
+	 * after the value has been written).
+	 */
+	public PayloadBuffer insert(final int position, final byte[] bytes) {
+		checkRange(position, position);
+		ensureCapacity(length + bytes.length);
+		System.arraycopy(array, position, array, position + bytes.length, length - position);
+		System.arraycopy(bytes, 0, array, position, bytes.length);
+		length += bytes.length;
+		return this;
+	}
+
+	public byte get(final int index) {
+		if (index < 0 || index >= length)
+			throw new IndexOutOfBoundsException("index: " + index + ", length: " + length);
+		return array[index];
+	}
+
+	/**
+	 * @return amount of bytes held by the buffer
+	 */
+	public int length() {
+		return length;
+	}
+
+	/**
+	 * Changes the amount of bytes held by the buffer, to commit bytes written straight into the array
+	 * (see {@link #writableBuffer()}) or to drop the last ones.
+	 */
+	public void setLength(final int length) {
+		if (length < 0 || length > array.length)
+			throw new IndexOutOfBoundsException("length: " + length + ", capacity: " + array.length);
+		this.length = length;
+	}
+
+	public int capacity() {
+		return array.length;
+	}
+
+	/**
+	 * Drops the content, keeping the capacity.
+	 */
+	public void clear() {
+		length = 0;
+	}
+
+	/**
+	 * @return the backing array (no copy). Only the first {@link #length()} bytes are valid, and the array is
+	 * replaced whenever the buffer grows.
+	 */
+	public byte[] array() {
+		return array;
+	}
+
+	/**
+	 * @return a view over the free room of the array, positioned right after the content. Once written, the
+	 * position of the view must be committed with {@link #setLength(int)}.
+	 */
+	public ByteBuffer writableBuffer() {
+		return ByteBuffer.wrap(array, length, array.length - length);
+	}
+
+	/**
+	 * @return a view over the range of the content, sharing the same array (no copy)
+	 */
+	public ByteBuffer slice(final int start, final int end) {
+		checkRange(start, end);
+		return ByteBuffer.wrap(array, start, end - start).slice();
+	}
+
+	/**
+	 * @return a copy of the content
+	 */
+	public byte[] toByteArray() {
+		return Arrays.copyOf(array, length);
+	}
+
+	/**
+	 * @return a copy of the range of the content
+	 */
+	public byte[] toByteArray(final int start, final int end) {
+		checkRange(start, end);
+		return Arrays.copyOfRange(array, start, end);
+	}
+
+	public void writeTo(final OutputStream out) throws IOException {
+		out.write(array, 0, length);
+	}
+
+	private void checkRange(final int start, final int end) {
+		if (start < 0 || end > length || start > end)
+			throw new IndexOutOfBoundsException("start: " + start + ", end: " + end + ", length: " + length);
+	}
+}
@@ -0,0 +1,57 @@
+package org.adelbs.iso8583.util;
+
+/**
+ * Keeps one {@link PayloadBuffer} per thread, so messages built over and over by the same thread (a connection
+ * reader, a worker) reuse the same array instead of allocating a new one each time.
+ *
+ * A buffer must be given back with {@link #release(PayloadBuffer)} once its content is no longer needed.
+ * Nested acquisitions get a new buffer, and buffers that grew beyond the retained capacity are dropped,
+ * so a single huge message does not pin its array to the thread.
+ */
+public final class PayloadBufferPool {
+
+	/**
+	 * Pool shared by the codecs (see {@link org.adelbs.iso8583.protocol.MessagePlan})
+	 */
+	public static final PayloadBufferPool DEFAULT = new PayloadBufferPool(PayloadBuffer.DEFAULT_CAPACITY, 64 * 1024);
+
+	private final int initialCapacity;
+	private final int maxRetainedCapacity;
+
+	private final ThreadLocal<PayloadBuffer> cached = new ThreadLocal<PayloadBuffer>();
+
+	/**
+	 * @param initialCapacity capacity of the buffers created by this pool
+	 * @param maxRetainedCapacity buffers bigger than this are not kept when released
+	 */
+	public PayloadBufferPool(final int initialCapacity, final int maxRetainedCapacity) {
+		if (initialCapacity < 0 || maxRetainedCapacity < initialCapacity)
+			throw new IllegalArgumentException("Invalid capacities: " + initialCapacity + ", " + maxRetainedCapacity);
+
+		this.initialCapacity = initialCapacity;
+		this.maxRetainedCapacity = maxRetainedCapacity;
+	}
+
+	/**
+	 * @return an empty buffer, owned by the caller until released
+	 */
+	public PayloadBuffer acquire() {
+		final PayloadBuffer buffer = cached.get();
+		if (buffer == null)
+			return new PayloadBuffer(initialCapacity);
+
+		cached.set(null);
+		return buffer;
+	}
+
+	/**
+	 * Gives the buffer back to the pool of the current thread. It must not be used after that.
+	 */
+	public void release(final PayloadBuffer buffer) {
+		if (buffer == null || buffer.capacity() > maxRetainedCapacity || cached.get() != null)
+			return;
+
+		buffer.clear();
+		cached.set(buffer);
+	}
+}
@@ -13,11 +13,15 @@ import org.adelbs.iso8583.constants.TypeEnum;
 import org.adelbs.iso8583.constants.TypeLengthEnum;
 import org.adelbs.iso8583.exception.OutOfBoundsException;
 import org.adelbs.iso8583.gui.PnlMain;
+import org.adelbs.iso8583.helper.condition.ConditionCompiler;
+import org.adelbs.iso8583.helper.condition.DynamicCondition;
+import org.adelbs.iso8583.payload.BerTlvIndex;
 import org.adelbs.iso8583.payload.PayloadTransformator;
 import org.adelbs.iso8583.payload.RevertResult;
+import org.adelbs.iso8583.payload.TransformatorRegistry;
+import org.adelbs.iso8583.util.HexCodec;
 import org.adelbs.iso8583.util.ISOUtils;
-
-import groovy.lang.GroovyShell;
+import org.adelbs.iso8583.util.PayloadBuffer;
 
 @XmlRootElement(name="field")
 @XmlType(propOrder={"name", "bitNum", "dynaCondition", "typeLength", "length", "type", "encoding", "fieldList"})
@@ -45,6 +49,7 @@ public class FieldVO extends GenericIsoVO {
 	private String tlvLength = "";
 	private String value = "";
 	private byte[] payloadValue = null;
+	private BerTlvIndex berTlvIndex = null;
 	private ArrayList<FieldVO> fieldList = new ArrayList<FieldVO>();
 
 	private PnlMain pnlMain;
@@ -167,6 +172,7 @@ public class FieldVO extends GenericIsoVO {
 
 	public void setValue(String value) {
 		this.value = value;
+		this.berTlvIndex = null;
 	}
 
 	@XmlTransient
@@ -214,21 +220,43 @@ public class FieldVO extends GenericIsoVO {
 	 */
 	@XmlTransient
 	public boolean isIgnored(){
+		return isIgnored(new Object[DynamicCondition.BIT_ARRAY_SIZE]);
+	}
+	
+	/**
+	 * Evaluates the dynamic condition rule with the values of the fields already parsed.
+	 * 
+	 * @param bits values of the fields, indexed by bit number, available to the condition as <i>BIT</i>
+	 * @return True or False based on the Conditional Rule of the attribute DynaCondition
+	 * @throws IllegalArgumentException case the expression, to evaluate if the Field should be ignored, is not a boolean expression
+	 */
+	public boolean isIgnored(Object[] bits){
 		boolean isIgnored = false;
 		if(dynaCondition != null && dynaCondition.length() > 0){
-			final GroovyShell shell = new GroovyShell();
-			String condition = "Object[] BIT = new Object[255];\n"+dynaCondition;
-			final Object result = shell.evaluate(condition);
-			if(!(result instanceof Boolean)){
-				throw new IllegalArgumentException("The expression do not generates a boolean result");
-			}
-			isIgnored = !((boolean) result);
+			isIgnored = !ConditionCompiler.compile(dynaCondition).evaluate(bits);
 		}
 		return isIgnored;
 	}
 	
 	//********** runtime
 
+	/**
+	 * Index of the elements of a {@link TypeEnum#BERTLV} value. Parsed fields get it over the received payload,
+	 * otherwise (or case the received value is not valid BER-TLV) it is built from the hexadecimal value at the first call.
+	 * @throws OutOfBoundsException case an element goes beyond the value
+	 * @throws IllegalArgumentException case the value is not valid BER-TLV
+	 */
+	@XmlTransient
+	public BerTlvIndex getBerTlvIndex() throws OutOfBoundsException {
+		if (berTlvIndex == null)
+			berTlvIndex = BerTlvIndex.parse(HexCodec.fromHex(value == null ? "" : value));
+		return berTlvIndex;
+	}
+
+	public void setBerTlvIndex(BerTlvIndex berTlvIndex) {
+		this.berTlvIndex = berTlvIndex;
+	}
+
 	public void setPayloadValue(byte[] payloadValue) {
 		this.payloadValue = payloadValue;
 	}
@@ -247,8 +275,12 @@ public class FieldVO extends GenericIsoVO {
 		
 		if (type != TypeEnum.TLV) {
 			length = (fieldList.size() > 0) ? 0 : length;
-			for (FieldVO fieldVO : fieldList){
-				newValue = ISOUtils.mergeArray(newValue, fieldVO.getPayloadValue(this));
+			if (fieldList.size() > 0) {
+				final PayloadBuffer buffer = new PayloadBuffer().append(newValue);
+				for (FieldVO fieldVO : fieldList){
+					buffer.append(fieldVO.getPayloadValue(this));
+				}
+				newValue = buffer.toByteArray();
 			}
 		}
 		
@@ -256,11 +288,14 @@ public class FieldVO extends GenericIsoVO {
 //		int newLength = length;
 //		if (encoding == EncodingEnum.BINARY) newLength = newLength / 2;
 		
-		if (type == TypeEnum.ALPHANUMERIC){
+		if (isTransformed()) {
+			payload = getTransformedPayloadValue();
+		}
+		else if (type == TypeEnum.ALPHANUMERIC){
 			payload = getPayloadValue(typeLength, newValue, length);
 		}
 		else if (type == TypeEnum.TLV) {	
-			payload = PayloadTransformator.getInstance(encoding).transform(this,  TypeEnum.TLV);
+			payload = PayloadTransformator.getInstance(encoding).transform(this, type);
 		}
 		
 		if (superFieldVO != null && superFieldVO.getType() != TypeEnum.TLV){
@@ -268,36 +303,55 @@ public class FieldVO extends GenericIsoVO {
 		}
 		
 		if (type == TypeEnum.TLV && fieldList.size() > 0) {
+			final PayloadBuffer buffer = new PayloadBuffer().append(payload);
 			for (FieldVO fieldVO : fieldList){
-				payload = ISOUtils.mergeArray(payload, fieldVO.getPayloadValue(this));
+				buffer.append(fieldVO.getPayloadValue(this));
 			}
 			
 			if (superFieldVO == null){
-				payload = ISOUtils.mergeArray(encoding.convert(getMaxSizeStr(String.valueOf(payload.length), 3)), payload);
+				buffer.insert(0, encoding.convert(getMaxSizeStr(String.valueOf(buffer.length()), 3)));
 			}
+			payload = buffer.toByteArray();
 		}
 		
 		return payload;
 	}
 	
+	/**
+	 * @return true case the value is converted by the transformator registered for the type and encoding (see {@link TransformatorRegistry})
+	 */
+	private boolean isTransformed() {
+		return type != TypeEnum.TLV && fieldList.size() == 0 && TransformatorRegistry.isSupported(type, encoding);
+	}
+
+	/**
+	 * The transformator converts only the value, which is framed here (N-VAR prefix counting bytes).
+	 */
+	private byte[] getTransformedPayloadValue() {
+		final byte[] transformed = TransformatorRegistry.get(type, encoding).transform(value == null ? "" : value);
+		if (typeLength != TypeLengthEnum.NVAR)
+			return transformed;
+		return new PayloadBuffer().append(encoding.convert(getMaxSizeStr(String.valueOf(transformed.length), length))).append(transformed).toByteArray();
+	}
+
 	private byte[] getPayloadValue(TypeLengthEnum typeLength, byte[] value, int length) {
-		byte[] payload = new byte[]{};
+		final PayloadBuffer payload = new PayloadBuffer(value.length + length);
 		String size;
 		int maxSize = length;
 
 		if (typeLength == TypeLengthEnum.NVAR) {
 			size = getMaxSizeStr(String.valueOf(value.length), length);
-			payload = encoding.convert(size);
+			payload.append(encoding.convert(size));
 			maxSize = Integer.parseInt(size);
 		}
 		
 		//TODO: Check to Remove
 		if (type == TypeEnum.TLV)
-			payload = ISOUtils.mergeArray(payload, encoding.convert(getMaxSizeStr(encoding.convert(value), maxSize)));
+			payload.append(encoding.convert(getMaxSizeStr(encoding.convert(value), maxSize)));
 		else
-			payload = ISOUtils.mergeArray(payload, encoding.convert(getMaxSpacesValue(encoding.convert(value), maxSize)));
+			payload.append(encoding.convert(getMaxSpacesValue(encoding.convert(value), maxSize)));
 		
-		return payload;
+		return payload.toByteArray();
 	}
 
 	private String getMaxSizeStr(String value, int numBits) {
@@ -347,7 +401,21 @@ public class FieldVO extends GenericIsoVO {
 			}
 		}
 		else {
-			if (type == TypeEnum.ALPHANUMERIC) {
+			if (isTransformed()) {
+				int valueStart = startPosition;
+				if (typeLength == TypeLengthEnum.NVAR) {
+					valueStart += encoding.getEncondedByteLength(length);
+					endPosition = valueStart + Integer.valueOf(encoding.convert(ISOUtils.subArray(payload, startPosition, valueStart)));
+				}
+				else {
+					endPosition = valueStart + ((type == TypeEnum.BERTLV) ? length : encoding.getEncondedByteLength((encoding == EncodingEnum.BINARY) ? length / 2 : length));
+				}
+				if (endPosition > payload.length)
+					throw new OutOfBoundsException();
+
+				value = String.valueOf(TransformatorRegistry.get(type, encoding).revert(payload, valueStart, endPosition).getResultantObject());
+			}
+			else if (type == TypeEnum.ALPHANUMERIC) {
 				if (typeLength == TypeLengthEnum.FIXED) {
 					int calculatedLength = (encoding == EncodingEnum.BINARY) ? length / 2 : length;
 					endPosition = startPosition + encoding.getEncondedByteLength(calculatedLength);
@@ -366,7 +434,7 @@ public class FieldVO extends GenericIsoVO {
 			}
 			else if (type == TypeEnum.TLV) {
 				final byte[] tlvPayload = ISOUtils.subArray(payload, startPosition, payload.length);
-				final RevertResult revertedValue = PayloadTransformator.getInstance(encoding).revert(tlvPayload, TypeEnum.TLV);
+				final RevertResult revertedValue = PayloadTransformator.getInstance(encoding).revert(tlvPayload, type);
 				
 				final FieldVO revertedField = (FieldVO) revertedValue.getResultantObject();
 				this.tlvLength = revertedField.tlvLength;
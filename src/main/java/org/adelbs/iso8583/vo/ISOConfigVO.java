@@ -16,10 +16,12 @@ import org.adelbs.iso8583.constants.EncodingEnum;
  * Representation of a ISO8583 Config.
  */
 @XmlRootElement(name="iso8583")
-@XmlType(propOrder={"delimiter", "headerEncoding", "headerSize", "messageList"})
+@XmlType(propOrder={"delimiter", "lengthIncludesPrefix", "maxFrameSize", "headerEncoding", "headerSize", "messageList"})
 public class ISOConfigVO {
 	
     private DelimiterEnum delimiter;
+    private Boolean lengthIncludesPrefix;
+    private Integer maxFrameSize;
     private EncodingEnum headerEncoding;
     private Integer headerSize;
     private final List<MessageVO> messageList = new ArrayList<MessageVO>();
@@ -76,6 +78,30 @@ public class ISOConfigVO {
 		this.delimiter = delimiter;
 	}
 
+	/**
+	 * @return true if the length prefix of the delimiter counts its own bytes, null when not informed
+	 */
+	@XmlAttribute(name="lengthIncludesPrefix")
+	public Boolean getLengthIncludesPrefix() {
+		return lengthIncludesPrefix;
+	}
+
+	public void setLengthIncludesPrefix(Boolean lengthIncludesPrefix) {
+		this.lengthIncludesPrefix = lengthIncludesPrefix;
+	}
+
+	/**
+	 * @return the largest message accepted from a connection, in bytes, null when not informed
+	 */
+	@XmlAttribute(name="maxFrameSize")
+	public Integer getMaxFrameSize() {
+		return maxFrameSize;
+	}
+
+	public void setMaxFrameSize(Integer maxFrameSize) {
+		this.maxFrameSize = maxFrameSize;
+	}
+
 	@XmlElement(name="message")
 	public List<MessageVO> getMessageList() {
 		return Collections.unmodifiableList(messageList);
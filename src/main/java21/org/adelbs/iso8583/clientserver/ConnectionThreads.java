@@ -0,0 +1,30 @@
+package org.adelbs.iso8583.clientserver;
+
+/**
+ * Starts the threads that read the connections (one per {@link ISOClient}).
+ *
+ * This is the Java 21+ version of the multi-release jar: the readers run on virtual threads, unless
+ * -D{@value #VIRTUAL_PROPERTY}=false is given.
+ */
+final class ConnectionThreads {
+
+	static final String VIRTUAL_PROPERTY = "iso8583.virtualThreads";
+
+	private static final boolean VIRTUAL = Boolean.parseBoolean(System.getProperty(VIRTUAL_PROPERTY, "true"));
+
+	private ConnectionThreads() { }
+
+	/**
+	 * @return a started thread running the task
+	 */
+	static Thread start(String name, Runnable task) {
+		return VIRTUAL ? Thread.ofVirtual().name(name).start(task) : Thread.ofPlatform().name(name).start(task);
+	}
+
+	/**
+	 * @return true case the threads started by this class are virtual
+	 */
+	static boolean isVirtual() {
+		return VIRTUAL;
+	}
+}
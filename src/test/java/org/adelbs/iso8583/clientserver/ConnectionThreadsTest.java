@@ -0,0 +1,23 @@
+package org.adelbs.iso8583.clientserver;
+
+import static org.junit.Assert.assertEquals;
+
+import java.util.concurrent.atomic.AtomicReference;
+
+import org.junit.Test;
+
+public class ConnectionThreadsTest {
+
+	@Test
+	public void testTaskRunsOnANamedThread() throws InterruptedException {
+		final AtomicReference<String> name = new AtomicReference<String>();
+		final Thread thread = ConnectionThreads.start("Client-test", new Runnable() {
+			public void run() {
+				name.set(Thread.currentThread().getName());
+			}
+		});
+		thread.join(5000);
+
+		assertEquals("Client-test", name.get());
+	}
+}
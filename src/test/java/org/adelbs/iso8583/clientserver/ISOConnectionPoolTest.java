@@ -0,0 +1,225 @@
+package org.adelbs.iso8583.clientserver;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.DataInputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.adelbs.iso8583.constants.LoadBalanceEnum;
+import org.adelbs.iso8583.exception.ConnectionException;
+import org.adelbs.iso8583.helper.Iso8583Config;
+import org.adelbs.iso8583.protocol.ISOMessage;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+public class ISOConnectionPoolTest {
+
+	private Iso8583Config isoConfig;
+	private Host first;
+	private Host second;
+	private ISOConnectionPool pool;
+
+	private final CallbackAction callback = new CallbackAction() {
+		public void dataReceived(SocketPayload payload) { }
+		public void log(String log) { }
+		public void end() { }
+	};
+
+	@Before
+	public void setUp() throws Exception {
+		isoConfig = new Iso8583Config(new File(getClass().getResource("/CorrelationXML.xml").toURI()).getPath());
+		first = new Host();
+		second = new Host();
+	}
+
+	@After
+	public void tearDown() throws IOException {
+		if (pool != null)
+			pool.close();
+		first.close();
+		second.close();
+	}
+
+	@Test
+	public void testRequestsAreSpreadOverTheHosts() throws Exception {
+		pool = new ISOConnectionPool(isoConfig, callback, Arrays.asList(first.endpoint(), second.endpoint()), 2, 60, LoadBalanceEnum.ROUND_ROBIN);
+		pool.connect();
+		assertEquals(4, pool.getSize());
+		assertEquals(4, pool.getConnectedCount());
+
+		for (int i = 1; i <= 8; i++)
+			assertEquals(stan(i), request(i).get(5, TimeUnit.SECONDS).getBit(11).getValue());
+
+		assertEquals(4, first.requests.get());
+		assertEquals(4, second.requests.get());
+	}
+
+	@Test
+	public void testLeastOutstandingAvoidsTheBusyConnection() throws Exception {
+		pool = new ISOConnectionPool(isoConfig, callback, Arrays.asList(first.endpoint(), second.endpoint()), 1, 60, LoadBalanceEnum.LEAST_OUTSTANDING);
+		pool.connect();
+
+		//The first host holds its responses, so a request sent to it stays in flight
+		first.holdResponses = true;
+		CompletableFuture<ISOMessage> held = null;
+		for (int i = 1; held == null && i < 20; i++) {
+			final CompletableFuture<ISOMessage> response = request(i);
+			final long deadline = System.currentTimeMillis() + 5000;
+			while (!response.isDone() && first.requests.get() == 0 && System.currentTimeMillis() < deadline)
+				Thread.sleep(5);
+			if (!response.isDone())
+				held = response;
+		}
+		assertNotNull(held);
+
+		final int secondBefore = second.requests.get();
+		for (int i = 100; i < 104; i++)
+			request(i).get(5, TimeUnit.SECONDS);
+		assertEquals(secondBefore + 4, second.requests.get());
+		assertEquals(1, first.requests.get());
+		assertFalse(held.isDone());
+	}
+
+	@Test
+	public void testLostConnectionsAreReconnected() throws Exception {
+		pool = new ISOConnectionPool(isoConfig, callback, Arrays.asList(first.endpoint()), 1, 60, LoadBalanceEnum.ROUND_ROBIN);
+		pool.connect();
+		request(1).get(5, TimeUnit.SECONDS);
+
+		first.dropClients();
+		final long deadline = System.currentTimeMillis() + 5000;
+		while (first.accepted.get() < 2 && System.currentTimeMillis() < deadline)
+			Thread.sleep(20);
+		while (pool.getConnectedCount() == 0 && System.currentTimeMillis() < deadline)
+			Thread.sleep(20);
+
+		assertEquals(1, pool.getConnectedCount());
+		assertEquals(stan(2), request(2).get(5, TimeUnit.SECONDS).getBit(11).getValue());
+	}
+
+	@Test
+	public void testHostDroppingTheConnectionsIsNotHammered() throws Exception {
+		first.dropOnAccept = true;
+		pool = new ISOConnectionPool(isoConfig, callback, Arrays.asList(first.endpoint()), 1, 60, LoadBalanceEnum.ROUND_ROBIN);
+		try {
+			pool.connect();
+		}
+		catch (ConnectionException x) {
+			//Dropped already, the pool retries in background anyway
+		}
+
+		//Connecting works, so only the growing wait keeps the attempts apart (100, 200, 400 ms...)
+		Thread.sleep(1000);
+		assertTrue("Attempts: " + first.accepted.get(), first.accepted.get() <= 5);
+	}
+
+	@Test(expected = ConnectionException.class)
+	public void testClosedPoolCantConnectAgain() throws Exception {
+		pool = new ISOConnectionPool(isoConfig, callback, Arrays.asList(first.endpoint()), 1, 60, LoadBalanceEnum.ROUND_ROBIN);
+		pool.connect();
+		pool.close();
+		pool.connect();
+	}
+
+	private CompletableFuture<ISOMessage> request(int number) throws Exception {
+		return pool.request(RequestCorrelatorTest.message(isoConfig.getRuntimeConfig(), "0200", stan(number)));
+	}
+
+	private static String stan(int number) {
+		return String.format("%06d", number);
+	}
+
+	/**
+	 * Acquirer that answers each 0200 with a 0210 of the same fields.
+	 */
+	private static final class Host {
+
+		private final ServerSocket listener = new ServerSocket(0);
+		private final List<Socket> clients = new CopyOnWriteArrayList<Socket>();
+		private final AtomicInteger requests = new AtomicInteger();
+		private final AtomicInteger accepted = new AtomicInteger();
+		private volatile boolean holdResponses;
+		private volatile boolean dropOnAccept;
+
+		Host() throws IOException {
+			final Thread acceptor = new Thread() {
+				public void run() {
+					try {
+						while (true) {
+							final Socket client = listener.accept();
+							accepted.incrementAndGet();
+							if (dropOnAccept) {
+								client.close();
+								continue;
+							}
+							clients.add(client);
+							serve(client);
+						}
+					}
+					catch (IOException x) {
+						//Closed
+					}
+				}
+			};
+			acceptor.setDaemon(true);
+			acceptor.start();
+		}
+
+		String endpoint() {
+			return "localhost:" + listener.getLocalPort();
+		}
+
+		private void serve(final Socket client) {
+			final Thread reader = new Thread() {
+				public void run() {
+					try {
+						final DataInputStream in = new DataInputStream(client.getInputStream());
+						final OutputStream out = client.getOutputStream();
+						while (true) {
+							final byte[] request = new byte[in.readUnsignedShort()];
+							in.readFully(request);
+							requests.incrementAndGet();
+							if (holdResponses)
+								continue;
+
+							request[2] = '1';
+							out.write(new byte[] {(byte) (request.length >> 8), (byte) request.length});
+							out.write(request);
+							out.flush();
+						}
+					}
+					catch (IOException x) {
+						//Disconnected
+					}
+				}
+			};
+			reader.setDaemon(true);
+			reader.start();
+		}
+
+		void dropClients() throws IOException {
+			for (Socket client : clients)
+				client.close();
+			clients.clear();
+		}
+
+		void close() throws IOException {
+			dropClients();
+			listener.close();
+		}
+	}
+}
@@ -0,0 +1,289 @@
+package org.adelbs.iso8583.clientserver;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.DataInputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+import org.adelbs.iso8583.constants.IOModeEnum;
+import org.adelbs.iso8583.constants.WaitStrategyEnum;
+import org.adelbs.iso8583.exception.ConnectionException;
+import org.adelbs.iso8583.exception.ParseException;
+import org.adelbs.iso8583.helper.Iso8583Config;
+import org.adelbs.iso8583.helper.Iso8583RuntimeConfig;
+import org.adelbs.iso8583.protocol.ISOMessage;
+import org.junit.Test;
+
+public class ISOConnectionTest {
+
+	//Far more than the socket buffers hold, so the writes to the client not reading get stuck
+	private static final int SLOW_FRAMES = 400;
+	private static final int SLOW_FRAME_SIZE = 60000;
+
+	@Test
+	public void testSlowClientDoesNotDelayTheOthers() throws Exception {
+		for (IOModeEnum ioMode : IOModeEnum.values()) {
+			final int port;
+			try (ServerSocket free = new ServerSocket(0)) {
+				port = free.getLocalPort();
+			}
+
+			final ISOConnection server = newEchoServer(port, ioMode);
+			final Socket slow = new Socket("localhost", port);
+			final Socket other = new Socket("localhost", port);
+			try {
+				write(slow, "SLOW");
+				server.processNextPayload(true, 0);
+
+				write(other, "ABC");
+				server.processNextPayload(true, 0);
+
+				assertArrayEquals(ioMode.name(), "ABC".getBytes(StandardCharsets.US_ASCII), readFrame(other));
+			}
+			finally {
+				slow.close();
+				other.close();
+				server.endConnection();
+			}
+		}
+	}
+
+	@Test
+	public void testClientNotReadingIsDisconnectedAndItsRequestsFail() throws Exception {
+		for (IOModeEnum ioMode : IOModeEnum.values()) {
+			final int port;
+			try (ServerSocket free = new ServerSocket(0)) {
+				port = free.getLocalPort();
+			}
+
+			final ISOConnection server = new ISOConnection(true, "localhost", port, 60, ioMode);
+			final Iso8583Config isoConfig = new Iso8583Config(new File(getClass().getResource("/CorrelationXML.xml").toURI()).getPath());
+			server.setIsoConfig(isoConfig);
+			server.setQueue(8, WaitStrategyEnum.BLOCKING);
+			final BlockingQueue<SocketPayload> received = new LinkedBlockingQueue<SocketPayload>();
+			server.setCallback(new CallbackAction() {
+				public void dataReceived(SocketPayload payload) {
+					received.add(payload);
+				}
+				public void log(String log) { }
+				public void end() { }
+			});
+			server.connect();
+
+			final Socket slow = new Socket("localhost", port);
+			try {
+				write(slow, "HELLO");
+				server.processNextPayload(true, 0);
+				final SocketPayload hello = received.take();
+				final CompletableFuture<ISOMessage> response = server.request(RequestCorrelatorTest.message(isoConfig.getRuntimeConfig(), "0200", "000001"), hello.getSocket(), 60000);
+
+				//The client never reads, so its queue fills up once the socket buffers are full
+				final byte[] big = frame(new byte[SLOW_FRAME_SIZE]);
+				for (int i = 0; i < SLOW_FRAMES && !response.isDone(); i++)
+					server.send(new SocketPayload(big, hello.getSocket()));
+
+				try {
+					response.get(5, TimeUnit.SECONDS);
+					fail(ioMode.name());
+				}
+				catch (ExecutionException x) {
+					assertTrue(ioMode.name(), x.getCause() instanceof ConnectionException);
+				}
+				assertTrue(ioMode.name(), hello.getSocket().isClosed());
+			}
+			finally {
+				slow.close();
+				server.endConnection();
+			}
+		}
+	}
+
+	@Test
+	public void testRequestsFailWhenTheClientDisconnects() throws Exception {
+		for (IOModeEnum ioMode : IOModeEnum.values()) {
+			final int port;
+			try (ServerSocket free = new ServerSocket(0)) {
+				port = free.getLocalPort();
+			}
+
+			final ISOConnection server = new ISOConnection(true, "localhost", port, 60, ioMode);
+			final Iso8583Config isoConfig = new Iso8583Config(new File(getClass().getResource("/CorrelationXML.xml").toURI()).getPath());
+			server.setIsoConfig(isoConfig);
+			final BlockingQueue<SocketPayload> received = new LinkedBlockingQueue<SocketPayload>();
+			server.setCallback(new CallbackAction() {
+				public void dataReceived(SocketPayload payload) {
+					received.add(payload);
+				}
+				public void log(String log) { }
+				public void end() { }
+			});
+			server.connect();
+
+			final Socket client = new Socket("localhost", port);
+			try {
+				write(client, "HELLO");
+				server.processNextPayload(true, 0);
+				final SocketPayload hello = received.take();
+				final CompletableFuture<ISOMessage> response = server.request(RequestCorrelatorTest.message(isoConfig.getRuntimeConfig(), "0200", "000001"), hello.getSocket(), 60000);
+
+				//Far before the timeout of the request
+				client.close();
+				try {
+					response.get(5, TimeUnit.SECONDS);
+					fail(ioMode.name());
+				}
+				catch (ExecutionException x) {
+					assertTrue(ioMode.name(), x.getCause() instanceof ConnectionException);
+				}
+			}
+			finally {
+				client.close();
+				server.endConnection();
+			}
+		}
+	}
+
+	@Test
+	public void testRequestThatCantBeSentFailsAndFreesItsKey() throws Exception {
+		final int port;
+		try (ServerSocket free = new ServerSocket(0)) {
+			port = free.getLocalPort();
+		}
+
+		final ISOConnection server = new ISOConnection(true, "localhost", port, 60);
+		final Iso8583Config isoConfig = new Iso8583Config(new File(getClass().getResource("/CorrelationXML.xml").toURI()).getPath());
+		server.setIsoConfig(isoConfig);
+		server.setCallback(new CallbackAction() {
+			public void dataReceived(SocketPayload payload) { }
+			public void log(String log) { }
+			public void end() { }
+		});
+		server.connect();
+		try {
+			final Socket closed = new Socket();
+			closed.close();
+			for (int attempt = 0; attempt < 2; attempt++) {
+				//The same key again, which must not be in flight anymore
+				final CompletableFuture<ISOMessage> response = server.request(RequestCorrelatorTest.message(isoConfig.getRuntimeConfig(), "0200", "000001"), closed, 60000);
+				try {
+					response.get(5, TimeUnit.SECONDS);
+					fail();
+				}
+				catch (ExecutionException x) {
+					assertTrue(x.getCause() instanceof ConnectionException);
+				}
+			}
+		}
+		finally {
+			server.endConnection();
+		}
+	}
+
+	@Test(expected = IllegalStateException.class)
+	public void testServerRequestNeedsTheSocket() throws Exception {
+		final ISOConnection server = new ISOConnection(true, "localhost", 0, 60);
+		server.request(RequestCorrelatorTest.message(Iso8583RuntimeConfig.fromFile(new File(getClass().getResource("/CorrelationXML.xml").toURI()).getPath()), "0200", "000001"));
+	}
+
+	@Test
+	public void testPipelinedRequestsGetTheirOwnResponses() throws Exception {
+		try (final ServerSocket host = new ServerSocket(0)) {
+			final ISOConnection client = new ISOConnection(false, "localhost", host.getLocalPort(), 60);
+			final Iso8583Config isoConfig = new Iso8583Config(new File(getClass().getResource("/CorrelationXML.xml").toURI()).getPath());
+			client.setIsoConfig(isoConfig);
+			client.setCallback(new CallbackAction() {
+				public void dataReceived(SocketPayload payload) { }
+				public void log(String log) { }
+				public void end() { }
+			});
+			client.connect();
+
+			try (final Socket hostSide = host.accept()) {
+				final Iso8583RuntimeConfig runtimeConfig = isoConfig.getRuntimeConfig();
+				final CompletableFuture<ISOMessage> first = client.request(RequestCorrelatorTest.message(runtimeConfig, "0200", "000001"));
+				final CompletableFuture<ISOMessage> second = client.request(RequestCorrelatorTest.message(runtimeConfig, "0200", "000002"));
+
+				//The host answers both, the last one first
+				final byte[] firstRequest = readFrame(hostSide);
+				final byte[] secondRequest = readFrame(hostSide);
+				final OutputStream out = hostSide.getOutputStream();
+				out.write(frame(asResponse(secondRequest)));
+				out.write(frame(asResponse(firstRequest)));
+				out.flush();
+
+				assertEquals("000001", first.get(5, TimeUnit.SECONDS).getBit(11).getValue());
+				assertEquals("000002", second.get(5, TimeUnit.SECONDS).getBit(11).getValue());
+			}
+			finally {
+				client.endConnection();
+			}
+		}
+	}
+
+	private static byte[] asResponse(byte[] request) {
+		final byte[] response = request.clone();
+		response[2] = '1';
+		return response;
+	}
+
+	private static ISOConnection newEchoServer(int port, IOModeEnum ioMode) throws Exception {
+		final ISOConnection server = new ISOConnection(true, "localhost", port, 60, ioMode);
+		server.setIsoConfig(new Iso8583Config(new File(ISOConnectionTest.class.getResource("/MockXML.xml").toURI()).getPath()));
+		server.setCallback(new CallbackAction() {
+			public void dataReceived(SocketPayload payload) throws ParseException {
+				try {
+					if ("SLOW".equals(new String(payload.getData(), StandardCharsets.US_ASCII))) {
+						final byte[] big = frame(new byte[SLOW_FRAME_SIZE]);
+						for (int i = 0; i < SLOW_FRAMES; i++)
+							server.send(new SocketPayload(big, payload.getSocket()));
+					}
+					else {
+						server.send(new SocketPayload(frame(payload.getData()), payload.getSocket()));
+					}
+				}
+				catch (IOException | InterruptedException x) {
+					throw new ParseException(x.getMessage());
+				}
+			}
+			public void log(String log) { }
+			public void end() { }
+		});
+		server.connect();
+		return server;
+	}
+
+	private static byte[] frame(byte[] data) {
+		final byte[] result = new byte[data.length + 2];
+		result[0] = (byte) (data.length >> 8);
+		result[1] = (byte) data.length;
+		System.arraycopy(data, 0, result, 2, data.length);
+		return result;
+	}
+
+	private static void write(Socket socket, String data) throws IOException {
+		final OutputStream out = socket.getOutputStream();
+		out.write(frame(data.getBytes(StandardCharsets.US_ASCII)));
+		out.flush();
+	}
+
+	private static byte[] readFrame(Socket socket) throws IOException {
+		socket.setSoTimeout(5000);
+		final DataInputStream in = new DataInputStream(socket.getInputStream());
+		final byte[] data = new byte[in.readUnsignedShort()];
+		in.readFully(data);
+		return data;
+	}
+}
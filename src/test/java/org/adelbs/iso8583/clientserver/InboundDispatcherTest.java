@@ -0,0 +1,108 @@
+package org.adelbs.iso8583.clientserver;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.net.Socket;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import org.adelbs.iso8583.constants.DispatchOrderEnum;
+import org.junit.Test;
+
+public class InboundDispatcherTest {
+
+	@Test
+	public void testPayloadsOfEachSocketKeepTheirOrder() throws InterruptedException {
+		final Socket[] sockets = {new Socket(), new Socket(), new Socket(), new Socket()};
+		final int perSocket = 500;
+		final Map<Socket, List<Integer>> received = new ConcurrentHashMap<Socket, List<Integer>>();
+		final Set<String> threads = Collections.newSetFromMap(new ConcurrentHashMap<String, Boolean>());
+		final CountDownLatch done = new CountDownLatch(sockets.length * perSocket);
+
+		for (Socket socket : sockets)
+			received.put(socket, Collections.synchronizedList(new ArrayList<Integer>()));
+
+		final InboundDispatcher dispatcher = new InboundDispatcher(new CallbackAction() {
+			public void dataReceived(SocketPayload payload) {
+				threads.add(Thread.currentThread().getName());
+				received.get(payload.getSocket()).add((int) payload.getData()[0] << 8 | (payload.getData()[1] & 0xFF));
+				done.countDown();
+			}
+			public void log(String log) { }
+			public void end() { }
+		}, 4, 16, DispatchOrderEnum.PER_CONNECTION);
+
+		try {
+			for (int i = 0; i < perSocket; i++) {
+				for (Socket socket : sockets)
+					dispatcher.dispatch(new SocketPayload(new byte[] {(byte) (i >> 8), (byte) i}, socket));
+			}
+			assertTrue(done.await(10, TimeUnit.SECONDS));
+		}
+		finally {
+			dispatcher.close();
+		}
+
+		for (Socket socket : sockets) {
+			final List<Integer> sequence = received.get(socket);
+			assertEquals(perSocket, sequence.size());
+			for (int i = 0; i < perSocket; i++)
+				assertEquals(i, sequence.get(i).intValue());
+		}
+		assertTrue(threads.size() > 1);
+	}
+
+	@Test
+	public void testReadersWaitWhenTheWorkersFallBehind() throws InterruptedException {
+		final CountDownLatch release = new CountDownLatch(1);
+		final CountDownLatch done = new CountDownLatch(3);
+		final InboundDispatcher dispatcher = new InboundDispatcher(new CallbackAction() {
+			public void dataReceived(SocketPayload payload) {
+				try {
+					release.await();
+				}
+				catch (InterruptedException x) {
+					Thread.currentThread().interrupt();
+				}
+				done.countDown();
+			}
+			public void log(String log) { }
+			public void end() { }
+		}, 1, 1, DispatchOrderEnum.UNORDERED);
+
+		try {
+			//The first one is at the worker, the second one fills its queue
+			dispatcher.dispatch(new SocketPayload(new byte[] {1}, null));
+			Thread.sleep(20);
+			dispatcher.dispatch(new SocketPayload(new byte[] {2}, null));
+
+			final Thread reader = new Thread() {
+				public void run() {
+					try {
+						dispatcher.dispatch(new SocketPayload(new byte[] {3}, null));
+					}
+					catch (InterruptedException x) {
+						x.printStackTrace();
+					}
+				}
+			};
+			reader.start();
+			reader.join(50);
+			assertTrue(reader.isAlive());
+
+			release.countDown();
+			reader.join(5000);
+			assertTrue(done.await(5, TimeUnit.SECONDS));
+		}
+		finally {
+			dispatcher.close();
+		}
+	}
+}
@@ -0,0 +1,119 @@
+package org.adelbs.iso8583.clientserver;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+
+import java.io.DataInputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+
+import org.adelbs.iso8583.constants.IOModeEnum;
+import org.adelbs.iso8583.constants.WaitStrategyEnum;
+import org.adelbs.iso8583.exception.ParseException;
+import org.adelbs.iso8583.helper.Iso8583Config;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+public class NioISOServerTest {
+
+	private ISOConnection server;
+	private int port;
+
+	@Before
+	public void setUp() throws Exception {
+		try (ServerSocket free = new ServerSocket(0)) {
+			port = free.getLocalPort();
+		}
+
+		server = new ISOConnection(true, "localhost", port, 60, IOModeEnum.NIO);
+		//Small, so the clients are paused while it is full
+		server.setQueue(2, WaitStrategyEnum.BLOCKING);
+		server.setIsoConfig(new Iso8583Config(new File(getClass().getResource("/MockXML.xml").toURI()).getPath()));
+		server.setCallback(new CallbackAction() {
+			public void dataReceived(SocketPayload payload) throws ParseException {
+				//Echoes the frame back, with the length prefix
+				final byte[] data = payload.getData();
+				final byte[] reply = new byte[data.length + 2];
+				reply[0] = (byte) (data.length >> 8);
+				reply[1] = (byte) data.length;
+				System.arraycopy(data, 0, reply, 2, data.length);
+				try {
+					server.send(new SocketPayload(reply, payload.getSocket()));
+				}
+				catch (IOException | InterruptedException x) {
+					throw new ParseException(x.getMessage());
+				}
+			}
+			public void log(String log) { }
+			public void end() { }
+		});
+		server.connect();
+	}
+
+	@After
+	public void tearDown() {
+		server.endConnection();
+	}
+
+	@Test
+	public void testFramesOfManyClientsAreAnsweredToEachOne() throws Exception {
+		final Socket first = new Socket("localhost", port);
+		final Socket second = new Socket("localhost", port);
+		try {
+			//The frame of the first client comes in two parts, the second one arrives in between
+			final OutputStream out = first.getOutputStream();
+			out.write(new byte[] {0, 6, 'F', 'I'});
+			out.flush();
+			second.getOutputStream().write(new byte[] {0, 3, 'A', 'B', 'C'});
+			second.getOutputStream().flush();
+			server.processNextPayload(true, 0);
+
+			out.write("RST".getBytes(StandardCharsets.US_ASCII));
+			out.write(new byte[] {'!'});
+			out.flush();
+			server.processNextPayload(true, 0);
+
+			assertArrayEquals("ABC".getBytes(StandardCharsets.US_ASCII), readFrame(second));
+			assertArrayEquals("FIRST!".getBytes(StandardCharsets.US_ASCII), readFrame(first));
+		}
+		finally {
+			first.close();
+			second.close();
+		}
+	}
+
+	@Test
+	public void testClientIsReadAgainWhenTheQueueHasRoom() throws Exception {
+		final Socket client = new Socket("localhost", port);
+		try {
+			//Many more frames than the queue holds, all at once
+			final OutputStream out = client.getOutputStream();
+			for (int i = 0; i < 50; i++)
+				out.write(new byte[] {0, 2, 'N', (byte) ('0' + i)});
+			out.flush();
+
+			for (int i = 0; i < 50; i++) {
+				server.processNextPayload(true, 0);
+				final byte[] reply = readFrame(client);
+				assertEquals(2, reply.length);
+				assertEquals((byte) ('0' + i), reply[1]);
+			}
+		}
+		finally {
+			client.close();
+		}
+	}
+
+	private static byte[] readFrame(Socket socket) throws IOException {
+		socket.setSoTimeout(5000);
+		final DataInputStream in = new DataInputStream(socket.getInputStream());
+		final byte[] data = new byte[in.readUnsignedShort()];
+		in.readFully(data);
+		return data;
+	}
+}
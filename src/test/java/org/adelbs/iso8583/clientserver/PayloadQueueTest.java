@@ -0,0 +1,106 @@
+package org.adelbs.iso8583.clientserver;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.adelbs.iso8583.constants.WaitStrategyEnum;
+import org.junit.Test;
+
+public class PayloadQueueTest {
+
+	@Test
+	public void testPayloadsComeInOrder() throws InterruptedException {
+		final PayloadQueue queue = new PayloadQueue(4, WaitStrategyEnum.BLOCKING);
+		final SocketPayload first = new SocketPayload(new byte[] {1}, null);
+		final SocketPayload second = new SocketPayload(new byte[] {2}, null);
+
+		assertFalse(queue.hasMorePayloadIn());
+		queue.addPayloadIn(first);
+		queue.addPayloadIn(second);
+		assertTrue(queue.hasMorePayloadIn());
+		assertFalse(queue.hasMorePayloadOut());
+
+		assertSame(first, queue.getNextPayloadIn());
+		assertSame(second, queue.waitNextPayloadIn(10));
+		assertNull(queue.getNextPayloadIn());
+	}
+
+	@Test
+	public void testEveryStrategyWakesUpTheConsumer() throws InterruptedException {
+		for (WaitStrategyEnum strategy : WaitStrategyEnum.values()) {
+			final PayloadQueue queue = new PayloadQueue(1, strategy);
+			assertNull(queue.waitNextPayloadOut(1));
+
+			final SocketPayload payload = new SocketPayload(new byte[] {1}, null);
+			final Thread producer = new Thread() {
+				public void run() {
+					try {
+						sleep(20);
+						queue.addPayloadOut(payload);
+					}
+					catch (InterruptedException x) {
+						x.printStackTrace();
+					}
+				}
+			};
+			producer.start();
+
+			assertSame(strategy.name(), payload, queue.waitNextPayloadOut(5000));
+			producer.join();
+		}
+	}
+
+	@Test
+	public void testProducerWaitsForRoom() throws InterruptedException {
+		final PayloadQueue queue = new PayloadQueue(1, WaitStrategyEnum.PARKING);
+		final SocketPayload first = new SocketPayload(new byte[] {1}, null);
+		final SocketPayload second = new SocketPayload(new byte[] {2}, null);
+		queue.addPayloadIn(first);
+
+		final Thread producer = new Thread() {
+			public void run() {
+				try {
+					queue.addPayloadIn(second);
+				}
+				catch (InterruptedException x) {
+					x.printStackTrace();
+				}
+			}
+		};
+		producer.start();
+		producer.join(50);
+		assertTrue(producer.isAlive());
+
+		assertSame(first, queue.getNextPayloadIn());
+		producer.join(5000);
+		assertSame(second, queue.getNextPayloadIn());
+	}
+
+	@Test
+	public void testOfferDoesNotWaitAndCallsBackWhenThereIsRoom() throws InterruptedException {
+		final PayloadQueue queue = new PayloadQueue(1, WaitStrategyEnum.BLOCKING);
+		final SocketPayload first = new SocketPayload(new byte[] {1}, null);
+		final SocketPayload second = new SocketPayload(new byte[] {2}, null);
+		final AtomicInteger calls = new AtomicInteger();
+		final Runnable listener = new Runnable() {
+			public void run() {
+				calls.incrementAndGet();
+			}
+		};
+
+		assertTrue(queue.offerPayloadIn(first, listener));
+		assertFalse(queue.offerPayloadIn(second, listener));
+		assertEquals(0, calls.get());
+
+		assertSame(first, queue.waitNextPayloadIn(10));
+		assertEquals(1, calls.get());
+		assertTrue(queue.offerPayloadIn(second, listener));
+		assertSame(second, queue.getNextPayloadIn());
+		assertEquals(1, calls.get());
+	}
+}
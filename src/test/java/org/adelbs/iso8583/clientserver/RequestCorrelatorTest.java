@@ -0,0 +1,85 @@
+package org.adelbs.iso8583.clientserver;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.File;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+import org.adelbs.iso8583.exception.ParseException;
+import org.adelbs.iso8583.helper.Iso8583RuntimeConfig;
+import org.adelbs.iso8583.protocol.ISOMessage;
+import org.adelbs.iso8583.vo.FieldVO;
+import org.adelbs.iso8583.vo.MessageVO;
+import org.junit.Before;
+import org.junit.Test;
+
+public class RequestCorrelatorTest {
+
+	private Iso8583RuntimeConfig runtimeConfig;
+	private RequestCorrelator correlator;
+
+	@Before
+	public void setUp() throws Exception {
+		runtimeConfig = Iso8583RuntimeConfig.fromFile(new File(getClass().getResource("/CorrelationXML.xml").toURI()).getPath());
+		correlator = new RequestCorrelator(runtimeConfig, RequestCorrelator.DEFAULT_KEY_BITS);
+	}
+
+	@Test
+	public void testResponsesCompleteTheirRequestsInAnyOrder() throws Exception {
+		final CompletableFuture<ISOMessage> first = correlator.register(message(runtimeConfig, "0200", "000001"), null, 5000);
+		final CompletableFuture<ISOMessage> second = correlator.register(message(runtimeConfig, "0200", "000002"), null, 5000);
+		assertEquals(2, correlator.getPendingCount());
+
+		assertTrue(correlator.complete(message(runtimeConfig, "0210", "000002").getPayload()));
+		assertFalse(first.isDone());
+		assertTrue(correlator.complete(message(runtimeConfig, "0210", "000001").getPayload()));
+
+		assertEquals("000001", first.get().getBit(11).getValue());
+		assertEquals("0210", first.get().getMessageVO().getType());
+		assertEquals("000002", second.get().getBit(11).getValue());
+		assertEquals(0, correlator.getPendingCount());
+
+		//Nothing in flight for it anymore
+		assertFalse(correlator.complete(message(runtimeConfig, "0210", "000001").getPayload()));
+	}
+
+	@Test
+	public void testRequestTimesOut() throws Exception {
+		final CompletableFuture<ISOMessage> future = correlator.register(message(runtimeConfig, "0200", "000003"), null, 20);
+		try {
+			future.get(5, TimeUnit.SECONDS);
+			fail("The request should time out");
+		}
+		catch (ExecutionException x) {
+			assertTrue(x.getCause() instanceof TimeoutException);
+		}
+		assertEquals(0, correlator.getPendingCount());
+		assertFalse(correlator.complete(message(runtimeConfig, "0210", "000003").getPayload()));
+	}
+
+	@Test(expected = ParseException.class)
+	public void testSameKeyCannotBeInFlightTwice() throws Exception {
+		correlator.register(message(runtimeConfig, "0200", "000004"), null, 5000);
+		correlator.register(message(runtimeConfig, "0200", "000004"), null, 5000);
+	}
+
+	static ISOMessage message(Iso8583RuntimeConfig runtimeConfig, String type, String stan) throws ParseException {
+		final MessageVO messageVO = runtimeConfig.newMessageVO(type);
+		for (FieldVO fieldVO : messageVO.getFieldList()) {
+			if (fieldVO.getBitNum() == 11)
+				fieldVO.setValue(stan);
+			else if (fieldVO.getBitNum() == 37)
+				fieldVO.setValue("123456789012");
+			else
+				fieldVO.setValue("TERM0001");
+			fieldVO.setPresent(true);
+		}
+		return new ISOMessage(messageVO, runtimeConfig.getPlan(type));
+	}
+}
@@ -0,0 +1,50 @@
+package org.adelbs.iso8583.clientserver;
+
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+import org.adelbs.iso8583.exception.ConnectionException;
+import org.junit.Test;
+
+public class SocketWriterTest {
+
+	@Test
+	public void testFailedWriteClosesTheSocketAndTellsTheListener() throws Exception {
+		final BlockingQueue<Throwable> causes = new LinkedBlockingQueue<Throwable>();
+		final BlockingQueue<Socket> lost = new LinkedBlockingQueue<Socket>();
+		final CallbackAction callback = new CallbackAction() {
+			public void dataReceived(SocketPayload payload) { }
+			public void log(String log) { }
+			public void end() { }
+		};
+
+		try (ServerSocket listener = new ServerSocket(0); Socket socket = new Socket("localhost", listener.getLocalPort())) {
+			//The peer resets the connection, so the writes fail
+			final Socket peer = listener.accept();
+			peer.setSoLinger(true, 0);
+			peer.close();
+
+			final SocketWriter writer = new SocketWriter(socket, 8, callback, (lostSocket, cause) -> {
+				lost.add(lostSocket);
+				causes.add(cause);
+			}, new ConcurrentHashMap<Socket, SocketWriter>());
+
+			final long deadline = System.currentTimeMillis() + 5000;
+			while (causes.isEmpty() && System.currentTimeMillis() < deadline) {
+				writer.send(new byte[1024]);
+				Thread.sleep(10);
+			}
+
+			assertTrue(causes.poll(1, TimeUnit.SECONDS) instanceof ConnectionException);
+			assertSame(socket, lost.poll());
+			assertTrue(socket.isClosed());
+		}
+	}
+}
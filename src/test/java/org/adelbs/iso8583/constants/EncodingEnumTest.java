@@ -2,10 +2,36 @@ package org.adelbs.iso8583.constants;
 
 import static org.junit.Assert.*;
 
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+
 import org.junit.Test;
 
 public class EncodingEnumTest {
 
+	@Test(expected = NumberFormatException.class)
+	public void testBinaryBytesAbove99AreRejected() {
+		EncodingEnum.BINARY.convert(new byte[] {0x12, (byte) 100});
+	}
+
+	@Test
+	public void testRangeMethodsMatchTheConversions() {
+		final String value = "0123456789";
+		for (EncodingEnum encoding : EncodingEnum.values()) {
+			final byte[] expected = encoding.convert(value);
+			
+			final ByteBuffer buffer = ByteBuffer.allocate(expected.length + 4);
+			buffer.position(2);
+			assertEquals(encoding.name(), expected.length, encoding.encode(value, buffer));
+			assertEquals(encoding.name(), 2 + expected.length, buffer.position());
+			assertArrayEquals(encoding.name(), expected, Arrays.copyOfRange(buffer.array(), 2, 2 + expected.length));
+			
+			final StringBuilder decoded = new StringBuilder("x");
+			encoding.decode(buffer.array(), 2, expected.length, decoded);
+			assertEquals(encoding.name(), "x" + encoding.convert(expected), decoded.toString());
+		}
+	}
+	
 	@Test
 	public void testGetEncodingByName() {
 		assertEquals("Match by name shoudl return the exact enconding class instance", EncodingEnum.getEncoding("BINARY").getClass(), 
@@ -0,0 +1,87 @@
+package org.adelbs.iso8583.helper;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.nio.charset.StandardCharsets;
+
+import org.adelbs.iso8583.constants.DelimiterEnum;
+import org.adelbs.iso8583.constants.EncodingEnum;
+import org.adelbs.iso8583.exception.ParseException;
+import org.adelbs.iso8583.protocol.ISO8583GenericConfigDelimiter;
+import org.adelbs.iso8583.protocol.MessagePlan;
+import org.adelbs.iso8583.vo.FieldVO;
+import org.adelbs.iso8583.vo.MessageVO;
+import org.junit.Test;
+
+public class Iso8583RuntimeConfigTest {
+
+	private static final String XML = "<?xml version=\"1.0\" encoding=\"UTF-8\"?>"
+			+ "<iso8583 delimiter=\"GENERIC_CONFIG_DELIMITER\" headerEncoding=\"UTF8\" headerSize=\"3\">"
+			+ "<message type=\"0200\" bitmap-encoding=\"HEXA\">"
+			+ "<field name=\"Processing\" bitnum=\"3\" condition=\"\" length-type=\"FIXED\" length=\"6\" type=\"ALPHANUMERIC\" encoding=\"UTF8\"/>"
+			+ "<field name=\"Private\" bitnum=\"70\" condition=\"\" length-type=\"FIXED\" length=\"0\" type=\"ALPHANUMERIC\" encoding=\"UTF8\">"
+			+ "<field name=\"A\" bitnum=\"1\" condition=\"\" length-type=\"FIXED\" length=\"2\" type=\"ALPHANUMERIC\" encoding=\"UTF8\"/>"
+			+ "<field name=\"B\" bitnum=\"2\" condition=\"\" length-type=\"FIXED\" length=\"3\" type=\"ALPHANUMERIC\" encoding=\"UTF8\"/>"
+			+ "</field></message>"
+			+ "<message type=\"0210\" bitmap-encoding=\"UTF8\">"
+			+ "<field name=\"Response\" bitnum=\"39\" condition=\"\" length-type=\"FIXED\" length=\"2\" type=\"ALPHANUMERIC\" encoding=\"UTF8\"/>"
+			+ "</message></iso8583>";
+
+	@Test
+	public void testMessagesAreIndexedByType() throws ParseException {
+		final Iso8583RuntimeConfig runtimeConfig = Iso8583RuntimeConfig.fromXml(XML);
+
+		assertEquals(DelimiterEnum.GENERIC_CONFIG_DELIMITER, runtimeConfig.getDelimiterEnum());
+		assertTrue(runtimeConfig.getDelimiter() instanceof ISO8583GenericConfigDelimiter);
+		assertEquals(EncodingEnum.UTF8, runtimeConfig.getHeaderEncoding());
+		assertEquals(3, runtimeConfig.getHeaderByteLength());
+		assertEquals(2, runtimeConfig.getTypes().size());
+		assertEquals(Iso8583RuntimeConfig.DEFAULT_MAX_FRAME_SIZE, runtimeConfig.getMaxFrameSize());
+		assertEquals(4096, Iso8583RuntimeConfig.fromXml(XML.replace("headerSize=\"3\"", "headerSize=\"3\" maxFrameSize=\"4096\"")).getMaxFrameSize());
+
+		final MessagePlan plan = runtimeConfig.getPlan("0200");
+		assertEquals(EncodingEnum.HEXA, plan.getBitmapEncoding());
+		assertEquals(3, plan.getHeaderSize());
+		assertEquals(5, plan.getField(70).getLength());
+		assertNull(runtimeConfig.getPlan("0400"));
+
+		final byte[] payload = "ABC0210".getBytes(StandardCharsets.US_ASCII);
+		assertSame(runtimeConfig.getPlan("0210"), runtimeConfig.findPlan(payload, 0));
+		assertNull(runtimeConfig.findPlan(payload, 1));
+	}
+
+	@Test
+	public void testNewMessageVOIsACopy() throws ParseException {
+		final Iso8583RuntimeConfig runtimeConfig = Iso8583RuntimeConfig.fromXml(XML);
+
+		final MessageVO messageVO = runtimeConfig.newMessageVO("0200");
+		assertEquals(Integer.valueOf(3), messageVO.getHeaderSize());
+		final FieldVO composite = messageVO.getFieldList().get(1);
+		assertEquals("A", composite.getFieldList().get(0).getName());
+		assertEquals(Integer.valueOf(5), composite.getLength());
+
+		messageVO.getFieldList().clear();
+		assertNotSame(messageVO, runtimeConfig.newMessageVO("0200"));
+		assertEquals(2, runtimeConfig.newMessageVO("0200").getFieldList().size());
+	}
+
+	@Test
+	public void testSnapshotFollowsTheConfig() throws Exception {
+		final Iso8583Config isoConfig = new Iso8583Config(new File(getClass().getResource("/MockXML.xml").toURI()).getPath());
+
+		final Iso8583RuntimeConfig runtimeConfig = isoConfig.getRuntimeConfig();
+		assertSame(runtimeConfig, isoConfig.getRuntimeConfig());
+		assertEquals(DelimiterEnum.LENGTH2_DELIMITER_BEG, runtimeConfig.getDelimiterEnum());
+		assertEquals(1, runtimeConfig.getPlan("0200").getField(4).getLength());
+
+		isoConfig.setDelimiterEnum(DelimiterEnum.GENERIC_CONFIG_DELIMITER);
+		assertNotSame(runtimeConfig, isoConfig.getRuntimeConfig());
+		assertEquals(DelimiterEnum.GENERIC_CONFIG_DELIMITER, isoConfig.getRuntimeConfig().getDelimiterEnum());
+		assertEquals(DelimiterEnum.LENGTH2_DELIMITER_BEG, runtimeConfig.getDelimiterEnum());
+	}
+}
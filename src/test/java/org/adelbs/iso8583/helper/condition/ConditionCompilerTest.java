@@ -0,0 +1,79 @@
+package org.adelbs.iso8583.helper.condition;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+public class ConditionCompilerTest {
+
+	@Test
+	public void testCompiledOnce() {
+		final String expression = "BIT[3] == '003000'";
+		assertSame(ConditionCompiler.compile(expression), ConditionCompiler.compile(expression));
+	}
+
+	@Test
+	public void testBitValues() {
+		final DynamicCondition condition = ConditionCompiler.compile("BIT[3] == '003000'");
+		final Object[] bits = new Object[DynamicCondition.BIT_ARRAY_SIZE];
+		assertFalse(condition.evaluate(bits));
+
+		bits[3] = "003000";
+		assertTrue(condition.evaluate(bits));
+
+		bits[3] = "000000";
+		assertFalse(condition.evaluate(bits));
+	}
+
+	@Test
+	public void testGuiExpressionsAreCompiledNatively() {
+		assertTrue(ConditionCompiler.compile("(BIT[3] == '003000' || BIT[4] > 10) && true") instanceof NativeCondition);
+		assertTrue(ConditionCompiler.compile("BIT[3].startsWith('00')") instanceof GroovyCondition);
+	}
+
+	@Test
+	public void testSameResultsAsGroovy() {
+		final String[] expressions = {
+				"BIT[3] == '003000'", "BIT[3] != \"003000\"", "BIT[4] == null", "BIT[5] > '0100'", "BIT[5] < '0100'",
+				"BIT[3] + BIT[5] == '0030000200'", "BIT[3] - '00' == '3000'", "1 + 2 == 3", "1 + 2 > 2.5", "-1 < 0",
+				"BIT[3] == 3000", "(BIT[4] || BIT[3]) && !false == false", "BIT[4] || BIT[3]", "1 == 1.0",
+				"BIT[4] < BIT[3]", "'' || 0 || null", "true && (false || BIT[3] > BIT[5])"
+		};
+		final Object[] bits = new Object[DynamicCondition.BIT_ARRAY_SIZE];
+		bits[3] = "003000";
+		bits[5] = "0200";
+
+		for (String expression : expressions) {
+			Boolean groovyResult;
+			try {
+				groovyResult = GroovyCondition.compile(expression).evaluate(bits);
+			}
+			catch (IllegalArgumentException x) {
+				groovyResult = null;
+			}
+
+			Boolean nativeResult;
+			try {
+				nativeResult = ExpressionParser.parse(expression).evaluate(bits);
+			}
+			catch (IllegalArgumentException x) {
+				//Outside the native grammar, Groovy is used instead
+				continue;
+			}
+			assertEquals(expression, groovyResult, nativeResult);
+		}
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void testNonBooleanExpression() {
+		ConditionCompiler.compile("return 'foobar'").evaluate(new Object[DynamicCondition.BIT_ARRAY_SIZE]);
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void testInvalidExpression() {
+		ConditionCompiler.compile("BIT[3] ==");
+	}
+}
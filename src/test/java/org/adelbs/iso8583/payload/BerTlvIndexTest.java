@@ -0,0 +1,55 @@
+package org.adelbs.iso8583.payload;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import org.adelbs.iso8583.exception.OutOfBoundsException;
+import org.adelbs.iso8583.util.HexCodec;
+import org.junit.Test;
+
+public class BerTlvIndexTest {
+
+	//9F26 (cryptogram), 95 (TVR), template 70 holding 5A (PAN) and a 130 bytes long 9F10 (long form length)
+	private static final String CHIP_DATA = "9F2608112233445566778895050000008000"
+			+ "7081905A0841111111111111119F108182" + repeat("AB", 130);
+
+	@Test
+	public void testLookupByTag() throws OutOfBoundsException {
+		final byte[] payload = HexCodec.fromHex("FFFF" + CHIP_DATA);
+		final BerTlvIndex index = BerTlvIndex.parse(payload, 2, payload.length - 2);
+
+		assertEquals(5, index.size());
+		assertEquals("1122334455667788", index.getHexValue(0x9F26));
+		assertEquals(2 + 3, index.getValueOffset(0x9F26));
+		assertEquals("0000008000", index.getHexValue(0x95));
+		assertEquals("4111111111111111", index.getHexValue(0x5A));
+		assertEquals(130, index.getValueLength(0x9F10));
+		assertSame(payload, index.getSource());
+
+		assertTrue(index.contains(0x70));
+		assertTrue(BerTlvIndex.isConstructed(0x70));
+		assertFalse(BerTlvIndex.isConstructed(0x9F26));
+		assertEquals(-1, index.find(0x9F27));
+		assertNull(index.getValue(0x9F27));
+	}
+
+	@Test(expected = OutOfBoundsException.class)
+	public void testTruncatedValue() throws OutOfBoundsException {
+		BerTlvIndex.parse(HexCodec.fromHex("9F260811223344"));
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void testInvalidLength() throws OutOfBoundsException {
+		BerTlvIndex.parse(HexCodec.fromHex("9F268500"));
+	}
+
+	private static String repeat(final String value, final int times) {
+		final StringBuilder result = new StringBuilder();
+		for (int i = 0; i < times; i++)
+			result.append(value);
+		return result.toString();
+	}
+}
@@ -0,0 +1,33 @@
+package org.adelbs.iso8583.payload;
+
+import org.adelbs.iso8583.constants.EncodingEnum;
+import org.adelbs.iso8583.constants.TypeEnum;
+
+/**
+ * Provider handling BER-TLV values of UTF8 fields as plain text.
+ */
+public class MockTransformatorProvider implements TransformatorProvider {
+
+	@Override
+	public TypeEnum getType() {
+		return TypeEnum.BERTLV;
+	}
+
+	@Override
+	public Transformator create(final EncodingEnum encoding) {
+		if (encoding != EncodingEnum.UTF8)
+			return null;
+
+		return new Transformator() {
+			@Override
+			public byte[] transform(final Object value) {
+				return encoding.convert(String.valueOf(value));
+			}
+
+			@Override
+			public RevertResult revert(final byte[] payload) {
+				return new RevertResult(payload.length, encoding.convert(payload));
+			}
+		};
+	}
+}
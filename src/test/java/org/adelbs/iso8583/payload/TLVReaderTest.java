@@ -0,0 +1,72 @@
+package org.adelbs.iso8583.payload;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+import org.adelbs.iso8583.constants.EncodingEnum;
+import org.adelbs.iso8583.exception.OutOfBoundsException;
+import org.junit.Test;
+
+public class TLVReaderTest {
+
+	@Test
+	public void testNestedElements() throws OutOfBoundsException {
+		final byte[] payload = "XX01003ABC0201401001Z02003XYZ03000".getBytes(StandardCharsets.US_ASCII);
+		final TLVReader reader = new TLVReader(EncodingEnum.UTF8, payload, 2, payload.length);
+
+		assertTrue(reader.next());
+		assertEquals(1, reader.getTagNumber());
+		assertEquals(3, reader.getLength());
+		assertEquals(7, reader.getValueOffset());
+		assertEquals("ABC", reader.getValue());
+
+		assertTrue(reader.next());
+		assertEquals("02", reader.getTag());
+		assertTrue(reader.enter());
+		assertEquals(1, reader.getDepth());
+		assertTrue(reader.next());
+		assertEquals("Z", reader.getValue());
+		reader.exit();
+
+		//The children not read are skipped
+		assertTrue(reader.next());
+		assertEquals(3, reader.getTagNumber());
+		assertEquals("", reader.getValue());
+		assertEquals(payload.length, reader.getEndOffset());
+		assertFalse(reader.next());
+	}
+
+	@Test(expected = OutOfBoundsException.class)
+	public void testValueBeyondTheEnd() throws OutOfBoundsException {
+		final byte[] payload = "01005AB".getBytes(StandardCharsets.US_ASCII);
+		new TLVReader(EncodingEnum.UTF8, payload, 0, payload.length).next();
+	}
+
+	@Test
+	public void testWriterAndReaderFollowTheEncoding() throws OutOfBoundsException {
+		final ByteBuffer target = ByteBuffer.allocate(64);
+		final TLVWriter writer = new TLVWriter(EncodingEnum.EBCDIC, target);
+		writer.write("1", "AB").begin("2").write("3", "C").end();
+		assertEquals(0, writer.getDepth());
+
+		final byte[] payload = Arrays.copyOf(target.array(), target.position());
+		assertArrayEquals(EncodingEnum.EBCDIC.convert("01002AB0200603001C"), payload);
+
+		final TLVReader reader = new TLVReader(EncodingEnum.EBCDIC, payload, 0, payload.length);
+		assertTrue(reader.next());
+		assertEquals("AB", reader.getValue());
+		assertTrue(reader.next());
+		assertEquals(6, reader.getLength());
+		assertTrue(reader.enter());
+		assertTrue(reader.next());
+		assertEquals(3, reader.getTagNumber());
+		assertEquals("C", reader.getValue());
+		assertFalse(reader.next());
+	}
+}
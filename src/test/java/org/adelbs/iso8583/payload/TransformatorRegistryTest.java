@@ -0,0 +1,102 @@
+package org.adelbs.iso8583.payload;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.net.URL;
+import java.net.URLClassLoader;
+import java.nio.file.Files;
+import java.util.Iterator;
+
+import org.adelbs.iso8583.constants.EncodingEnum;
+import org.adelbs.iso8583.constants.TypeEnum;
+import org.adelbs.iso8583.constants.TypeLengthEnum;
+import org.adelbs.iso8583.exception.OutOfBoundsException;
+import org.adelbs.iso8583.protocol.ISOMessage;
+import org.adelbs.iso8583.protocol.ISOMessageView;
+import org.adelbs.iso8583.protocol.MessagePlan;
+import org.adelbs.iso8583.vo.FieldVO;
+import org.adelbs.iso8583.vo.MessageVO;
+import org.junit.Test;
+
+public class TransformatorRegistryTest {
+
+	@Test
+	public void testTransformatorsAreKeyedByEncoding() throws OutOfBoundsException {
+		final FieldVO fieldVO = new FieldVO();
+		fieldVO.setTlvType("1");
+		fieldVO.setTlvLength("1");
+		fieldVO.setValue("A");
+
+		assertSame(TransformatorRegistry.get(TypeEnum.TLV, EncodingEnum.UTF8), TransformatorRegistry.get(TypeEnum.TLV, EncodingEnum.UTF8));
+		assertNotSame(TransformatorRegistry.get(TypeEnum.TLV, EncodingEnum.UTF8), TransformatorRegistry.get(TypeEnum.TLV, EncodingEnum.EBCDIC));
+
+		//The first encoding used must not be taken by the following ones
+		assertArrayEquals("01001A".getBytes(), PayloadTransformator.getInstance(EncodingEnum.UTF8).transform(fieldVO, TypeEnum.TLV));
+		final byte[] ebcdic = PayloadTransformator.getInstance(EncodingEnum.EBCDIC).transform(fieldVO, TypeEnum.TLV);
+		assertArrayEquals(EncodingEnum.EBCDIC.convert("01001A"), ebcdic);
+		assertEquals("A", ((FieldVO) PayloadTransformator.getInstance(EncodingEnum.EBCDIC).revert(ebcdic, TypeEnum.TLV).getResultantObject()).getValue());
+	}
+
+	@Test
+	public void testProvidersAreLoadedAsServices() throws Exception {
+		final File services = new File(Files.createTempDirectory("providers").toFile(), "META-INF/services");
+		assertTrue(services.mkdirs());
+		Files.write(new File(services, TransformatorProvider.class.getName()).toPath(), MockTransformatorProvider.class.getName().getBytes("US-ASCII"));
+
+		final URLClassLoader loader = new URLClassLoader(new URL[] {services.getParentFile().getParentFile().toURI().toURL()}, getClass().getClassLoader());
+		try {
+			final Iterator<TransformatorProvider> providers = TransformatorRegistry.providers(loader).iterator();
+			assertTrue(providers.next() instanceof MockTransformatorProvider);
+			assertFalse(providers.hasNext());
+		}
+		finally {
+			loader.close();
+		}
+	}
+
+	@Test
+	public void testRegisteredProviderConvertsTheFields() throws Exception {
+		assertFalse(TransformatorRegistry.isSupported(TypeEnum.BERTLV, EncodingEnum.UTF8));
+
+		TransformatorRegistry.register(new MockTransformatorProvider());
+		try {
+			assertTrue(TransformatorRegistry.isSupported(TypeEnum.BERTLV, EncodingEnum.UTF8));
+			assertFalse(TransformatorRegistry.isSupported(TypeEnum.BERTLV, EncodingEnum.EBCDIC));
+			assertFalse(TransformatorRegistry.isSupported(TypeEnum.ALPHANUMERIC, EncodingEnum.UTF8));
+			assertEquals("9F26", PayloadTransformator.getInstance(EncodingEnum.UTF8).revert("XX9F26".getBytes(), 2, 6, TypeEnum.BERTLV).getResultantObject());
+
+			//The value is plain text instead of hexadecimal digits, framed by the prefix of the field
+			final MessageVO messageVO = new MessageVO("0200", EncodingEnum.HEXA);
+			final FieldVO chipData = new FieldVO(null, "ChipData", "", 55, TypeEnum.BERTLV, TypeLengthEnum.NVAR, 3, EncodingEnum.UTF8, "");
+			chipData.setValue("not hex");
+			chipData.setPresent(true);
+			messageVO.getFieldList().add(chipData);
+
+			final MessagePlan plan = MessagePlan.compile(messageVO);
+			final byte[] payload = plan.encode(messageVO);
+			assertEquals("007not hex", new String(payload, 20, 10, "US-ASCII"));
+			assertArrayEquals("007not hex".getBytes("US-ASCII"), chipData.getPayloadValue());
+
+			assertEquals("not hex", new ISOMessage(payload, plan).getBit(55).getValue());
+			assertEquals("not hex", new ISOMessageView(payload, plan).getValue(55).toString());
+
+			final FieldVO legacy = chipData.getInstanceCopy();
+			assertEquals(30, legacy.setValueFromPayload(payload, 20));
+			assertEquals("not hex", legacy.getValue());
+		}
+		finally {
+			TransformatorRegistry.unregister(TypeEnum.BERTLV);
+		}
+	}
+
+	@Test(expected = UnsupportedOperationException.class)
+	public void testMissingTransformator() {
+		PayloadTransformator.getInstance(EncodingEnum.UTF8).transform("value", TypeEnum.ALPHANUMERIC);
+	}
+}
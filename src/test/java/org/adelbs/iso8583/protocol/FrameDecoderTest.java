@@ -0,0 +1,95 @@
+package org.adelbs.iso8583.protocol;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+import java.io.File;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+
+import org.adelbs.iso8583.constants.DelimiterEnum;
+import org.adelbs.iso8583.exception.InvalidPayloadException;
+import org.adelbs.iso8583.helper.Iso8583Config;
+import org.junit.Test;
+
+public class FrameDecoderTest {
+
+	@Test
+	public void testLengthPrefixCoalescedFrames() throws InvalidPayloadException {
+		final FrameDecoder decoder = new ISO8583Length2DelimiterBeginning().newFrameDecoder(null);
+		final ByteBuffer buffer = ByteBuffer.allocate(64);
+		buffer.put(new byte[] {0, 3, 'A', 'B', 'C', 0, 2, 'D', 'E', 0, 4, 'F'});
+		buffer.flip();
+
+		assertEquals("ABC", toString(decoder.decode(buffer)));
+		assertEquals("DE", toString(decoder.decode(buffer)));
+		assertNull(decoder.decode(buffer));
+		assertEquals(3, decoder.getBytesNeeded());
+
+		buffer.compact();
+		buffer.put(new byte[] {'G', 'H', 'I', 0});
+		buffer.flip();
+		assertEquals("FGHI", toString(decoder.decode(buffer)));
+		assertNull(decoder.decode(buffer));
+		assertEquals(1, decoder.getBytesNeeded());
+	}
+
+	@Test
+	public void testGenericConfigFrames() throws Exception {
+		final Iso8583Config isoConfig = new Iso8583Config(new File(getClass().getResource("/MockXML.xml").toURI()).getPath());
+		isoConfig.setDelimiterEnum(DelimiterEnum.GENERIC_CONFIG_DELIMITER);
+
+		final String message = "0200" + "0111000000000000000000000000000000000000000000000000000000000000" + "ABC";
+		final ByteBuffer buffer = ByteBuffer.wrap((message + message + "0200").getBytes(StandardCharsets.US_ASCII));
+
+		final FrameDecoder decoder = isoConfig.getDelimiter().newFrameDecoder(isoConfig);
+		assertEquals(message, toString(decoder.decode(buffer)));
+		assertEquals(message, toString(decoder.decode(buffer)));
+		assertNull(decoder.decode(buffer));
+		assertEquals(4, buffer.remaining());
+	}
+
+	@Test
+	public void testGenericConfigResumesScan() throws Exception {
+		final File xml = File.createTempFile("generic", ".xml");
+		xml.deleteOnExit();
+		Files.write(xml.toPath(), ("<?xml version=\"1.0\" encoding=\"UTF-8\"?><iso8583 delimiter=\"GENERIC_CONFIG_DELIMITER\">"
+				+ "<message type=\"0200\" bitmap-encoding=\"HEXA\">"
+				+ "<field name=\"PAN\" bitnum=\"2\" condition=\"\" length-type=\"NVAR\" length=\"2\" type=\"ALPHANUMERIC\" encoding=\"UTF8\"/>"
+				+ "<field name=\"Processing\" bitnum=\"3\" condition=\"\" length-type=\"FIXED\" length=\"6\" type=\"ALPHANUMERIC\" encoding=\"UTF8\"/>"
+				+ "</message></iso8583>").getBytes(StandardCharsets.UTF_8));
+		final Iso8583Config isoConfig = new Iso8583Config(xml.getPath());
+
+		final byte[] message = ("0200" + "6000000000000000" + "164000123412341234" + "003000").getBytes(StandardCharsets.US_ASCII);
+		final FrameDecoder decoder = isoConfig.getDelimiter().newFrameDecoder(isoConfig);
+		final ByteBuffer buffer = ByteBuffer.allocate(64);
+
+		buffer.put(message, 0, 21).flip();
+		assertNull(decoder.decode(buffer));
+		assertEquals("Length prefix of the N-VAR field", 1, decoder.getBytesNeeded());
+
+		buffer.compact().put(message[21]).flip();
+		assertNull(decoder.decode(buffer));
+		assertEquals("Exact size of the N-VAR field is known", 38 - 22, decoder.getBytesNeeded());
+
+		buffer.compact().put(message, 22, 16).flip();
+		assertNull(decoder.decode(buffer));
+		assertEquals(6, decoder.getBytesNeeded());
+
+		for (int i = 38; i < message.length; i++) {
+			assertEquals(0, buffer.position());
+			buffer.compact().put(message[i]).flip();
+			if (i < message.length - 1)
+				assertNull(decoder.decode(buffer));
+		}
+		assertEquals(new String(message, StandardCharsets.US_ASCII), toString(decoder.decode(buffer)));
+		assertEquals(0, buffer.remaining());
+	}
+
+	private static String toString(final ByteBuffer frame) {
+		final byte[] data = new byte[frame.remaining()];
+		frame.get(data);
+		return new String(data, StandardCharsets.US_ASCII);
+	}
+}
@@ -0,0 +1,77 @@
+package org.adelbs.iso8583.protocol;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+
+import java.nio.ByteBuffer;
+
+import org.adelbs.iso8583.constants.DelimiterEnum;
+import org.adelbs.iso8583.constants.LengthPrefixEnum;
+import org.adelbs.iso8583.exception.InvalidPayloadException;
+import org.junit.Test;
+
+public class ISO8583LengthPrefixDelimiterTest {
+
+	@Test
+	public void testPrefixBytes() {
+		assertArrayEquals(new byte[] {0x01, 0x2C}, prefix(LengthPrefixEnum.BINARY2_BE, false, 300));
+		assertArrayEquals(new byte[] {0x2C, 0x01}, prefix(LengthPrefixEnum.BINARY2_LE, false, 300));
+		assertArrayEquals(new byte[] {0, 0, 0x01, 0x2C}, prefix(LengthPrefixEnum.BINARY4_BE, false, 300));
+		assertArrayEquals(new byte[] {0x2C, 0x01, 0, 0}, prefix(LengthPrefixEnum.BINARY4_LE, false, 300));
+		assertArrayEquals("0300".getBytes(), prefix(LengthPrefixEnum.ASCII4, false, 300));
+		assertArrayEquals("0304".getBytes(), prefix(LengthPrefixEnum.ASCII4, true, 300));
+		assertArrayEquals(new byte[] {(byte) 0xF0, (byte) 0xF3, (byte) 0xF0, (byte) 0xF0}, prefix(LengthPrefixEnum.EBCDIC4, false, 300));
+		assertArrayEquals(new byte[] {0x03, 0x00}, prefix(LengthPrefixEnum.BCD2, false, 300));
+		assertArrayEquals("RDW always counts itself", new byte[] {0x01, 0x30, 0, 0}, prefix(LengthPrefixEnum.RDW, false, 300));
+	}
+
+	@Test
+	public void testRoundTripEveryFormat() throws InvalidPayloadException {
+		for (LengthPrefixEnum format : LengthPrefixEnum.values()) {
+			for (boolean inclusive : new boolean[] {false, true}) {
+				final ISO8583LengthPrefixDelimiter delimiter = new ISO8583LengthPrefixDelimiter(format, inclusive);
+				final ByteBuffer buffer = ByteBuffer.allocate(64);
+				buffer.position(format.getSize());
+				buffer.put("0800ABC".getBytes());
+				delimiter.writeLengthPrefix(buffer, 0, 7);
+				buffer.put(buffer.array(), 0, format.getSize() + 7);
+				buffer.flip();
+
+				final FrameDecoder decoder = delimiter.newFrameDecoder(null);
+				assertEquals(format.toString(), 7, decoder.decode(buffer).remaining());
+				assertEquals(format.toString(), 7, decoder.decode(buffer).remaining());
+				assertEquals(format.toString(), 0, buffer.remaining());
+			}
+		}
+	}
+
+	@Test(expected = InvalidPayloadException.class)
+	public void testInvalidDigits() throws InvalidPayloadException {
+		new ISO8583LengthPrefixDelimiter(LengthPrefixEnum.ASCII4, false).newFrameDecoder(null).decode(ByteBuffer.wrap("00A1xyz".getBytes()));
+	}
+
+	@Test(expected = InvalidPayloadException.class)
+	public void testFrameAboveTheMaximumIsRejectedAtThePrefix() throws InvalidPayloadException {
+		//A peer announcing ~2 GB must not make the connection buffer it
+		final ISO8583LengthPrefixDelimiter delimiter = new ISO8583LengthPrefixDelimiter(LengthPrefixEnum.BINARY4_BE, false);
+		new LengthPrefixFrameDecoder(delimiter, 1024).decode(ByteBuffer.wrap(new byte[] {0x7F, (byte) 0xFF, (byte) 0xFF, (byte) 0xF0, 'x'}));
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void testMessageTooBig() {
+		prefix(LengthPrefixEnum.ASCII4, false, 10000);
+	}
+
+	@Test
+	public void testInclusiveVariantOfEnum() {
+		assertEquals(false, ((ISO8583LengthPrefixDelimiter) DelimiterEnum.ASCII4_DELIMITER_BEG.getDelimiter(false)).isInclusive());
+		assertEquals(true, ((ISO8583LengthPrefixDelimiter) DelimiterEnum.ASCII4_DELIMITER_BEG.getDelimiter(true)).isInclusive());
+		assertEquals(DelimiterEnum.RDW_DELIMITER_BEG, DelimiterEnum.getDelimiter("RDW_DELIMITER_BEG"));
+	}
+
+	private static byte[] prefix(final LengthPrefixEnum format, final boolean inclusive, final int messageSize) {
+		final ByteBuffer buffer = ByteBuffer.allocate(format.getSize());
+		new ISO8583LengthPrefixDelimiter(format, inclusive).writeLengthPrefix(buffer, 0, messageSize);
+		return buffer.array();
+	}
+}
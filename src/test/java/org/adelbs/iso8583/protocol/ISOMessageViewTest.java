@@ -0,0 +1,92 @@
+package org.adelbs.iso8583.protocol;
+
+import static org.adelbs.iso8583.protocol.MessagePlanTest.field;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+
+import org.adelbs.iso8583.constants.EncodingEnum;
+import org.adelbs.iso8583.constants.TypeLengthEnum;
+import org.adelbs.iso8583.exception.ParseException;
+import org.adelbs.iso8583.exception.PayloadIncompleteException;
+import org.adelbs.iso8583.util.ByteCharSequence;
+import org.adelbs.iso8583.vo.FieldVO;
+import org.adelbs.iso8583.vo.MessageVO;
+import org.junit.Before;
+import org.junit.Test;
+
+public class ISOMessageViewTest {
+
+	private MessagePlan plan;
+	private byte[] payload;
+
+	@Before
+	public void setUp() throws ParseException {
+		final MessageVO messageVO = new MessageVO("0200", EncodingEnum.HEXA);
+		messageVO.getFieldList().add(field("Processing", 3, TypeLengthEnum.FIXED, 6));
+		messageVO.getFieldList().add(field("Track", 35, TypeLengthEnum.NVAR, 2));
+		messageVO.getFieldList().add(field("Terminal", 41, TypeLengthEnum.FIXED, 8));
+
+		final FieldVO composite = field("Private", 70, TypeLengthEnum.FIXED, 0);
+		composite.getFieldList().add(field("Private1", 1, TypeLengthEnum.FIXED, 2));
+		composite.getFieldList().add(field("Private2", 2, TypeLengthEnum.NVAR, 1));
+		messageVO.getFieldList().add(composite);
+
+		messageVO.getFieldList().get(0).setValue("003000");
+		messageVO.getFieldList().get(1).setValue("4000123412341234=2512");
+		messageVO.getFieldList().get(2).setValue("TERM0001");
+		composite.getFieldList().get(0).setValue("AB");
+		composite.getFieldList().get(1).setValue("CDE");
+		for (FieldVO fieldVO : messageVO.getFieldList())
+			fieldVO.setPresent(true);
+
+		plan = MessagePlan.compile(messageVO);
+		payload = plan.encode(messageVO);
+	}
+
+	@Test
+	public void testFieldsAreIndexed() throws ParseException {
+		final ISOMessageView view = new ISOMessageView(payload, plan);
+
+		assertEquals("0200", view.getType().toString());
+		assertNull(view.getHeader());
+		assertTrue(view.isPresent(41));
+		assertFalse(view.isPresent(4));
+		assertNull(view.getValue(4));
+		assertEquals(payload.length, view.getMessageSize());
+
+		assertEquals("003000", view.getValue(3).toString());
+		assertTrue(view.getValue(3) instanceof ByteCharSequence);
+		assertEquals("4000123412341234=2512", view.getValue(35).toString());
+		assertEquals(23, view.getFieldLength(35));
+		assertEquals(21, view.getValueLength(35));
+		assertEquals("TERM0001", view.getValue(41).toString());
+		assertEquals(4 + 32, view.getFieldOffset(3));
+
+		final ByteBuffer raw = view.getRawValue(41);
+		assertEquals(8, raw.remaining());
+		assertEquals('T', raw.get(0));
+
+		assertEquals("CDE", view.getField(70).getFieldList().get(1).getValue());
+	}
+
+	@Test
+	public void testViewInsideLargerBuffer() throws ParseException {
+		final byte[] buffer = new byte[payload.length + 10];
+		System.arraycopy(payload, 0, buffer, 5, payload.length);
+
+		final ISOMessageView view = new ISOMessageView(buffer, 5, payload.length, plan);
+		assertEquals("0200", view.getType().toString());
+		assertEquals("TERM0001", view.getValue(41).toString());
+		assertEquals(payload.length, view.getMessageSize());
+	}
+
+	@Test(expected = PayloadIncompleteException.class)
+	public void testIncompletePayload() throws ParseException {
+		new ISOMessageView(Arrays.copyOf(payload, payload.length - 1), plan);
+	}
+}
@@ -0,0 +1,98 @@
+package org.adelbs.iso8583.protocol;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import org.adelbs.iso8583.constants.EncodingEnum;
+import org.adelbs.iso8583.exception.OutOfBoundsException;
+import org.junit.Test;
+
+public class LongBitmapTest {
+
+	@Test
+	public void testSetAndIterate() {
+		final LongBitmap bitmap = new LongBitmap();
+		bitmap.set(3);
+		bitmap.set(64);
+		bitmap.set(70);
+		bitmap.set(192);
+
+		assertTrue(bitmap.isSet(3));
+		assertFalse(bitmap.isSet(4));
+		assertEquals(3, bitmap.nextSetBit(1));
+		assertEquals(64, bitmap.nextSetBit(4));
+		assertEquals(70, bitmap.nextSetBit(65));
+		assertEquals(192, bitmap.nextSetBit(71));
+		assertEquals(-1, bitmap.nextSetBit(193));
+		assertEquals(192, bitmap.getLastBit());
+
+		bitmap.clear(192);
+		assertEquals(-1, bitmap.nextSetBit(71));
+	}
+
+	@Test
+	public void testExtensionBits() {
+		final LongBitmap bitmap = new LongBitmap();
+		bitmap.set(2);
+		bitmap.updateExtensionBits();
+		assertEquals(1, bitmap.getWordCount());
+
+		bitmap.set(130);
+		bitmap.updateExtensionBits();
+		assertTrue(bitmap.isSet(1));
+		assertTrue(bitmap.isSet(65));
+		assertEquals(3, bitmap.getWordCount());
+
+		bitmap.setMaxWords(2);
+		assertEquals(2, bitmap.getWordCount());
+	}
+
+	@Test
+	public void testWireOrder() {
+		final LongBitmap bitmap = new LongBitmap();
+		bitmap.set(2);
+		bitmap.set(64);
+		assertEquals(0x4000000000000001L, bitmap.getWord(0));
+		assertEquals("4000000000000001", new String(bitmap.toPayload(EncodingEnum.HEXA)));
+	}
+
+	@Test
+	public void testRoundTripForEveryEncoding() throws OutOfBoundsException {
+		final LongBitmap bitmap = new LongBitmap();
+		bitmap.set(3);
+		bitmap.set(11);
+		bitmap.set(41);
+		bitmap.set(100);
+		bitmap.updateExtensionBits();
+
+		for (EncodingEnum encoding : EncodingEnum.values()) {
+			final byte[] payload = bitmap.toPayload(encoding);
+			assertEquals(encoding.toString(), 2 * encoding.getMinBitmapSize(), payload.length);
+
+			final LongBitmap read = LongBitmap.read(encoding, payload, 0, 3);
+			assertEquals(encoding.toString(), bitmap.getWord(0), read.getWord(0));
+			assertEquals(encoding.toString(), bitmap.getWord(1), read.getWord(1));
+		}
+	}
+
+	@Test
+	public void testCompatibleWithLegacyConversion() {
+		final LongBitmap bitmap = new LongBitmap();
+		bitmap.set(2);
+		bitmap.set(7);
+		bitmap.set(39);
+		final String binary = bitmap.toBinaryString();
+
+		assertArrayEquals(EncodingEnum.UTF8.convertBitmap(binary), bitmap.toPayload(EncodingEnum.UTF8));
+		assertArrayEquals(EncodingEnum.HEXA.convertBitmap(binary), bitmap.toPayload(EncodingEnum.HEXA));
+		assertArrayEquals(EncodingEnum.EBCDIC.convertBitmap(binary), bitmap.toPayload(EncodingEnum.EBCDIC));
+		assertArrayEquals(EncodingEnum.BINARY.convertBitmap(binary), bitmap.toPayload(EncodingEnum.BINARY));
+	}
+
+	@Test(expected = OutOfBoundsException.class)
+	public void testReadIncomplete() throws OutOfBoundsException {
+		LongBitmap.read(EncodingEnum.HEXA, "C000".getBytes(), 0, 2);
+	}
+}
@@ -0,0 +1,229 @@
+package org.adelbs.iso8583.protocol;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.fail;
+
+import java.nio.BufferOverflowException;
+import java.nio.ByteBuffer;
+
+import org.adelbs.iso8583.constants.EncodingEnum;
+import org.adelbs.iso8583.constants.TypeEnum;
+import org.adelbs.iso8583.constants.TypeLengthEnum;
+import org.adelbs.iso8583.exception.OutOfBoundsException;
+import org.adelbs.iso8583.exception.ParseException;
+import org.adelbs.iso8583.vo.FieldVO;
+import org.adelbs.iso8583.vo.MessageVO;
+import org.junit.Before;
+import org.junit.Test;
+
+public class MessagePlanTest {
+
+	private MessageVO messageVO;
+
+	@Before
+	public void setUp() {
+		messageVO = new MessageVO("0200", EncodingEnum.UTF8);
+		messageVO.setHeaderEncoding(EncodingEnum.UTF8);
+		messageVO.setHeaderSize(0);
+		messageVO.getFieldList().add(field("Processing", 3, TypeLengthEnum.FIXED, 6));
+		messageVO.getFieldList().add(field("Amount", 4, TypeLengthEnum.FIXED, 12));
+		messageVO.getFieldList().add(field("Track", 35, TypeLengthEnum.NVAR, 2));
+
+		final FieldVO composite = field("Private", 70, TypeLengthEnum.FIXED, 0);
+		composite.getFieldList().add(field("Private1", 1, TypeLengthEnum.FIXED, 2));
+		composite.getFieldList().add(field("Private2", 2, TypeLengthEnum.FIXED, 3));
+		messageVO.getFieldList().add(composite);
+	}
+
+	@Test
+	public void testPlanIsCompiledOncePerMessageVO() {
+		final MessagePlan plan = MessagePlan.of(messageVO);
+		assertSame(plan, MessagePlan.of(messageVO));
+		assertNotSame("Equal, but another instance", plan, MessagePlan.of(messageVO.getInstanceCopy()));
+	}
+
+	@Test
+	public void testCompileIndexesFieldsByBit() {
+		final MessagePlan plan = MessagePlan.compile(messageVO);
+
+		assertNotNull(plan.getField(3));
+		assertNull(plan.getField(5));
+		assertEquals(6, plan.getField(3).getFixedByteLength());
+		assertEquals(2, plan.getField(35).getPrefixByteLength());
+		assertEquals(-1, plan.getField(35).getFixedByteLength());
+		assertEquals("Composite fixed size is the sum of its sub-fields", 5, plan.getField(70).getFixedByteLength());
+		assertEquals(2, plan.getField(70).getSubFieldOffset(1));
+	}
+
+	@Test
+	public void testBuildAndParse() throws ParseException {
+		setValue(3, "003000");
+		setValue(4, "000000001000");
+		setValue(35, "4000123412341234=2512");
+		messageVO.getFieldList().get(3).getFieldList().get(0).setValue("AB");
+		messageVO.getFieldList().get(3).getFieldList().get(1).setValue("CDE");
+		for (FieldVO fieldVO : messageVO.getFieldList())
+			fieldVO.setPresent(true);
+
+		final MessagePlan plan = MessagePlan.compile(messageVO);
+		final ISOMessage built = new ISOMessage(messageVO, plan);
+
+		final String payload = new String(built.getPayload());
+		assertEquals("0200", payload.substring(0, 4));
+		assertEquals("00300000000000100021", payload.substring(4 + 128, 4 + 128 + 20));
+
+		final ISOMessage parsed = new ISOMessage(built.getPayload(), plan);
+		assertEquals("003000", parsed.getBit(3).getValue());
+		assertEquals("000000001000", parsed.getBit(4).getValue());
+		assertEquals("4000123412341234=2512", parsed.getBit(35).getValue());
+		assertEquals("CDE", parsed.getBit(70).getFieldList().get(1).getValue());
+		assertArrayEquals(built.getPayload(), parsed.getPayload());
+	}
+
+	@Test
+	public void testEncodeIntoBuffer() throws ParseException {
+		setValue(3, "003000");
+		setValue(35, "4000123412341234=2512");
+		messageVO.getFieldList().get(3).getFieldList().get(0).setValue("AB");
+		for (FieldVO fieldVO : messageVO.getFieldList())
+			fieldVO.setPresent(true);
+		messageVO.getFieldList().get(1).setPresent(false);
+
+		final MessagePlan plan = MessagePlan.compile(messageVO);
+		final ISO8583Delimiter delimiter = new ISO8583Length2DelimiterBeginning();
+		final byte[] expected = delimiter.preparePayload(new ISOMessage(messageVO, plan), null);
+
+		final ByteBuffer buffer = ByteBuffer.allocateDirect(1024);
+		for (int i = 0; i < 2; i++) {
+			buffer.clear();
+			assertEquals(expected.length, delimiter.encode(plan, messageVO, buffer));
+			buffer.flip();
+
+			final byte[] written = new byte[buffer.remaining()];
+			buffer.get(written);
+			assertArrayEquals(expected, written);
+		}
+	}
+
+	@Test(expected = BufferOverflowException.class)
+	public void testEncodeIntoSmallBuffer() {
+		setValue(3, "003000");
+		messageVO.getFieldList().get(0).setPresent(true);
+		MessagePlan.compile(messageVO).encode(messageVO, ByteBuffer.allocate(32));
+	}
+
+	@Test
+	public void testConditionSeesParsedBits() throws ParseException {
+		final FieldVO conditional = field("Conditional", 41, TypeLengthEnum.FIXED, 3);
+		conditional.setDynaCondition("BIT[3] == '003000'");
+		messageVO.getFieldList().add(conditional);
+		setValue(3, "003000");
+		setValue(41, "ABC");
+		messageVO.getFieldList().get(0).setPresent(true);
+		conditional.setPresent(true);
+
+		final MessagePlan plan = MessagePlan.compile(messageVO);
+		assertEquals("ABC", new ISOMessage(plan.encode(messageVO), plan).getBit(41).getValue());
+
+		setValue(3, "000000");
+		assertNull(new ISOMessage(plan.encode(messageVO), plan).getBit(41));
+	}
+
+	@Test
+	public void testBcdFields() throws ParseException {
+		final MessageVO bcdMessage = new MessageVO("0200", EncodingEnum.BCD);
+		final FieldVO amount = new FieldVO(null, "Amount", "", 4, TypeEnum.ALPHANUMERIC, TypeLengthEnum.FIXED, 11, EncodingEnum.BCD, "");
+		amount.setValue("1000");
+		amount.setPresent(true);
+		bcdMessage.getFieldList().add(amount);
+
+		final MessagePlan plan = MessagePlan.compile(bcdMessage);
+		final byte[] payload = plan.encode(bcdMessage);
+		assertEquals("Type, binary bitmap and 6 bytes for 11 digits", 4 + 8 + 6, payload.length);
+		assertEquals(0x10, payload[4 + 8 + 4]);
+
+		assertEquals("00000001000", new ISOMessage(payload, plan).getBit(4).getValue());
+	}
+
+	@Test
+	public void testBcdVariableFieldCountsDigits() throws ParseException {
+		final MessageVO bcdMessage = new MessageVO("0200", EncodingEnum.BCD);
+		final FieldVO pan = new FieldVO(null, "PAN", "", 2, TypeEnum.ALPHANUMERIC, TypeLengthEnum.NVAR, 2, EncodingEnum.BCD, "");
+		pan.setValue("12345");
+		pan.setPresent(true);
+		bcdMessage.getFieldList().add(pan);
+		final FieldVO amount = new FieldVO(null, "Amount", "", 4, TypeEnum.ALPHANUMERIC, TypeLengthEnum.FIXED, 4, EncodingEnum.BCD, "");
+		amount.setValue("1000");
+		amount.setPresent(true);
+		bcdMessage.getFieldList().add(amount);
+
+		final MessagePlan plan = MessagePlan.compile(bcdMessage);
+		final byte[] payload = plan.encode(bcdMessage);
+		assertEquals("Type, binary bitmap, prefix, 3 bytes for 5 digits and 2 bytes", 4 + 8 + 1 + 3 + 2, payload.length);
+		assertEquals("The prefix is the amount of digits", 0x05, payload[4 + 8]);
+
+		final ISOMessage message = new ISOMessage(payload, plan);
+		assertEquals("12345", message.getBit(2).getValue());
+		assertEquals("1000", message.getBit(4).getValue());
+		assertEquals(payload.length, new ISOMessageView(payload, plan).getFieldOffset(4) + 2);
+	}
+
+	@Test
+	public void testBerTlvField() throws Exception {
+		final MessageVO chipMessage = new MessageVO("0200", EncodingEnum.HEXA);
+		final FieldVO chipData = new FieldVO(null, "ChipData", "", 55, TypeEnum.BERTLV, TypeLengthEnum.NVAR, 3, EncodingEnum.UTF8, "");
+		chipData.setValue("9F2602A1B2950500000080009F100100");
+		chipData.setPresent(true);
+		chipMessage.getFieldList().add(chipData);
+
+		final MessagePlan plan = MessagePlan.compile(chipMessage);
+		final byte[] payload = plan.encode(chipMessage);
+		assertEquals("Type, bitmap, 3 digits prefix and 16 bytes", 4 + 16 + 3 + 16, payload.length);
+		assertEquals("016", new String(payload, 20, 3, "US-ASCII"));
+
+		final FieldVO parsed = new ISOMessage(payload, plan).getBit(55);
+		assertEquals("9F2602A1B2950500000080009F100100", parsed.getValue());
+		assertEquals("0000008000", parsed.getBerTlvIndex().getHexValue(0x95));
+
+		final ISOMessageView view = new ISOMessageView(payload, plan);
+		assertEquals("A1B2", view.getBerTlvIndex(55).getHexValue(0x9F26));
+		assertEquals(23 + 2 + 1, view.getBerTlvIndex(55).getValueOffset(0x9F26));
+		assertEquals("9F2602A1B2950500000080009F100100", view.getValue(55).toString());
+	}
+
+	@Test
+	public void testInvalidBerTlvDoesNotFailTheMessage() throws Exception {
+		final MessageVO chipMessage = new MessageVO("0200", EncodingEnum.HEXA);
+		final FieldVO chipData = new FieldVO(null, "ChipData", "", 55, TypeEnum.BERTLV, TypeLengthEnum.NVAR, 3, EncodingEnum.UTF8, "");
+		//The length of the element goes beyond the value
+		chipData.setValue("9F2605A1B2");
+		chipData.setPresent(true);
+		chipMessage.getFieldList().add(chipData);
+
+		final MessagePlan plan = MessagePlan.compile(chipMessage);
+		final FieldVO parsed = new ISOMessage(plan.encode(chipMessage), plan).getBit(55);
+		assertEquals("9F2605A1B2", parsed.getValue());
+		try {
+			parsed.getBerTlvIndex();
+			fail("The index of an invalid value must fail when it is read");
+		}
+		catch (OutOfBoundsException x) {
+			//Expected
+		}
+	}
+
+	private void setValue(final int bitNum, final String value) {
+		for (FieldVO fieldVO : messageVO.getFieldList())
+			if (fieldVO.getBitNum().intValue() == bitNum)
+				fieldVO.setValue(value);
+	}
+
+	static FieldVO field(final String name, final int bitNum, final TypeLengthEnum typeLength, final int length) {
+		return new FieldVO(null, name, "", bitNum, TypeEnum.ALPHANUMERIC, typeLength, length, EncodingEnum.UTF8, "");
+	}
+}
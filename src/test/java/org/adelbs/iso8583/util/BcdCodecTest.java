@@ -0,0 +1,76 @@
+package org.adelbs.iso8583.util;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.fail;
+
+import org.junit.Test;
+
+public class BcdCodecTest {
+
+	@Test
+	public void testRightJustified() {
+		final byte[] packed = BcdCodec.RIGHT_JUSTIFIED.encode("12345");
+		assertArrayEquals(new byte[] {0x01, 0x23, 0x45}, packed);
+		assertEquals("12345", BcdCodec.RIGHT_JUSTIFIED.decode(packed, 0, 5));
+		assertEquals(12345L, BcdCodec.RIGHT_JUSTIFIED.parseLong(packed, 0, 5));
+	}
+
+	@Test
+	public void testLeftJustified() {
+		final byte[] packed = BcdCodec.LEFT_JUSTIFIED.encode("12345");
+		assertArrayEquals(new byte[] {0x12, 0x34, 0x5F}, packed);
+		assertEquals("12345", BcdCodec.LEFT_JUSTIFIED.decode(packed, 0, 5));
+	}
+
+	@Test
+	public void testSigned() {
+		assertArrayEquals(new byte[] {0x12, 0x3D}, BcdCodec.SIGNED.encode("-123"));
+		assertArrayEquals(new byte[] {0x01, 0x23, 0x4C}, BcdCodec.SIGNED.encode("+1234"));
+		assertArrayEquals(new byte[] {0x12, 0x3F}, BcdCodec.SIGNED.encode("123"));
+
+		assertEquals("-123", BcdCodec.SIGNED.decode(new byte[] {0x12, 0x3D}, 0, 3));
+		assertEquals(-1234L, BcdCodec.SIGNED.parseLong(new byte[] {0x01, 0x23, 0x4D}, 0, 4));
+	}
+
+	@Test
+	public void testEncodeLongIntoBuffer() {
+		final byte[] target = {(byte) 0xEE, (byte) 0xEE, (byte) 0xEE, (byte) 0xEE, (byte) 0xEE};
+		assertEquals(3, BcdCodec.RIGHT_JUSTIFIED.encode(1000L, 6, target, 1));
+		assertArrayEquals(new byte[] {(byte) 0xEE, 0x00, 0x10, 0x00, (byte) 0xEE}, target);
+
+		assertEquals(2, BcdCodec.SIGNED.encode(-45L, 3, target, 0));
+		assertEquals(-45L, BcdCodec.SIGNED.parseLong(target, 0, 3));
+
+		assertEquals(3, BcdCodec.LEFT_JUSTIFIED.encode(12345L, 5, target, 0));
+		assertArrayEquals(new byte[] {0x12, 0x34, 0x5F}, new byte[] {target[0], target[1], target[2]});
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void testLongDoesNotFit() {
+		BcdCodec.RIGHT_JUSTIFIED.encode(1000L, 3, new byte[2], 0);
+	}
+
+	@Test(expected = NumberFormatException.class)
+	public void testInvalidNibble() {
+		BcdCodec.RIGHT_JUSTIFIED.decode(new byte[] {0x1A}, 0, 2);
+	}
+
+	@Test
+	public void testBinaryEncodingIsUnsigned() {
+		final EncodingBINARY encoder = new EncodingBINARY();
+		assertEquals("0599", encoder.convert(new byte[] {5, 99}));
+		try {
+			encoder.convert(new byte[] {(byte) 200});
+			fail("A byte holds at most 99");
+		}
+		catch (NumberFormatException x) {
+			//Expected, and not a negative number
+		}
+		assertArrayEquals(new byte[] {12, 34, 5}, encoder.convert("12345"));
+
+		final String bits = "1000000000000000000000000000000000000000000000000000000000000001";
+		assertEquals(bits, encoder.convertBitmap(encoder.convertBitmap(bits)));
+		assertEquals((byte) 0x80, encoder.convertBitmap(bits)[0]);
+	}
+}
@@ -0,0 +1,59 @@
+package org.adelbs.iso8583.util;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+
+import java.io.UnsupportedEncodingException;
+
+import org.junit.Test;
+
+public class EbcdicTableTest {
+
+	private static final EncodingEBCDIC encoder = new EncodingEBCDIC();
+
+	@Test
+	public void testTableMatchesTheCharset() throws UnsupportedEncodingException {
+		final byte[] all = new byte[256];
+		for (int i = 0; i < all.length; i++)
+			all[i] = (byte) i;
+
+		final String expected = new String(all, "Cp1047");
+		assertEquals(expected, encoder.convert(all));
+		assertArrayEquals(all, encoder.convert(expected));
+		assertArrayEquals("\u0100".getBytes("Cp1047"), encoder.convert("\u0100"));
+	}
+
+	@Test
+	public void testRangeInPlace() throws UnsupportedEncodingException {
+		final byte[] data = "xxHELLO 123xx".getBytes("Cp1047");
+		EbcdicTable.toLatin1(data, 2, data, 2, 9);
+		assertEquals("HELLO 123", new String(data, 2, 9, "ISO-8859-1"));
+
+		EbcdicTable.toEbcdic(data, 2, data, 2, 9);
+		assertEquals("xxHELLO 123xx", EbcdicTable.decode(data, 0, data.length));
+	}
+
+	@Test
+	public void testHexLong() throws UnsupportedEncodingException {
+		final byte[] hex = "F23A0000000000FF".getBytes("Cp1047");
+		assertEquals(0xF23A0000000000FFL, EbcdicTable.readHexLong(hex, 0));
+		assertEquals(0xF23A0000000000FFL, EbcdicTable.readHexLong("f23a0000000000ff".getBytes("Cp1047"), 0));
+
+		final byte[] target = new byte[16];
+		EbcdicTable.writeHexLong(0xF23A0000000000FFL, target, 0);
+		assertArrayEquals(hex, target);
+	}
+
+	@Test
+	public void testConvertBitmap() throws UnsupportedEncodingException {
+		final String binary = "1111001000111010000000000000000000000000000000000000000011111111";
+		final byte[] bitmap = encoder.convertBitmap(binary);
+		assertArrayEquals("F23A0000000000FF".getBytes("Cp1047"), bitmap);
+		assertEquals(binary, encoder.convertBitmap(bitmap));
+	}
+
+	@Test(expected = NumberFormatException.class)
+	public void testInvalidHexDigit() throws UnsupportedEncodingException {
+		EbcdicTable.readHexLong("F23A0000000000FG".getBytes("Cp1047"), 0);
+	}
+}
@@ -0,0 +1,49 @@
+package org.adelbs.iso8583.util;
+
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Test;
+
+public class HashedTimerWheelTest {
+
+	private final HashedTimerWheel timer = new HashedTimerWheel("TestTimer", 5, TimeUnit.MILLISECONDS, 8);
+
+	@Test
+	public void testTimeoutsExpireAfterTheirDelay() throws InterruptedException {
+		final CountDownLatch expired = new CountDownLatch(2);
+		final Runnable task = new Runnable() {
+			public void run() {
+				expired.countDown();
+			}
+		};
+
+		final long start = System.nanoTime();
+		final HashedTimerWheel.Timeout shortTimeout = timer.schedule(task, 20, TimeUnit.MILLISECONDS);
+		//More than a whole turn of the wheel (8 ticks of 5 ms)
+		final HashedTimerWheel.Timeout longTimeout = timer.schedule(task, 100, TimeUnit.MILLISECONDS);
+
+		assertTrue(expired.await(5, TimeUnit.SECONDS));
+		assertTrue(System.nanoTime() - start >= TimeUnit.MILLISECONDS.toNanos(100));
+		assertTrue(shortTimeout.isExpired());
+		assertTrue(longTimeout.isExpired());
+		assertFalse(longTimeout.cancel());
+	}
+
+	@Test
+	public void testCancelledTimeoutsDoNotRun() throws InterruptedException {
+		final CountDownLatch expired = new CountDownLatch(1);
+		final HashedTimerWheel.Timeout timeout = timer.schedule(new Runnable() {
+			public void run() {
+				expired.countDown();
+			}
+		}, 20, TimeUnit.MILLISECONDS);
+
+		assertTrue(timeout.cancel());
+		assertFalse(expired.await(100, TimeUnit.MILLISECONDS));
+		assertTrue(timeout.isCancelled());
+	}
+}
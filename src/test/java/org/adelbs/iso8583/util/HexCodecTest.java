@@ -0,0 +1,58 @@
+package org.adelbs.iso8583.util;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+
+import java.nio.charset.StandardCharsets;
+
+import org.junit.Test;
+
+public class HexCodecTest {
+
+	private static final EncodingHEXA encoder = new EncodingHEXA();
+
+	@Test
+	public void testBytesAndDigits() {
+		final byte[] bytes = {0x00, 0x0F, (byte) 0xA5, (byte) 0xFF};
+		assertEquals("000FA5FF", HexCodec.toHex(bytes, 0, bytes.length));
+		assertArrayEquals(bytes, HexCodec.fromHex("000fa5ff"));
+
+		final byte[] digits = new byte[10];
+		assertEquals(4, HexCodec.encode(bytes, 1, 2, digits, 3));
+		assertEquals("0FA5", new String(digits, 3, 4, StandardCharsets.US_ASCII));
+
+		final byte[] decoded = new byte[2];
+		assertEquals(2, HexCodec.decode(digits, 3, 4, decoded, 0));
+		assertArrayEquals(new byte[] {0x0F, (byte) 0xA5}, decoded);
+	}
+
+	@Test
+	public void testLong() {
+		final byte[] digits = new byte[16];
+		HexCodec.writeLong(0x8000000000000001L, digits, 0);
+		assertEquals("8000000000000001", new String(digits, StandardCharsets.US_ASCII));
+		assertEquals(0x8000000000000001L, HexCodec.readLong(digits, 0));
+		assertEquals(0x00000000000000ABL, HexCodec.readLong("00000000000000ab".getBytes(StandardCharsets.US_ASCII), 0));
+	}
+
+	@Test
+	public void testLeadingZeroIsKept() {
+		assertArrayEquals(new byte[] {0x01, 'A'}, encoder.convert("\u0001A"));
+		assertEquals("0200", encoder.convert(encoder.convert("0200")));
+	}
+
+	@Test
+	public void testConvertBitmap() {
+		final String binary = "0111000000000000000000000000000000000000000000000000000000000001";
+		final byte[] bitmap = encoder.convertBitmap(binary);
+		assertEquals("7000000000000001", new String(bitmap, StandardCharsets.US_ASCII));
+		assertEquals(binary, encoder.convertBitmap(bitmap));
+		assertEquals("0111", ISOUtils.hexToBin("7"));
+		assertEquals("7F", ISOUtils.binToHex("01111111"));
+	}
+
+	@Test(expected = NumberFormatException.class)
+	public void testInvalidDigit() {
+		HexCodec.fromHex("0G");
+	}
+}
@@ -0,0 +1,76 @@
+package org.adelbs.iso8583.util;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+
+import org.junit.Test;
+
+public class PayloadBufferTest {
+
+	@Test
+	public void testAppendGrowsAndKeepsTheContent() {
+		final PayloadBuffer buffer = new PayloadBuffer(2);
+		buffer.append((byte) '0').append(bytes("200")).append(bytes("xABCx"), 1, 3);
+
+		assertEquals(7, buffer.length());
+		assertArrayEquals(bytes("0200ABC"), buffer.toByteArray());
+		assertArrayEquals(bytes("ABC"), buffer.toByteArray(4, 7));
+		assertEquals('A', buffer.get(4));
+	}
+
+	@Test
+	public void testInsertAndSlice() {
+		final PayloadBuffer buffer = new PayloadBuffer(4);
+		buffer.append(bytes("VALUE")).insert(0, bytes("005"));
+		assertArrayEquals(bytes("005VALUE"), buffer.toByteArray());
+
+		final ByteBuffer slice = buffer.slice(3, 8);
+		assertEquals(5, slice.remaining());
+		assertSame(buffer.array(), slice.array());
+		assertEquals('V', slice.get(0));
+	}
+
+	@Test
+	public void testWritableBuffer() {
+		final PayloadBuffer buffer = new PayloadBuffer(8);
+		buffer.append(bytes("AB"));
+
+		final ByteBuffer target = buffer.writableBuffer();
+		target.put(bytes("CD"));
+		buffer.setLength(target.position());
+		assertArrayEquals(bytes("ABCD"), buffer.toByteArray());
+	}
+
+	@Test(expected = IndexOutOfBoundsException.class)
+	public void testSliceBeyondTheContent() {
+		new PayloadBuffer(16).append(bytes("AB")).slice(0, 3);
+	}
+
+	@Test
+	public void testPoolReusesTheBufferOfTheThread() {
+		final PayloadBufferPool pool = new PayloadBufferPool(16, 32);
+
+		final PayloadBuffer first = pool.acquire();
+		first.append(bytes("0200"));
+		assertNotSame(first, pool.acquire());
+		pool.release(first);
+
+		final PayloadBuffer second = pool.acquire();
+		assertSame(first, second);
+		assertEquals(0, second.length());
+
+		//Buffers that grew too much are not retained
+		second.ensureCapacity(64);
+		pool.release(second);
+		assertNotSame(second, pool.acquire());
+	}
+
+	private static byte[] bytes(final String value) {
+		return value.getBytes(StandardCharsets.US_ASCII);
+	}
+}